@@ -0,0 +1,139 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.api;
+
+/**
+ * A GeneratedCreator creates and initializes instances of one service
+ * class without using reflection.  Implementations are generated at
+ * build time by the hk2-metadata-generator when its
+ * <code>org.glassfish.hk2.metadata.creators</code> option is true, and
+ * are named after the binary name of the service class followed by
+ * {@link #CLASS_NAME_SUFFIX}.
+ * <p>
+ * The members a GeneratedCreator handles are identified by signature
+ * strings.  The signature of a constructor is &lt;init&gt; followed by
+ * the names of its parameter types (as returned by {@link Class#getName()})
+ * separated by commas and enclosed in parentheses.  The signature of a field
+ * is the binary name of its declaring class, a # and the name of the field.
+ * The signature of a method is the binary name of its declaring class, a #,
+ * the name of the method and its parameter types as for a constructor.
+ * <p>
+ * HK2 will only use a GeneratedCreator when every member found by the
+ * {@link ClassAnalyzer} of the service has a matching signature, and will
+ * otherwise use reflection as usual
+ * 
+ * @author jwells
+ * @param <T> The type of service this creator creates
+ */
+public interface GeneratedCreator<T> {
+    /** Appended to the binary name of a service class to get the name of its GeneratedCreator */
+    public final static String CLASS_NAME_SUFFIX = "_HK2Creator";
+    
+    /**
+     * The constructor called by {@link #create(Object[])}
+     * 
+     * @return The non-null signature of the constructor
+     */
+    public String getConstructor();
+    
+    /**
+     * The fields and initializer methods this creator can inject.  The
+     * position of a signature in the returned array is the number given
+     * to {@link #inject(Object, int, Object[])}
+     * 
+     * @return The non-null signatures of the injection points
+     */
+    public String[] getInjectionPoints();
+    
+    /**
+     * The method called by {@link #postConstruct(Object)}.  This is
+     * null when the service implements {@link PostConstruct}, in which
+     * case HK2 calls that directly
+     * 
+     * @return The signature of the postConstruct method, or null if there is none
+     */
+    public String getPostConstruct();
+    
+    /**
+     * The method called by {@link #preDestroy(Object)}.  This is
+     * null when the service implements {@link PreDestroy}, in which
+     * case HK2 calls that directly
+     * 
+     * @return The signature of the preDestroy method, or null if there is none
+     */
+    public String getPreDestroy();
+    
+    /**
+     * Calls the constructor
+     * 
+     * @param arguments The arguments of the constructor in parameter order
+     * @return The newly created instance
+     * @throws Throwable Any exception thrown by the constructor
+     */
+    public T create(Object[] arguments) throws Throwable;
+    
+    /**
+     * Sets a field or calls an initializer method
+     * 
+     * @param instance The instance to inject into
+     * @param injectionPoint The position in {@link #getInjectionPoints()} of the
+     * field or method
+     * @param arguments The value of the field as the only element, or the
+     * arguments of the method in parameter order
+     * @throws Throwable Any exception thrown by an initializer method
+     */
+    public void inject(T instance, int injectionPoint, Object[] arguments) throws Throwable;
+    
+    /**
+     * Calls the postConstruct method, if there is one
+     * 
+     * @param instance The instance that has been fully injected
+     * @throws Throwable Any exception thrown by the postConstruct method
+     */
+    public void postConstruct(T instance) throws Throwable;
+    
+    /**
+     * Calls the preDestroy method, if there is one
+     * 
+     * @param instance The instance being destroyed
+     * @throws Throwable Any exception thrown by the preDestroy method
+     */
+    public void preDestroy(T instance) throws Throwable;
+}
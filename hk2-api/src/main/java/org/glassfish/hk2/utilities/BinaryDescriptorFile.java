@@ -0,0 +1,525 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.utilities;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.glassfish.hk2.api.ClassAnalyzer;
+import org.glassfish.hk2.api.Descriptor;
+import org.glassfish.hk2.api.DescriptorType;
+import org.glassfish.hk2.api.DescriptorVisibility;
+import org.glassfish.hk2.api.PerLookup;
+
+/**
+ * A compact binary alternative to the text format written by
+ * {@link DescriptorImpl#writeObject(java.io.PrintWriter)}.  All strings
+ * in the file (class names, scopes, qualifiers, metadata) are stored once
+ * in a string table and referred to by index, and the descriptor records
+ * are located through a fixed-width offset index so that any one of them
+ * can be decoded without parsing the ones before it.
+ * <p>
+ * The layout of the file (all integers are big-endian) is:
+ * <pre>
+ * int     MAGIC
+ * int     VERSION
+ * int     number of strings
+ * int     number of descriptors
+ * strings (int byte length, UTF-8 bytes) * number of strings
+ * int     record offset * number of descriptors
+ * records
+ * </pre>
+ * A binary file can be told apart from a text file by its first four
+ * bytes, see {@link #isBinary(ByteBuffer)}
+ * 
+ * @author jwells
+ */
+public class BinaryDescriptorFile {
+    /** The first four bytes of every binary descriptor file ("HK2B") */
+    public final static int MAGIC = 0x484B3242;
+    
+    /** The version of the binary format written by this class */
+    public final static int VERSION = 1;
+    
+    private final static Charset UTF8 = Charset.forName("UTF-8");
+    private final static int NO_STRING = -1;
+    private final static int HEADER_SIZE = 16;
+    
+    private final static int FLAG_PROVIDE_METHOD = 0x01;
+    private final static int FLAG_LOCAL = 0x02;
+    private final static int FLAG_PROXIABLE_SET = 0x04;
+    private final static int FLAG_PROXIABLE = 0x08;
+    private final static int FLAG_PROXY_FOR_SAME_SCOPE_SET = 0x10;
+    private final static int FLAG_PROXY_FOR_SAME_SCOPE = 0x20;
+    
+    private final ByteBuffer buffer;
+    private final String strings[];
+    private final int indexStart;
+    private final int recordsStart;
+    private final int numDescriptors;
+    
+    /**
+     * Prepares the binary descriptor file contained in the given buffer
+     * for reading.  Only the header and the string table are decoded
+     * here, the descriptors themselves are decoded on demand by
+     * {@link #getDescriptor(int)}.  The buffer is not modified
+     * 
+     * @param buffer The buffer positioned at the start of the file.  May
+     * be a memory-mapped buffer
+     * @throws IOException if the buffer does not contain a valid binary
+     * descriptor file
+     */
+    public BinaryDescriptorFile(ByteBuffer buffer) throws IOException {
+        if (!isBinary(buffer)) {
+            throw new IOException("The buffer does not contain a binary descriptor file");
+        }
+        
+        this.buffer = buffer.slice();
+        
+        try {
+            int version = this.buffer.getInt(4);
+            if (version != VERSION) {
+                throw new IOException("Unsupported binary descriptor file version " + version +
+                        ", only version " + VERSION + " is supported");
+            }
+            
+            int numStrings = this.buffer.getInt(8);
+            numDescriptors = this.buffer.getInt(12);
+            if (numStrings < 0 || numDescriptors < 0) {
+                throw new IOException("Corrupt binary descriptor file header");
+            }
+            
+            strings = new String[numStrings];
+            
+            ByteBuffer reader = this.buffer.duplicate();
+            reader.position(HEADER_SIZE);
+            
+            for (int lcv = 0; lcv < numStrings; lcv++) {
+                int length = reader.getInt();
+                if (length < 0 || length > reader.remaining()) {
+                    throw new IOException("Corrupt string " + lcv + " in binary descriptor file");
+                }
+                
+                if (reader.hasArray()) {
+                    strings[lcv] = new String(reader.array(),
+                            reader.arrayOffset() + reader.position(), length, UTF8);
+                    reader.position(reader.position() + length);
+                }
+                else {
+                    byte bytes[] = new byte[length];
+                    reader.get(bytes);
+                    strings[lcv] = new String(bytes, UTF8);
+                }
+            }
+            
+            indexStart = reader.position();
+            recordsStart = indexStart + (4 * numDescriptors);
+            if (recordsStart > this.buffer.limit()) {
+                throw new IOException("Corrupt record index in binary descriptor file");
+            }
+        }
+        catch (BufferUnderflowException bue) {
+            throw new IOException("Truncated binary descriptor file", bue);
+        }
+        catch (IndexOutOfBoundsException ioobe) {
+            throw new IOException("Truncated binary descriptor file", ioobe);
+        }
+    }
+    
+    /**
+     * Tells whether or not the buffer starts with a binary descriptor
+     * file.  The position of the buffer is not changed
+     * 
+     * @param buffer The buffer to check
+     * @return true if the buffer starts with {@link #MAGIC}
+     */
+    public static boolean isBinary(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_SIZE) return false;
+        
+        return buffer.getInt(buffer.position()) == MAGIC;
+    }
+    
+    /**
+     * Tells whether or not the stream starts with a binary descriptor
+     * file.  The stream must support mark and reset, and will be reset
+     * to its current position prior to returning
+     * 
+     * @param stream A stream that supports mark and reset
+     * @return true if the stream starts with {@link #MAGIC}
+     * @throws IOException on a failure reading the stream
+     */
+    public static boolean isBinary(InputStream stream) throws IOException {
+        if (!stream.markSupported()) {
+            throw new IOException("The stream " + stream + " does not support mark");
+        }
+        
+        stream.mark(4);
+        try {
+            int magic = 0;
+            for (int lcv = 0; lcv < 4; lcv++) {
+                int read = stream.read();
+                if (read < 0) return false;
+                
+                magic = (magic << 8) | read;
+            }
+            
+            return magic == MAGIC;
+        }
+        finally {
+            stream.reset();
+        }
+    }
+    
+    /**
+     * Returns the number of descriptors in this file
+     * 
+     * @return The number of descriptors in this file
+     */
+    public int getNumDescriptors() {
+        return numDescriptors;
+    }
+    
+    /**
+     * Decodes a single descriptor from the file.  A new DescriptorImpl
+     * is returned on every call
+     * 
+     * @param index The index of the descriptor, from zero to
+     * {@link #getNumDescriptors()} - 1
+     * @return A descriptor equivalent to the one that was written
+     * @throws IOException if the record is corrupt
+     */
+    public DescriptorImpl getDescriptor(int index) throws IOException {
+        if (index < 0 || index >= numDescriptors) {
+            throw new IndexOutOfBoundsException("Index " + index + " is not between 0 and " + numDescriptors);
+        }
+        
+        try {
+            ByteBuffer reader = buffer.duplicate();
+            reader.position(recordsStart + buffer.getInt(indexStart + (4 * index)));
+            
+            DescriptorImpl retVal = new DescriptorImpl();
+            
+            retVal.setImplementation(getString(reader));
+            retVal.setName(getString(reader));
+            
+            String scope = getString(reader);
+            if (scope != null) retVal.setScope(scope);
+            
+            retVal.setClassAnalysisName(getString(reader));
+            retVal.setRanking(reader.getInt());
+            
+            int flags = reader.get();
+            if ((flags & FLAG_PROVIDE_METHOD) != 0) retVal.setDescriptorType(DescriptorType.PROVIDE_METHOD);
+            if ((flags & FLAG_LOCAL) != 0) retVal.setDescriptorVisibility(DescriptorVisibility.LOCAL);
+            if ((flags & FLAG_PROXIABLE_SET) != 0) {
+                retVal.setProxiable((flags & FLAG_PROXIABLE) != 0);
+            }
+            if ((flags & FLAG_PROXY_FOR_SAME_SCOPE_SET) != 0) {
+                retVal.setProxyForSameScope((flags & FLAG_PROXY_FOR_SAME_SCOPE) != 0);
+            }
+            
+            int numContracts = reader.getInt();
+            for (int lcv = 0; lcv < numContracts; lcv++) {
+                retVal.addAdvertisedContract(getString(reader));
+            }
+            
+            int numQualifiers = reader.getInt();
+            for (int lcv = 0; lcv < numQualifiers; lcv++) {
+                retVal.addQualifier(getString(reader));
+            }
+            
+            int numKeys = reader.getInt();
+            for (int lcv = 0; lcv < numKeys; lcv++) {
+                String key = getString(reader);
+                
+                int numValues = reader.getInt();
+                for (int inner = 0; inner < numValues; inner++) {
+                    retVal.addMetadata(key, getString(reader));
+                }
+            }
+            
+            return retVal;
+        }
+        catch (BufferUnderflowException bue) {
+            throw new IOException("Truncated record " + index + " in binary descriptor file", bue);
+        }
+        catch (IndexOutOfBoundsException ioobe) {
+            throw new IOException("Corrupt record " + index + " in binary descriptor file", ioobe);
+        }
+        catch (IllegalArgumentException iae) {
+            throw new IOException("Corrupt record " + index + " in binary descriptor file", iae);
+        }
+    }
+    
+    /**
+     * Decodes all of the descriptors in the file, in the order in
+     * which they were written
+     * 
+     * @return All descriptors in this file.  Will not return null
+     * @throws IOException if any record is corrupt
+     */
+    public List<DescriptorImpl> getDescriptors() throws IOException {
+        List<DescriptorImpl> retVal = new ArrayList<DescriptorImpl>(numDescriptors);
+        
+        for (int lcv = 0; lcv < numDescriptors; lcv++) {
+            retVal.add(getDescriptor(lcv));
+        }
+        
+        return retVal;
+    }
+    
+    /**
+     * Reads the binary descriptor file at the current position of the
+     * stream into memory.  If the stream holds a text descriptor file
+     * instead then nothing is read and the stream is left where it was
+     * 
+     * @param stream A stream that supports mark and reset
+     * @return The binary descriptor file, or null if the stream does
+     * not start with {@link #MAGIC}
+     * @throws IOException on a failure reading the stream, or if the
+     * binary descriptor file is corrupt
+     */
+    public static BinaryDescriptorFile readIfBinary(InputStream stream) throws IOException {
+        if (!isBinary(stream)) return null;
+        
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte bytes[] = new byte[8192];
+        
+        int read;
+        while ((read = stream.read(bytes)) >= 0) {
+            baos.write(bytes, 0, read);
+        }
+        
+        return new BinaryDescriptorFile(ByteBuffer.wrap(baos.toByteArray()));
+    }
+    
+    /**
+     * Reads every descriptor from a descriptor file in either the binary
+     * format or the text format written by
+     * {@link DescriptorImpl#writeObject(java.io.PrintWriter)}.  Anything that
+     * reads descriptor files should use this (or {@link #readIfBinary(InputStream)})
+     * so that files generated with the binary option are not silently ignored
+     * 
+     * @param stream The stream positioned at the start of the file.  The
+     * stream is not closed
+     * @return The descriptors of the file in the order they were written
+     * @throws IOException on a failure reading the stream, or if the
+     * file is corrupt
+     */
+    public static List<DescriptorImpl> readDescriptors(InputStream stream) throws IOException {
+        InputStream input = (stream.markSupported()) ? stream : new BufferedInputStream(stream) ;
+        
+        BinaryDescriptorFile binary = readIfBinary(input);
+        if (binary != null) return binary.getDescriptors();
+        
+        List<DescriptorImpl> retVal = new ArrayList<DescriptorImpl>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input));
+        
+        DescriptorImpl descriptor = new DescriptorImpl();
+        while (descriptor.readObject(reader)) {
+            retVal.add(descriptor);
+            descriptor = new DescriptorImpl();
+        }
+        
+        return retVal;
+    }
+    
+    private String getString(ByteBuffer reader) throws IOException {
+        int index = reader.getInt();
+        if (index == NO_STRING) return null;
+        
+        if (index < 0 || index >= strings.length) {
+            throw new IOException("Invalid string index " + index + " in binary descriptor file");
+        }
+        
+        return strings[index];
+    }
+    
+    /**
+     * Writes the given descriptors to the output stream in the binary
+     * format.  Descriptors written with this method and read back with
+     * {@link #getDescriptor(int)} are equivalent to the same descriptors
+     * written with {@link DescriptorImpl#writeObject(java.io.PrintWriter)}
+     * and read back with {@link DescriptorImpl#readObject(java.io.BufferedReader)}.
+     * The output stream is flushed but not closed
+     * 
+     * @param descriptors The descriptors to write, in order
+     * @param out The stream to write to
+     * @throws IOException on a failure writing the stream
+     */
+    public static void write(Collection<? extends Descriptor> descriptors, OutputStream out) throws IOException {
+        StringTable table = new StringTable();
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+        DataOutputStream records = new DataOutputStream(recordBytes);
+        int offsets[] = new int[descriptors.size()];
+        
+        int lcv = 0;
+        for (Descriptor descriptor : descriptors) {
+            offsets[lcv++] = records.size();
+            
+            writeRecord(descriptor, table, records);
+        }
+        records.flush();
+        
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(out));
+        
+        dos.writeInt(MAGIC);
+        dos.writeInt(VERSION);
+        dos.writeInt(table.strings.size());
+        dos.writeInt(offsets.length);
+        
+        for (String string : table.strings) {
+            byte bytes[] = string.getBytes(UTF8);
+            
+            dos.writeInt(bytes.length);
+            dos.write(bytes);
+        }
+        
+        for (int offset : offsets) {
+            dos.writeInt(offset);
+        }
+        
+        recordBytes.writeTo(dos);
+        
+        dos.flush();
+    }
+    
+    private static void writeRecord(Descriptor descriptor, StringTable table, DataOutputStream records) throws IOException {
+        String implementation = descriptor.getImplementation();
+        
+        String scope = descriptor.getScope();
+        if (PerLookup.class.getName().equals(scope)) {
+            // PerLookup is the default, as it is in the text format
+            scope = null;
+        }
+        
+        String analysisName = descriptor.getClassAnalysisName();
+        if (ClassAnalyzer.DEFAULT_IMPLEMENTATION_NAME.equals(analysisName)) {
+            analysisName = null;
+        }
+        
+        records.writeInt(table.indexOf(implementation));
+        records.writeInt(table.indexOf(descriptor.getName()));
+        records.writeInt(table.indexOf(scope));
+        records.writeInt(table.indexOf(analysisName));
+        records.writeInt(descriptor.getRanking());
+        
+        int flags = 0;
+        if (DescriptorType.PROVIDE_METHOD.equals(descriptor.getDescriptorType())) flags |= FLAG_PROVIDE_METHOD;
+        if (DescriptorVisibility.LOCAL.equals(descriptor.getDescriptorVisibility())) flags |= FLAG_LOCAL;
+        
+        Boolean proxiable = descriptor.isProxiable();
+        if (proxiable != null) {
+            flags |= FLAG_PROXIABLE_SET;
+            if (proxiable.booleanValue()) flags |= FLAG_PROXIABLE;
+        }
+        
+        Boolean proxyForSameScope = descriptor.isProxyForSameScope();
+        if (proxyForSameScope != null) {
+            flags |= FLAG_PROXY_FOR_SAME_SCOPE_SET;
+            if (proxyForSameScope.booleanValue()) flags |= FLAG_PROXY_FOR_SAME_SCOPE;
+        }
+        
+        records.writeByte(flags);
+        
+        // The implementation goes first, as it does when read from the text format
+        Set<String> contracts = descriptor.getAdvertisedContracts();
+        LinkedHashSet<String> orderedContracts = new LinkedHashSet<String>();
+        if (implementation != null && contracts.contains(implementation)) {
+            orderedContracts.add(implementation);
+        }
+        orderedContracts.addAll(contracts);
+        
+        writeStrings(orderedContracts, table, records);
+        writeStrings(descriptor.getQualifiers(), table, records);
+        
+        Map<String, List<String>> metadata = descriptor.getMetadata();
+        records.writeInt(metadata.size());
+        for (Map.Entry<String, List<String>> entry : metadata.entrySet()) {
+            records.writeInt(table.indexOf(entry.getKey()));
+            writeStrings(entry.getValue(), table, records);
+        }
+    }
+    
+    private static void writeStrings(Collection<String> values, StringTable table, DataOutputStream records) throws IOException {
+        records.writeInt(values.size());
+        for (String value : values) {
+            records.writeInt(table.indexOf(value));
+        }
+    }
+    
+    /**
+     * Assigns each distinct string an index in order of first use
+     */
+    private static class StringTable {
+        private final Map<String, Integer> indices = new HashMap<String, Integer>();
+        private final List<String> strings = new ArrayList<String>();
+        
+        private int indexOf(String string) {
+            if (string == null) return NO_STRING;
+            
+            Integer index = indices.get(string);
+            if (index != null) return index;
+            
+            int retVal = strings.size();
+            indices.put(string, retVal);
+            strings.add(string);
+            
+            return retVal;
+        }
+    }
+}
@@ -78,8 +78,23 @@ public class BeanUtilities {
      * @param bean
      * @return
      */
-    @SuppressWarnings("unchecked")
     public static Object getBeanPropertyValue(Type requiredType, String attribute, BeanInfo beanInfo) {
+        return getBeanPropertyValue(requiredType, attribute, beanInfo, null);
+    }
+    
+    /**
+     * Gets the value from the given attribute from the given bean
+     * Safe to give both a bean-like map and a java bean
+     * 
+     * @param requiredType The type the value will be injected into
+     * @param attribute The name of the attribute
+     * @param beanInfo The bean to get the value from
+     * @param getters If not null the getters already found for the class
+     * of the bean, by attribute name.  Getters that are looked up are added
+     * @return The value of the attribute
+     */
+    @SuppressWarnings("unchecked")
+    /* package */ static Object getBeanPropertyValue(Type requiredType, String attribute, BeanInfo beanInfo, Map<String, Method> getters) {
         if (Configured.BEAN_KEY.equals(attribute)) {
             Object bean = beanInfo.getBean();
             if (bean == null) return null;
@@ -107,6 +122,29 @@ public class BeanUtilities {
             return beanLikeMap.get(attribute);
         }
         
+        Method m = (getters == null) ? null : getters.get(attribute);
+        if (m == null) {
+            m = getGetter(bean, attribute);
+            if (getters != null) getters.put(attribute, m);
+        }
+        
+        try {
+            return m.invoke(bean, new Object[0]);
+        }
+        catch (InvocationTargetException e) {
+            Throwable th = e.getTargetException();
+            throw new IllegalStateException(th);
+        }
+        catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+        catch (IllegalArgumentException e) {
+            throw new IllegalStateException(e);
+        }
+        
+    }
+    
+    private static Method getGetter(Object bean, String attribute) {
         attribute = firstUpper(attribute);
         
         String methodName = GET + attribute;
@@ -130,20 +168,7 @@ public class BeanUtilities {
         
         m.setAccessible(true);
         
-        try {
-            return m.invoke(bean, new Object[0]);
-        }
-        catch (InvocationTargetException e) {
-            Throwable th = e.getTargetException();
-            throw new IllegalStateException(th);
-        }
-        catch (IllegalAccessException e) {
-            throw new IllegalStateException(e);
-        }
-        catch (IllegalArgumentException e) {
-            throw new IllegalStateException(e);
-        }
-        
+        return m;
     }
     
     private final static String EMPTY = "";
@@ -192,6 +217,31 @@ public class BeanUtilities {
         return null;
     }
     
+    /**
+     * Tells whether the given parameter is fully dynamic without being bound
+     * to one named property of the bean, because it takes the whole bean or
+     * has no name.  A change to any property of the bean may change it
+     * 
+     * @param m The method
+     * @param paramIndex The index of the parameter
+     * @return true if the method must be called again on any change
+     */
+    /* package */ static boolean isChangedByAnyProperty(Method m, int paramIndex) {
+        Annotation annotations[] = m.getParameterAnnotations()[paramIndex];
+        
+        for (Annotation annotation : annotations) {
+            if (Configured.class.equals(annotation.annotationType())) {
+                Configured configured = (Configured) annotation;
+                if (!Dynamicity.FULLY_DYNAMIC.equals(configured.dynamicity())) return false;
+                
+                String name = configured.value();
+                return isEmpty(name) || Configured.BEAN_KEY.equals(name);
+            }
+        }
+        
+        return false;
+    }
+    
     public static boolean hasDynamicParameter(Method m) {
         for (Annotation annotations[] : m.getParameterAnnotations()) {
             for (Annotation annotation : annotations) {
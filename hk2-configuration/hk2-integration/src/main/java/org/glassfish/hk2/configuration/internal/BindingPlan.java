@@ -0,0 +1,234 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.configuration.internal;
+
+import java.beans.PropertyChangeEvent;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.glassfish.hk2.api.ActiveDescriptor;
+import org.glassfish.hk2.api.Injectee;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.utilities.reflection.ReflectionHelper;
+
+/**
+ * How the properties of one class of bean are bound to the fully dynamic
+ * fields and methods of one configured service.  The injectees of the service
+ * are analyzed once, so applying a set of changed properties only touches
+ * the fields and methods bound to the properties that changed
+ * 
+ * @author jwells
+ *
+ */
+/* package */ class BindingPlan {
+    /** The dynamic fields of the service by property name */
+    private final Map<String, List<Field>> fields = new HashMap<String, List<Field>>();
+    
+    /** The methods with a dynamic parameter by the names of those properties */
+    private final Map<String, List<DynamicMethod>> methods = new HashMap<String, List<DynamicMethod>>();
+    
+    /**
+     * The methods with a dynamic parameter that takes the whole bean or has no
+     * name, which are called on every change as no property names them
+     */
+    private final LinkedHashSet<DynamicMethod> anyChangeMethods = new LinkedHashSet<DynamicMethod>();
+    
+    /** The getters of the bean class by property name */
+    private final Map<String, Method> getters = new HashMap<String, Method>();
+    
+    /* package */ BindingPlan(ActiveDescriptor<?> parent) {
+        HashMap<Method, DynamicMethod> dynamicMethods = new HashMap<Method, DynamicMethod>();
+        HashSet<Method> notDynamicMethods = new HashSet<Method>();
+        
+        for (Injectee injectee : parent.getInjectees()) {
+            AnnotatedElement ae = injectee.getParent();
+            if (ae == null) continue;
+            
+            if (ae instanceof Field) {
+                Field field = (Field) ae;
+                
+                String propName = BeanUtilities.getParameterNameFromField(field, true);
+                if (propName == null) continue;
+                
+                List<Field> bound = fields.get(propName);
+                if (bound == null) {
+                    bound = new LinkedList<Field>();
+                    fields.put(propName, bound);
+                }
+                
+                bound.add(field);
+                
+                continue;
+            }
+            
+            if (ae instanceof Method) {
+                Method method = (Method) ae;
+                
+                if (notDynamicMethods.contains(method)) continue;
+                
+                DynamicMethod dynamicMethod = dynamicMethods.get(method);
+                if (dynamicMethod == null) {
+                    if (!BeanUtilities.hasDynamicParameter(method)) {
+                        notDynamicMethods.add(method);
+                        continue;
+                    }
+                    
+                    dynamicMethod = new DynamicMethod(method);
+                    dynamicMethods.put(method, dynamicMethod);
+                }
+                
+                int position = injectee.getPosition();
+                String propName = BeanUtilities.getParameterNameFromMethod(method, position);
+                
+                dynamicMethod.injectees[position] = injectee;
+                dynamicMethod.propNames[position] = propName;
+                
+                if (BeanUtilities.isChangedByAnyProperty(method, position)) {
+                    anyChangeMethods.add(dynamicMethod);
+                    continue;
+                }
+                
+                if (propName == null) continue;
+                
+                List<DynamicMethod> bound = methods.get(propName);
+                if (bound == null) {
+                    bound = new LinkedList<DynamicMethod>();
+                    methods.put(propName, bound);
+                }
+                
+                bound.add(dynamicMethod);
+            }
+        }
+    }
+    
+    /**
+     * Sets the fields and calls the methods of the target that are bound
+     * to the changed properties.  A method is called once even if more
+     * than one of its parameters changed.  Methods with a dynamic parameter
+     * that takes the whole bean or has no name are always called
+     * 
+     * @param target The service to update
+     * @param changedProperties The changed properties by name
+     * @param beanInfo The new bean, for the values of unchanged parameters
+     * @param locator Used for the parameters that are not configured
+     */
+    /* package */ void apply(Object target,
+            Map<String, PropertyChangeEvent> changedProperties,
+            BeanInfo beanInfo,
+            ServiceLocator locator) {
+        LinkedHashSet<DynamicMethod> toInvoke = new LinkedHashSet<DynamicMethod>(anyChangeMethods);
+        
+        for (PropertyChangeEvent pce : changedProperties.values()) {
+            String propName = pce.getPropertyName();
+            
+            List<Field> boundFields = fields.get(propName);
+            if (boundFields != null) {
+                for (Field field : boundFields) {
+                    try {
+                        ReflectionHelper.setField(field, target, pce.getNewValue());
+                    }
+                    catch (Throwable th) {
+                        // TODO:  How to handle exceptions
+                    }
+                }
+            }
+            
+            List<DynamicMethod> boundMethods = methods.get(propName);
+            if (boundMethods != null) {
+                toInvoke.addAll(boundMethods);
+            }
+        }
+        
+        for (DynamicMethod dynamicMethod : toInvoke) {
+            Object params[] = new Object[dynamicMethod.propNames.length];
+            
+            for (int position = 0; position < params.length; position++) {
+                Injectee injectee = dynamicMethod.injectees[position];
+                if (injectee == null) continue;
+                
+                String propName = dynamicMethod.propNames[position];
+                if (propName == null) {
+                    ActiveDescriptor<?> paramDescriptor = locator.getInjecteeDescriptor(injectee);
+                    if (paramDescriptor != null) {
+                        params[position] = locator.getServiceHandle(paramDescriptor).getService();
+                    }
+                    
+                    continue;
+                }
+                
+                PropertyChangeEvent pce = changedProperties.get(propName);
+                if (pce != null) {
+                    params[position] = pce.getNewValue();
+                }
+                else {
+                    params[position] = BeanUtilities.getBeanPropertyValue(injectee.getRequiredType(), propName, beanInfo, getters);
+                }
+            }
+            
+            try {
+                ReflectionHelper.invoke(target, dynamicMethod.method, params, true);
+            }
+            catch (Throwable e) {
+                // How to handle errors?
+            }
+        }
+    }
+    
+    private static class DynamicMethod {
+        private final Method method;
+        private final Injectee injectees[];
+        private final String propNames[];
+        
+        private DynamicMethod(Method method) {
+            this.method = method;
+            
+            int numParams = method.getParameterTypes().length;
+            injectees = new Injectee[numParams];
+            propNames = new String[numParams];
+        }
+    }
+}
@@ -42,8 +42,6 @@ package org.glassfish.hk2.configuration.internal;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.lang.annotation.Annotation;
-import java.lang.reflect.AnnotatedElement;
-import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.Collections;
 import java.util.HashMap;
@@ -63,7 +61,6 @@ import org.glassfish.hk2.api.DescriptorVisibility;
 import org.glassfish.hk2.api.DynamicConfiguration;
 import org.glassfish.hk2.api.DynamicConfigurationListener;
 import org.glassfish.hk2.api.DynamicConfigurationService;
-import org.glassfish.hk2.api.Injectee;
 import org.glassfish.hk2.api.ServiceHandle;
 import org.glassfish.hk2.api.ServiceLocator;
 import org.glassfish.hk2.api.Visibility;
@@ -247,85 +244,22 @@ public class ConfigurationListener implements BeanDatabaseUpdateListener {
             }
         }
         
-        HashMap<Method, Object[]> dynamicMethods = new HashMap<Method, Object[]>();
-        HashSet<Method> notDynamicMethods = new HashSet<Method>();
-        
-        for (Injectee injectee : parent.getInjectees()) {
-            AnnotatedElement ae = injectee.getParent();
-            if (ae == null) continue;
-            
-            if (ae instanceof Field) {
-                String propName = BeanUtilities.getParameterNameFromField((Field) ae, true);
-                if (propName == null) continue;
-                
-                PropertyChangeEvent pce = changedProperties.get(propName);
-                if (pce != null) {
-                    try {
-                        ReflectionHelper.setField((Field) ae, target, pce.getNewValue());
-                    }
-                    catch (Throwable th) {
-                        // TODO:  How to handle exceptions
-                    }
-                }
-                
-                continue;
-            }
-            
-            if (ae instanceof Method) {
-                Method method = (Method) ae;
-                
-                if (notDynamicMethods.contains(method)) continue;
-                
-                if (!BeanUtilities.hasDynamicParameter(method)) {
-                    notDynamicMethods.add(method);
-                    continue;
-                }
-                
-                Object params[] = dynamicMethods.get(method);
-                if (params == null) {
-                    params = new Object[method.getParameterTypes().length];
-                    dynamicMethods.put(method, params);
-                }
-                
-                String propName = BeanUtilities.getParameterNameFromMethod(method, injectee.getPosition());
-                if (propName == null) {
-                    ActiveDescriptor<?> paramDescriptor = locator.getInjecteeDescriptor(injectee);
-                    if (paramDescriptor == null) {
-                        params[injectee.getPosition()] = null;
-                    }
-                    else {
-                        params[injectee.getPosition()] = locator.getServiceHandle(paramDescriptor).getService();
-                    }
-                }
-                else {
-                    PropertyChangeEvent pce = changedProperties.get(propName);
-                    if (pce != null) {
-                        params[injectee.getPosition()] = pce.getNewValue();
-                    }
-                    else {
-                        params[injectee.getPosition()] = BeanUtilities.getBeanPropertyValue(injectee.getRequiredType(), propName, modifiedInfo);
-                    }
-                }
-                
-            }
-            
-        }
-        
-        for(Map.Entry<Method, Object[]> entries : dynamicMethods.entrySet()) {
-            try {
-                ReflectionHelper.invoke(target, entries.getKey(), entries.getValue(), true);
-            }
-            catch (Throwable e) {
-                // How to handle errors?
-            }
-            
-        }
+        getBindingPlan(parent, target, modifiedInfo).apply(target, changedProperties, modifiedInfo, locator);
         
         invokePostMethod(target, changes, typeName);
         
         return;
     }
 
+    private BindingPlan getBindingPlan(ActiveDescriptor<?> parent, Object target, BeanInfo beanInfo) {
+        ModificationInformation modInfo = typeInformation.get(beanInfo.getTypeName());
+        if (modInfo == null || beanInfo.getBean() == null) {
+            return new BindingPlan(parent);
+        }
+        
+        return modInfo.getBindingPlan(parent, target.getClass(), beanInfo.getBean().getClass());
+    }
+
     private void initialize(BeanDatabase database) {
         Set<Type> allTypes = database.getAllTypes();
         
@@ -495,6 +429,8 @@ public class ConfigurationListener implements BeanDatabaseUpdateListener {
                 new HashMap<Class<?>, Method>();
         private final HashMap<Class<?>, Method> postMethods =
                 new HashMap<Class<?>, Method>();
+        private final HashMap<Class<?>, HashMap<Class<?>, BindingPlan>> bindingPlans =
+                new HashMap<Class<?>, HashMap<Class<?>, BindingPlan>>();
         
         private Method getPreDynamicChangeMethod(Class<?> rawClass) {
             if (preMethods.containsKey(rawClass)) {
@@ -518,6 +454,22 @@ public class ConfigurationListener implements BeanDatabaseUpdateListener {
             return postModificationMethod;
         }
         
+        private BindingPlan getBindingPlan(ActiveDescriptor<?> parent, Class<?> serviceClass, Class<?> beanClass) {
+            HashMap<Class<?>, BindingPlan> byBeanClass = bindingPlans.get(serviceClass);
+            if (byBeanClass == null) {
+                byBeanClass = new HashMap<Class<?>, BindingPlan>();
+                bindingPlans.put(serviceClass, byBeanClass);
+            }
+            
+            BindingPlan retVal = byBeanClass.get(beanClass);
+            if (retVal == null) {
+                retVal = new BindingPlan(parent);
+                byBeanClass.put(beanClass, retVal);
+            }
+            
+            return retVal;
+        }
+        
         private Method getSpecialMethod(Class<?> rawClass, Class<? extends Annotation> anno) {
             Set<MethodWrapper> wrappers = helper.getAllMethods(rawClass);
             for (MethodWrapper wrapper : wrappers) {
@@ -536,6 +488,7 @@ public class ConfigurationListener implements BeanDatabaseUpdateListener {
             
             preMethods.clear();
             postMethods.clear();
+            bindingPlans.clear();
         }
         
     }
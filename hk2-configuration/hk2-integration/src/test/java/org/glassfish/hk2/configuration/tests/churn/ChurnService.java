@@ -0,0 +1,145 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.configuration.tests.churn;
+
+import java.util.Map;
+
+import org.glassfish.hk2.configuration.api.Configured;
+import org.glassfish.hk2.configuration.api.ConfiguredBy;
+import org.glassfish.hk2.configuration.api.Dynamicity;
+import org.jvnet.hk2.annotations.Service;
+
+/**
+ * A service with several dynamic fields and methods, which
+ * counts how many times its methods are called
+ * 
+ * @author jwells
+ *
+ */
+@Service @ConfiguredBy(ChurnTest.CHURN_TYPE)
+public class ChurnService {
+    @Configured(dynamicity=Dynamicity.FULLY_DYNAMIC)
+    private String host;
+    
+    @Configured(dynamicity=Dynamicity.FULLY_DYNAMIC)
+    private String protocol;
+    
+    @Configured(dynamicity=Dynamicity.FULLY_DYNAMIC)
+    private String user;
+    
+    @Configured(dynamicity=Dynamicity.FULLY_DYNAMIC)
+    private String group;
+    
+    private String address;
+    private String port;
+    private String timeout;
+    private Map<String, Object> bean;
+    
+    private int addressCalls;
+    private int timeoutCalls;
+    private int beanCalls;
+    
+    @SuppressWarnings("unused")
+    private synchronized void setAddress(
+            @Configured(value=ChurnTest.ADDRESS_KEY, dynamicity=Dynamicity.FULLY_DYNAMIC) String address,
+            @Configured(value=ChurnTest.PORT_KEY, dynamicity=Dynamicity.FULLY_DYNAMIC) String port) {
+        this.address = address;
+        this.port = port;
+        addressCalls++;
+    }
+    
+    @SuppressWarnings("unused")
+    private synchronized void setTimeout(
+            @Configured(value=ChurnTest.TIMEOUT_KEY, dynamicity=Dynamicity.FULLY_DYNAMIC) String timeout) {
+        this.timeout = timeout;
+        timeoutCalls++;
+    }
+    
+    @SuppressWarnings("unused")
+    private synchronized void setBean(
+            @Configured(value=Configured.BEAN_KEY, dynamicity=Dynamicity.FULLY_DYNAMIC) Map<String, Object> bean) {
+        this.bean = bean;
+        beanCalls++;
+    }
+    
+    public synchronized String getHost() {
+        return host;
+    }
+    
+    public synchronized String getProtocol() {
+        return protocol;
+    }
+    
+    public synchronized String getUser() {
+        return user;
+    }
+    
+    public synchronized String getGroup() {
+        return group;
+    }
+    
+    public synchronized String getAddress() {
+        return address;
+    }
+    
+    public synchronized String getPort() {
+        return port;
+    }
+    
+    public synchronized String getTimeout() {
+        return timeout;
+    }
+    
+    public synchronized int getAddressCalls() {
+        return addressCalls;
+    }
+    
+    public synchronized int getTimeoutCalls() {
+        return timeoutCalls;
+    }
+    
+    public synchronized Map<String, Object> getBean() {
+        return bean;
+    }
+    
+    public synchronized int getBeanCalls() {
+        return beanCalls;
+    }
+}
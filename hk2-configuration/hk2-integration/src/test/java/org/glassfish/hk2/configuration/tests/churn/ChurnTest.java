@@ -0,0 +1,226 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.configuration.tests.churn;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.glassfish.hk2.configuration.api.ConfigurationUtilities;
+import org.glassfish.hk2.configuration.hub.api.Hub;
+import org.glassfish.hk2.configuration.hub.api.WriteableBeanDatabase;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.jvnet.hk2.testing.junit.HK2Runner;
+
+/**
+ * Tests that changing a few properties of a bean only updates
+ * the fields and methods bound to those properties
+ * 
+ * @author jwells
+ *
+ */
+public class ChurnTest extends HK2Runner {
+    /* package */ final static String CHURN_TYPE = "ChurnType";
+    
+    /* package */ final static String ADDRESS_KEY = "address";
+    /* package */ final static String PORT_KEY = "port";
+    /* package */ final static String TIMEOUT_KEY = "timeout";
+    
+    private final static String HOST_KEY = "host";
+    private final static String PROTOCOL_KEY = "protocol";
+    private final static String USER_KEY = "user";
+    private final static String GROUP_KEY = "group";
+    
+    private final static String DEFAULT = "default";
+    
+    private final static int NUM_UPDATES = 2000;
+    
+    private Hub hub;
+    
+    @Before
+    public void before() {
+        super.before();
+        
+        ConfigurationUtilities.enableConfigurationSystem(testLocator);
+        
+        hub = testLocator.getService(Hub.class);
+    }
+    
+    private static Map<String, Object> createBean(String host, String address, String timeout) {
+        Map<String, Object> retVal = new HashMap<String, Object>();
+        
+        retVal.put(HOST_KEY, host);
+        retVal.put(PROTOCOL_KEY, "http");
+        retVal.put(USER_KEY, "alice");
+        retVal.put(GROUP_KEY, "staff");
+        retVal.put(ADDRESS_KEY, address);
+        retVal.put(PORT_KEY, "8080");
+        retVal.put(TIMEOUT_KEY, timeout);
+        
+        return retVal;
+    }
+    
+    private void setBean(Map<String, Object> bean) {
+        WriteableBeanDatabase wbd = hub.getWriteableDatabaseCopy();
+        
+        if (wbd.findOrAddWriteableType(CHURN_TYPE).getInstance(DEFAULT) == null) {
+            wbd.getWriteableType(CHURN_TYPE).addInstance(DEFAULT, bean);
+        }
+        else {
+            wbd.getWriteableType(CHURN_TYPE).modifyInstance(DEFAULT, bean);
+        }
+        
+        wbd.commit();
+    }
+    
+    private void removeType() {
+        WriteableBeanDatabase wbd = hub.getWriteableDatabaseCopy();
+        wbd.removeType(CHURN_TYPE);
+        wbd.commit();
+    }
+    
+    /**
+     * Tests that only the methods with a changed parameter are called
+     */
+    @Test
+    public void testOnlyChangedPropertiesAreApplied() {
+        setBean(createBean("host1", "address1", "10"));
+        
+        try {
+            ChurnService service = testLocator.getService(ChurnService.class);
+            Assert.assertNotNull(service);
+            
+            Assert.assertEquals("host1", service.getHost());
+            Assert.assertEquals("address1", service.getAddress());
+            Assert.assertEquals("10", service.getTimeout());
+            
+            int addressCalls = service.getAddressCalls();
+            int timeoutCalls = service.getTimeoutCalls();
+            
+            // Only a field
+            setBean(createBean("host2", "address1", "10"));
+            
+            Assert.assertEquals("host2", service.getHost());
+            Assert.assertEquals(addressCalls, service.getAddressCalls());
+            Assert.assertEquals(timeoutCalls, service.getTimeoutCalls());
+            
+            // One of two parameters of a method
+            setBean(createBean("host2", "address2", "10"));
+            
+            Assert.assertEquals("address2", service.getAddress());
+            Assert.assertEquals("8080", service.getPort());
+            Assert.assertEquals(addressCalls + 1, service.getAddressCalls());
+            Assert.assertEquals(timeoutCalls, service.getTimeoutCalls());
+            
+            // A field and the other method
+            setBean(createBean("host3", "address2", "20"));
+            
+            Assert.assertEquals("host3", service.getHost());
+            Assert.assertEquals("20", service.getTimeout());
+            Assert.assertEquals(addressCalls + 1, service.getAddressCalls());
+            Assert.assertEquals(timeoutCalls + 1, service.getTimeoutCalls());
+            
+            Assert.assertEquals("http", service.getProtocol());
+            Assert.assertEquals("alice", service.getUser());
+            Assert.assertEquals("staff", service.getGroup());
+        }
+        finally {
+            removeType();
+        }
+    }
+    
+    /**
+     * Tests that a method taking the whole bean is called with the new bean
+     * on every change, as no single property names it
+     */
+    @Test
+    public void testWholeBeanMethodCalledOnAnyChange() {
+        setBean(createBean("host1", "address1", "10"));
+        
+        try {
+            ChurnService service = testLocator.getService(ChurnService.class);
+            Assert.assertNotNull(service);
+            
+            Assert.assertEquals("host1", service.getBean().get(HOST_KEY));
+            int beanCalls = service.getBeanCalls();
+            
+            // Only a field
+            setBean(createBean("host2", "address1", "10"));
+            
+            Assert.assertEquals(beanCalls + 1, service.getBeanCalls());
+            Assert.assertEquals("host2", service.getBean().get(HOST_KEY));
+            
+            // A method parameter
+            setBean(createBean("host2", "address2", "10"));
+            
+            Assert.assertEquals(beanCalls + 2, service.getBeanCalls());
+            Assert.assertEquals("address2", service.getBean().get(ADDRESS_KEY));
+        }
+        finally {
+            removeType();
+        }
+    }
+    
+    /**
+     * Times many updates of a single property
+     */
+    @Test
+    public void benchmarkChurn() {
+        setBean(createBean("host", "address", "0"));
+        
+        try {
+            ChurnService service = testLocator.getService(ChurnService.class);
+            
+            long elapsed = System.nanoTime();
+            for (int lcv = 1; lcv <= NUM_UPDATES; lcv++) {
+                setBean(createBean("host", "address", Integer.toString(lcv)));
+            }
+            elapsed = System.nanoTime() - elapsed;
+            
+            Assert.assertEquals(Integer.toString(NUM_UPDATES), service.getTimeout());
+            
+            System.out.println(NUM_UPDATES + " single property updates took " + (elapsed / 1000000L) + " ms");
+        }
+        finally {
+            removeType();
+        }
+    }
+}
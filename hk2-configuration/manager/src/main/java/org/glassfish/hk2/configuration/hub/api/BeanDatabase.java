@@ -40,6 +40,7 @@
 package org.glassfish.hk2.configuration.hub.api;
 
 import java.io.PrintStream;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -77,6 +78,21 @@ public interface BeanDatabase {
      */
     public Instance getInstance(String type, String instanceKey);
     
+    /**
+     * Returns the instances of the type with the given name whose bean
+     * has the given value for the given indexed property
+     * 
+     * @param type The non-null name of the type to get the instances from
+     * @param propertyName The non-null name of an indexed property of the type
+     * @param value The value of the property to look for
+     * @return A read-only and possibly empty map of the matching instances,
+     * keyed by instance key.  Will return an empty map if the type does not exist
+     * @throws IllegalArgumentException if the type is not indexed by the given
+     * property
+     * @see WriteableType#addIndex(String)
+     */
+    public Map<String, Instance> getIndexedInstances(String type, String propertyName, Object value);
+    
     /**
      * Dumps the type and instance names to stderr
      */
@@ -40,6 +40,7 @@
 package org.glassfish.hk2.configuration.hub.api;
 
 import java.util.Map;
+import java.util.Set;
 
 /**
  * A type contains (possibly) multiple instances of
@@ -72,6 +73,28 @@ public interface Type {
      */
     public Instance getInstance(String key);
     
+    /**
+     * Returns the names of the properties this type is indexed by
+     * 
+     * @return A read-only and possibly empty set of the names of
+     * the indexed properties of this type
+     */
+    public Set<String> getIndexedProperties();
+    
+    /**
+     * Returns the instances of this type whose bean has the given
+     * value for the given indexed property.  Instances whose
+     * property is null are not indexed
+     * 
+     * @param propertyName The non-null name of an indexed property
+     * @param value The value of the property to look for
+     * @return A read-only and possibly empty map of the matching
+     * instances, keyed by instance key
+     * @throws IllegalArgumentException if the type is not indexed by
+     * the given property
+     */
+    public Map<String, Instance> getIndexedInstances(String propertyName, Object value);
+    
     /**
      * Gets information about this type.  Can be
      * used to describe the type in some useful way
@@ -87,5 +87,26 @@ public interface WriteableType extends Type {
      * determined by the system
      */
     public PropertyChangeEvent[] modifyInstance(String key, Object newBean, PropertyChangeEvent... changes);
+    
+    /**
+     * Indexes the instances of this type by the given property of their
+     * beans.  If the beans are maps they are considered to be bean-like
+     * maps.  The index is kept up to date as instances are added, removed
+     * and modified, and is part of the database once it is committed
+     * 
+     * @param propertyName The non-null name of the property to index
+     * @return true if the index was added, false if this type was
+     * already indexed by the given property
+     */
+    public boolean addIndex(String propertyName);
+    
+    /**
+     * Removes the index of the given property from this type
+     * 
+     * @param propertyName The non-null name of the indexed property
+     * @return true if the index was removed, false if this type was
+     * not indexed by the given property
+     */
+    public boolean removeIndex(String propertyName);
 
 }
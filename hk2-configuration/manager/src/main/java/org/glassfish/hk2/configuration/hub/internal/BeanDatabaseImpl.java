@@ -82,6 +82,7 @@ import java.io.PrintStream;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import org.glassfish.hk2.configuration.hub.api.BeanDatabase;
@@ -107,7 +108,9 @@ public class BeanDatabaseImpl implements BeanDatabase {
         this(revision);
         
         for (Type type : beanDatabase.getAllTypes()) {
-            types.put(type.getName(), new TypeImpl(type, ((WriteableTypeImpl) type).getHelper()));
+            WriteableTypeImpl writeableType = (WriteableTypeImpl) type;
+            
+            types.put(type.getName(), new TypeImpl(type, writeableType.getIndexMap(), writeableType.getHelper()));
         }
     }
 
@@ -130,6 +133,17 @@ public class BeanDatabaseImpl implements BeanDatabase {
         return t.getInstance(instanceKey);
     }
 
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.configuration.hub.api.BeanDatabase#getIndexedInstances(java.lang.String, java.lang.String, java.lang.Object)
+     */
+    @Override
+    public Map<String, Instance> getIndexedInstances(String type, String propertyName, Object value) {
+        Type t = getType(type);
+        if (t == null) return Collections.emptyMap();
+        
+        return t.getIndexedInstances(propertyName, value);
+    }
+
     /* (non-Javadoc)
      * @see org.glassfish.hk2.configuration.hub.api.BeanDatabase#getType(java.lang.String)
      */
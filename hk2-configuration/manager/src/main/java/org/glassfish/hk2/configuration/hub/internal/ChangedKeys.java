@@ -0,0 +1,129 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.configuration.hub.internal;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The types and instances touched by one or more commits to the Hub.
+ * Two sets of changes that do not touch the same keys can be applied
+ * in either order with the same result, which is what allows a
+ * writeable database to be rebased onto a newer current database
+ * 
+ * @author jwells
+ *
+ */
+/* package */ class ChangedKeys {
+    /** Types added, removed or with changed metadata or indexes */
+    private final Set<String> changedTypes = new HashSet<String>();
+    
+    /** The keys of the changed instances of each type */
+    private final Map<String, Set<String>> changedInstances = new HashMap<String, Set<String>>();
+    
+    /* package */ void addType(String typeName) {
+        changedTypes.add(typeName);
+    }
+    
+    /* package */ void addInstances(String typeName, Set<String> instanceKeys) {
+        if (instanceKeys.isEmpty()) return;
+        
+        Set<String> keys = changedInstances.get(typeName);
+        if (keys == null) {
+            keys = new HashSet<String>();
+            changedInstances.put(typeName, keys);
+        }
+        
+        keys.addAll(instanceKeys);
+    }
+    
+    /* package */ void addAll(ChangedKeys other) {
+        changedTypes.addAll(other.changedTypes);
+        
+        for (Map.Entry<String, Set<String>> entry : other.changedInstances.entrySet()) {
+            addInstances(entry.getKey(), entry.getValue());
+        }
+    }
+    
+    /* package */ boolean isTypeChanged(String typeName) {
+        return changedTypes.contains(typeName);
+    }
+    
+    private boolean isTypeTouched(String typeName) {
+        return changedTypes.contains(typeName) || changedInstances.containsKey(typeName);
+    }
+    
+    /**
+     * Tells whether or not these changes and the other changes touch
+     * any of the same keys.  A change to a type as a whole conflicts
+     * with any change to the same type
+     * 
+     * @param other The other set of changes
+     * @return true if the two sets of changes cannot be reordered
+     */
+    /* package */ boolean conflictsWith(ChangedKeys other) {
+        for (String changedType : changedTypes) {
+            if (other.isTypeTouched(changedType)) return true;
+        }
+        
+        for (String changedType : other.changedTypes) {
+            if (isTypeTouched(changedType)) return true;
+        }
+        
+        for (Map.Entry<String, Set<String>> entry : changedInstances.entrySet()) {
+            Set<String> otherKeys = other.changedInstances.get(entry.getKey());
+            if (otherKeys == null) continue;
+            
+            for (String key : entry.getValue()) {
+                if (otherKeys.contains(key)) return true;
+            }
+        }
+        
+        return false;
+    }
+    
+    @Override
+    public String toString() {
+        return "ChangedKeys(types=" + changedTypes + ",instances=" + changedInstances + "," +
+            System.identityHashCode(this) + ")";
+    }
+}
@@ -39,6 +39,8 @@
  */
 package org.glassfish.hk2.configuration.hub.internal;
 
+import java.security.AccessController;
+import java.security.PrivilegedAction;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
@@ -62,6 +64,15 @@ import org.jvnet.hk2.annotations.ContractsProvided;
 import org.jvnet.hk2.annotations.Service;
 
 /**
+ * The Hub.  If the org.glassfish.hk2.configuration.hub.optimistic property
+ * is true when the Hub is created then a writeable database whose current
+ * database has been changed since it was copied is rebased onto the new
+ * current database rather than failing, as long as the changes made
+ * since then touch none of the same types or instances.  In that mode
+ * the changes to each instance are coalesced before they are given to
+ * the listeners, and a commit waits for a two-phase commit on another
+ * thread to finish rather than failing
+ * 
  * @author jwells
  *
  */
@@ -71,11 +82,37 @@ import org.jvnet.hk2.annotations.Service;
 public class HubImpl implements Hub {
     private static final AtomicLong revisionCounter = new AtomicLong(1);
     
+    private final static String OPTIMISTIC_PROPERTY = "org.glassfish.hk2.configuration.hub.optimistic";
+    
+    /** The number of commits remembered for rebasing writeable databases */
+    private final static int MAX_HISTORY = 128;
+    
     private final Object lock = new Object();
     private BeanDatabaseImpl currentDatabase = new BeanDatabaseImpl(revisionCounter.getAndIncrement());
     
+    private final boolean optimistic;
+    
+    /** The keys changed by recent commits, oldest first.  Only kept if optimistic */
+    private final LinkedList<HistoryEntry> history = new LinkedList<HistoryEntry>();
+    private Thread transactionThread;
+    
     @Inject
     private IterableProvider<BeanDatabaseUpdateListener> listeners;
+    
+    public HubImpl() {
+        optimistic = AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
+
+            @Override
+            public Boolean run() {
+                return Boolean.parseBoolean(System.getProperty(OPTIMISTIC_PROPERTY, "false"));
+            }
+            
+        });
+    }
+    
+    /* package */ boolean isOptimistic() {
+        return optimistic;
+    }
 
     /* (non-Javadoc)
      * @see org.glassfish.hk2.configuration.hub.api.Hub#getCurrentDatabase()
@@ -101,6 +138,18 @@ public class HubImpl implements Hub {
     
     /* package */ LinkedList<BeanDatabaseUpdateListener> prepareCurrentDatabase(WriteableBeanDatabaseImpl writeableDatabase, Object commitMessage, List<Change> changes) {
         synchronized (lock) {
+            if (optimistic) {
+                while (inTransaction > 0 && !Thread.currentThread().equals(transactionThread)) {
+                    try {
+                        lock.wait();
+                    }
+                    catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("Interrupted while waiting for a transaction of this Hub to finish", ie);
+                    }
+                }
+            }
+            
             if (inTransaction > 0) {
                 throw new IllegalStateException("This Hub is already in a transaction");
             }
@@ -108,7 +157,7 @@ public class HubImpl implements Hub {
             long currentRevision = currentDatabase.getRevision();
             long writeRevision = writeableDatabase.getBaseRevision();
             
-            if (currentRevision != writeRevision) {
+            if (currentRevision != writeRevision && !rebase(writeableDatabase)) {
                 throw new IllegalStateException("commit was called on a WriteableDatabase but the current database has changed after that copy was made");
             }
             
@@ -136,6 +185,7 @@ public class HubImpl implements Hub {
             }
             
             inTransaction++;
+            transactionThread = Thread.currentThread();
             
             return completedListeners;
         }
@@ -152,10 +202,18 @@ public class HubImpl implements Hub {
             
             if (completed == null) completed = Collections.emptyList();
             
+            transactionThread = null;
+            lock.notifyAll();
+            
             // success!
             BeanDatabaseImpl oldDatabase = currentDatabase;
             currentDatabase = new BeanDatabaseImpl(revisionCounter.getAndIncrement(), writeableDatabase);
             
+            if (optimistic) {
+                history.addLast(new HistoryEntry(oldDatabase.getRevision(), writeableDatabase.getChangedKeys()));
+                if (history.size() > MAX_HISTORY) history.removeFirst();
+            }
+            
             MultiException commitError = null;
             for (BeanDatabaseUpdateListener completedListener : completed) {
                 try {
@@ -181,6 +239,9 @@ public class HubImpl implements Hub {
             inTransaction--;
             if (inTransaction < 0) inTransaction = 0;
             
+            transactionThread = null;
+            lock.notifyAll();
+            
             List<BeanDatabaseUpdateListener> completed = completedListeners;
             completedListeners = null;
             
@@ -205,8 +266,53 @@ public class HubImpl implements Hub {
         }
     }
     
+    /**
+     * Must be called with the lock held.  Rebases the writeable database
+     * onto the current database if optimistic commits are allowed and
+     * the changes made since it was copied do not conflict with its own
+     * 
+     * @param writeableDatabase The database being committed
+     * @return true if the database was rebased
+     */
+    private boolean rebase(WriteableBeanDatabaseImpl writeableDatabase) {
+        if (!optimistic) return false;
+        
+        long writeRevision = writeableDatabase.getBaseRevision();
+        
+        ChangedKeys sinceCopy = null;
+        for (HistoryEntry entry : history) {
+            if (sinceCopy != null) {
+                sinceCopy.addAll(entry.changedKeys);
+            }
+            else if (entry.fromRevision == writeRevision) {
+                sinceCopy = new ChangedKeys();
+                sinceCopy.addAll(entry.changedKeys);
+            }
+        }
+        
+        // Copied before the oldest remembered commit
+        if (sinceCopy == null) return false;
+        
+        ChangedKeys mine = writeableDatabase.getChangedKeys();
+        if (mine.conflictsWith(sinceCopy)) return false;
+        
+        writeableDatabase.rebase(currentDatabase, mine);
+        return true;
+    }
+    
     /* package */ void setCurrentDatabase(WriteableBeanDatabaseImpl writeableDatabase, Object commitMessage, List<Change> changes) {
         LinkedList<BeanDatabaseUpdateListener> completedListeners = prepareCurrentDatabase(writeableDatabase, commitMessage, changes);
         activateCurrentDatabase(writeableDatabase, commitMessage, changes, completedListeners);
     }
+    
+    private static class HistoryEntry {
+        /** The revision of the database this commit replaced */
+        private final long fromRevision;
+        private final ChangedKeys changedKeys;
+        
+        private HistoryEntry(long fromRevision, ChangedKeys changedKeys) {
+            this.fromRevision = fromRevision;
+            this.changedKeys = changedKeys;
+        }
+    }
 }
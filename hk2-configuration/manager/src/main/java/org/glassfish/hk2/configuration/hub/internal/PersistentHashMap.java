@@ -0,0 +1,524 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.configuration.hub.internal;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable map that shares structure with the map it was made from.
+ * It is a hash array mapped trie, so {@link #plus(Object, Object)} and
+ * {@link #minus(Object)} copy only the O(log32 n) nodes on the path to
+ * the changed key and leave the original map as it was.  This lets the
+ * Hub copy a type with many instances in constant time, and keeps every
+ * old revision of the database as a cheap snapshot
+ * <p>
+ * The Map methods that would modify the map throw UnsupportedOperationException.
+ * Null keys are not allowed
+ * 
+ * @author jwells
+ *
+ */
+public final class PersistentHashMap<K, V> extends AbstractMap<K, V> {
+    private final static int BITS = 5;
+    private final static int MASK = (1 << BITS) - 1;
+    
+    @SuppressWarnings("rawtypes")
+    private final static PersistentHashMap EMPTY = new PersistentHashMap<Object, Object>(null, 0);
+    
+    private final BitmapNode root;
+    private final int size;
+    
+    private Set<Map.Entry<K, V>> entrySet;
+    
+    private PersistentHashMap(BitmapNode root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+    
+    /**
+     * Returns the empty map
+     * 
+     * @return An empty map
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentHashMap<K, V> empty() {
+        return EMPTY;
+    }
+    
+    /**
+     * Returns a persistent map with the same contents as the given map
+     * 
+     * @param from The map to copy (may not be null)
+     * @return A persistent map with the same mappings as from
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentHashMap<K, V> copyOf(Map<? extends K, ? extends V> from) {
+        if (from instanceof PersistentHashMap) return (PersistentHashMap<K, V>) from;
+        
+        PersistentHashMap<K, V> retVal = empty();
+        for (Map.Entry<? extends K, ? extends V> entry : from.entrySet()) {
+            retVal = retVal.plus(entry.getKey(), entry.getValue());
+        }
+        
+        return retVal;
+    }
+    
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+    
+    /**
+     * Returns a map with the given mapping added to or replaced in this map.
+     * This map is not changed
+     * 
+     * @param key The non-null key
+     * @param value The value to associate with the key
+     * @return The new map, or this map if it already had exactly this mapping
+     */
+    @SuppressWarnings("unchecked")
+    public PersistentHashMap<K, V> plus(K key, V value) {
+        if (key == null) throw new IllegalArgumentException();
+        
+        Leaf leaf = new Leaf(hash(key), key, value);
+        
+        if (root == null) {
+            return new PersistentHashMap<K, V>(new BitmapNode(0).plus(leaf, 0), 1);
+        }
+        
+        Leaf old = root.find(key, leaf.hash, 0);
+        if (old != null && old.value == value) return this;
+        
+        return new PersistentHashMap<K, V>(root.plus(leaf, 0), (old == null) ? size + 1 : size);
+    }
+    
+    /**
+     * Returns a map without the given key.  This map is not changed
+     * 
+     * @param key The key to remove
+     * @return The new map, or this map if the key was not in this map
+     */
+    public PersistentHashMap<K, V> minus(Object key) {
+        if (key == null || root == null) return this;
+        
+        int hash = hash(key);
+        if (root.find(key, hash, 0) == null) return this;
+        
+        if (size == 1) return empty();
+        
+        Object newRoot = root.minus(key, hash, 0);
+        if (newRoot instanceof Leaf) {
+            newRoot = new BitmapNode(0).plus((Leaf) newRoot, 0);
+        }
+        
+        return new PersistentHashMap<K, V>((BitmapNode) newRoot, size - 1);
+    }
+    
+    @SuppressWarnings("unchecked")
+    @Override
+    public V get(Object key) {
+        if (key == null || root == null) return null;
+        
+        Leaf leaf = root.find(key, hash(key), 0);
+        return (leaf == null) ? null : (V) leaf.value;
+    }
+    
+    @Override
+    public boolean containsKey(Object key) {
+        if (key == null || root == null) return false;
+        
+        return root.find(key, hash(key), 0) != null;
+    }
+    
+    @Override
+    public int size() {
+        return size;
+    }
+    
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Map.Entry<K, V>>() {
+
+                @Override
+                public Iterator<Map.Entry<K, V>> iterator() {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+                
+            };
+        }
+        
+        return entrySet;
+    }
+    
+    /**
+     * A single mapping, stored directly in the slot of its node
+     */
+    private static class Leaf implements Map.Entry<Object, Object> {
+        private final int hash;
+        private final Object key;
+        private final Object value;
+        
+        private Leaf(int hash, Object key, Object value) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public Object getKey() {
+            return key;
+        }
+
+        @Override
+        public Object getValue() {
+            return value;
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            throw new UnsupportedOperationException();
+        }
+        
+        @Override
+        public int hashCode() {
+            return key.hashCode() ^ ((value == null) ? 0 : value.hashCode());
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) return false;
+            
+            Map.Entry<?, ?> other = (Map.Entry<?, ?>) o;
+            
+            return key.equals(other.getKey()) &&
+                    ((value == null) ? other.getValue() == null : value.equals(other.getValue()));
+        }
+        
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+    
+    /**
+     * A node whose slots are either Leafs or other nodes.  Which of the 32
+     * possible slots are present is kept in the bitmap
+     */
+    private static class BitmapNode {
+        private final int bitmap;
+        private final Object slots[];
+        
+        private BitmapNode(int bitmap, Object slots[]) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+        
+        private BitmapNode(int bitmap) {
+            this(bitmap, new Object[0]);
+        }
+        
+        private static int bit(int hash, int shift) {
+            return 1 << ((hash >>> shift) & MASK);
+        }
+        
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+        
+        private Leaf find(Object key, int hash, int shift) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) return null;
+            
+            Object slot = slots[index(bit)];
+            if (slot instanceof Leaf) {
+                Leaf leaf = (Leaf) slot;
+                return (leaf.hash == hash && leaf.key.equals(key)) ? leaf : null;
+            }
+            
+            if (slot instanceof CollisionNode) {
+                return ((CollisionNode) slot).find(key);
+            }
+            
+            return ((BitmapNode) slot).find(key, hash, shift + BITS);
+        }
+        
+        private BitmapNode plus(Leaf leaf, int shift) {
+            int bit = bit(leaf.hash, shift);
+            int index = index(bit);
+            
+            if ((bitmap & bit) == 0) {
+                Object newSlots[] = new Object[slots.length + 1];
+                System.arraycopy(slots, 0, newSlots, 0, index);
+                newSlots[index] = leaf;
+                System.arraycopy(slots, index, newSlots, index + 1, slots.length - index);
+                
+                return new BitmapNode(bitmap | bit, newSlots);
+            }
+            
+            Object slot = slots[index];
+            Object newSlot;
+            
+            if (slot instanceof Leaf) {
+                Leaf existing = (Leaf) slot;
+                
+                if (existing.hash == leaf.hash && existing.key.equals(leaf.key)) {
+                    newSlot = leaf;
+                }
+                else {
+                    newSlot = merge(existing, leaf, shift + BITS);
+                }
+            }
+            else if (slot instanceof CollisionNode) {
+                CollisionNode collision = (CollisionNode) slot;
+                
+                if (collision.hash == leaf.hash) {
+                    newSlot = collision.plus(leaf);
+                }
+                else {
+                    // Only the bits so far are shared, so push the collision down a level
+                    int nextShift = shift + BITS;
+                    newSlot = new BitmapNode(bit(collision.hash, nextShift), new Object[] { collision }).plus(leaf, nextShift);
+                }
+            }
+            else {
+                newSlot = ((BitmapNode) slot).plus(leaf, shift + BITS);
+            }
+            
+            Object newSlots[] = slots.clone();
+            newSlots[index] = newSlot;
+            
+            return new BitmapNode(bitmap, newSlots);
+        }
+        
+        private static Object merge(Leaf one, Leaf two, int shift) {
+            if (one.hash == two.hash || shift >= 32) {
+                return new CollisionNode(new Leaf[] { one, two });
+            }
+            
+            return new BitmapNode(0).plus(one, shift).plus(two, shift);
+        }
+        
+        /**
+         * Must only be called if the key is in this node
+         * 
+         * @return The new node, or a single Leaf if that is all that is left
+         */
+        private Object minus(Object key, int hash, int shift) {
+            int bit = bit(hash, shift);
+            int index = index(bit);
+            
+            Object slot = slots[index];
+            Object newSlot;
+            
+            if (slot instanceof Leaf) {
+                newSlot = null;
+            }
+            else if (slot instanceof CollisionNode) {
+                newSlot = ((CollisionNode) slot).minus(key);
+            }
+            else {
+                newSlot = ((BitmapNode) slot).minus(key, hash, shift + BITS);
+            }
+            
+            if (slots.length == 1) {
+                // Lets the parent hold the remaining Leaf directly, or drop this node
+                if (newSlot == null || newSlot instanceof Leaf) return newSlot;
+            }
+            
+            if (newSlot != null) {
+                Object newSlots[] = slots.clone();
+                newSlots[index] = newSlot;
+                
+                return new BitmapNode(bitmap, newSlots);
+            }
+            
+            if (slots.length == 2 && (slots[1 - index] instanceof Leaf)) {
+                return slots[1 - index];
+            }
+            
+            Object newSlots[] = new Object[slots.length - 1];
+            System.arraycopy(slots, 0, newSlots, 0, index);
+            System.arraycopy(slots, index + 1, newSlots, index, slots.length - index - 1);
+            
+            return new BitmapNode(bitmap & ~bit, newSlots);
+        }
+    }
+    
+    /**
+     * Holds the Leafs whose keys have the same hash
+     */
+    private static class CollisionNode {
+        private final int hash;
+        private final Leaf leaves[];
+        
+        private CollisionNode(Leaf leaves[]) {
+            this.hash = leaves[0].hash;
+            this.leaves = leaves;
+        }
+        
+        private Leaf find(Object key) {
+            for (Leaf leaf : leaves) {
+                if (leaf.key.equals(key)) return leaf;
+            }
+            
+            return null;
+        }
+        
+        /**
+         * Must only be called with a leaf that has the same hash as this node
+         */
+        private CollisionNode plus(Leaf leaf) {
+            for (int lcv = 0; lcv < leaves.length; lcv++) {
+                if (leaves[lcv].key.equals(leaf.key)) {
+                    Leaf newLeaves[] = leaves.clone();
+                    newLeaves[lcv] = leaf;
+                    
+                    return new CollisionNode(newLeaves);
+                }
+            }
+            
+            Leaf newLeaves[] = new Leaf[leaves.length + 1];
+            System.arraycopy(leaves, 0, newLeaves, 0, leaves.length);
+            newLeaves[leaves.length] = leaf;
+            
+            return new CollisionNode(newLeaves);
+        }
+        
+        /**
+         * Must only be called if the key is in this node
+         * 
+         * @return The new node, or a single Leaf if that is all that is left
+         */
+        private Object minus(Object key) {
+            if (leaves.length == 2) {
+                return leaves[0].key.equals(key) ? leaves[1] : leaves[0];
+            }
+            
+            Leaf newLeaves[] = new Leaf[leaves.length - 1];
+            int index = 0;
+            for (Leaf leaf : leaves) {
+                if (leaf.key.equals(key)) continue;
+                newLeaves[index++] = leaf;
+            }
+            
+            return new CollisionNode(newLeaves);
+        }
+    }
+    
+    /**
+     * Walks the trie depth first, keeping the path from the root on a stack
+     */
+    private class EntryIterator implements Iterator<Map.Entry<K, V>> {
+        private final Object stack[][] = new Object[8][];
+        private final int indexes[] = new int[8];
+        private int depth = -1;
+        private Leaf next;
+        
+        private EntryIterator() {
+            if (root != null) {
+                push(root.slots);
+                advance();
+            }
+        }
+        
+        private void push(Object slots[]) {
+            depth++;
+            stack[depth] = slots;
+            indexes[depth] = 0;
+        }
+        
+        private void advance() {
+            next = null;
+            
+            while (depth >= 0) {
+                if (indexes[depth] >= stack[depth].length) {
+                    stack[depth] = null;
+                    depth--;
+                    continue;
+                }
+                
+                Object slot = stack[depth][indexes[depth]++];
+                if (slot instanceof Leaf) {
+                    next = (Leaf) slot;
+                    return;
+                }
+                
+                if (slot instanceof CollisionNode) {
+                    push(((CollisionNode) slot).leaves);
+                }
+                else {
+                    push(((BitmapNode) slot).slots);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public Map.Entry<K, V> next() {
+            if (next == null) throw new NoSuchElementException();
+            
+            Leaf retVal = next;
+            advance();
+            
+            return (Map.Entry<K, V>) (Map.Entry<?, ?>) retVal;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
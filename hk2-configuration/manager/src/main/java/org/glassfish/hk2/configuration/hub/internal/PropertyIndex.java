@@ -0,0 +1,183 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.configuration.hub.internal;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+
+import org.glassfish.hk2.configuration.hub.api.Instance;
+import org.glassfish.hk2.utilities.reflection.BeanReflectionHelper;
+import org.glassfish.hk2.utilities.reflection.ClassReflectionHelper;
+import org.glassfish.hk2.utilities.reflection.MethodWrapper;
+
+/**
+ * An immutable index of the instances of a type by the value of one
+ * of the properties of their beans.  Like the instances of a type the
+ * index is kept in persistent maps, so adding or removing an instance
+ * copies only the path to that instance and every revision of the
+ * database keeps its own consistent version of the index
+ * <p>
+ * Instances whose property is null or missing are not indexed
+ * 
+ * @author jwells
+ *
+ */
+/* package */ final class PropertyIndex {
+    private final String propertyName;
+    private final PersistentHashMap<Object, PersistentHashMap<String, Instance>> byValue;
+    
+    private PropertyIndex(String propertyName, PersistentHashMap<Object, PersistentHashMap<String, Instance>> byValue) {
+        this.propertyName = propertyName;
+        this.byValue = byValue;
+    }
+    
+    /**
+     * Creates an index over the given instances
+     * 
+     * @param propertyName The non-null name of the property to index
+     * @param instances The instances to index
+     * @param helper Used to find the getter of the property in java beans
+     * @return An index of the given instances
+     */
+    /* package */ static PropertyIndex create(String propertyName, Map<String, Instance> instances, ClassReflectionHelper helper) {
+        PropertyIndex retVal = new PropertyIndex(propertyName,
+                PersistentHashMap.<Object, PersistentHashMap<String, Instance>>empty());
+        
+        for (Map.Entry<String, Instance> entry : instances.entrySet()) {
+            retVal = retVal.plus(entry.getKey(), entry.getValue(), helper);
+        }
+        
+        return retVal;
+    }
+    
+    /**
+     * Returns the value of the property of a bean.  If the bean is a Map
+     * then it is considered to be a bean-like map
+     * 
+     * @param propertyName The name of the property
+     * @param bean The non-null bean
+     * @param helper Used to find the getter of the property in java beans
+     * @return The value of the property, or null if the bean has no such property
+     */
+    @SuppressWarnings("unchecked")
+    /* package */ static Object getValue(String propertyName, Object bean, ClassReflectionHelper helper) {
+        if (bean instanceof Map) {
+            return ((Map<String, Object>) bean).get(propertyName);
+        }
+        
+        for (MethodWrapper wrapper : helper.getAllMethods(bean.getClass())) {
+            Method method = wrapper.getMethod();
+            
+            if (!propertyName.equals(BeanReflectionHelper.getBeanPropertyNameFromGetter(method))) continue;
+            
+            try {
+                return method.invoke(bean, new Object[0]);
+            }
+            catch (Throwable th) {
+                return null;
+            }
+        }
+        
+        return null;
+    }
+    
+    /* package */ String getPropertyName() {
+        return propertyName;
+    }
+    
+    /**
+     * Returns an index that also contains the given instance
+     * 
+     * @param key The key of the instance
+     * @param instance The instance to add
+     * @param helper Used to find the getter of the property in java beans
+     * @return The new index, which may be this index
+     */
+    /* package */ PropertyIndex plus(String key, Instance instance, ClassReflectionHelper helper) {
+        Object value = getValue(propertyName, instance.getBean(), helper);
+        if (value == null) return this;
+        
+        PersistentHashMap<String, Instance> matches = byValue.get(value);
+        if (matches == null) matches = PersistentHashMap.empty();
+        
+        return new PropertyIndex(propertyName, byValue.plus(value, matches.plus(key, instance)));
+    }
+    
+    /**
+     * Returns an index that no longer contains the given instance
+     * 
+     * @param key The key of the instance
+     * @param instance The instance to remove, as it was when it was added
+     * @param helper Used to find the getter of the property in java beans
+     * @return The new index, which may be this index
+     */
+    /* package */ PropertyIndex minus(String key, Instance instance, ClassReflectionHelper helper) {
+        Object value = getValue(propertyName, instance.getBean(), helper);
+        if (value == null) return this;
+        
+        PersistentHashMap<String, Instance> matches = byValue.get(value);
+        if (matches == null || !matches.containsKey(key)) return this;
+        
+        matches = matches.minus(key);
+        
+        return new PropertyIndex(propertyName,
+                matches.isEmpty() ? byValue.minus(value) : byValue.plus(value, matches));
+    }
+    
+    /**
+     * Returns the instances whose property has the given value
+     * 
+     * @param value The value to look for
+     * @return A read-only and possibly empty map from instance key to instance
+     */
+    /* package */ Map<String, Instance> get(Object value) {
+        if (value == null) return PersistentHashMap.empty();
+        
+        PersistentHashMap<String, Instance> matches = byValue.get(value);
+        if (matches == null) return PersistentHashMap.empty();
+        
+        return matches;
+    }
+    
+    @Override
+    public String toString() {
+        return "PropertyIndex(" + propertyName + "," + byValue.size() + "," + System.identityHashCode(this) + ")";
+    }
+}
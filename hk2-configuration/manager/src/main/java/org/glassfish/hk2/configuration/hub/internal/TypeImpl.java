@@ -41,6 +41,7 @@ package org.glassfish.hk2.configuration.hub.internal;
 
 import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
 
 import org.glassfish.hk2.configuration.hub.api.Instance;
 import org.glassfish.hk2.configuration.hub.api.Type;
@@ -52,13 +53,15 @@ import org.glassfish.hk2.utilities.reflection.ClassReflectionHelper;
  */
 public class TypeImpl implements Type {
     private final String name;
-    private final Map<String, Instance> instances;
+    private final PersistentHashMap<String, Instance> instances;
+    private final PersistentHashMap<String, PropertyIndex> indexes;
     private final ClassReflectionHelper helper;
     private Object metadata;
     
-    /* package */ TypeImpl(Type baseType, ClassReflectionHelper helper) {
+    /* package */ TypeImpl(Type baseType, PersistentHashMap<String, PropertyIndex> indexes, ClassReflectionHelper helper) {
         name = baseType.getName();
-        instances = Collections.unmodifiableMap(baseType.getInstances());
+        instances = PersistentHashMap.copyOf(baseType.getInstances());
+        this.indexes = indexes;
         this.helper = helper;
         this.metadata = baseType.getMetadata();
     }
@@ -87,6 +90,42 @@ public class TypeImpl implements Type {
         return instances.get(key);
     }
     
+    /**
+     * Returns the instances as a persistent map, which may be
+     * shared with any copy made of this type
+     * 
+     * @return The instances of this type
+     */
+    /* package */ PersistentHashMap<String, Instance> getInstanceMap() {
+        return instances;
+    }
+    
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.configuration.hub.api.Type#getIndexedProperties()
+     */
+    @Override
+    public Set<String> getIndexedProperties() {
+        return Collections.unmodifiableSet(indexes.keySet());
+    }
+    
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.configuration.hub.api.Type#getIndexedInstances(java.lang.String, java.lang.Object)
+     */
+    @Override
+    public Map<String, Instance> getIndexedInstances(String propertyName, Object value) {
+        return Utilities.getIndexedInstances(this, indexes, propertyName, value);
+    }
+    
+    /**
+     * Returns the indexes of this type, which may be shared
+     * with any copy made of this type
+     * 
+     * @return The indexes of this type by property name
+     */
+    /* package */ PersistentHashMap<String, PropertyIndex> getIndexMap() {
+        return indexes;
+    }
+    
     /* package */ ClassReflectionHelper getHelper() {
         return helper;
     }
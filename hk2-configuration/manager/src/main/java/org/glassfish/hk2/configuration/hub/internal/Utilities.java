@@ -39,12 +39,21 @@
  */
 package org.glassfish.hk2.configuration.hub.internal;
 
+import java.beans.PropertyChangeEvent;
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.glassfish.hk2.configuration.hub.api.BeanDatabase;
+import org.glassfish.hk2.configuration.hub.api.Change;
+import org.glassfish.hk2.configuration.hub.api.Instance;
 import org.glassfish.hk2.configuration.hub.api.Type;
 import org.glassfish.hk2.utilities.reflection.Pretty;
 
@@ -83,4 +92,162 @@ public class Utilities {
         }
     }
 
+    /**
+     * Looks up the instances of a type by the value of an indexed property
+     * 
+     * @param type The type being queried
+     * @param indexes The indexes of the type
+     * @param propertyName The non-null name of the indexed property
+     * @param value The value of the property to look for
+     * @return A read-only and possibly empty map of the matching instances
+     * @throws IllegalArgumentException if the type is not indexed by the property
+     */
+    /* package */ static Map<String, Instance> getIndexedInstances(Type type,
+            Map<String, PropertyIndex> indexes,
+            String propertyName,
+            Object value) {
+        if (propertyName == null) throw new IllegalArgumentException();
+        
+        PropertyIndex index = indexes.get(propertyName);
+        if (index == null) {
+            throw new IllegalArgumentException("The type " + type.getName() + " is not indexed by property " + propertyName);
+        }
+        
+        return index.get(value);
+    }
+    
+    /**
+     * Coalesces the changes made to each instance into a single change.
+     * An add followed by modifications becomes one add of the final
+     * instance, several modifications become one modification from the
+     * original instance, a modification followed by a remove becomes a
+     * remove of the original instance and an add followed by a remove
+     * disappears.  Type changes, and instances added again after being
+     * removed, are left as they are
+     * 
+     * @param changes The changes in the order they were made
+     * @return The coalesced changes, in the order of the first change of each instance
+     */
+    public static List<Change> coalesceChanges(List<Change> changes) {
+        ArrayList<Change> retVal = new ArrayList<Change>(changes.size());
+        HashMap<String, Map<String, Integer>> lastIndexes = new HashMap<String, Map<String, Integer>>();
+        boolean dropped = false;
+        
+        for (Change change : changes) {
+            String typeName = change.getChangeType().getName();
+            String instanceKey = change.getInstanceKey();
+            
+            if (instanceKey == null) {
+                if (Change.ChangeCategory.REMOVE_TYPE.equals(change.getChangeCategory())) {
+                    // An instance of a type added again later is a new instance
+                    lastIndexes.remove(typeName);
+                }
+                
+                retVal.add(change);
+                continue;
+            }
+            
+            Map<String, Integer> typeIndexes = lastIndexes.get(typeName);
+            if (typeIndexes == null) {
+                typeIndexes = new HashMap<String, Integer>();
+                lastIndexes.put(typeName, typeIndexes);
+            }
+            
+            Integer lastIndex = typeIndexes.get(instanceKey);
+            Change last = (lastIndex == null) ? null : retVal.get(lastIndex);
+            
+            Change coalesced = (last == null) ? change : coalesce(last, change);
+            if (coalesced == null) {
+                // Added and then removed
+                retVal.set(lastIndex, null);
+                typeIndexes.remove(instanceKey);
+                dropped = true;
+            }
+            else if (coalesced == change) {
+                typeIndexes.put(instanceKey, retVal.size());
+                retVal.add(change);
+            }
+            else {
+                retVal.set(lastIndex, coalesced);
+            }
+        }
+        
+        if (dropped) {
+            for (Iterator<Change> iterator = retVal.iterator(); iterator.hasNext();) {
+                if (iterator.next() == null) iterator.remove();
+            }
+        }
+        
+        return retVal;
+    }
+    
+    /**
+     * Combines two changes to the same instance
+     * 
+     * @return The combined change, null if the two cancel out or next
+     * if they cannot be combined
+     */
+    private static Change coalesce(Change last, Change next) {
+        Change.ChangeCategory lastCategory = last.getChangeCategory();
+        Change.ChangeCategory nextCategory = next.getChangeCategory();
+        
+        if (Change.ChangeCategory.ADD_INSTANCE.equals(lastCategory)) {
+            if (Change.ChangeCategory.MODIFY_INSTANCE.equals(nextCategory)) {
+                return new ChangeImpl(Change.ChangeCategory.ADD_INSTANCE,
+                        next.getChangeType(),
+                        next.getInstanceKey(),
+                        next.getInstanceValue(),
+                        null,
+                        null);
+            }
+            
+            if (Change.ChangeCategory.REMOVE_INSTANCE.equals(nextCategory)) {
+                return null;
+            }
+        }
+        else if (Change.ChangeCategory.MODIFY_INSTANCE.equals(lastCategory)) {
+            if (Change.ChangeCategory.MODIFY_INSTANCE.equals(nextCategory)) {
+                return new ChangeImpl(Change.ChangeCategory.MODIFY_INSTANCE,
+                        next.getChangeType(),
+                        next.getInstanceKey(),
+                        next.getInstanceValue(),
+                        last.getOriginalInstanceValue(),
+                        coalesceProperties(next.getInstanceValue().getBean(),
+                                last.getModifiedProperties(),
+                                next.getModifiedProperties()));
+            }
+            
+            if (Change.ChangeCategory.REMOVE_INSTANCE.equals(nextCategory)) {
+                return new ChangeImpl(Change.ChangeCategory.REMOVE_INSTANCE,
+                        next.getChangeType(),
+                        next.getInstanceKey(),
+                        last.getOriginalInstanceValue(),
+                        null,
+                        null);
+            }
+        }
+        
+        return next;
+    }
+    
+    private static List<PropertyChangeEvent> coalesceProperties(Object source,
+            List<PropertyChangeEvent> first,
+            List<PropertyChangeEvent> second) {
+        LinkedHashMap<String, PropertyChangeEvent> byName = new LinkedHashMap<String, PropertyChangeEvent>();
+        
+        for (PropertyChangeEvent event : first) {
+            byName.put(event.getPropertyName(), event);
+        }
+        
+        for (PropertyChangeEvent event : second) {
+            PropertyChangeEvent original = byName.get(event.getPropertyName());
+            Object oldValue = (original == null) ? event.getOldValue() : original.getOldValue();
+            
+            byName.put(event.getPropertyName(), new PropertyChangeEvent(source,
+                    event.getPropertyName(), oldValue, event.getNewValue()));
+        }
+        
+        return new ArrayList<PropertyChangeEvent>(byName.values());
+    }
+
 }
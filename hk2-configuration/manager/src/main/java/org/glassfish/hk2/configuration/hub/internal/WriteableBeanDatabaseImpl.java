@@ -43,7 +43,9 @@ import java.io.PrintStream;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -62,7 +64,7 @@ import org.glassfish.hk2.configuration.hub.api.WriteableType;
  *
  */
 public class WriteableBeanDatabaseImpl implements WriteableBeanDatabase {
-    private final long baseRevision;
+    private long baseRevision;
     private final HashMap<String, WriteableTypeImpl> types = new HashMap<String, WriteableTypeImpl>();
     private final HubImpl hub;
     private final TwoPhaseResourceImpl resource = new TwoPhaseResourceImpl();
@@ -71,6 +73,7 @@ public class WriteableBeanDatabaseImpl implements WriteableBeanDatabase {
     private final LinkedList<WriteableTypeImpl> removedTypes = new LinkedList<WriteableTypeImpl>();
     private boolean committed = false;
     private Object commitMessage = null;
+    private List<Change> listenerChanges;
     
     /* package */ WriteableBeanDatabaseImpl(HubImpl hub, BeanDatabaseImpl currentDatabase) {
         this.hub = hub;
@@ -117,6 +120,17 @@ public class WriteableBeanDatabaseImpl implements WriteableBeanDatabase {
         return t.getInstance(instanceKey);
     }
     
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.configuration.hub.api.BeanDatabase#getIndexedInstances(java.lang.String, java.lang.String, java.lang.Object)
+     */
+    @Override
+    public synchronized Map<String, Instance> getIndexedInstances(String type, String propertyName, Object value) {
+        Type t = getType(type);
+        if (t == null) return Collections.emptyMap();
+        
+        return t.getIndexedInstances(propertyName, value);
+    }
+    
     private void checkState() {
         if (committed) throw new IllegalStateException("This database has already been committed");
     }
@@ -221,7 +235,7 @@ public class WriteableBeanDatabaseImpl implements WriteableBeanDatabase {
         }
         
         // Outside of lock
-        hub.setCurrentDatabase(this, commitMessage, changes);
+        hub.setCurrentDatabase(this, commitMessage, getListenerChanges());
         
         for (WriteableTypeImpl removedType : removedTypes) {
             removedType.getHelper().dispose();
@@ -230,10 +244,88 @@ public class WriteableBeanDatabaseImpl implements WriteableBeanDatabase {
         removedTypes.clear();
     }
     
-    /* package */ long getBaseRevision() {
+    /* package */ synchronized long getBaseRevision() {
         return baseRevision;
     }
     
+    /**
+     * Returns the changes given to the listeners.  If the Hub allows
+     * optimistic commits the changes to each instance are coalesced
+     * 
+     * @return The changes to give to the listeners
+     */
+    private synchronized List<Change> getListenerChanges() {
+        if (listenerChanges == null) {
+            listenerChanges = hub.isOptimistic() ? Utilities.coalesceChanges(changes) : changes;
+        }
+        
+        return listenerChanges;
+    }
+    
+    /**
+     * Returns the keys touched by the changes in this database
+     * 
+     * @return The keys of all types and instances changed in this database
+     */
+    /* package */ synchronized ChangedKeys getChangedKeys() {
+        ChangedKeys retVal = new ChangedKeys();
+        
+        for (Change change : changes) {
+            if (Change.ChangeCategory.ADD_TYPE.equals(change.getChangeCategory()) ||
+                    Change.ChangeCategory.REMOVE_TYPE.equals(change.getChangeCategory())) {
+                retVal.addType(change.getChangeType().getName());
+            }
+        }
+        
+        for (WriteableTypeImpl type : types.values()) {
+            retVal.addInstances(type.getName(), type.getChangedKeys());
+            if (type.isMetadataChanged() || type.isIndexesChanged()) {
+                retVal.addType(type.getName());
+            }
+        }
+        
+        return retVal;
+    }
+    
+    /**
+     * Moves this database onto a newer current database.  The changes made
+     * to this database must not touch any of the keys changed between the
+     * revision this database was copied from and the given database
+     * 
+     * @param head The current database
+     * @param changedKeys The keys changed by this database
+     */
+    /* package */ synchronized void rebase(BeanDatabaseImpl head, ChangedKeys changedKeys) {
+        HashSet<String> headTypes = new HashSet<String>();
+        
+        for (Type headType : head.getAllTypes()) {
+            String typeName = headType.getName();
+            headTypes.add(typeName);
+            
+            // Added or removed by this database
+            if (changedKeys.isTypeChanged(typeName)) continue;
+            
+            WriteableTypeImpl mine = types.get(typeName);
+            if (mine == null) {
+                types.put(typeName, new WriteableTypeImpl(this, (TypeImpl) headType));
+            }
+            else {
+                mine.rebase((TypeImpl) headType);
+            }
+        }
+        
+        for (Iterator<String> iterator = types.keySet().iterator(); iterator.hasNext();) {
+            String typeName = iterator.next();
+            
+            if (!headTypes.contains(typeName) && !changedKeys.isTypeChanged(typeName)) {
+                // Removed from the current database
+                iterator.remove();
+            }
+        }
+        
+        baseRevision = head.getRevision();
+    }
+    
     /* package */ synchronized void addChange(Change change) {
         changes.add(change);
     }
@@ -308,7 +400,7 @@ public class WriteableBeanDatabaseImpl implements WriteableBeanDatabase {
             }
             
             // Outside of lock
-            completedListeners = hub.prepareCurrentDatabase(WriteableBeanDatabaseImpl.this, defaultCommit, changes);
+            completedListeners = hub.prepareCurrentDatabase(WriteableBeanDatabaseImpl.this, defaultCommit, getListenerChanges());
         }
 
         /* (non-Javadoc)
@@ -325,7 +417,7 @@ public class WriteableBeanDatabaseImpl implements WriteableBeanDatabase {
                 defaultCommit = commitMessage;
             }
             
-            hub.activateCurrentDatabase(WriteableBeanDatabaseImpl.this, defaultCommit, changes, completedListeners);
+            hub.activateCurrentDatabase(WriteableBeanDatabaseImpl.this, defaultCommit, getListenerChanges(), completedListeners);
             
             for (WriteableTypeImpl removedType : removedTypes) {
                 removedType.getHelper().dispose();
@@ -349,7 +441,7 @@ public class WriteableBeanDatabaseImpl implements WriteableBeanDatabase {
                 defaultCommit = commitMessage;
             }
             
-            hub.rollbackCurrentDatabase(WriteableBeanDatabaseImpl.this, defaultCommit, changes, completedListeners);
+            hub.rollbackCurrentDatabase(WriteableBeanDatabaseImpl.this, defaultCommit, getListenerChanges(), completedListeners);
             
             for (WriteableTypeImpl removedType : removedTypes) {
                 removedType.getHelper().dispose();
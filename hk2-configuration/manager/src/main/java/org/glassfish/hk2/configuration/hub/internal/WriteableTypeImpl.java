@@ -42,8 +42,9 @@ package org.glassfish.hk2.configuration.hub.internal;
 import java.beans.PropertyChangeEvent;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import org.glassfish.hk2.configuration.hub.api.Change;
 import org.glassfish.hk2.configuration.hub.api.Instance;
@@ -59,21 +60,30 @@ import org.glassfish.hk2.utilities.reflection.internal.ClassReflectionHelperImpl
 public class WriteableTypeImpl implements WriteableType {
     private final WriteableBeanDatabaseImpl parent;
     private final String name;
-    private final HashMap<String, Instance> beanMap = new HashMap<String, Instance>();
+    private PersistentHashMap<String, Instance> beanMap;
+    private PersistentHashMap<String, PropertyIndex> indexes;
     private final ClassReflectionHelper helper;
     private Object metadata;
     
+    /** The keys of the instances added, removed or modified in this type */
+    private final HashSet<String> changedKeys = new HashSet<String>();
+    private boolean metadataChanged = false;
+    private boolean indexesChanged = false;
+    
     /* package */ WriteableTypeImpl(WriteableBeanDatabaseImpl parent, TypeImpl mother) {
         this.parent = parent;
         this.name = mother.getName();
         this.metadata = mother.getMetadata();
-        beanMap.putAll(mother.getInstances());
+        beanMap = mother.getInstanceMap();
+        indexes = mother.getIndexMap();
         helper = mother.getHelper();
     }
     
     /* package */ WriteableTypeImpl(WriteableBeanDatabaseImpl parent, String name) {
         this.parent = parent;
         this.name = name;
+        beanMap = PersistentHashMap.empty();
+        indexes = PersistentHashMap.empty();
         helper = new ClassReflectionHelperImpl();
     }
 
@@ -90,7 +100,7 @@ public class WriteableTypeImpl implements WriteableType {
      */
     @Override
     public synchronized Map<String, Instance> getInstances() {
-        return Collections.unmodifiableMap(beanMap);
+        return beanMap;
     }
     
     /* (non-Javadoc)
@@ -118,6 +128,9 @@ public class WriteableTypeImpl implements WriteableType {
         
         InstanceImpl ii = new InstanceImpl(bean, metadata);
         
+        Instance replaced = beanMap.get(key);
+        if (replaced != null) unindex(key, replaced);
+        
         parent.addChange(new ChangeImpl(Change.ChangeCategory.ADD_INSTANCE,
                                    this,
                                    key,
@@ -125,7 +138,9 @@ public class WriteableTypeImpl implements WriteableType {
                                    null,
                                    null));
         
-        beanMap.put(key, ii);
+        beanMap = beanMap.plus(key, ii);
+        index(key, ii);
+        changedKeys.add(key);
         
         return ii;
     }
@@ -137,9 +152,13 @@ public class WriteableTypeImpl implements WriteableType {
     public synchronized Instance removeInstance(String key) {
         if (key == null) throw new IllegalArgumentException();
         
-        Instance removedValue = beanMap.remove(key);
+        Instance removedValue = beanMap.get(key);
         if (removedValue == null) return null;
         
+        beanMap = beanMap.minus(key);
+        unindex(key, removedValue);
+        changedKeys.add(key);
+        
         parent.addChange(new ChangeImpl(Change.ChangeCategory.REMOVE_INSTANCE,
                 this,
                 key,
@@ -169,7 +188,10 @@ public class WriteableTypeImpl implements WriteableType {
             propChanges = BeanReflectionHelper.getChangeEvents(helper, oldInstance.getBean(), newInstance.getBean());
         }
         
-        beanMap.put(key, newInstance);
+        beanMap = beanMap.plus(key, newInstance);
+        unindex(key, oldInstance);
+        index(key, newInstance);
+        changedKeys.add(key);
 
         ArrayList<PropertyChangeEvent> propChangesList = new ArrayList<PropertyChangeEvent>(propChanges.length);
         for (PropertyChangeEvent pce : propChanges) {
@@ -186,6 +208,66 @@ public class WriteableTypeImpl implements WriteableType {
         return propChanges;
     }
 
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.configuration.hub.api.WriteableType#addIndex(java.lang.String)
+     */
+    @Override
+    public synchronized boolean addIndex(String propertyName) {
+        if (propertyName == null) throw new IllegalArgumentException();
+        if (indexes.containsKey(propertyName)) return false;
+        
+        indexes = indexes.plus(propertyName, PropertyIndex.create(propertyName, beanMap, helper));
+        indexesChanged = true;
+        
+        return true;
+    }
+    
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.configuration.hub.api.WriteableType#removeIndex(java.lang.String)
+     */
+    @Override
+    public synchronized boolean removeIndex(String propertyName) {
+        if (propertyName == null) throw new IllegalArgumentException();
+        if (!indexes.containsKey(propertyName)) return false;
+        
+        indexes = indexes.minus(propertyName);
+        indexesChanged = true;
+        
+        return true;
+    }
+    
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.configuration.hub.api.Type#getIndexedProperties()
+     */
+    @Override
+    public synchronized Set<String> getIndexedProperties() {
+        return Collections.unmodifiableSet(indexes.keySet());
+    }
+    
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.configuration.hub.api.Type#getIndexedInstances(java.lang.String, java.lang.Object)
+     */
+    @Override
+    public synchronized Map<String, Instance> getIndexedInstances(String propertyName, Object value) {
+        return Utilities.getIndexedInstances(this, indexes, propertyName, value);
+    }
+    
+    private void index(String key, Instance instance) {
+        for (PropertyIndex index : indexes.values()) {
+            indexes = indexes.plus(index.getPropertyName(), index.plus(key, instance, helper));
+        }
+    }
+    
+    private void unindex(String key, Instance instance) {
+        for (PropertyIndex index : indexes.values()) {
+            indexes = indexes.plus(index.getPropertyName(), index.minus(key, instance, helper));
+        }
+    }
+    
+    /* package */ synchronized PersistentHashMap<String, PropertyIndex> getIndexMap() {
+        return indexes;
+    }
+
     ClassReflectionHelper getHelper() {
         return helper;
     }
@@ -204,6 +286,61 @@ public class WriteableTypeImpl implements WriteableType {
     @Override
     public synchronized void setMetadata(Object metadata) {
         this.metadata = metadata;
+        metadataChanged = true;
+    }
+    
+    /**
+     * Returns the keys of the instances that were changed in this type
+     * 
+     * @return The keys of the changed instances (not a copy)
+     */
+    /* package */ synchronized Set<String> getChangedKeys() {
+        return changedKeys;
+    }
+    
+    /* package */ synchronized boolean isMetadataChanged() {
+        return metadataChanged;
+    }
+    
+    /* package */ synchronized boolean isIndexesChanged() {
+        return indexesChanged;
+    }
+    
+    /**
+     * Moves this type onto a newer version of the type it was copied from.
+     * The instances changed in this type are applied to the instances of
+     * the newer version, which must not have changed those same instances
+     * 
+     * @param head The newer version of this type
+     */
+    /* package */ synchronized void rebase(TypeImpl head) {
+        PersistentHashMap<String, Instance> mine = beanMap;
+        
+        beanMap = head.getInstanceMap();
+        if (!indexesChanged) {
+            indexes = head.getIndexMap();
+        }
+        
+        for (String changedKey : changedKeys) {
+            Instance headInstance = beanMap.get(changedKey);
+            Instance instance = mine.get(changedKey);
+            
+            if (headInstance != null) {
+                unindex(changedKey, headInstance);
+            }
+            
+            if (instance == null) {
+                beanMap = beanMap.minus(changedKey);
+            }
+            else {
+                beanMap = beanMap.plus(changedKey, instance);
+                index(changedKey, instance);
+            }
+        }
+        
+        if (!metadataChanged) {
+            metadata = head.getMetadata();
+        }
     }
     
     @Override
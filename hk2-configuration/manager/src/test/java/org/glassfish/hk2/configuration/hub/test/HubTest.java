@@ -48,6 +48,7 @@ import java.util.Map;
 
 import org.glassfish.hk2.api.ActiveDescriptor;
 import org.glassfish.hk2.api.MultiException;
+import org.glassfish.hk2.configuration.hub.api.BeanDatabase;
 import org.glassfish.hk2.configuration.hub.api.Change;
 import org.glassfish.hk2.configuration.hub.api.CommitFailedException;
 import org.glassfish.hk2.configuration.hub.api.Hub;
@@ -80,6 +81,7 @@ public class HubTest extends HubTestBase {
     private final static String TYPE_TEN = "TypeTen";
     private final static String TYPE_ELEVEN = "TypeEleven";
     private final static String TYPE_TWELVE = "TypeTwelve";
+    private final static String TYPE_THIRTEEN = "TypeThirteen";
     
     private final static String NAME_PROPERTY = "name";
     private final static String OTHER_PROPERTY = "other";
@@ -1306,4 +1308,46 @@ public class HubTest extends HubTestBase {
         }
     }
 
+    /**
+     * Tests that an older database is not changed by later commits,
+     * even though the new databases share structure with it
+     */
+    @Test
+    public void testOldDatabaseIsASnapshot() {
+        addTypeAndInstance(TYPE_THIRTEEN, ALICE, new GenericJavaBean(ALICE, OTHER_PROPERTY_VALUE1));
+        
+        try {
+            BeanDatabase original = hub.getCurrentDatabase();
+            
+            WriteableBeanDatabase wbd = hub.getWriteableDatabaseCopy();
+            WriteableType wt = wbd.getWriteableType(TYPE_THIRTEEN);
+            
+            Map<String, Instance> beforeChanges = wt.getInstances();
+            
+            wt.addInstance(BOB, new GenericJavaBean(BOB, OTHER_PROPERTY_VALUE1));
+            wt.modifyInstance(ALICE, new GenericJavaBean(ALICE, OTHER_PROPERTY_VALUE2));
+            
+            // Neither the original nor a map taken before the changes see them
+            Assert.assertEquals(1, beforeChanges.size());
+            Assert.assertEquals(1, original.getType(TYPE_THIRTEEN).getInstances().size());
+            
+            wbd.commit();
+            
+            Type oldType = original.getType(TYPE_THIRTEEN);
+            Assert.assertEquals(1, oldType.getInstances().size());
+            Assert.assertNull(oldType.getInstance(BOB));
+            Assert.assertEquals(OTHER_PROPERTY_VALUE1,
+                    ((GenericJavaBean) oldType.getInstance(ALICE).getBean()).getOther());
+            
+            Type newType = hub.getCurrentDatabase().getType(TYPE_THIRTEEN);
+            Assert.assertEquals(2, newType.getInstances().size());
+            Assert.assertNotNull(newType.getInstance(BOB));
+            Assert.assertEquals(OTHER_PROPERTY_VALUE2,
+                    ((GenericJavaBean) newType.getInstance(ALICE).getBean()).getOther());
+        }
+        finally {
+            removeType(TYPE_THIRTEEN);
+        }
+    }
+
 }
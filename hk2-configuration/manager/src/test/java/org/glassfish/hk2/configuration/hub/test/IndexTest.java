@@ -0,0 +1,318 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.configuration.hub.test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.glassfish.hk2.api.ActiveDescriptor;
+import org.glassfish.hk2.api.MultiException;
+import org.glassfish.hk2.configuration.hub.api.BeanDatabase;
+import org.glassfish.hk2.configuration.hub.api.Instance;
+import org.glassfish.hk2.configuration.hub.api.Type;
+import org.glassfish.hk2.configuration.hub.api.WriteableBeanDatabase;
+import org.glassfish.hk2.configuration.hub.api.WriteableType;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the secondary indexes of types
+ * 
+ * @author jwells
+ *
+ */
+public class IndexTest extends HubTestBase {
+    private final static String TYPE_ONE = "IndexTypeOne";
+    private final static String TYPE_TWO = "IndexTypeTwo";
+    private final static String TYPE_THREE = "IndexTypeThree";
+    private final static String TYPE_FOUR = "IndexTypeFour";
+    private final static String TYPE_FIVE = "IndexTypeFive";
+    
+    private final static String NAME_PROPERTY = "name";
+    private final static String OTHER_PROPERTY = "other";
+    private final static String PORT_PROPERTY = "port";
+    
+    private final static String ALICE = "Alice";
+    private final static String BOB = "Bob";
+    private final static String CAROL = "Carol";
+    
+    private final static String VALUE1 = "value1";
+    private final static String VALUE2 = "value2";
+    
+    private final static int NUM_INSTANCES = 20000;
+    private final static int NUM_LOOKUPS = 1000;
+    
+    private static Map<String, Object> createBeanLikeMap(String name, int port) {
+        Map<String, Object> retVal = new HashMap<String, Object>();
+        
+        retVal.put(NAME_PROPERTY, name);
+        retVal.put(PORT_PROPERTY, port);
+        
+        return retVal;
+    }
+    
+    /**
+     * Tests that the index of java beans follows adds, modifies and removes
+     */
+    @Test
+    public void testJavaBeanIndex() {
+        WriteableBeanDatabase wbd = hub.getWriteableDatabaseCopy();
+        WriteableType wt = wbd.addType(TYPE_ONE);
+        
+        Assert.assertTrue(wt.addIndex(OTHER_PROPERTY));
+        Assert.assertFalse(wt.addIndex(OTHER_PROPERTY));
+        
+        wt.addInstance(ALICE, new GenericJavaBean(ALICE, VALUE1));
+        wt.addInstance(BOB, new GenericJavaBean(BOB, VALUE1));
+        wt.addInstance(CAROL, new GenericJavaBean(CAROL, VALUE2));
+        
+        Assert.assertEquals(2, wbd.getIndexedInstances(TYPE_ONE, OTHER_PROPERTY, VALUE1).size());
+        
+        wbd.commit();
+        
+        try {
+            BeanDatabase db = hub.getCurrentDatabase();
+            Assert.assertTrue(db.getType(TYPE_ONE).getIndexedProperties().contains(OTHER_PROPERTY));
+            
+            Map<String, Instance> value1 = db.getIndexedInstances(TYPE_ONE, OTHER_PROPERTY, VALUE1);
+            Assert.assertEquals(2, value1.size());
+            Assert.assertTrue(value1.containsKey(ALICE));
+            Assert.assertTrue(value1.containsKey(BOB));
+            
+            Map<String, Instance> value2 = db.getIndexedInstances(TYPE_ONE, OTHER_PROPERTY, VALUE2);
+            Assert.assertEquals(1, value2.size());
+            Assert.assertEquals(CAROL, ((GenericJavaBean) value2.get(CAROL).getBean()).getName());
+            
+            wbd = hub.getWriteableDatabaseCopy();
+            wt = wbd.getWriteableType(TYPE_ONE);
+            wt.modifyInstance(BOB, new GenericJavaBean(BOB, VALUE2));
+            wt.removeInstance(CAROL);
+            wbd.commit();
+            
+            BeanDatabase newDb = hub.getCurrentDatabase();
+            
+            value1 = newDb.getIndexedInstances(TYPE_ONE, OTHER_PROPERTY, VALUE1);
+            Assert.assertEquals(1, value1.size());
+            Assert.assertTrue(value1.containsKey(ALICE));
+            
+            value2 = newDb.getIndexedInstances(TYPE_ONE, OTHER_PROPERTY, VALUE2);
+            Assert.assertEquals(1, value2.size());
+            Assert.assertTrue(value2.containsKey(BOB));
+            
+            // The old database still sees its own version of the index
+            Assert.assertEquals(2, db.getIndexedInstances(TYPE_ONE, OTHER_PROPERTY, VALUE1).size());
+            Assert.assertEquals(1, db.getIndexedInstances(TYPE_ONE, OTHER_PROPERTY, VALUE2).size());
+        }
+        finally {
+            removeType(TYPE_ONE);
+        }
+    }
+    
+    /**
+     * Tests that an index added to a type that already has instances
+     * covers those instances, and that bean-like maps can be indexed
+     */
+    @Test
+    public void testIndexOfExistingBeanLikeMaps() {
+        WriteableBeanDatabase wbd = hub.getWriteableDatabaseCopy();
+        WriteableType wt = wbd.addType(TYPE_TWO);
+        
+        wt.addInstance(ALICE, createBeanLikeMap(ALICE, 8080));
+        wt.addInstance(BOB, createBeanLikeMap(BOB, 8080));
+        wt.addInstance(CAROL, createBeanLikeMap(CAROL, 8181));
+        wbd.commit();
+        
+        try {
+            try {
+                hub.getCurrentDatabase().getIndexedInstances(TYPE_TWO, PORT_PROPERTY, 8080);
+                Assert.fail("The type is not indexed by port");
+            }
+            catch (IllegalArgumentException iae) {
+                // expected
+            }
+            
+            wbd = hub.getWriteableDatabaseCopy();
+            wbd.getWriteableType(TYPE_TWO).addIndex(PORT_PROPERTY);
+            wbd.commit();
+            
+            Type type = hub.getCurrentDatabase().getType(TYPE_TWO);
+            
+            Assert.assertEquals(2, type.getIndexedInstances(PORT_PROPERTY, 8080).size());
+            Assert.assertEquals(1, type.getIndexedInstances(PORT_PROPERTY, 8181).size());
+            Assert.assertEquals(0, type.getIndexedInstances(PORT_PROPERTY, 9090).size());
+            
+            wbd = hub.getWriteableDatabaseCopy();
+            Assert.assertTrue(wbd.getWriteableType(TYPE_TWO).removeIndex(PORT_PROPERTY));
+            Assert.assertFalse(wbd.getWriteableType(TYPE_TWO).removeIndex(PORT_PROPERTY));
+            wbd.commit();
+            
+            Assert.assertTrue(hub.getCurrentDatabase().getType(TYPE_TWO).getIndexedProperties().isEmpty());
+        }
+        finally {
+            removeType(TYPE_TWO);
+        }
+    }
+    
+    /**
+     * Tests that changes to the index made by a writeable database
+     * that is never committed are not seen in the current database
+     */
+    @Test
+    public void testUncommittedChangesNotIndexed() {
+        WriteableBeanDatabase wbd = hub.getWriteableDatabaseCopy();
+        WriteableType wt = wbd.addType(TYPE_THREE);
+        wt.addIndex(OTHER_PROPERTY);
+        wt.addInstance(ALICE, new GenericJavaBean(ALICE, VALUE1));
+        wbd.commit();
+        
+        try {
+            wbd = hub.getWriteableDatabaseCopy();
+            wt = wbd.getWriteableType(TYPE_THREE);
+            wt.addInstance(BOB, new GenericJavaBean(BOB, VALUE1));
+            wt.modifyInstance(ALICE, new GenericJavaBean(ALICE, VALUE2));
+            wt.addIndex(NAME_PROPERTY);
+            
+            Assert.assertEquals(1, wbd.getIndexedInstances(TYPE_THREE, OTHER_PROPERTY, VALUE1).size());
+            Assert.assertTrue(wbd.getIndexedInstances(TYPE_THREE, OTHER_PROPERTY, VALUE1).containsKey(BOB));
+            
+            // wbd is abandoned
+            
+            Type type = hub.getCurrentDatabase().getType(TYPE_THREE);
+            Assert.assertEquals(1, type.getIndexedProperties().size());
+            
+            Map<String, Instance> value1 = type.getIndexedInstances(OTHER_PROPERTY, VALUE1);
+            Assert.assertEquals(1, value1.size());
+            Assert.assertTrue(value1.containsKey(ALICE));
+            Assert.assertEquals(0, type.getIndexedInstances(OTHER_PROPERTY, VALUE2).size());
+        }
+        finally {
+            removeType(TYPE_THREE);
+        }
+    }
+    
+    /**
+     * Tests that a commit that fails in prepare leaves the index as it was
+     */
+    @Test
+    public void testFailedCommitLeavesIndex() {
+        WriteableBeanDatabase wbd = hub.getWriteableDatabaseCopy();
+        WriteableType wt = wbd.addType(TYPE_FOUR);
+        wt.addIndex(OTHER_PROPERTY);
+        wt.addInstance(ALICE, new GenericJavaBean(ALICE, VALUE1));
+        wbd.commit();
+        
+        ActiveDescriptor<?> failer = ServiceLocatorUtilities.addOneConstant(testLocator, new PrepareFailListener());
+        
+        try {
+            wbd = hub.getWriteableDatabaseCopy();
+            wbd.getWriteableType(TYPE_FOUR).modifyInstance(ALICE, new GenericJavaBean(ALICE, VALUE2));
+            
+            try {
+                wbd.commit();
+                Assert.fail("Prepare threw exception, but commit succeeded");
+            }
+            catch (MultiException me) {
+                // expected
+            }
+        }
+        finally {
+            ServiceLocatorUtilities.removeOneDescriptor(testLocator, failer);
+        }
+        
+        try {
+            Type type = hub.getCurrentDatabase().getType(TYPE_FOUR);
+            
+            Assert.assertEquals(1, type.getIndexedInstances(OTHER_PROPERTY, VALUE1).size());
+            Assert.assertEquals(0, type.getIndexedInstances(OTHER_PROPERTY, VALUE2).size());
+        }
+        finally {
+            removeType(TYPE_FOUR);
+        }
+    }
+    
+    /**
+     * Compares looking instances up with an index to scanning the instances
+     */
+    @Test
+    public void benchmarkIndexedLookup() {
+        WriteableBeanDatabase wbd = hub.getWriteableDatabaseCopy();
+        WriteableType wt = wbd.addType(TYPE_FIVE);
+        wt.addIndex(OTHER_PROPERTY);
+        
+        for (int lcv = 0; lcv < NUM_INSTANCES; lcv++) {
+            String key = "Instance" + lcv;
+            wt.addInstance(key, new GenericJavaBean(key, "value" + (lcv % NUM_LOOKUPS)));
+        }
+        
+        wbd.commit();
+        
+        try {
+            Type type = hub.getCurrentDatabase().getType(TYPE_FIVE);
+            
+            long elapsed = System.nanoTime();
+            int scanned = 0;
+            for (int lcv = 0; lcv < NUM_LOOKUPS; lcv++) {
+                String value = "value" + lcv;
+                
+                for (Instance instance : type.getInstances().values()) {
+                    if (value.equals(((GenericJavaBean) instance.getBean()).getOther())) scanned++;
+                }
+            }
+            long scanTime = System.nanoTime() - elapsed;
+            
+            elapsed = System.nanoTime();
+            int indexed = 0;
+            for (int lcv = 0; lcv < NUM_LOOKUPS; lcv++) {
+                indexed += type.getIndexedInstances(OTHER_PROPERTY, "value" + lcv).size();
+            }
+            long indexTime = System.nanoTime() - elapsed;
+            
+            Assert.assertEquals(NUM_INSTANCES, scanned);
+            Assert.assertEquals(NUM_INSTANCES, indexed);
+            
+            System.out.println(NUM_LOOKUPS + " lookups in " + NUM_INSTANCES + " instances took " +
+                    (scanTime / 1000000L) + " ms scanning and " + (indexTime / 1000L) + " us with an index");
+        }
+        finally {
+            removeType(TYPE_FIVE);
+        }
+    }
+}
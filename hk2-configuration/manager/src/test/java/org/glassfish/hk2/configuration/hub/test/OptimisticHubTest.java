@@ -0,0 +1,419 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.configuration.hub.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.glassfish.hk2.api.ActiveDescriptor;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.configuration.hub.api.Change;
+import org.glassfish.hk2.configuration.hub.api.Hub;
+import org.glassfish.hk2.configuration.hub.api.ManagerUtilities;
+import org.glassfish.hk2.configuration.hub.api.Type;
+import org.glassfish.hk2.configuration.hub.api.WriteableBeanDatabase;
+import org.glassfish.hk2.configuration.hub.api.WriteableType;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the Hub with org.glassfish.hk2.configuration.hub.optimistic set
+ * 
+ * @author jwells
+ *
+ */
+public class OptimisticHubTest {
+    private final static String OPTIMISTIC_PROPERTY = "org.glassfish.hk2.configuration.hub.optimistic";
+    
+    private final static String TYPE_ONE = "TypeOne";
+    private final static String TYPE_TWO = "TypeTwo";
+    
+    private final static String ALICE = "Alice";
+    private final static String BOB = "Bob";
+    private final static String CAROL = "Carol";
+    
+    private final static String OTHER_PROPERTY = "other";
+    
+    private final static String VALUE1 = "value1";
+    private final static String VALUE2 = "value2";
+    private final static String VALUE3 = "value3";
+    
+    private final static int NUM_WRITERS = 8;
+    private final static int COMMITS_PER_WRITER = 200;
+    
+    /**
+     * The Hub is a singleton that reads the property when it is created,
+     * so it is looked up while the property is set
+     */
+    private static ServiceLocator createLocator(boolean optimistic) {
+        if (optimistic) {
+            System.setProperty(OPTIMISTIC_PROPERTY, "true");
+        }
+        try {
+            ServiceLocator locator = ServiceLocatorUtilities.createAndPopulateServiceLocator();
+            ManagerUtilities.enableConfigurationHub(locator);
+            
+            locator.getService(Hub.class);
+            
+            return locator;
+        }
+        finally {
+            System.clearProperty(OPTIMISTIC_PROPERTY);
+        }
+    }
+    
+    private static Hub createHub(boolean optimistic) {
+        return createLocator(optimistic).getService(Hub.class);
+    }
+    
+    private static void addInstance(Hub hub, String typeName, String key, String other) {
+        WriteableBeanDatabase wbd = hub.getWriteableDatabaseCopy();
+        wbd.findOrAddWriteableType(typeName).addInstance(key, new GenericJavaBean(key, other));
+        wbd.commit();
+    }
+    
+    private static String getOther(Hub hub, String typeName, String key) {
+        return ((GenericJavaBean) hub.getCurrentDatabase().getInstance(typeName, key).getBean()).getOther();
+    }
+    
+    /**
+     * Tests that two copies changing different types can both be committed
+     */
+    @Test
+    public void testDisjointTypesAreRebased() {
+        Hub hub = createHub(true);
+        addInstance(hub, TYPE_ONE, ALICE, VALUE1);
+        addInstance(hub, TYPE_TWO, BOB, VALUE1);
+        
+        WriteableBeanDatabase first = hub.getWriteableDatabaseCopy();
+        WriteableBeanDatabase second = hub.getWriteableDatabaseCopy();
+        
+        first.getWriteableType(TYPE_ONE).modifyInstance(ALICE, new GenericJavaBean(ALICE, VALUE2));
+        second.getWriteableType(TYPE_TWO).modifyInstance(BOB, new GenericJavaBean(BOB, VALUE3));
+        
+        first.commit();
+        second.commit();
+        
+        Assert.assertEquals(VALUE2, getOther(hub, TYPE_ONE, ALICE));
+        Assert.assertEquals(VALUE3, getOther(hub, TYPE_TWO, BOB));
+    }
+    
+    /**
+     * Tests that two copies changing different instances of the same
+     * type can both be committed
+     */
+    @Test
+    public void testDisjointInstancesAreRebased() {
+        Hub hub = createHub(true);
+        addInstance(hub, TYPE_ONE, ALICE, VALUE1);
+        
+        WriteableBeanDatabase first = hub.getWriteableDatabaseCopy();
+        WriteableBeanDatabase second = hub.getWriteableDatabaseCopy();
+        WriteableBeanDatabase third = hub.getWriteableDatabaseCopy();
+        
+        first.getWriteableType(TYPE_ONE).addInstance(BOB, new GenericJavaBean(BOB, VALUE1));
+        second.getWriteableType(TYPE_ONE).addInstance(CAROL, new GenericJavaBean(CAROL, VALUE2));
+        third.getWriteableType(TYPE_ONE).removeInstance(ALICE);
+        
+        first.commit();
+        second.commit();
+        third.commit();
+        
+        Type type = hub.getCurrentDatabase().getType(TYPE_ONE);
+        Assert.assertEquals(2, type.getInstances().size());
+        Assert.assertNull(type.getInstance(ALICE));
+        Assert.assertEquals(VALUE1, getOther(hub, TYPE_ONE, BOB));
+        Assert.assertEquals(VALUE2, getOther(hub, TYPE_ONE, CAROL));
+    }
+    
+    /**
+     * Tests that the indexes of a rebased type include the changes
+     * of both commits
+     */
+    @Test
+    public void testIndexesAreRebased() {
+        Hub hub = createHub(true);
+        
+        WriteableBeanDatabase wbd = hub.getWriteableDatabaseCopy();
+        WriteableType wt = wbd.addType(TYPE_ONE);
+        wt.addIndex(OTHER_PROPERTY);
+        wt.addInstance(ALICE, new GenericJavaBean(ALICE, VALUE1));
+        wt.addInstance(BOB, new GenericJavaBean(BOB, VALUE1));
+        wbd.commit();
+        
+        WriteableBeanDatabase first = hub.getWriteableDatabaseCopy();
+        WriteableBeanDatabase second = hub.getWriteableDatabaseCopy();
+        
+        first.getWriteableType(TYPE_ONE).modifyInstance(ALICE, new GenericJavaBean(ALICE, VALUE2));
+        second.getWriteableType(TYPE_ONE).modifyInstance(BOB, new GenericJavaBean(BOB, VALUE3));
+        second.getWriteableType(TYPE_ONE).addInstance(CAROL, new GenericJavaBean(CAROL, VALUE1));
+        
+        first.commit();
+        second.commit();
+        
+        Type type = hub.getCurrentDatabase().getType(TYPE_ONE);
+        
+        Assert.assertEquals(1, type.getIndexedInstances(OTHER_PROPERTY, VALUE1).size());
+        Assert.assertTrue(type.getIndexedInstances(OTHER_PROPERTY, VALUE1).containsKey(CAROL));
+        Assert.assertTrue(type.getIndexedInstances(OTHER_PROPERTY, VALUE2).containsKey(ALICE));
+        Assert.assertTrue(type.getIndexedInstances(OTHER_PROPERTY, VALUE3).containsKey(BOB));
+    }
+    
+    /**
+     * Tests that two copies changing the same instance cannot both be committed
+     */
+    @Test
+    public void testSameInstanceConflicts() {
+        Hub hub = createHub(true);
+        addInstance(hub, TYPE_ONE, ALICE, VALUE1);
+        
+        WriteableBeanDatabase first = hub.getWriteableDatabaseCopy();
+        WriteableBeanDatabase second = hub.getWriteableDatabaseCopy();
+        
+        first.getWriteableType(TYPE_ONE).modifyInstance(ALICE, new GenericJavaBean(ALICE, VALUE2));
+        second.getWriteableType(TYPE_ONE).modifyInstance(ALICE, new GenericJavaBean(ALICE, VALUE3));
+        
+        first.commit();
+        
+        try {
+            second.commit();
+            Assert.fail("The second commit changed the same instance and should have failed");
+        }
+        catch (IllegalStateException ise) {
+            // expected
+        }
+        
+        Assert.assertEquals(VALUE2, getOther(hub, TYPE_ONE, ALICE));
+    }
+    
+    /**
+     * Tests that removing a type conflicts with changing any of its instances
+     */
+    @Test
+    public void testTypeRemovalConflicts() {
+        Hub hub = createHub(true);
+        addInstance(hub, TYPE_ONE, ALICE, VALUE1);
+        
+        WriteableBeanDatabase first = hub.getWriteableDatabaseCopy();
+        WriteableBeanDatabase second = hub.getWriteableDatabaseCopy();
+        
+        first.removeType(TYPE_ONE);
+        second.getWriteableType(TYPE_ONE).addInstance(BOB, new GenericJavaBean(BOB, VALUE1));
+        
+        first.commit();
+        
+        try {
+            second.commit();
+            Assert.fail("The type was removed and so the second commit should have failed");
+        }
+        catch (IllegalStateException ise) {
+            // expected
+        }
+        
+        Assert.assertNull(hub.getCurrentDatabase().getType(TYPE_ONE));
+    }
+    
+    /**
+     * Tests that without the property a stale copy still fails
+     */
+    @Test
+    public void testNotOptimisticByDefault() {
+        Hub hub = createHub(false);
+        addInstance(hub, TYPE_ONE, ALICE, VALUE1);
+        
+        WriteableBeanDatabase first = hub.getWriteableDatabaseCopy();
+        WriteableBeanDatabase second = hub.getWriteableDatabaseCopy();
+        
+        first.findOrAddWriteableType(TYPE_ONE).addInstance(BOB, new GenericJavaBean(BOB, VALUE1));
+        second.findOrAddWriteableType(TYPE_TWO).addInstance(CAROL, new GenericJavaBean(CAROL, VALUE1));
+        
+        first.commit();
+        
+        try {
+            second.commit();
+            Assert.fail("The current database changed and so the second commit should have failed");
+        }
+        catch (IllegalStateException ise) {
+            // expected
+        }
+    }
+    
+    /**
+     * Tests that the listeners get one change per instance
+     */
+    @Test
+    public void testChangesAreCoalesced() {
+        ServiceLocator locator = createLocator(true);
+        Hub hub = locator.getService(Hub.class);
+        addInstance(hub, TYPE_ONE, ALICE, VALUE1);
+        
+        GenericBeanDatabaseUpdateListener listener = new GenericBeanDatabaseUpdateListener();
+        ActiveDescriptor<?> listenerDescriptor = ServiceLocatorUtilities.addOneConstant(locator, listener);
+        
+        try {
+            WriteableBeanDatabase wbd = hub.getWriteableDatabaseCopy();
+            WriteableType wt = wbd.getWriteableType(TYPE_ONE);
+            
+            wt.addInstance(BOB, new GenericJavaBean(BOB, VALUE1));
+            wt.modifyInstance(BOB, new GenericJavaBean(BOB, VALUE2));
+            
+            wt.modifyInstance(ALICE, new GenericJavaBean(ALICE, VALUE2));
+            wt.modifyInstance(ALICE, new GenericJavaBean(ALICE, VALUE3));
+            
+            wt.addInstance(CAROL, new GenericJavaBean(CAROL, VALUE1));
+            wt.removeInstance(CAROL);
+            
+            wbd.commit();
+            
+            List<Change> changes = listener.getLastSetOfChanges();
+            Assert.assertEquals(2, changes.size());
+            
+            Change bobChange = changes.get(0);
+            Assert.assertEquals(Change.ChangeCategory.ADD_INSTANCE, bobChange.getChangeCategory());
+            Assert.assertEquals(BOB, bobChange.getInstanceKey());
+            Assert.assertEquals(VALUE2, ((GenericJavaBean) bobChange.getInstanceValue().getBean()).getOther());
+            
+            Change aliceChange = changes.get(1);
+            Assert.assertEquals(Change.ChangeCategory.MODIFY_INSTANCE, aliceChange.getChangeCategory());
+            Assert.assertEquals(ALICE, aliceChange.getInstanceKey());
+            Assert.assertEquals(VALUE1, ((GenericJavaBean) aliceChange.getOriginalInstanceValue().getBean()).getOther());
+            Assert.assertEquals(VALUE3, ((GenericJavaBean) aliceChange.getInstanceValue().getBean()).getOther());
+            
+            Assert.assertEquals(1, aliceChange.getModifiedProperties().size());
+            Assert.assertEquals(VALUE1, aliceChange.getModifiedProperties().get(0).getOldValue());
+            Assert.assertEquals(VALUE3, aliceChange.getModifiedProperties().get(0).getNewValue());
+        }
+        finally {
+            ServiceLocatorUtilities.removeOneDescriptor(locator, listenerDescriptor);
+        }
+    }
+    
+    /**
+     * Runs writers that each commit to their own type at the same time
+     * 
+     * @return The number of commits that failed and had to be retried
+     */
+    private static int runWriters(final Hub hub) throws InterruptedException {
+        final AtomicInteger retries = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        
+        List<Thread> writers = new ArrayList<Thread>(NUM_WRITERS);
+        for (int lcv = 0; lcv < NUM_WRITERS; lcv++) {
+            final String typeName = "Writer" + lcv;
+            
+            Thread writer = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                    
+                    for (int commit = 0; commit < COMMITS_PER_WRITER; commit++) {
+                        String key = "Instance" + commit;
+                        
+                        while (true) {
+                            WriteableBeanDatabase wbd = hub.getWriteableDatabaseCopy();
+                            wbd.findOrAddWriteableType(typeName).addInstance(key, new GenericJavaBean(key, VALUE1));
+                            
+                            try {
+                                wbd.commit();
+                                break;
+                            }
+                            catch (IllegalStateException ise) {
+                                retries.incrementAndGet();
+                            }
+                        }
+                    }
+                }
+            };
+            
+            writers.add(writer);
+            writer.start();
+        }
+        
+        start.countDown();
+        
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        
+        for (int lcv = 0; lcv < NUM_WRITERS; lcv++) {
+            Assert.assertEquals(COMMITS_PER_WRITER,
+                    hub.getCurrentDatabase().getType("Writer" + lcv).getInstances().size());
+        }
+        
+        return retries.get();
+    }
+    
+    /**
+     * Compares concurrent writers to disjoint types with and without
+     * optimistic commits.  An optimistic writer can still need to retry
+     * if it was descheduled for longer than the history of the Hub
+     * 
+     * @throws InterruptedException
+     */
+    @Test
+    public void benchmarkConcurrentWriters() throws InterruptedException {
+        for (boolean optimistic : new boolean[] { false, true }) {
+            Hub hub = createHub(optimistic);
+            
+            // Each writer adds its type first, since adding a type conflicts with nothing else
+            for (int lcv = 0; lcv < NUM_WRITERS; lcv++) {
+                WriteableBeanDatabase wbd = hub.getWriteableDatabaseCopy();
+                wbd.addType("Writer" + lcv);
+                wbd.commit();
+            }
+            
+            long elapsed = System.nanoTime();
+            int retries = runWriters(hub);
+            elapsed = System.nanoTime() - elapsed;
+            
+            System.out.println(NUM_WRITERS + " writers made " + (NUM_WRITERS * COMMITS_PER_WRITER) +
+                    " commits in " + (elapsed / 1000000L) + " ms with " + retries + " retries" +
+                    (optimistic ? " (optimistic)" : ""));
+        }
+    }
+}
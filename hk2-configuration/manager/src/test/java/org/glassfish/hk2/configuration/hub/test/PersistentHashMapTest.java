@@ -0,0 +1,191 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.configuration.hub.test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.glassfish.hk2.configuration.hub.internal.PersistentHashMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the structurally shared map that backs the types of the Hub
+ * 
+ * @author jwells
+ *
+ */
+public class PersistentHashMapTest {
+    private final static int NUM_KEYS = 2000;
+    private final static int NUM_OPERATIONS = 20000;
+    
+    /**
+     * Has only a few distinct hash codes, so that most keys collide
+     */
+    private static class CollidingKey {
+        private final int value;
+        private final int spread;
+        
+        private CollidingKey(int value, int spread) {
+            this.value = value;
+            this.spread = spread;
+        }
+        
+        @Override
+        public int hashCode() {
+            return (value % 3) * spread;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof CollidingKey)) return false;
+            return value == ((CollidingKey) o).value;
+        }
+    }
+    
+    private static void checkSame(Map<Object, Integer> expected, PersistentHashMap<Object, Integer> actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        Assert.assertEquals(expected, actual);
+        Assert.assertEquals(expected.hashCode(), actual.hashCode());
+        
+        int count = 0;
+        for (Map.Entry<Object, Integer> entry : actual.entrySet()) {
+            Assert.assertEquals(expected.get(entry.getKey()), entry.getValue());
+            count++;
+        }
+        
+        Assert.assertEquals(expected.size(), count);
+    }
+    
+    private static void randomOperations(boolean colliding, int spread) {
+        Random random = new Random(13L);
+        
+        HashMap<Object, Integer> expected = new HashMap<Object, Integer>();
+        PersistentHashMap<Object, Integer> actual = PersistentHashMap.empty();
+        
+        for (int lcv = 0; lcv < NUM_OPERATIONS; lcv++) {
+            int keyValue = random.nextInt(colliding ? 50 : NUM_KEYS);
+            Object key = colliding ? new CollidingKey(keyValue, spread) : "key" + keyValue;
+            
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                actual = actual.minus(key);
+            }
+            else {
+                expected.put(key, lcv);
+                actual = actual.plus(key, lcv);
+            }
+            
+            Assert.assertEquals(expected.size(), actual.size());
+            Assert.assertEquals(expected.get(key), actual.get(key));
+        }
+        
+        checkSame(expected, actual);
+        
+        for (Object key : new HashMap<Object, Integer>(expected).keySet()) {
+            expected.remove(key);
+            actual = actual.minus(key);
+        }
+        
+        checkSame(expected, actual);
+        Assert.assertTrue(actual.isEmpty());
+    }
+    
+    /**
+     * Tests many random adds and removes against a HashMap
+     */
+    @Test
+    public void testRandomOperations() {
+        randomOperations(false, 1);
+    }
+    
+    /**
+     * Tests many random adds and removes of keys with colliding hash codes
+     */
+    @Test
+    public void testRandomOperationsWithCollisions() {
+        randomOperations(true, 1);
+    }
+    
+    /**
+     * Tests keys whose different hash codes share the bits of the first level,
+     * so that colliding keys and other keys end up under the same slot
+     */
+    @Test
+    public void testRandomOperationsWithCollisionsSharingFirstLevel() {
+        randomOperations(true, 32);
+    }
+    
+    /**
+     * Tests that changing a map leaves the map it was made from alone
+     */
+    @Test
+    public void testOriginalIsUnchanged() {
+        PersistentHashMap<Object, Integer> original = PersistentHashMap.empty();
+        for (int lcv = 0; lcv < NUM_KEYS; lcv++) {
+            original = original.plus("key" + lcv, lcv);
+        }
+        
+        PersistentHashMap<Object, Integer> changed = original.plus("key0", -1).minus("key1").plus("newKey", 0);
+        
+        Assert.assertEquals(NUM_KEYS, original.size());
+        Assert.assertEquals(new Integer(0), original.get("key0"));
+        Assert.assertEquals(new Integer(1), original.get("key1"));
+        Assert.assertFalse(original.containsKey("newKey"));
+        
+        Assert.assertEquals(NUM_KEYS, changed.size());
+        Assert.assertEquals(new Integer(-1), changed.get("key0"));
+        Assert.assertFalse(changed.containsKey("key1"));
+        Assert.assertTrue(changed.containsKey("newKey"));
+        
+        Assert.assertSame(original, original.minus("notThere"));
+        Assert.assertSame(original, original.plus("key5", original.get("key5")));
+        
+        try {
+            original.put("key0", 7);
+            Assert.fail("A persistent map may not be modified");
+        }
+        catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+}
@@ -192,7 +192,10 @@ public class ExtrasUtilities {
      * This method will enable the default topic distribution service.
      * <p>
      * The default distribution service distributes messages on the
-     * same thread as the caller of {@link org.glassfish.hk2.api.messaging.Topic#publish(Object)}.
+     * same thread as the caller of {@link org.glassfish.hk2.api.messaging.Topic#publish(Object)},
+     * except for subscribers or topics qualified with
+     * {@link org.glassfish.hk2.extras.events.AsynchronousDelivery}, which are given
+     * their messages in order on another thread.
      * Objects to be distributed to will be
      * held with SoftReferences, and hence if they go out of scope they
      * will not be distributed to.  Only services created AFTER the topic
@@ -0,0 +1,81 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.extras.events;
+
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.ElementType.PARAMETER;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import javax.inject.Qualifier;
+
+/**
+ * Selects asynchronous delivery of messages when using the default
+ * topic distribution service.  It can be used in two ways:
+ * <UL>
+ * <LI>On a subscriber method (a method with a parameter annotated with
+ * {@link org.glassfish.hk2.api.messaging.SubscribeTo}), in which case
+ * only that subscriber will get its messages asynchronously</LI>
+ * <LI>As a qualifier on an injected {@link org.glassfish.hk2.api.messaging.Topic}
+ * (or added with {@link org.glassfish.hk2.api.messaging.Topic#qualifiedWith(java.lang.annotation.Annotation...)}),
+ * in which case every subscriber will get the messages published on that topic
+ * asynchronously.  Since this is a qualifier, subscribers that use
+ * {@link org.glassfish.hk2.api.Unqualified} will not receive messages from
+ * such a topic</LI>
+ * </UL>
+ * Messages are delivered with the {@link java.util.concurrent.Executor} and
+ * bounded queue described by the {@link AsynchronousDeliveryConfiguration}
+ * service, if there is one.  Each subscriber method has its own queue, and
+ * will receive messages in the order in which they were published
+ * 
+ * @author jwells
+ *
+ */
+@Qualifier
+@Target({ METHOD, FIELD, PARAMETER })
+@Retention(RUNTIME)
+@Documented
+public @interface AsynchronousDelivery {
+
+}
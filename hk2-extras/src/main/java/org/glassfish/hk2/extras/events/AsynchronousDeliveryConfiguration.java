@@ -0,0 +1,90 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.extras.events;
+
+import java.util.concurrent.Executor;
+
+import org.jvnet.hk2.annotations.Contract;
+
+/**
+ * An implementation of this service can be added to the locator in order
+ * to configure how the default topic distribution service delivers
+ * messages to subscribers that use {@link AsynchronousDelivery}.  The
+ * configuration is read the first time a message is delivered
+ * asynchronously to a subscriber method.  If there is no implementation
+ * of this service the defaults described on each method are used
+ * 
+ * @author jwells
+ */
+@Contract
+public interface AsynchronousDeliveryConfiguration {
+    /** The queue capacity used when there is no configuration */
+    public final static int DEFAULT_QUEUE_CAPACITY = 1024;
+    
+    /**
+     * The executor on which messages will be delivered.  Messages
+     * to a single subscriber method are never delivered concurrently,
+     * so the executor may use any number of threads.  If this returns
+     * null (or there is no configuration) a shared pool of daemon
+     * threads is used
+     * 
+     * @return The executor to deliver messages on, or null for the default
+     */
+    public Executor getExecutor();
+    
+    /**
+     * The maximum number of messages that can be waiting for a single
+     * subscriber method.  The default is {@link #DEFAULT_QUEUE_CAPACITY}
+     * 
+     * @return The maximum number of undelivered messages per subscriber
+     * method.  Must be greater than zero
+     */
+    public int getQueueCapacity();
+    
+    /**
+     * What to do when the queue of a subscriber method is full.  If this
+     * returns null (or there is no configuration) {@link BackpressurePolicy#BLOCK}
+     * is used
+     * 
+     * @return The policy to use when a queue is full
+     */
+    public BackpressurePolicy getBackpressurePolicy();
+
+}
@@ -0,0 +1,87 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.extras.events;
+
+import java.util.Map;
+
+import org.jvnet.hk2.annotations.Contract;
+
+/**
+ * This contract is implemented by the default topic distribution service
+ * and reports on the queues of the subscribers that use
+ * {@link AsynchronousDelivery}
+ * 
+ * @author jwells
+ */
+@Contract
+public interface AsynchronousDeliveryMetrics {
+    /**
+     * The total number of messages waiting to be delivered to all
+     * asynchronous subscribers
+     * 
+     * @return The number of undelivered messages
+     */
+    public int getQueueDepth();
+    
+    /**
+     * The number of messages waiting to be delivered, per subscriber method.
+     * The key is the name of the class declaring the method followed by
+     * the method itself
+     * 
+     * @return A snapshot of the undelivered messages per subscriber method.
+     * Will not return null
+     */
+    public Map<String, Integer> getQueueDepths();
+    
+    /**
+     * The number of messages thrown away because of {@link BackpressurePolicy#DROP_OLDEST}
+     * 
+     * @return The number of messages that were never delivered
+     */
+    public long getDroppedCount();
+    
+    /**
+     * The number of messages not delivered because of {@link BackpressurePolicy#REJECT}
+     * 
+     * @return The number of messages that were rejected
+     */
+    public long getRejectedCount();
+
+}
@@ -61,6 +61,12 @@ public interface DefaultTopicDistributionErrorService {
      * The {@link MultiException} will contain the errors from any
      * subscribers that threw exceptions.  This method will
      * not be called if no subscribers threw exceptions
+     * <p>
+     * Subscribers delivered to with {@link AsynchronousDelivery} are
+     * not part of that call.  Instead this method is called on the
+     * delivery thread once for each asynchronous delivery that fails,
+     * and on the publishing thread for a message that could not be
+     * queued because of the {@link BackpressurePolicy}
      * 
      * @param topic The topic that the message was sent to
      * @param message The message that was sent to the topic
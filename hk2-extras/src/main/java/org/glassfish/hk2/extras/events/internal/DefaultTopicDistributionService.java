@@ -44,15 +44,28 @@ import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
@@ -80,6 +93,10 @@ import org.glassfish.hk2.api.messaging.MessageReceiver;
 import org.glassfish.hk2.api.messaging.SubscribeTo;
 import org.glassfish.hk2.api.messaging.Topic;
 import org.glassfish.hk2.api.messaging.TopicDistributionService;
+import org.glassfish.hk2.extras.events.AsynchronousDelivery;
+import org.glassfish.hk2.extras.events.AsynchronousDeliveryConfiguration;
+import org.glassfish.hk2.extras.events.AsynchronousDeliveryMetrics;
+import org.glassfish.hk2.extras.events.BackpressurePolicy;
 import org.glassfish.hk2.extras.events.DefaultTopicDistributionErrorService;
 import org.glassfish.hk2.utilities.InjecteeImpl;
 import org.glassfish.hk2.utilities.MethodParameterImpl;
@@ -89,6 +106,7 @@ import org.glassfish.hk2.utilities.reflection.Pretty;
 import org.glassfish.hk2.utilities.reflection.ReflectionHelper;
 import org.glassfish.hk2.utilities.reflection.TypeChecker;
 import org.glassfish.hk2.utilities.reflection.internal.ClassReflectionHelperImpl;
+import org.glassfish.hk2.utilities.reflection.internal.SharedClassReflectionHelperImpl;
 import org.jvnet.hk2.annotations.ContractsProvided;
 import org.jvnet.hk2.annotations.Optional;
 
@@ -99,9 +117,11 @@ import org.jvnet.hk2.annotations.Optional;
  */
 @Singleton
 @Named(TopicDistributionService.HK2_DEFAULT_TOPIC_DISTRIBUTOR)
-@ContractsProvided({TopicDistributionService.class, InstanceLifecycleListener.class, DynamicConfigurationListener.class})
+@ContractsProvided({TopicDistributionService.class, InstanceLifecycleListener.class, DynamicConfigurationListener.class,
+    AsynchronousDeliveryMetrics.class})
 public class DefaultTopicDistributionService implements
-        TopicDistributionService, InstanceLifecycleListener, DynamicConfigurationListener {
+        TopicDistributionService, InstanceLifecycleListener, DynamicConfigurationListener,
+        AsynchronousDeliveryMetrics {
     private final static Filter SUBSCRIBER_FILTER = new Filter() {
 
         @Override
@@ -111,6 +131,19 @@ public class DefaultTopicDistributionService implements
         
     };
     
+    private final static ThreadFactory THREAD_FACTORY = new AsynchronousDeliveryThreadFactory();
+    
+    private final static Executor DEFAULT_EXECUTOR = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+            60L, TimeUnit.SECONDS,
+            new SynchronousQueue<Runnable>(true),
+            THREAD_FACTORY);
+    
+    /** The most messages a mailbox delivers before giving its thread back to the executor */
+    private final static int MAX_DELIVERIES_PER_RUN = 64;
+    
+    /** The same property the ServiceLocator uses to decide whether to share its reflection cache */
+    private final static String SHARED_REFLECTION_CACHE_PROPERTY = "org.jvnet.hk2.properties.sharedReflectionCache";
+    
     @Inject
     private ServiceLocator locator;
     
@@ -120,10 +153,24 @@ public class DefaultTopicDistributionService implements
     @Inject @Self
     private ActiveDescriptor<TopicDistributionService> selfDescriptor;
     
-    private final ClassReflectionHelper reflectionHelper = new ClassReflectionHelperImpl();
+    private final ClassReflectionHelper reflectionHelper = createReflectionHelper();
     private final HashMap<ActiveDescriptor<?>, Set<Class<?>>> descriptor2Classes = new HashMap<ActiveDescriptor<?>, Set<Class<?>>>();
     private final HashMap<ActivatorClassKey, List<SubscriberInfo>> class2Subscribers = new HashMap<ActivatorClassKey, List<SubscriberInfo>>();
     
+    /**
+     * The subscribers that match a given event type and set of topic qualifiers.  Entries
+     * are only added while holding the read lock, and the whole index is cleared while
+     * holding the write lock whenever the set of subscribers changes, so an entry is
+     * never stale
+     */
+    private final ConcurrentHashMap<Type, TypeDispatch> dispatchIndex =
+            new ConcurrentHashMap<Type, TypeDispatch>();
+    
+    private final ConcurrentHashMap<SubscriberInfo, SubscriberMailbox> mailboxes =
+            new ConcurrentHashMap<SubscriberInfo, SubscriberMailbox>();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    
     private final ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock();
     private final WriteLock wLock = readWriteLock.writeLock();
     private final ReadLock rLock = readWriteLock.readLock();
@@ -161,139 +208,178 @@ public class DefaultTopicDistributionService implements
         }
     }
     
-    private List<FireResults> handleDescriptorToClass(ActiveDescriptor<?> descriptor, Class<?> clazz, Type eventType, Topic<?> topic) {
-        LinkedList<FireResults> retVal = new LinkedList<FireResults>();
+    /**
+     * This service never disposes its helper, so it can use the shared
+     * one whenever the ServiceLocator does
+     */
+    private static ClassReflectionHelper createReflectionHelper() {
+        boolean shared = AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
+            @Override
+            public Boolean run() {
+                return Boolean.parseBoolean(
+                    System.getProperty(SHARED_REFLECTION_CACHE_PROPERTY, "false"));
+            }
+            
+        });
         
-        List<SubscriberInfo> subscribers = class2Subscribers.get(new ActivatorClassKey(descriptor, clazz));
-        if (subscribers == null) subscribers = Collections.emptyList();
+        return (shared) ? SharedClassReflectionHelperImpl.getInstance() : new ClassReflectionHelperImpl();
+    }
+    
+    private static boolean isMatch(SubscriberInfo subscriberInfo, Type eventType, Set<Annotation> topicQualifiers) {
+        Type subscriptionType = subscriberInfo.eventType;
         
-        for (SubscriberInfo subscriberInfo : subscribers) {    
-            Type subscriptionType = subscriberInfo.eventType;
+        if (!TypeChecker.isRawTypeSafe(subscriptionType, eventType)) {
+            // Not a type match
+            return false;
+        }
             
-            if (!TypeChecker.isRawTypeSafe(subscriptionType, eventType)) {
-                // Not a type match
-                continue;
+        if (!subscriberInfo.eventQualifiers.isEmpty()) {
+            if (!ReflectionHelper.annotationContainsAll(topicQualifiers, subscriberInfo.eventQualifiers)) {
+                // The qualifiers do not match
+                return false;
             }
-                
-            if (!subscriberInfo.eventQualifiers.isEmpty()) {
-                if (!ReflectionHelper.annotationContainsAll(topic.getTopicQualifiers(), subscriberInfo.eventQualifiers)) {
-                    // The qualifiers do not match
-                    continue;
-                }
+        }
+        
+        if ((subscriberInfo.unqualified != null) && !topicQualifiers.isEmpty()) {
+            if (subscriberInfo.unqualified.value().length == 0) {
+                // publisher must not have any qualifiers,
+                // but it DOES have some, so forget it!
+                return false;
             }
             
-            if ((subscriberInfo.unqualified != null) && !topic.getTopicQualifiers().isEmpty()) {
-                if (subscriberInfo.unqualified.value().length == 0) {
-                    // publisher must not have any qualifiers,
-                    // but it DOES have some, so forget it!
-                    continue;
-                }
+            Set<Class<? extends Annotation>> topicQualifierClasses = new HashSet<Class<? extends Annotation>>();
+            for (Annotation topicQualifier : topicQualifiers) {
+                topicQualifierClasses.add(topicQualifier.annotationType());
+            }
                 
-                Set<Class<? extends Annotation>> topicQualifierClasses = new HashSet<Class<? extends Annotation>>();
-                for (Annotation topicQualifier : topic.getTopicQualifiers()) {
-                    topicQualifierClasses.add(topicQualifier.annotationType());
-                }
-                    
-                boolean found = false;
-                for (Class<? extends Annotation> verbotenQualifier : subscriberInfo.unqualified.value()) {
-                    if (topicQualifierClasses.contains(verbotenQualifier)) {
-                        found = true;
-                        break;
-                    }
-                }
-                    
-                if (found) {
+            for (Class<? extends Annotation> verbotenQualifier : subscriberInfo.unqualified.value()) {
+                if (topicQualifierClasses.contains(verbotenQualifier)) {
                     // Found one of the qualifiers we are not allowed to have!
-                    continue;
+                    return false;
                 }
             }
-            
-            for (WeakReference<Object> targetReference : subscriberInfo.targets) {
-                Object target = targetReference.get();
-                retVal.add(new FireResults(subscriberInfo.method, subscriberInfo, target));
-            }    
         }
         
-        return retVal;
+        return true;
     }
-
-    /* (non-Javadoc)
-     * @see org.glassfish.hk2.api.messaging.TopicDistributionService#distributeMessage(org.glassfish.hk2.api.messaging.Topic, java.lang.Object)
+    
+    /**
+     * Returns the subscribers for the given topic, computing and indexing them if this
+     * is the first time this type and set of qualifiers has been seen
+     * 
+     * @param topic The topic being published to
+     * @return The subscribers for messages on this topic.  Will not return null
      */
-    @Override
-    public void distributeMessage(Topic<?> topic, Object message) {
-        
+    private SubscriberInfo[] getSubscribers(Topic<?> topic) {
         Type eventType = topic.getTopicType();
+        Set<Annotation> topicQualifiers = topic.getTopicQualifiers();
+        
+        TypeDispatch typeDispatch = dispatchIndex.get(eventType);
+        if (typeDispatch != null) {
+            SubscriberInfo[] retVal = typeDispatch.get(topicQualifiers);
+            if (retVal != null) return retVal;
+        }
         
-        LinkedList<FireResults> fireResults = new LinkedList<FireResults>();
         rLock.lock();
         try {
+            List<SubscriberInfo> matches = new ArrayList<SubscriberInfo>();
             for (Map.Entry<ActiveDescriptor<?>, Set<Class<?>>> d2cEntry : descriptor2Classes.entrySet()) {
                 for (Class<?> clazz : d2cEntry.getValue()) {
-                    fireResults.addAll(handleDescriptorToClass(d2cEntry.getKey(), clazz, eventType, topic));
+                    List<SubscriberInfo> subscribers = class2Subscribers.get(new ActivatorClassKey(d2cEntry.getKey(), clazz));
+                    if (subscribers == null) continue;
+                    
+                    for (SubscriberInfo subscriberInfo : subscribers) {
+                        if (isMatch(subscriberInfo, eventType, topicQualifiers)) {
+                            matches.add(subscriberInfo);
+                        }
+                    }
                 }
             }
+            
+            SubscriberInfo[] retVal = matches.toArray(new SubscriberInfo[matches.size()]);
+            
+            // Writers hold the write lock when clearing the index, so this cannot race with them
+            typeDispatch = dispatchIndex.get(eventType);
+            if (typeDispatch == null) {
+                typeDispatch = new TypeDispatch();
+                
+                TypeDispatch existing = dispatchIndex.putIfAbsent(eventType, typeDispatch);
+                if (existing != null) typeDispatch = existing;
+            }
+            
+            typeDispatch.put(topicQualifiers, retVal);
+            
+            return retVal;
         }
         finally {
             rLock.unlock();
         }
+    }
+    
+    /**
+     * Must be called with the write lock held whenever the set of
+     * subscribers changes
+     */
+    private void clearDispatchIndex() {
+        dispatchIndex.clear();
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.api.messaging.TopicDistributionService#distributeMessage(org.glassfish.hk2.api.messaging.Topic, java.lang.Object)
+     */
+    @Override
+    public void distributeMessage(Topic<?> topic, Object message) {
+        SubscriberInfo[] subscribers = getSubscribers(topic);
+        boolean asynchronousTopic = isAsynchronous(topic.getTopicQualifiers());
         
-        // Do everything else outside the lock
-        Set<SubscriberInfo> hasDeadReferences = new HashSet<SubscriberInfo>();
+        // Nothing here holds a lock, the targets are copy-on-write
+        Set<SubscriberInfo> hasDeadReferences = null;
         
         MultiException errors = null;
-        for (FireResults fireResult : fireResults) {
-            if (fireResult.target == null) {
-                hasDeadReferences.add(fireResult.subscriberInfo);
-            }
-            else {
-                try {
-                    fire(message,
-                           fireResult.subscriberMethod,
-                           fireResult.subscriberInfo,
-                           fireResult.target,
-                           locator);
+        for (SubscriberInfo subscriberInfo : subscribers) {
+            for (WeakReference<?> targetReference : subscriberInfo.targets) {
+                Object target = targetReference.get();
+                
+                if (target == null) {
+                    if (hasDeadReferences == null) hasDeadReferences = new HashSet<SubscriberInfo>();
+                    hasDeadReferences.add(subscriberInfo);
                 }
-                catch (Throwable th) {
-                    if (errors == null) {
-                        errors = new MultiException(th);
+                else {
+                    try {
+                        if (asynchronousTopic || subscriberInfo.asynchronous) {
+                            SubscriberMailbox mailbox = getMailbox(subscriberInfo);
+                            if (mailbox != null) mailbox.enqueue(topic, message, target);
+                        }
+                        else {
+                            fire(message,
+                                   subscriberInfo.method,
+                                   subscriberInfo,
+                                   target,
+                                   locator);
+                        }
                     }
-                    else {
-                        errors.addError(th);
+                    catch (Throwable th) {
+                        if (errors == null) {
+                            errors = new MultiException(th);
+                        }
+                        else {
+                            errors.addError(th);
+                        }
                     }
                 }
             }
         }
         
         if (errors != null) {
-            for (ServiceHandle<DefaultTopicDistributionErrorService> handle : errorHandlers.handleIterator()) {
-                try {
-                    handle.getService().subscribersFailed(topic, message, errors);
-                    
-                    if (handle.getActiveDescriptor().getScope().equals(PerLookup.class.getName())) {
-                        handle.destroy();
-                    }
-                }
-                catch (Throwable ignore) {
-                    // ignore it
-                }
-            }
+            reportErrors(topic, message, errors);
         }
         
-        if (!hasDeadReferences.isEmpty()) {
+        if (hasDeadReferences != null) {
             wLock.lock();
             try {
                 for (SubscriberInfo sInfo : hasDeadReferences) {
-                    Iterator<WeakReference<Object>> iterator = sInfo.targets.iterator();
-                
-                    while (iterator.hasNext()) {
-                        WeakReference<Object> ref = iterator.next();
-                        if (ref.get() == null) {
-                            iterator.remove();
-                        }
-                    }
+                    sInfo.removeTarget(null);
                 }
-            
             }
             finally {
                 wLock.unlock();
@@ -302,6 +388,122 @@ public class DefaultTopicDistributionService implements
         
     }
 
+    private void reportErrors(Topic<?> topic, Object message, MultiException errors) {
+        for (ServiceHandle<DefaultTopicDistributionErrorService> handle : errorHandlers.handleIterator()) {
+            try {
+                handle.getService().subscribersFailed(topic, message, errors);
+                
+                if (handle.getActiveDescriptor().getScope().equals(PerLookup.class.getName())) {
+                    handle.destroy();
+                }
+            }
+            catch (Throwable ignore) {
+                // ignore it
+            }
+        }
+    }
+    
+    private static boolean isAsynchronous(Set<Annotation> topicQualifiers) {
+        if (topicQualifiers.isEmpty()) return false;
+        
+        for (Annotation topicQualifier : topicQualifiers) {
+            if (AsynchronousDelivery.class.equals(topicQualifier.annotationType())) return true;
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Gets the mailbox for an asynchronous subscriber, creating it with the
+     * current {@link AsynchronousDeliveryConfiguration} if this is the first
+     * asynchronous message for the subscriber
+     * 
+     * @return The mailbox of the subscriber, or null if the subscriber
+     * has been removed
+     */
+    private SubscriberMailbox getMailbox(SubscriberInfo subscriberInfo) {
+        SubscriberMailbox retVal = mailboxes.get(subscriberInfo);
+        if (retVal != null) return retVal;
+        
+        Executor executor = null;
+        int capacity = AsynchronousDeliveryConfiguration.DEFAULT_QUEUE_CAPACITY;
+        BackpressurePolicy policy = null;
+        
+        AsynchronousDeliveryConfiguration configuration = locator.getService(AsynchronousDeliveryConfiguration.class);
+        if (configuration != null) {
+            executor = configuration.getExecutor();
+            capacity = configuration.getQueueCapacity();
+            policy = configuration.getBackpressurePolicy();
+        }
+        
+        if (executor == null) executor = DEFAULT_EXECUTOR;
+        if (capacity <= 0) capacity = AsynchronousDeliveryConfiguration.DEFAULT_QUEUE_CAPACITY;
+        if (policy == null) policy = BackpressurePolicy.BLOCK;
+        
+        retVal = new SubscriberMailbox(subscriberInfo, executor, capacity, policy);
+        
+        rLock.lock();
+        try {
+            // Subscribers are removed with the write lock held, so a removed subscriber never gets a new mailbox
+            if (subscriberInfo.removed) return null;
+            
+            SubscriberMailbox existing = mailboxes.putIfAbsent(subscriberInfo, retVal);
+            return (existing != null) ? existing : retVal ;
+        }
+        finally {
+            rLock.unlock();
+        }
+    }
+    
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.extras.events.AsynchronousDeliveryMetrics#getQueueDepth()
+     */
+    @Override
+    public int getQueueDepth() {
+        int retVal = 0;
+        for (SubscriberMailbox mailbox : mailboxes.values()) {
+            retVal += mailbox.queue.size();
+        }
+        
+        return retVal;
+    }
+    
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.extras.events.AsynchronousDeliveryMetrics#getQueueDepths()
+     */
+    @Override
+    public Map<String, Integer> getQueueDepths() {
+        Map<String, Integer> retVal = new TreeMap<String, Integer>();
+        
+        for (SubscriberMailbox mailbox : mailboxes.values()) {
+            Method method = mailbox.subscriberInfo.method;
+            String key = method.getDeclaringClass().getName() + "." + Pretty.method(method);
+            
+            Integer current = retVal.get(key);
+            int depth = mailbox.queue.size();
+            
+            retVal.put(key, (current == null) ? depth : (current + depth));
+        }
+        
+        return retVal;
+    }
+    
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.extras.events.AsynchronousDeliveryMetrics#getDroppedCount()
+     */
+    @Override
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+    
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.extras.events.AsynchronousDeliveryMetrics#getRejectedCount()
+     */
+    @Override
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
     @Override
     public Filter getFilter() {
         return SUBSCRIBER_FILTER;
@@ -323,7 +525,7 @@ public class DefaultTopicDistributionService implements
             
                 if (existingMethods != null) {
                     for (SubscriberInfo info : existingMethods) {
-                        info.targets.add(new WeakReference<Object>(target));
+                        info.addTarget(target);
                     }
                 
                     return;
@@ -343,6 +545,9 @@ public class DefaultTopicDistributionService implements
         existingMethods = new LinkedList<SubscriberInfo>();    
         class2Subscribers.put(new ActivatorClassKey(descriptor, targetClass), existingMethods);
         
+        // A new class may bring new subscribers
+        clearDispatchIndex();
+        
         Class<?> resolvedClass;
         if (target instanceof AOPProxyCtl) {
             // The proxy versions of the methods do NOT have the SubscribeTo
@@ -400,7 +605,7 @@ public class DefaultTopicDistributionService implements
             }
             
             SubscriberInfo si = generateSubscriberInfo(descriptor, methodWrapper.getMethod(), useMethod, foundPosition, paramAnnotations);
-            si.targets.add(new WeakReference<Object>(target));
+            si.addTarget(target);
             
             existingMethods.add(si);
         }
@@ -500,7 +705,8 @@ public class DefaultTopicDistributionService implements
             }
         }
         
-        return new SubscriberInfo(subscriber, eventType, eventQualifiers, eventUnqualified, injectees);
+        return new SubscriberInfo(subscriber, eventType, eventQualifiers, eventUnqualified, injectees,
+                subscriber.isAnnotationPresent(AsynchronousDelivery.class));
     }
     
     private void preDestruction(InstanceLifecycleEvent lifecycleEvent) {
@@ -514,18 +720,7 @@ public class DefaultTopicDistributionService implements
             List<SubscriberInfo> subscribers = class2Subscribers.get(new ActivatorClassKey(descriptor, clazz));
             
             for (SubscriberInfo subscriberInfo : subscribers) {
-                Iterator<WeakReference<Object>> targetIterator = subscriberInfo.targets.iterator();
-                
-                while (targetIterator.hasNext()) {
-                    WeakReference<Object> ref = targetIterator.next();
-                    Object subscriberTarget = ref.get();
-                    if (subscriberTarget == null) {
-                        targetIterator.remove();
-                    }
-                    else if (subscriberTarget == target) {
-                        targetIterator.remove();
-                    }
-                }
+                subscriberInfo.removeTarget(target);
             }
         }
         
@@ -566,13 +761,22 @@ public class DefaultTopicDistributionService implements
             HashSet<ActiveDescriptor<?>> removeMe = new HashSet<ActiveDescriptor<?>>(descriptor2Classes.keySet());
             removeMe.removeAll(allDescriptors);
             
+            if (!removeMe.isEmpty()) clearDispatchIndex();
+            
             for (ActiveDescriptor<?> parent : removeMe) {
                 Set<Class<?>> clazzes = descriptor2Classes.remove(parent);
                 
                 if (clazzes == null) continue;
                 
                 for (Class<?> clazz : clazzes) {
-                    class2Subscribers.remove(new ActivatorClassKey(parent, clazz));
+                    List<SubscriberInfo> subscribers = class2Subscribers.remove(new ActivatorClassKey(parent, clazz));
+                    if (subscribers == null) continue;
+                    
+                    for (SubscriberInfo subscriber : subscribers) {
+                        // Messages already queued are still delivered
+                        subscriber.removed = true;
+                        mailboxes.remove(subscriber);
+                    }
                 }
             }
         }
@@ -584,37 +788,225 @@ public class DefaultTopicDistributionService implements
     }
     
     private static class SubscriberInfo {
+        private final static WeakReference<?> NO_TARGETS[] = new WeakReference<?>[0];
+        
         private final Method method;
-        private final LinkedList<WeakReference<Object>> targets = new LinkedList<WeakReference<Object>>();
+        
+        /** Copy-on-write so that publishers can iterate without a lock.  Only modified with the write lock held */
+        private volatile WeakReference<?> targets[] = NO_TARGETS;
         private final Type eventType;
         private final Set<Annotation> eventQualifiers;
         private final Unqualified unqualified;
         private final InjecteeImpl otherInjectees[];  // There will be a null in the slot for the event
+        private final boolean asynchronous;
+        
+        /** Only modified with the write lock held, and only read with the read lock held */
+        private boolean removed;
         
         private SubscriberInfo(Method method,
                 Type eventType,
                 Set<Annotation> eventQualifiers,
                 Unqualified unqualified,
-                InjecteeImpl otherInjectees[]) {
+                InjecteeImpl otherInjectees[],
+                boolean asynchronous) {
             this.method = method;
             this.eventType = eventType;
             this.eventQualifiers = eventQualifiers;
             this.unqualified = unqualified;
             this.otherInjectees = otherInjectees;
+            this.asynchronous = asynchronous;
+        }
+        
+        private void addTarget(Object target) {
+            WeakReference<?> current[] = targets;
+            
+            WeakReference<?> newTargets[] = new WeakReference<?>[current.length + 1];
+            System.arraycopy(current, 0, newTargets, 0, current.length);
+            newTargets[current.length] = new WeakReference<Object>(target);
+            
+            targets = newTargets;
+        }
+        
+        /**
+         * Removes the given target along with any targets that have been
+         * collected
+         * 
+         * @param target The target to remove.  If null only collected
+         * targets are removed
+         */
+        private void removeTarget(Object target) {
+            WeakReference<?> current[] = targets;
+            
+            ArrayList<WeakReference<?>> keep = new ArrayList<WeakReference<?>>(current.length);
+            for (WeakReference<?> ref : current) {
+                Object subscriberTarget = ref.get();
+                if (subscriberTarget == null) continue;
+                if (subscriberTarget == target) continue;
+                
+                keep.add(ref);
+            }
+            
+            if (keep.size() == current.length) return;
+            
+            targets = keep.toArray(new WeakReference<?>[keep.size()]);
         }
     }
     
-    private static class FireResults {
-        private final Method subscriberMethod;
-        private final SubscriberInfo subscriberInfo;
+    /**
+     * A message waiting to be delivered to an asynchronous subscriber
+     */
+    private static class Delivery {
+        private final Topic<?> topic;
+        private final Object message;
         private final Object target;
         
-        private FireResults(Method subscriberMethod, SubscriberInfo subscriberInfo, Object target) {
-            this.subscriberMethod = subscriberMethod;
-            this.subscriberInfo = subscriberInfo;
+        private Delivery(Topic<?> topic, Object message, Object target) {
+            this.topic = topic;
+            this.message = message;
             this.target = target;
         }
+    }
+    
+    /**
+     * The bounded queue of messages for one asynchronous subscriber method.
+     * At most one run of this mailbox is on the executor at any time, which
+     * is what keeps the messages to a subscriber in order
+     * 
+     * @author jwells
+     *
+     */
+    private class SubscriberMailbox implements Runnable {
+        private final SubscriberInfo subscriberInfo;
+        private final Executor executor;
+        private final BackpressurePolicy policy;
+        private final BlockingQueue<Delivery> queue;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        
+        private SubscriberMailbox(SubscriberInfo subscriberInfo, Executor executor, int capacity, BackpressurePolicy policy) {
+            this.subscriberInfo = subscriberInfo;
+            this.executor = executor;
+            this.policy = policy;
+            this.queue = new ArrayBlockingQueue<Delivery>(capacity);
+        }
         
+        private void enqueue(Topic<?> topic, Object message, Object target) {
+            Delivery delivery = new Delivery(topic, message, target);
+            
+            switch (policy) {
+            case BLOCK:
+                try {
+                    queue.put(delivery);
+                }
+                catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new RejectedExecutionException("Interrupted while waiting to deliver a message to " +
+                        Pretty.method(subscriberInfo.method), ie);
+                }
+                break;
+            case DROP_OLDEST:
+                while (!queue.offer(delivery)) {
+                    if (queue.poll() != null) droppedCount.incrementAndGet();
+                }
+                break;
+            case REJECT:
+            default:
+                if (!queue.offer(delivery)) {
+                    rejectedCount.incrementAndGet();
+                    throw new RejectedExecutionException("The queue of subscriber " +
+                        Pretty.method(subscriberInfo.method) + " is full");
+                }
+                break;
+            }
+            
+            schedule();
+        }
+        
+        private void schedule() {
+            if (!scheduled.compareAndSet(false, true)) return;
+            
+            try {
+                executor.execute(this);
+            }
+            catch (RuntimeException re) {
+                scheduled.set(false);
+                throw re;
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (int lcv = 0; lcv < MAX_DELIVERIES_PER_RUN; lcv++) {
+                    Delivery delivery = queue.poll();
+                    if (delivery == null) break;
+                    
+                    try {
+                        fire(delivery.message,
+                                subscriberInfo.method,
+                                subscriberInfo,
+                                delivery.target,
+                                locator);
+                    }
+                    catch (Throwable th) {
+                        reportErrors(delivery.topic, delivery.message, new MultiException(th));
+                    }
+                }
+            }
+            finally {
+                scheduled.set(false);
+            }
+            
+            // Either there was more than one run's worth, or a message came in after the last poll
+            if (!queue.isEmpty()) {
+                try {
+                    schedule();
+                }
+                catch (RuntimeException re) {
+                    // The executor will not take us, leave the messages for the next publish
+                }
+            }
+        }
+    }
+    
+    private static class AsynchronousDeliveryThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger();
+        
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "AsynchronousDeliveryThread-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            
+            return thread;
+        }
+    }
+    
+    /**
+     * The indexed subscribers for one event type.  Most topics have no
+     * qualifiers, so that case has its own slot, which avoids hashing
+     * the qualifier set (which iterates over it) on every publish
+     * 
+     * @author jwells
+     *
+     */
+    private static class TypeDispatch {
+        private volatile SubscriberInfo unqualified[];
+        private final ConcurrentHashMap<Set<Annotation>, SubscriberInfo[]> qualified =
+                new ConcurrentHashMap<Set<Annotation>, SubscriberInfo[]>();
+        
+        private SubscriberInfo[] get(Set<Annotation> topicQualifiers) {
+            if (topicQualifiers.isEmpty()) return unqualified;
+            
+            return qualified.get(topicQualifiers);
+        }
+        
+        private void put(Set<Annotation> topicQualifiers, SubscriberInfo subscribers[]) {
+            if (topicQualifiers.isEmpty()) {
+                unqualified = subscribers;
+                return;
+            }
+            
+            qualified.put(new HashSet<Annotation>(topicQualifiers), subscribers);
+        }
     }
     
     /**
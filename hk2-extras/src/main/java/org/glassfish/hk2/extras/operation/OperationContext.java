@@ -40,12 +40,14 @@
 package org.glassfish.hk2.extras.operation;
 
 import java.lang.annotation.Annotation;
-import java.util.HashMap;
+import java.util.AbstractMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.glassfish.hk2.api.ActiveDescriptor;
 import org.glassfish.hk2.api.Context;
@@ -84,12 +86,17 @@ import org.jvnet.hk2.annotations.Contract;
  */
 @Contract
 public abstract class OperationContext<T extends Annotation> implements Context<T> {
-    private SingleOperationManager<T> manager;
-    private final HashMap<OperationHandleImpl<T>, LinkedHashMap<ActiveDescriptor<?>, Object>> operationMap =
-            new HashMap<OperationHandleImpl<T>, LinkedHashMap<ActiveDescriptor<?>, Object>>();
-    private final HashSet<ActiveDescriptor<?>> creating = new HashSet<ActiveDescriptor<?>>();
-    private final HashMap<Long, LinkedList<OperationHandleImpl<T>>> closingOperations = new HashMap<Long, LinkedList<OperationHandleImpl<T>>>();
-    private boolean shuttingDown = false;
+    /** Stands in for a service that was created as null */
+    private final static Object NULL_SERVICE = new Object();
+    
+    private volatile SingleOperationManager<T> manager;
+    private final ConcurrentHashMap<OperationHandleImpl<T>, OperationServices> operationMap =
+            new ConcurrentHashMap<OperationHandleImpl<T>, OperationServices>();
+    
+    /** Each stack is only used by the thread it belongs to */
+    private final ConcurrentHashMap<Long, LinkedList<OperationHandleImpl<T>>> closingOperations =
+            new ConcurrentHashMap<Long, LinkedList<OperationHandleImpl<T>>>();
+    private volatile boolean shuttingDown = false;
 
     /* (non-Javadoc)
      * @see org.glassfish.hk2.api.Context#findOrCreate(org.glassfish.hk2.api.ActiveDescriptor, org.glassfish.hk2.api.ServiceHandle)
@@ -98,15 +105,9 @@ public abstract class OperationContext<T extends Annotation> implements Context<
     @Override
     public <U> U findOrCreate(ActiveDescriptor<U> activeDescriptor,
             ServiceHandle<?> root) {
-        SingleOperationManager<T> localManager;
-        LinkedList<OperationHandleImpl<T>> closingOperationStack;
-        boolean closingOperation;
-        
-        synchronized (this) {
-            localManager = manager;
-            closingOperationStack = closingOperations.get(Thread.currentThread().getId());
-            closingOperation = (closingOperationStack != null && !closingOperationStack.isEmpty());
-        }
+        SingleOperationManager<T> localManager = manager;
+        LinkedList<OperationHandleImpl<T>> closingOperationStack = closingOperations.get(Thread.currentThread().getId());
+        boolean closingOperation = (closingOperationStack != null && !closingOperationStack.isEmpty());
         
         if (localManager == null) {
             throw new IllegalStateException("There is no manager for " +
@@ -115,87 +116,41 @@ public abstract class OperationContext<T extends Annotation> implements Context<
         
         OperationHandleImpl<T> operation = localManager.getCurrentOperationOnThisThread();
         if (operation == null) {
-            synchronized (this) {
-                if (!closingOperation) {
-                    throw new IllegalStateException("There is no current operation of type " +
-                            getScope().getName() + " on thread " + Thread.currentThread().getId());
-                }
-                
-                operation = closingOperationStack.get(0);
+            if (!closingOperation) {
+                throw new IllegalStateException("There is no current operation of type " +
+                        getScope().getName() + " on thread " + Thread.currentThread().getId());
             }
+            
+            operation = closingOperationStack.get(0);
         }
         
-        LinkedHashMap<ActiveDescriptor<?>, Object> serviceMap;
-        synchronized (this) {
-            serviceMap = operationMap.get(operation);
-            if (serviceMap == null) {
-                if (closingOperation || shuttingDown) {
-                    throw new IllegalStateException("The operation " + operation.getIdentifier() +
-                            " is closing.  A new instance of " + activeDescriptor +
-                            " cannot be created");
-                }
-                
-                serviceMap = new LinkedHashMap<ActiveDescriptor<?>, Object>();
-                operationMap.put(operation, serviceMap);
-            }
-            
-            Object retVal = serviceMap.get(activeDescriptor);
-            if (retVal != null) return (U) retVal;
-            
-            if (supportsNullCreation() && serviceMap.containsKey(activeDescriptor)) {
-                return null;
-            }
-            
+        OperationServices services = operationMap.get(operation);
+        if (services == null) {
             if (closingOperation || shuttingDown) {
                 throw new IllegalStateException("The operation " + operation.getIdentifier() +
                         " is closing.  A new instance of " + activeDescriptor +
-                        " cannot be created after searching existing descriptors");
-            }
-            
-            // retVal is null, and this is not an explicit null, so must actually do the creation
-            while (creating.contains(activeDescriptor)) {
-                try {
-                    this.wait();
-                }
-                catch (InterruptedException e) {
-                    throw new RuntimeException(e);
-                }
-            }
-            
-            retVal = serviceMap.get(activeDescriptor);
-            if (retVal != null) return (U) retVal;
-            
-            if (supportsNullCreation() && serviceMap.containsKey(activeDescriptor)) {
-                return null;
+                        " cannot be created");
             }
             
-            // Not in creating, and not created.  Create it ourselves
-            creating.add(activeDescriptor);
+            services = new OperationServices();
+            OperationServices existing = operationMap.putIfAbsent(operation, services);
+            if (existing != null) services = existing;
         }
         
-        Object retVal = null;
-        boolean success = false;
-        try {
-            retVal = activeDescriptor.create(root);
-            if (retVal == null && !supportsNullCreation()) {
-                throw new IllegalArgumentException("The operation for context " + getScope().getName() +
-                        " does not support null creation, but descriptor " + activeDescriptor + " returned null");
-            }
-            
-            success = true;
+        Object retVal = services.get(activeDescriptor);
+        if (retVal != null) return (U) retVal;
+        
+        if (supportsNullCreation() && services.containsKey(activeDescriptor)) {
+            return null;
         }
-        finally {
-            synchronized (this) {
-                if (success) {
-                    serviceMap.put(activeDescriptor, retVal);
-                }
-                
-                creating.remove(activeDescriptor);
-                this.notifyAll();
-            }
+        
+        if (closingOperation || shuttingDown) {
+            throw new IllegalStateException("The operation " + operation.getIdentifier() +
+                    " is closing.  A new instance of " + activeDescriptor +
+                    " cannot be created after searching existing descriptors");
         }
         
-        return (U) retVal;
+        return (U) services.create(activeDescriptor, root);
     }
 
     /* (non-Javadoc)
@@ -203,24 +158,16 @@ public abstract class OperationContext<T extends Annotation> implements Context<
      */
     @Override
     public boolean containsKey(ActiveDescriptor<?> descriptor) {
-        SingleOperationManager<T> localManager;
-        synchronized (this) {
-            localManager = manager;
-        }
+        SingleOperationManager<T> localManager = manager;
         if (localManager == null) return false;
         
         OperationHandleImpl<T> operation = localManager.getCurrentOperationOnThisThread();
         if (operation == null) return false;
         
-        synchronized (this) {
-            HashMap<ActiveDescriptor<?>, Object> serviceMap;
-            
-            serviceMap = operationMap.get(operation);
-            if (serviceMap == null) return false;
-            
-            return serviceMap.containsKey(descriptor);
-        }
+        OperationServices services = operationMap.get(operation);
+        if (services == null) return false;
         
+        return services.containsKey(descriptor);
     }
 
     /* (non-Javadoc)
@@ -229,46 +176,33 @@ public abstract class OperationContext<T extends Annotation> implements Context<
     @SuppressWarnings("unchecked")
     @Override
     public void destroyOne(ActiveDescriptor<?> descriptor) {
-        synchronized (this) {
-            for (HashMap<ActiveDescriptor<?>, Object> serviceMap : operationMap.values()) {
-                Object killMe = serviceMap.remove(descriptor);
-                if (killMe == null) continue;
-                
-                ((ActiveDescriptor<Object>) descriptor).dispose(killMe);
-            }
+        for (OperationServices services : operationMap.values()) {
+            Object killMe = services.remove(descriptor);
+            if (killMe == null) continue;
+            
+            ((ActiveDescriptor<Object>) descriptor).dispose(killMe);
         }
     }
     
     @SuppressWarnings("unchecked")
     public void closeOperation(OperationHandleImpl<T> operation) {
         long tid = Thread.currentThread().getId();
-        HashMap<ActiveDescriptor<?>, Object> serviceMap;
-        LinkedList<OperationHandleImpl<T>> stack;
         
-        synchronized (this) {
-            stack = closingOperations.get(tid);
-            if (stack == null) {
-                stack = new LinkedList<OperationHandleImpl<T>>();
-                closingOperations.put(tid, stack);
-            }
-            
-            stack.addFirst(operation);
-            
-            serviceMap = operationMap.get(operation);
+        LinkedList<OperationHandleImpl<T>> stack = closingOperations.get(tid);
+        if (stack == null) {
+            stack = new LinkedList<OperationHandleImpl<T>>();
+            closingOperations.put(tid, stack);
         }
         
+        stack.addFirst(operation);
+        
+        OperationServices services = operationMap.get(operation);
+        
         try {
-            // Must be done outside of the lock
+            if (services == null) return;
             
-            if (serviceMap == null) return;
-        
             // Reverses creation order
-            LinkedList<Map.Entry<ActiveDescriptor<?>, Object>> destructionList = new LinkedList<Map.Entry<ActiveDescriptor<?>, Object>>();
-            for (Map.Entry<ActiveDescriptor<?>, Object> entry : serviceMap.entrySet()) {
-                destructionList.addFirst(entry);
-            }
-            
-            for (Map.Entry<ActiveDescriptor<?>, Object> entry : destructionList) {
+            for (Map.Entry<ActiveDescriptor<?>, Object> entry : services.getDestructionOrder()) {
                 ActiveDescriptor<Object> desc = (ActiveDescriptor<Object>) entry.getKey();
                 Object value = entry.getValue();
             
@@ -281,13 +215,11 @@ public abstract class OperationContext<T extends Annotation> implements Context<
             }
         }
         finally {
-            synchronized (this) {
-                operationMap.remove(operation);
+            operationMap.remove(operation);
             
-                stack.removeFirst();
-                if (stack.isEmpty()) {
-                    closingOperations.remove(tid);
-                }
+            stack.removeFirst();
+            if (stack.isEmpty()) {
+                closingOperations.remove(tid);
             }
         }
     }
@@ -297,11 +229,8 @@ public abstract class OperationContext<T extends Annotation> implements Context<
      */
     @Override
     public void shutdown() {
-        Set<OperationHandleImpl<T>> toShutDown;
-        synchronized (this) {
-            shuttingDown = true;
-            toShutDown = operationMap.keySet();
-        }
+        shuttingDown = true;
+        Set<OperationHandleImpl<T>> toShutDown = new HashSet<OperationHandleImpl<T>>(operationMap.keySet());
         
         try {
             for (OperationHandleImpl<T> shutDown : toShutDown) {
@@ -309,9 +238,7 @@ public abstract class OperationContext<T extends Annotation> implements Context<
             }
         }
         finally {
-            synchronized (this) {
-                operationMap.clear();
-            }
+            operationMap.clear();
         }
         
     }
@@ -332,10 +259,106 @@ public abstract class OperationContext<T extends Annotation> implements Context<
         return true;
     }
 
-    public synchronized void setOperationManager(SingleOperationManager<T> manager) {
+    public void setOperationManager(SingleOperationManager<T> manager) {
         this.manager = manager;
     }
     
+    /**
+     * The services of one operation.  Looking up a service that has
+     * already been created takes no lock.  Creating a service locks
+     * only this operation, so that the same service is not created
+     * twice in it
+     */
+    private final class OperationServices {
+        private final ConcurrentHashMap<ActiveDescriptor<?>, Object> services =
+                new ConcurrentHashMap<ActiveDescriptor<?>, Object>();
+        
+        /** The created services in creation order, guarded by this */
+        private final LinkedHashMap<ActiveDescriptor<?>, Object> created =
+                new LinkedHashMap<ActiveDescriptor<?>, Object>();
+        private final HashSet<ActiveDescriptor<?>> creating = new HashSet<ActiveDescriptor<?>>();
+        
+        private Object get(ActiveDescriptor<?> descriptor) {
+            Object retVal = services.get(descriptor);
+            return (retVal == NULL_SERVICE) ? null : retVal;
+        }
+        
+        private boolean containsKey(ActiveDescriptor<?> descriptor) {
+            return services.containsKey(descriptor);
+        }
+        
+        private Object create(ActiveDescriptor<?> activeDescriptor, ServiceHandle<?> root) {
+            synchronized (this) {
+                // retVal is null, and this is not an explicit null, so must actually do the creation
+                while (creating.contains(activeDescriptor)) {
+                    try {
+                        this.wait();
+                    }
+                    catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+                
+                if (services.containsKey(activeDescriptor)) {
+                    return get(activeDescriptor);
+                }
+                
+                // Not in creating, and not created.  Create it ourselves
+                creating.add(activeDescriptor);
+            }
+            
+            Object retVal = null;
+            boolean success = false;
+            try {
+                retVal = activeDescriptor.create(root);
+                if (retVal == null && !supportsNullCreation()) {
+                    throw new IllegalArgumentException("The operation for context " + getScope().getName() +
+                            " does not support null creation, but descriptor " + activeDescriptor + " returned null");
+                }
+                
+                success = true;
+            }
+            finally {
+                synchronized (this) {
+                    if (success) {
+                        Object value = (retVal == null) ? NULL_SERVICE : retVal;
+                        
+                        created.put(activeDescriptor, value);
+                        services.put(activeDescriptor, value);
+                    }
+                    
+                    creating.remove(activeDescriptor);
+                    this.notifyAll();
+                }
+            }
+            
+            return retVal;
+        }
+        
+        private Object remove(ActiveDescriptor<?> descriptor) {
+            synchronized (this) {
+                created.remove(descriptor);
+            }
+            
+            Object retVal = services.remove(descriptor);
+            return (retVal == NULL_SERVICE) ? null : retVal;
+        }
+        
+        private List<Map.Entry<ActiveDescriptor<?>, Object>> getDestructionOrder() {
+            LinkedList<Map.Entry<ActiveDescriptor<?>, Object>> retVal = new LinkedList<Map.Entry<ActiveDescriptor<?>, Object>>();
+            
+            synchronized (this) {
+                for (Map.Entry<ActiveDescriptor<?>, Object> entry : created.entrySet()) {
+                    Object value = (entry.getValue() == NULL_SERVICE) ? null : entry.getValue();
+                    
+                    retVal.addFirst(new AbstractMap.SimpleImmutableEntry<ActiveDescriptor<?>, Object>(entry.getKey(), value));
+                }
+            }
+            
+            return retVal;
+        }
+    }
+    
     @Override
     public String toString() {
         return "OperationContext(" + getScope().getName() + "," + System.identityHashCode(this) + ")";
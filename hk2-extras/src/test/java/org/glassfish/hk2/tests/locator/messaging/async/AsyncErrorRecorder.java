@@ -0,0 +1,96 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.tests.locator.messaging.async;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.inject.Singleton;
+
+import org.glassfish.hk2.api.MultiException;
+import org.glassfish.hk2.api.messaging.Topic;
+import org.glassfish.hk2.extras.events.DefaultTopicDistributionErrorService;
+
+/**
+ * @author jwells
+ *
+ */
+@Singleton
+public class AsyncErrorRecorder implements DefaultTopicDistributionErrorService {
+    private final List<Throwable> errors = new ArrayList<Throwable>();
+    private final List<Object> messages = new ArrayList<Object>();
+
+    @Override
+    public synchronized void subscribersFailed(Topic<?> topic, Object message,
+            MultiException error) {
+        errors.addAll(error.getErrors());
+        messages.add(message);
+        
+        notifyAll();
+    }
+    
+    public synchronized List<Throwable> getErrors() {
+        return new ArrayList<Throwable>(errors);
+    }
+    
+    public synchronized List<Object> getMessages() {
+        return new ArrayList<Object>(messages);
+    }
+    
+    /**
+     * Waits up to five seconds for at least one error to be reported
+     * 
+     * @return true if an error was reported
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public synchronized boolean waitForError() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000L;
+        
+        while (errors.isEmpty()) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0L) return false;
+            
+            wait(remaining);
+        }
+        
+        return true;
+    }
+
+}
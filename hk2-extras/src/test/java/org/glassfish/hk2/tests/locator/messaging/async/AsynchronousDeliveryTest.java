@@ -0,0 +1,254 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.tests.locator.messaging.async;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.extras.events.AsynchronousDeliveryMetrics;
+import org.glassfish.hk2.extras.events.BackpressurePolicy;
+import org.glassfish.hk2.tests.extras.internal.Utilities;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for subscribers and topics that use {@link org.glassfish.hk2.extras.events.AsynchronousDelivery}
+ * 
+ * @author jwells
+ *
+ */
+public class AsynchronousDeliveryTest {
+    private final static int NUM_MESSAGES = 1000;
+    
+    /**
+     * Tests that publish does not wait for an asynchronous subscriber
+     */
+    @Test // @org.junit.Ignore
+    public void testPublishDoesNotWaitForSubscriber() throws InterruptedException {
+        ServiceLocator locator = Utilities.getLocatorWithTopics(AsyncPublisher.class,
+                AsyncSubscriber.class, SyncSubscriber.class);
+        
+        AsyncPublisher publisher = locator.getService(AsyncPublisher.class);
+        AsyncSubscriber asyncSubscriber = locator.getService(AsyncSubscriber.class);
+        SyncSubscriber syncSubscriber = locator.getService(SyncSubscriber.class);
+        
+        asyncSubscriber.close();
+        try {
+            publisher.publish(1);
+            
+            Assert.assertEquals(Arrays.asList(1), syncSubscriber.getValues());
+            Assert.assertEquals(Thread.currentThread(), syncSubscriber.getLastThread());
+            
+            Assert.assertTrue(asyncSubscriber.getValues().isEmpty());
+        }
+        finally {
+            asyncSubscriber.open();
+        }
+        
+        Assert.assertTrue(asyncSubscriber.waitForValues(1));
+        Assert.assertEquals(Arrays.asList(1), asyncSubscriber.getValues());
+        Assert.assertNotSame(Thread.currentThread(), asyncSubscriber.getLastThread());
+    }
+    
+    /**
+     * Tests that an asynchronous subscriber gets its messages in the
+     * order they were published
+     */
+    @Test // @org.junit.Ignore
+    public void testMessagesDeliveredInOrder() throws InterruptedException {
+        ServiceLocator locator = Utilities.getLocatorWithTopics(AsyncPublisher.class,
+                AsyncSubscriber.class);
+        
+        AsyncPublisher publisher = locator.getService(AsyncPublisher.class);
+        AsyncSubscriber subscriber = locator.getService(AsyncSubscriber.class);
+        
+        for (int lcv = 0; lcv < NUM_MESSAGES; lcv++) {
+            publisher.publish(lcv);
+        }
+        
+        Assert.assertTrue(subscriber.waitForValues(NUM_MESSAGES));
+        
+        List<Integer> values = subscriber.getValues();
+        Assert.assertEquals(NUM_MESSAGES, values.size());
+        for (int lcv = 0; lcv < NUM_MESSAGES; lcv++) {
+            Assert.assertEquals(lcv, values.get(lcv).intValue());
+        }
+        
+        AsynchronousDeliveryMetrics metrics = locator.getService(AsynchronousDeliveryMetrics.class);
+        Assert.assertEquals(0, metrics.getQueueDepth());
+    }
+    
+    /**
+     * Tests that a topic qualified with AsynchronousDelivery delivers
+     * to every subscriber on another thread
+     */
+    @Test // @org.junit.Ignore
+    public void testAsynchronousTopic() throws InterruptedException {
+        ServiceLocator locator = Utilities.getLocatorWithTopics(AsyncPublisher.class,
+                SyncSubscriber.class);
+        
+        AsyncPublisher publisher = locator.getService(AsyncPublisher.class);
+        SyncSubscriber subscriber = locator.getService(SyncSubscriber.class);
+        
+        publisher.publishAsynchronously(1);
+        
+        Assert.assertTrue(subscriber.waitForValues(1));
+        Assert.assertNotSame(Thread.currentThread(), subscriber.getLastThread());
+        
+        publisher.publish(2);
+        
+        Assert.assertEquals(Arrays.asList(1, 2), subscriber.getValues());
+        Assert.assertEquals(Thread.currentThread(), subscriber.getLastThread());
+    }
+    
+    /**
+     * Tests that DROP_OLDEST keeps the newest messages and counts the
+     * ones it dropped
+     */
+    @Test // @org.junit.Ignore
+    public void testDropOldest() {
+        ServiceLocator locator = Utilities.getLocatorWithTopics(AsyncPublisher.class,
+                AsyncSubscriber.class, AsyncConfiguration.class);
+        
+        ManualExecutor executor = new ManualExecutor();
+        
+        AsyncConfiguration configuration = locator.getService(AsyncConfiguration.class);
+        configuration.setExecutor(executor);
+        configuration.setQueueCapacity(2);
+        configuration.setBackpressurePolicy(BackpressurePolicy.DROP_OLDEST);
+        
+        AsyncPublisher publisher = locator.getService(AsyncPublisher.class);
+        AsyncSubscriber subscriber = locator.getService(AsyncSubscriber.class);
+        
+        for (int lcv = 0; lcv < 5; lcv++) {
+            publisher.publish(lcv);
+        }
+        
+        AsynchronousDeliveryMetrics metrics = locator.getService(AsynchronousDeliveryMetrics.class);
+        Assert.assertEquals(2, metrics.getQueueDepth());
+        Assert.assertEquals(3L, metrics.getDroppedCount());
+        Assert.assertEquals(0L, metrics.getRejectedCount());
+        
+        Map<String, Integer> depths = metrics.getQueueDepths();
+        Assert.assertEquals(1, depths.size());
+        String key = depths.keySet().iterator().next();
+        Assert.assertTrue(key, key.startsWith(AsyncSubscriber.class.getName() + ".onEvent("));
+        Assert.assertEquals(2, depths.get(key).intValue());
+        
+        // Only one run is ever scheduled for a subscriber
+        Assert.assertEquals(1, executor.getPending());
+        
+        executor.runAll();
+        
+        Assert.assertEquals(Arrays.asList(3, 4), subscriber.getValues());
+        Assert.assertEquals(0, metrics.getQueueDepth());
+    }
+    
+    /**
+     * Tests that REJECT reports the message that did not fit to the
+     * error service
+     */
+    @Test // @org.junit.Ignore
+    public void testReject() {
+        ServiceLocator locator = Utilities.getLocatorWithTopics(AsyncPublisher.class,
+                AsyncSubscriber.class, AsyncConfiguration.class, AsyncErrorRecorder.class);
+        
+        ManualExecutor executor = new ManualExecutor();
+        
+        AsyncConfiguration configuration = locator.getService(AsyncConfiguration.class);
+        configuration.setExecutor(executor);
+        configuration.setQueueCapacity(1);
+        configuration.setBackpressurePolicy(BackpressurePolicy.REJECT);
+        
+        AsyncPublisher publisher = locator.getService(AsyncPublisher.class);
+        AsyncSubscriber subscriber = locator.getService(AsyncSubscriber.class);
+        AsyncErrorRecorder recorder = locator.getService(AsyncErrorRecorder.class);
+        
+        publisher.publish(1);
+        Assert.assertTrue(recorder.getErrors().isEmpty());
+        
+        publisher.publish(2);
+        
+        List<Throwable> errors = recorder.getErrors();
+        Assert.assertEquals(1, errors.size());
+        Assert.assertTrue(errors.get(0).toString(), errors.get(0) instanceof RejectedExecutionException);
+        Assert.assertEquals(2, ((AsyncEvent) recorder.getMessages().get(0)).getValue());
+        
+        AsynchronousDeliveryMetrics metrics = locator.getService(AsynchronousDeliveryMetrics.class);
+        Assert.assertEquals(1L, metrics.getRejectedCount());
+        
+        executor.runAll();
+        
+        Assert.assertEquals(Arrays.asList(1), subscriber.getValues());
+    }
+    
+    /**
+     * Tests that an exception from an asynchronous subscriber goes to the
+     * error service and does not stop later messages
+     */
+    @Test // @org.junit.Ignore
+    public void testSubscriberExceptionIsReported() throws InterruptedException {
+        ServiceLocator locator = Utilities.getLocatorWithTopics(AsyncPublisher.class,
+                AsyncSubscriber.class, AsyncErrorRecorder.class);
+        
+        AsyncPublisher publisher = locator.getService(AsyncPublisher.class);
+        AsyncSubscriber subscriber = locator.getService(AsyncSubscriber.class);
+        AsyncErrorRecorder recorder = locator.getService(AsyncErrorRecorder.class);
+        
+        publisher.publish(-1);
+        publisher.publish(1);
+        
+        Assert.assertTrue(recorder.waitForError());
+        Assert.assertTrue(subscriber.waitForValues(1));
+        
+        Throwable error = recorder.getErrors().get(0);
+        while (error.getCause() != null) {
+            error = error.getCause();
+        }
+        
+        Assert.assertEquals(AsyncSubscriber.EXPECTED_MESSAGE, error.getMessage());
+        Assert.assertEquals(-1, ((AsyncEvent) recorder.getMessages().get(0)).getValue());
+        Assert.assertEquals(Arrays.asList(1), subscriber.getValues());
+    }
+
+}
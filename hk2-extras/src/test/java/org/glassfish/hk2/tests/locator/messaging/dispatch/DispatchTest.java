@@ -0,0 +1,175 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.tests.locator.messaging.dispatch;
+
+import java.lang.management.ManagementFactory;
+
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.tests.extras.internal.Utilities;
+import org.glassfish.hk2.utilities.BuilderHelper;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the index the default topic distribution service keeps
+ * from event type and qualifiers to subscribers
+ * 
+ * @author jwells
+ *
+ */
+public class DispatchTest {
+    private final static int NUM_PUBLISHES = 100000;
+    
+    /**
+     * Tests that a subscriber that shows up after the index was built
+     * for a topic still gets its messages
+     */
+    @Test // @org.junit.Ignore
+    public void testLateSubscriberGetsMessages() {
+        ServiceLocator locator = Utilities.getLocatorWithTopics(TickPublisher.class, TickSubscriber.class);
+        
+        TickPublisher publisher = locator.getService(TickPublisher.class);
+        TickSubscriber subscriber = locator.getService(TickSubscriber.class);
+        
+        publisher.publishTick(1);
+        publisher.publishUrgentTick(2);
+        
+        Assert.assertEquals(2, subscriber.getCount());
+        Assert.assertEquals(2, subscriber.getLastValue());
+        
+        ServiceLocatorUtilities.addClasses(locator, UrgentTickSubscriber.class);
+        UrgentTickSubscriber urgentSubscriber = locator.getService(UrgentTickSubscriber.class);
+        
+        publisher.publishUrgentTick(3);
+        
+        Assert.assertEquals(3, subscriber.getCount());
+        Assert.assertEquals(1, urgentSubscriber.getCount());
+        
+        publisher.publishTick(4);
+        
+        Assert.assertEquals(4, subscriber.getCount());
+        Assert.assertEquals(4, subscriber.getLastValue());
+        Assert.assertEquals(1, urgentSubscriber.getCount());
+    }
+    
+    /**
+     * Tests that a subscriber whose descriptor was removed no longer
+     * gets messages
+     */
+    @Test // @org.junit.Ignore
+    public void testRemovedSubscriberGetsNoMessages() {
+        ServiceLocator locator = Utilities.getLocatorWithTopics(TickPublisher.class,
+                TickSubscriber.class, UrgentTickSubscriber.class);
+        
+        TickPublisher publisher = locator.getService(TickPublisher.class);
+        TickSubscriber subscriber = locator.getService(TickSubscriber.class);
+        UrgentTickSubscriber urgentSubscriber = locator.getService(UrgentTickSubscriber.class);
+        
+        publisher.publishUrgentTick(1);
+        
+        Assert.assertEquals(1, subscriber.getCount());
+        Assert.assertEquals(1, urgentSubscriber.getCount());
+        
+        ServiceLocatorUtilities.removeFilter(locator,
+                BuilderHelper.createContractFilter(UrgentTickSubscriber.class.getName()));
+        
+        publisher.publishUrgentTick(2);
+        
+        Assert.assertEquals(2, subscriber.getCount());
+        Assert.assertEquals(1, urgentSubscriber.getCount());
+    }
+    
+    /**
+     * Tests that once the index has been built publishing to a topic
+     * with no subscribers does not allocate
+     */
+    @Test // @org.junit.Ignore
+    public void testPublishWithNoSubscribersDoesNotAllocate() {
+        ServiceLocator locator = Utilities.getLocatorWithTopics(TickPublisher.class, TickSubscriber.class);
+        
+        TickPublisher publisher = locator.getService(TickPublisher.class);
+        locator.getService(TickSubscriber.class);
+        
+        Tock tock = new Tock();
+        
+        // Warm up, which also builds the index for this topic
+        for (int lcv = 0; lcv < NUM_PUBLISHES; lcv++) {
+            publisher.publishTock(tock);
+        }
+        
+        long allocatedBefore = getAllocatedBytes();
+        long elapsedTime = System.currentTimeMillis();
+        for (int lcv = 0; lcv < NUM_PUBLISHES; lcv++) {
+            publisher.publishTock(tock);
+        }
+        elapsedTime = System.currentTimeMillis() - elapsedTime;
+        long allocatedAfter = getAllocatedBytes();
+        
+        if (allocatedBefore < 0 || allocatedAfter < 0) {
+            System.out.println("Did " + NUM_PUBLISHES + " publishes in " + elapsedTime + " milliseconds");
+            return;
+        }
+        
+        double bytesPerPublish = ((double) (allocatedAfter - allocatedBefore)) / NUM_PUBLISHES;
+        System.out.println("Did " + NUM_PUBLISHES + " publishes in " + elapsedTime +
+                " milliseconds allocating " + bytesPerPublish + " bytes per publish");
+        
+        Assert.assertTrue("Publishing allocated " + bytesPerPublish + " bytes each", bytesPerPublish < 1.0);
+    }
+    
+    /**
+     * Uses the HotSpot extension of the ThreadMXBean if it is available
+     * 
+     * @return The number of bytes allocated by this thread, or -1 if
+     * that cannot be measured
+     */
+    private static long getAllocatedBytes() {
+        Object bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return -1L;
+        
+        com.sun.management.ThreadMXBean hotspotBean = (com.sun.management.ThreadMXBean) bean;
+        if (!hotspotBean.isThreadAllocatedMemorySupported() || !hotspotBean.isThreadAllocatedMemoryEnabled()) {
+            return -1L;
+        }
+        
+        return hotspotBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
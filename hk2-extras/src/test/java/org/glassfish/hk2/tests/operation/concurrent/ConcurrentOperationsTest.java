@@ -0,0 +1,159 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.tests.operation.concurrent;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.extras.operation.OperationHandle;
+import org.glassfish.hk2.extras.operation.OperationManager;
+import org.glassfish.hk2.tests.operation.basic.OperationsTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for many operations of the same type running at the same time
+ * 
+ * @author jwells
+ *
+ */
+public class ConcurrentOperationsTest {
+    private final static ConcurrentOperationScope CONCURRENT_OPERATION_ANNOTATION = new ConcurrentOperationScopeImpl();
+    
+    private final static int NUM_OPERATIONS = 1000;
+    private final static int LOOKUPS_PER_OPERATION = 1000;
+    
+    /**
+     * Each of many concurrent operations gets its own instance
+     * of an operation scoped service, which is destroyed when the
+     * operation is closed
+     * 
+     * @throws Throwable
+     */
+    @Test // @org.junit.Ignore
+    public void testManyConcurrentOperations() throws Throwable {
+        ServiceLocator locator = OperationsTest.createLocator(ConcurrentOperationScopeContext.class,
+                OperationCounter.class);
+        
+        long elapsed = runOperations(locator, NUM_OPERATIONS, 10);
+        
+        System.out.println("Ran " + NUM_OPERATIONS + " concurrent operations in " + elapsed + " milliseconds");
+    }
+    
+    /**
+     * A benchmark of many concurrent operations each doing many lookups
+     * of the operation scoped service
+     * 
+     * @throws Throwable
+     */
+    @Test // @org.junit.Ignore
+    public void benchmarkConcurrentOperationLookups() throws Throwable {
+        ServiceLocator locator = OperationsTest.createLocator(ConcurrentOperationScopeContext.class,
+                OperationCounter.class);
+        
+        // Warm up
+        runOperations(locator, 50, LOOKUPS_PER_OPERATION);
+        
+        long elapsed = runOperations(locator, NUM_OPERATIONS, LOOKUPS_PER_OPERATION);
+        
+        System.out.println("Ran " + NUM_OPERATIONS + " concurrent operations with " + LOOKUPS_PER_OPERATION +
+                " lookups each in " + elapsed + " milliseconds");
+    }
+    
+    private static long runOperations(final ServiceLocator locator, int numOperations, final int lookups) throws Throwable {
+        final OperationManager operationManager = locator.getService(OperationManager.class);
+        
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        
+        List<Thread> threads = new LinkedList<Thread>();
+        for (int lcv = 0; lcv < numOperations; lcv++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        
+                        OperationHandle<ConcurrentOperationScope> operation =
+                                operationManager.createAndStartOperation(CONCURRENT_OPERATION_ANNOTATION);
+                        
+                        OperationCounter first = locator.getService(OperationCounter.class);
+                        for (int count = 0; count < lookups; count++) {
+                            OperationCounter counter = locator.getService(OperationCounter.class);
+                            Assert.assertSame(first, counter);
+                            
+                            counter.increment();
+                        }
+                        
+                        Assert.assertEquals(lookups, first.getCount());
+                        
+                        operation.closeOperation();
+                        
+                        Assert.assertTrue(first.isDestroyed());
+                    }
+                    catch (Throwable th) {
+                        error.compareAndSet(null, th);
+                    }
+                }
+            };
+            
+            threads.add(thread);
+            thread.start();
+        }
+        
+        long startTime = System.currentTimeMillis();
+        start.countDown();
+        
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        
+        long elapsed = System.currentTimeMillis() - startTime;
+        
+        if (error.get() != null) throw error.get();
+        
+        Assert.assertTrue(operationManager.getCurrentOperations(CONCURRENT_OPERATION_ANNOTATION).isEmpty());
+        
+        return elapsed;
+    }
+}
@@ -39,6 +39,9 @@
  */
 package org.jvnet.hk2.external.runtime;
 
+import java.util.Map;
+
+import org.glassfish.hk2.utilities.cache.CacheStatistics;
 import org.jvnet.hk2.annotations.Contract;
 
 /**
@@ -55,6 +58,21 @@ import org.jvnet.hk2.annotations.Contract;
  */
 @Contract
 public interface ServiceLocatorRuntimeBean {
+    /** The name of the cache of single service lookups and injections */
+    public final static String SERVICE_CACHE = "services";
+    
+    /** The name of the cache of lookups for all services of a contract */
+    public final static String ALL_SERVICES_CACHE = "allServices";
+    
+    /** The name of the cache from injection points to their injection resolvers */
+    public final static String INJECTION_RESOLVER_CACHE = "injectionResolvers";
+    
+    /**
+     * The prefix of the names of the reflection caches, which is followed
+     * by the name the reflection helper gives the cache
+     */
+    public final static String REFLECTION_CACHE_PREFIX = "reflection.";
+    
     /**
      * Returns the total number of descriptors
      * in this ServiceLocator.  Does not include
@@ -96,6 +114,39 @@ public interface ServiceLocatorRuntimeBean {
      */
     public int getServiceCacheMaximumSize();
     
+    /**
+     * Sets the maximum number of entries allowed in
+     * the HK2 service cache.  If the cache currently has more
+     * entries than this some of them are removed.  If the
+     * service cache is adaptive this is the largest size the
+     * cache will grow to.  The default can be set with the
+     * org.jvnet.hk2.properties.serviceCache.size system property
+     * before the ServiceLocator is created
+     * 
+     * @param maxSize The maximum number of entries allowed
+     * in the HK2 service cache, must be at least one
+     */
+    public void setServiceCacheMaximumSize(int maxSize);
+    
+    /**
+     * Turns adaptive sizing of the HK2 service cache on or off.
+     * An adaptive service cache starts small, grows when it has a
+     * poor hit ratio and shrinks when the heap is nearly full, never
+     * growing beyond the size set with {@link #setServiceCacheMaximumSize(int)}.
+     * Adaptive sizing can be turned on for all ServiceLocators with the
+     * org.jvnet.hk2.properties.serviceCache.adaptive system property
+     * 
+     * @param adaptive true if the service cache should be sized adaptively
+     */
+    public void setServiceCacheAdaptive(boolean adaptive);
+    
+    /**
+     * Tells whether the HK2 service cache is sized adaptively
+     * 
+     * @return true if the service cache is sized adaptively
+     */
+    public boolean isServiceCacheAdaptive();
+    
     /**
      * Clears all entries from the HK2 service cache.
      * The service cache is used to optimize frequent
@@ -125,5 +176,16 @@ public interface ServiceLocatorRuntimeBean {
      * until the cache can be built back up
      */
     public void clearReflectionCache();
+    
+    /**
+     * Returns the statistics of the caches of this ServiceLocator,
+     * such as their hit, miss and eviction counts.  These can be
+     * sampled over time in order to decide how large the caches
+     * should be
+     * 
+     * @return A map from the name of each cache, such as
+     * {@link #SERVICE_CACHE}, to a snapshot of its statistics
+     */
+    public Map<String, CacheStatistics> getCacheStatistics();
 
 }
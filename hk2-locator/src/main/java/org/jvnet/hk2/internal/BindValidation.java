@@ -0,0 +1,215 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.jvnet.hk2.internal;
+
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.glassfish.hk2.api.MultiException;
+import org.glassfish.hk2.api.Operation;
+import org.glassfish.hk2.api.ValidationService;
+
+/**
+ * Runs the BIND validation of the descriptors of a large configuration
+ * before the write lock of the locator is taken.  The results are only
+ * used if the set of validators is the same once the lock is held,
+ * otherwise the descriptors are validated again under the lock
+ * <p>
+ * If the org.jvnet.hk2.properties.validation.threads property is greater
+ * than one the descriptors are validated in chunks on an executor with
+ * that many threads.  The validators must then be safe to call from
+ * several threads at once
+ * 
+ * @author jwells
+ *
+ */
+/* package */ class BindValidation {
+    private final static String VALIDATION_THREADS_PROPERTY = "org.jvnet.hk2.properties.validation.threads";
+    
+    /** Configurations smaller than this are validated under the lock as usual */
+    /* package */ final static int MINIMUM_SIZE = 64;
+    
+    /** The number of descriptors validated by one task of the executor */
+    private final static int CHUNK_SIZE = 512;
+    
+    private final static int VALIDATION_THREADS = AccessController.doPrivileged(new PrivilegedAction<Integer>() {
+
+        @Override
+        public Integer run() {
+            return Integer.getInteger(VALIDATION_THREADS_PROPERTY, 0);
+        }
+            
+    });
+    
+    private final static ExecutorService PARALLEL_EXECUTOR = ContextClassLoaderHelper.createExecutor(VALIDATION_THREADS, "ValidationThread");
+    
+    private final List<ValidationService> validators;
+    private final boolean passed[];
+    private final StackTraceElement caller;
+    
+    /**
+     * Validates the given descriptors against the given validators.  Every
+     * validator must have a non-null Validator
+     * 
+     * @param locator The locator used to call the validators
+     * @param validators A snapshot of the validators of the locator
+     * @param descriptors The descriptors being added to the locator
+     * @param caller The caller of the commit, found on the committing thread
+     */
+    /* package */ BindValidation(ServiceLocatorImpl locator,
+            List<ValidationService> validators,
+            List<SystemDescriptor<?>> descriptors,
+            StackTraceElement caller) {
+        this.validators = validators;
+        this.passed = new boolean[descriptors.size()];
+        this.caller = caller;
+        
+        if (validators.isEmpty()) {
+            for (int lcv = 0; lcv < passed.length; lcv++) {
+                passed[lcv] = true;
+            }
+            
+            return;
+        }
+        
+        if (PARALLEL_EXECUTOR == null || passed.length < (2 * CHUNK_SIZE)) {
+            // Stops at the first failure, as the validation under the lock would
+            new Chunk(locator, descriptors, 0, passed.length, true).run();
+            return;
+        }
+        
+        ClassLoader loader = ContextClassLoaderHelper.getContextClassLoader();
+        
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int start = CHUNK_SIZE; start < passed.length; start += CHUNK_SIZE) {
+            int end = Math.min(start + CHUNK_SIZE, passed.length);
+            
+            futures.add(PARALLEL_EXECUTOR.submit(ContextClassLoaderHelper.withContextClassLoader(
+                    new Chunk(locator, descriptors, start, end, false), loader)));
+        }
+        
+        // The calling thread does the first chunk itself
+        new Chunk(locator, descriptors, 0, CHUNK_SIZE, false).run();
+        
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            }
+            catch (ExecutionException ee) {
+                // callValidate catches its own errors, so this is unexpected
+                throw new MultiException(ee.getCause());
+            }
+            catch (InterruptedException ie) {
+                for (Future<?> cancelMe : futures) {
+                    cancelMe.cancel(false);
+                }
+                
+                Thread.currentThread().interrupt();
+                
+                throw new MultiException(ie);
+            }
+        }
+    }
+    
+    /**
+     * Tells whether or not these results may be used in place of
+     * validating under the lock
+     * 
+     * @param currentValidators The validators of the locator as they are now
+     * @return true if the validators have not changed since this validation was done
+     */
+    /* package */ boolean isCurrent(List<ValidationService> currentValidators) {
+        return validators.equals(currentValidators);
+    }
+    
+    /**
+     * Returns the result for one descriptor
+     * 
+     * @param index The index of the descriptor in the configuration
+     * @return true if every validator returned true for the descriptor
+     */
+    /* package */ boolean passed(int index) {
+        return passed[index];
+    }
+    
+    private class Chunk implements Runnable {
+        private final ServiceLocatorImpl locator;
+        private final List<SystemDescriptor<?>> descriptors;
+        private final int start;
+        private final int end;
+        private final boolean stopOnFailure;
+        
+        private Chunk(ServiceLocatorImpl locator,
+                List<SystemDescriptor<?>> descriptors,
+                int start,
+                int end,
+                boolean stopOnFailure) {
+            this.locator = locator;
+            this.descriptors = descriptors;
+            this.start = start;
+            this.end = end;
+            this.stopOnFailure = stopOnFailure;
+        }
+
+        @Override
+        public void run() {
+            for (int lcv = start; lcv < end; lcv++) {
+                SystemDescriptor<?> sd = descriptors.get(lcv);
+                
+                boolean ok = true;
+                for (ValidationService vs : validators) {
+                    if (!locator.callValidate(vs, new ValidationInformationImpl(Operation.BIND, sd, caller))) {
+                        ok = false;
+                        break;
+                    }
+                }
+                
+                passed[lcv] = ok;
+                if (!ok && stopOnFailure) return;
+            }
+        }
+    }
+}
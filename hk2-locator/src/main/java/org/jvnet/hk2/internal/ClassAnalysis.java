@@ -0,0 +1,356 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.jvnet.hk2.internal;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.glassfish.hk2.api.ActiveDescriptor;
+import org.glassfish.hk2.api.ClassAnalyzer;
+import org.glassfish.hk2.api.GeneratedCreator;
+import org.glassfish.hk2.api.PostConstruct;
+import org.glassfish.hk2.api.PreDestroy;
+import org.glassfish.hk2.utilities.reflection.Logger;
+
+/**
+ * Everything a {@link ClassAnalyzer} says about a class, along with the
+ * injection points of the constructor, initializer methods and fields.
+ * An analysis is immutable and does not refer to any descriptor, so it
+ * can be shared by every locator that uses an equivalent analyzer.  The
+ * injection points are kept as templates which are bound to a descriptor
+ * by {@link #bind(List, ActiveDescriptor)}.
+ * <p>
+ * The {@link GeneratedCreator} of the class, if it has one that agrees
+ * with this analysis, is found the first time it is asked for
+ * 
+ * @author jwells
+ *
+ */
+/* package */ final class ClassAnalysis {
+    private final Class<?> implClass;
+    private final Constructor<?> constructor;
+    private final List<SystemInjecteeImpl> constructorInjectees;
+    private final Map<Method, List<SystemInjecteeImpl>> initializerMethods;
+    private final Map<Field, List<SystemInjecteeImpl>> fields;
+    private final Method postConstructMethod;
+    private final Method preDestroyMethod;
+    
+    private volatile GeneratedBinding generatedBinding;
+    private volatile boolean generatedBindingFound;
+    
+    private ClassAnalysis(Class<?> implClass,
+            Constructor<?> constructor,
+            List<SystemInjecteeImpl> constructorInjectees,
+            Map<Method, List<SystemInjecteeImpl>> initializerMethods,
+            Map<Field, List<SystemInjecteeImpl>> fields,
+            Method postConstructMethod,
+            Method preDestroyMethod) {
+        this.implClass = implClass;
+        this.constructor = constructor;
+        this.constructorInjectees = constructorInjectees;
+        this.initializerMethods = initializerMethods;
+        this.fields = fields;
+        this.postConstructMethod = postConstructMethod;
+        this.preDestroyMethod = preDestroyMethod;
+    }
+    
+    /**
+     * Analyzes the given class with the given analyzer
+     * 
+     * @param implClass The non-null class to analyze
+     * @param analyzer The non-null analyzer to use
+     * @param collector Errors found during the analysis are added here
+     * @return The analysis, or null if no constructor could be found
+     * (in which case the collector will have errors)
+     */
+    /* package */ static ClassAnalysis analyze(Class<?> implClass, ClassAnalyzer analyzer, Collector collector) {
+        Constructor<?> constructor = Utilities.getConstructor(implClass, analyzer, collector);
+        if (constructor == null) return null;
+        
+        List<SystemInjecteeImpl> constructorInjectees = Collections.unmodifiableList(
+                new ArrayList<SystemInjecteeImpl>(Utilities.getConstructorInjectees(constructor, null)));
+        
+        Map<Method, List<SystemInjecteeImpl>> initializerMethods = new LinkedHashMap<Method, List<SystemInjecteeImpl>>();
+        for (Method initMethod : Utilities.getInitMethods(implClass, analyzer, collector)) {
+            initializerMethods.put(initMethod, Collections.unmodifiableList(
+                    Utilities.getMethodInjectees(implClass, initMethod, null)));
+        }
+        
+        Map<Field, List<SystemInjecteeImpl>> fields = new LinkedHashMap<Field, List<SystemInjecteeImpl>>();
+        for (Field field : Utilities.getInitFields(implClass, analyzer, collector)) {
+            fields.put(field, Collections.unmodifiableList(
+                    Utilities.getFieldInjectees(implClass, field, null)));
+        }
+        
+        Method postConstructMethod = Utilities.getPostConstruct(implClass, analyzer, collector);
+        Method preDestroyMethod = Utilities.getPreDestroy(implClass, analyzer, collector);
+        
+        return new ClassAnalysis(implClass,
+                constructor,
+                constructorInjectees,
+                Collections.unmodifiableMap(initializerMethods),
+                Collections.unmodifiableMap(fields),
+                postConstructMethod,
+                preDestroyMethod);
+    }
+    
+    /**
+     * Creates the injectees of one injection point for the given descriptor
+     * 
+     * @param templates The injectees from this analysis
+     * @param injecteeDescriptor The descriptor the injectees belong to (may be null)
+     * @return A new list of injectees bound to the descriptor
+     */
+    /* package */ static List<SystemInjecteeImpl> bind(List<SystemInjecteeImpl> templates,
+            ActiveDescriptor<?> injecteeDescriptor) {
+        List<SystemInjecteeImpl> retVal = new ArrayList<SystemInjecteeImpl>(templates.size());
+        for (SystemInjecteeImpl template : templates) {
+            retVal.add(new SystemInjecteeImpl(template, injecteeDescriptor));
+        }
+        
+        return retVal;
+    }
+    
+    /**
+     * @return The constructor to use when creating the class
+     */
+    /* package */ Constructor<?> getConstructor() {
+        return constructor;
+    }
+    
+    /**
+     * @return The injectees of the constructor, in parameter order
+     */
+    /* package */ List<SystemInjecteeImpl> getConstructorInjectees() {
+        return constructorInjectees;
+    }
+    
+    /**
+     * @return The initializer methods and their injectees, in the
+     * order given by the analyzer
+     */
+    /* package */ Map<Method, List<SystemInjecteeImpl>> getInitializerMethods() {
+        return initializerMethods;
+    }
+    
+    /**
+     * @return The fields to inject and their injectees, in the
+     * order given by the analyzer
+     */
+    /* package */ Map<Field, List<SystemInjecteeImpl>> getFields() {
+        return fields;
+    }
+    
+    /**
+     * @return The postConstruct method (may be null)
+     */
+    /* package */ Method getPostConstructMethod() {
+        return postConstructMethod;
+    }
+    
+    /**
+     * @return The preDestroy method (may be null)
+     */
+    /* package */ Method getPreDestroyMethod() {
+        return preDestroyMethod;
+    }
+    
+    /**
+     * Gets the generated creator of the class along with the positions
+     * of the fields and initializer methods of this analysis in it
+     * 
+     * @return The binding to the generated creator, or null if the class
+     * has no generated creator or it does not agree with this analysis
+     */
+    /* package */ GeneratedBinding getGeneratedBinding() {
+        if (generatedBindingFound) return generatedBinding;
+        
+        GeneratedBinding found = findGeneratedBinding();
+        
+        generatedBinding = found;
+        generatedBindingFound = true;
+        
+        return found;
+    }
+    
+    @SuppressWarnings("unchecked")
+    private GeneratedBinding findGeneratedBinding() {
+        final ClassLoader loader = AccessController.doPrivileged(new PrivilegedAction<ClassLoader>() {
+
+            @Override
+            public ClassLoader run() {
+                return implClass.getClassLoader();
+            }
+            
+        });
+        if (loader == null) return null;
+        
+        GeneratedCreator<Object> creator;
+        try {
+            Class<?> creatorClass = loader.loadClass(implClass.getName() + GeneratedCreator.CLASS_NAME_SUFFIX);
+            if (!GeneratedCreator.class.isAssignableFrom(creatorClass)) return null;
+            
+            creator = (GeneratedCreator<Object>) creatorClass.newInstance();
+        }
+        catch (ClassNotFoundException cnfe) {
+            return null;
+        }
+        catch (Throwable th) {
+            Logger.getLogger().debug("ClassAnalysis", "findGeneratedBinding", th);
+            return null;
+        }
+        
+        if (!getSignature(constructor).equals(creator.getConstructor())) return null;
+        
+        Map<String, Integer> points = new HashMap<String, Integer>();
+        String injectionPoints[] = creator.getInjectionPoints();
+        for (int lcv = 0; lcv < injectionPoints.length; lcv++) {
+            points.put(injectionPoints[lcv], lcv);
+        }
+        
+        int fieldPoints[] = new int[fields.size()];
+        int lcv = 0;
+        for (Field field : fields.keySet()) {
+            Integer point = points.get(getSignature(field));
+            if (point == null) return null;
+            
+            fieldPoints[lcv++] = point;
+        }
+        
+        int initializerPoints[] = new int[initializerMethods.size()];
+        lcv = 0;
+        for (Method initializerMethod : initializerMethods.keySet()) {
+            Integer point = points.get(getSignature(initializerMethod));
+            if (point == null) return null;
+            
+            initializerPoints[lcv++] = point;
+        }
+        
+        // Services implementing PostConstruct or PreDestroy are called directly
+        if (!PostConstruct.class.isAssignableFrom(implClass) &&
+                !sameSignature(postConstructMethod, creator.getPostConstruct())) return null;
+        if (!PreDestroy.class.isAssignableFrom(implClass) &&
+                !sameSignature(preDestroyMethod, creator.getPreDestroy())) return null;
+        
+        return new GeneratedBinding(creator, fieldPoints, initializerPoints);
+    }
+    
+    private static boolean sameSignature(Method method, String signature) {
+        if (method == null) return (signature == null);
+        
+        return getSignature(method).equals(signature);
+    }
+    
+    private static String getSignature(Constructor<?> constructor) {
+        return "<init>" + getSignature(constructor.getParameterTypes());
+    }
+    
+    private static String getSignature(Field field) {
+        return field.getDeclaringClass().getName() + "#" + field.getName();
+    }
+    
+    private static String getSignature(Method method) {
+        return method.getDeclaringClass().getName() + "#" + method.getName() +
+                getSignature(method.getParameterTypes());
+    }
+    
+    private static String getSignature(Class<?> parameterTypes[]) {
+        StringBuilder sb = new StringBuilder("(");
+        for (int lcv = 0; lcv < parameterTypes.length; lcv++) {
+            if (lcv > 0) sb.append(',');
+            sb.append(parameterTypes[lcv].getName());
+        }
+        
+        return sb.append(')').toString();
+    }
+    
+    @Override
+    public String toString() {
+        return "ClassAnalysis(" + constructor + "," + initializerMethods.keySet() + "," +
+            fields.keySet() + "," + System.identityHashCode(this) + ")";
+    }
+    
+    /**
+     * A generated creator that agrees with an analysis
+     */
+    /* package */ final static class GeneratedBinding {
+        private final GeneratedCreator<Object> creator;
+        private final int fieldPoints[];
+        private final int initializerPoints[];
+        
+        private GeneratedBinding(GeneratedCreator<Object> creator, int fieldPoints[], int initializerPoints[]) {
+            this.creator = creator;
+            this.fieldPoints = fieldPoints;
+            this.initializerPoints = initializerPoints;
+        }
+        
+        /**
+         * @return The generated creator
+         */
+        /* package */ GeneratedCreator<Object> getCreator() {
+            return creator;
+        }
+        
+        /**
+         * @return The injection point of each field of the analysis, in
+         * analysis order.  The array must not be modified
+         */
+        /* package */ int[] getFieldPoints() {
+            return fieldPoints;
+        }
+        
+        /**
+         * @return The injection point of each initializer method of the
+         * analysis, in analysis order.  The array must not be modified
+         */
+        /* package */ int[] getInitializerPoints() {
+            return initializerPoints;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.jvnet.hk2.internal;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.glassfish.hk2.utilities.general.ConcurrentWeakKeyMap;
+
+/**
+ * The {@link ClassAnalysis} of classes, shared by every locator in the
+ * JVM and keyed by the name of the analyzer that produced it and the
+ * class.  The constructor and methods of an analysis refer back to the
+ * class, so the analyses of classes from classloaders that may go away
+ * are only held weakly, and are kept alive by the creators using them.
+ * Lookups take no lock
+ * 
+ * @author jwells
+ *
+ */
+/* package */ final class ClassAnalysisCache {
+    private final static ConcurrentHashMap<String, ConcurrentWeakKeyMap<Class<?>, ClassAnalysis>> analyses =
+            new ConcurrentHashMap<String, ConcurrentWeakKeyMap<Class<?>, ClassAnalysis>>();
+    
+    private ClassAnalysisCache() {
+    }
+    
+    /**
+     * Gets the analysis of a class done by any locator
+     * 
+     * @param clazz The non-null class that was analyzed
+     * @param analyzerName The non-null name of the analyzer used
+     * @return The analysis, or null if there is none
+     */
+    /* package */ static ClassAnalysis get(Class<?> clazz, String analyzerName) {
+        ConcurrentWeakKeyMap<Class<?>, ClassAnalysis> byClass = analyses.get(analyzerName);
+        if (byClass == null) return null;
+        
+        return byClass.get(clazz);
+    }
+    
+    /**
+     * Makes the analysis of a class available to every locator
+     * 
+     * @param clazz The non-null class that was analyzed
+     * @param analyzerName The non-null name of the analyzer used
+     * @param analysis The analysis of the class, which must not have had errors
+     */
+    /* package */ static void put(Class<?> clazz, String analyzerName, ClassAnalysis analysis) {
+        ConcurrentWeakKeyMap<Class<?>, ClassAnalysis> byClass = analyses.get(analyzerName);
+        if (byClass == null) {
+            byClass = new ConcurrentWeakKeyMap<Class<?>, ClassAnalysis>(true, false);
+            
+            ConcurrentWeakKeyMap<Class<?>, ClassAnalysis> existing = analyses.putIfAbsent(analyzerName, byClass);
+            if (existing != null) byClass = existing;
+        }
+        
+        byClass.put(clazz, analysis);
+    }
+}
@@ -45,6 +45,7 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -83,6 +84,11 @@ public class ClazzCreator<T> implements Creator<T> {
 
     private Method postConstructMethod;
     private Method preDestroyMethod;
+    
+    private InjectionPlan plan;
+    
+    /** Keeps a shared analysis in the ClassAnalysisCache while this creator is in use */
+    private ClassAnalysis analysis;
 
     /* package */ ClazzCreator(ServiceLocatorImpl locator,
             Class<?> implClass) {
@@ -121,57 +127,112 @@ public class ClazzCreator<T> implements Creator<T> {
             return;
         }
 
-        List<SystemInjecteeImpl> baseAllInjectees = new LinkedList<SystemInjecteeImpl>();
-
-        AnnotatedElement element;
-        List<SystemInjecteeImpl> injectees;
-
-        element = Utilities.getConstructor(implClass, analyzer, collector);
-        if (element == null) {
+        analysis = getAnalysis(analyzer, analyzerName, collector);
+        if (analysis == null) {
             myConstructor = null;
             return;
         }
 
-        injectees = Utilities.getConstructorInjectees((Constructor<?>) element, selfDescriptor);
-        if (injectees == null) {
-            myConstructor = null;
-            return;
-        }
+        List<SystemInjecteeImpl> baseAllInjectees = new LinkedList<SystemInjecteeImpl>();
+        List<SystemInjecteeImpl> injectees;
 
+        injectees = ClassAnalysis.bind(analysis.getConstructorInjectees(), selfDescriptor);
         baseAllInjectees.addAll(injectees);
 
-        myConstructor = new ResolutionInfo(element, injectees);
-
-        Set<Method> initMethods = Utilities.getInitMethods(implClass, analyzer, collector);
-        for (Method initMethod : initMethods) {
-            element = initMethod;
-
-            injectees = Utilities.getMethodInjectees(implClass, initMethod, selfDescriptor);
-            if (injectees == null) return;
+        myConstructor = new ResolutionInfo(analysis.getConstructor(), injectees);
 
+        for (Map.Entry<Method, List<SystemInjecteeImpl>> initMethod : analysis.getInitializerMethods().entrySet()) {
+            injectees = ClassAnalysis.bind(initMethod.getValue(), selfDescriptor);
             baseAllInjectees.addAll(injectees);
 
-            myInitializers.add(new ResolutionInfo(element, injectees));
+            myInitializers.add(new ResolutionInfo(initMethod.getKey(), injectees));
         }
 
-        Set<Field> fields = Utilities.getInitFields(implClass, analyzer, collector);
-        for (Field field : fields) {
-            element = field;
-
-            injectees = Utilities.getFieldInjectees(implClass, field, selfDescriptor);
-            if (injectees == null) return;
-
+        for (Map.Entry<Field, List<SystemInjecteeImpl>> field : analysis.getFields().entrySet()) {
+            injectees = ClassAnalysis.bind(field.getValue(), selfDescriptor);
             baseAllInjectees.addAll(injectees);
 
-            myFields.add(new ResolutionInfo(element, injectees));
+            myFields.add(new ResolutionInfo(field.getKey(), injectees));
         }
 
-        postConstructMethod = Utilities.getPostConstruct(implClass, analyzer, collector);
-        preDestroyMethod = Utilities.getPreDestroy(implClass, analyzer, collector);
+        postConstructMethod = analysis.getPostConstructMethod();
+        preDestroyMethod = analysis.getPreDestroyMethod();
 
         allInjectees = Collections.unmodifiableList(baseAllInjectees);
 
         Utilities.validateSelfInjectees(selfDescriptor, allInjectees, collector);
+        
+        plan = compilePlan(analysis);
+    }
+    
+    /**
+     * Gets the analysis of the implementation class, from the cache shared
+     * with other locators if this locator allows it
+     * 
+     * @param analyzer The non-null analyzer to use
+     * @param analyzerName The name of the analyzer (null for the default)
+     * @param collector Errors found during the analysis are added here
+     * @return The analysis, or null if it failed
+     */
+    private ClassAnalysis getAnalysis(ClassAnalyzer analyzer, String analyzerName, Collector collector) {
+        if (!locator.isClassAnalysisShareable(analyzer)) {
+            return ClassAnalysis.analyze(implClass, analyzer, collector);
+        }
+        
+        if (analyzerName == null) analyzerName = locator.getDefaultClassAnalyzerName();
+        
+        ClassAnalysis retVal = ClassAnalysisCache.get(implClass, analyzerName);
+        if (retVal != null) return retVal;
+        
+        // Errors may already be in the collector, so the analysis gets its own
+        Collector analysisCollector = new Collector();
+        retVal = ClassAnalysis.analyze(implClass, analyzer, analysisCollector);
+        
+        try {
+            analysisCollector.throwIfErrors();
+        }
+        catch (MultiException me) {
+            collector.addMultiException(me);
+            return retVal;
+        }
+        
+        ClassAnalysisCache.put(implClass, analyzerName, retVal);
+        
+        return retVal;
+    }
+    
+    /**
+     * Compiles the analyzed class into a plan that can be used for
+     * every subsequent creation
+     * 
+     * @param analysis The analysis the creator was initialized from
+     * @return The plan, or null if creation must use the fully reflective path
+     */
+    private InjectionPlan compilePlan(ClassAnalysis analysis) {
+        List<Field> fields = new ArrayList<Field>(myFields.size());
+        List<SystemInjecteeImpl> fieldInjectees = new ArrayList<SystemInjecteeImpl>(myFields.size());
+        for (ResolutionInfo fieldRI : myFields) {
+            if (fieldRI.injectees.size() != 1) return null;
+            
+            fields.add((Field) fieldRI.baseElement);
+            fieldInjectees.add(fieldRI.injectees.get(0));
+        }
+        
+        List<Method> initializers = new ArrayList<Method>(myInitializers.size());
+        List<List<SystemInjecteeImpl>> initializerInjectees = new ArrayList<List<SystemInjecteeImpl>>(myInitializers.size());
+        for (ResolutionInfo methodRI : myInitializers) {
+            initializers.add((Method) methodRI.baseElement);
+            initializerInjectees.add(methodRI.injectees);
+        }
+        
+        return InjectionPlan.compile((Constructor<?>) myConstructor.baseElement,
+                myConstructor.injectees,
+                fields,
+                fieldInjectees,
+                initializers,
+                initializerInjectees,
+                postConstructMethod,
+                (locator.getGeneratedCreators()) ? analysis.getGeneratedBinding() : null);
     }
 
     /* package */ void initialize(
@@ -253,8 +314,39 @@ public class ClazzCreator<T> implements Creator<T> {
         return retVal;
     }
 
+    private Object[] resolveAllDependencies(final InjectionPlan plan, final ServiceHandle<?> root) throws MultiException, IllegalStateException {
+        Collector errorCollector = new Collector();
+        
+        final SystemInjecteeImpl slots[] = plan.getSlots();
+        final Object retVal[] = new Object[slots.length];
+        
+        for (int lcv = 0; lcv < slots.length; lcv++) {
+            SystemInjecteeImpl injectee = slots[lcv];
+            
+            if (injectee.isSelf()) {
+                retVal[lcv] = selfDescriptor;
+                continue;
+            }
+            
+            InjectionResolver<?> resolver = locator.getInjectionResolverForInjectee(injectee);
+            try {
+                retVal[lcv] = resolver.resolve(injectee, root);
+            } catch (Throwable th) {
+                errorCollector.addThrowable(th);
+            }
+        }
+        
+        if (errorCollector.hasErrors()) {
+            errorCollector.addThrowable(new IllegalArgumentException("While attempting to resolve the dependencies of "
+                    + implClass.getName() + " errors were found"));
+
+            errorCollector.throwIfErrors();
+        }
+        
+        return retVal;
+    }
+
     private Object createMe(Map<SystemInjecteeImpl, Object> resolved) throws Throwable {
-        final Constructor<?> c = (Constructor<?>) myConstructor.baseElement;
         List<SystemInjecteeImpl> injectees = myConstructor.injectees;
 
         final Object args[] = new Object[injectees.size()];
@@ -262,6 +354,22 @@ public class ClazzCreator<T> implements Creator<T> {
             args[injectee.getPosition()] = resolved.get(injectee);
         }
         
+        return createMe(args, null);
+    }
+    
+    /**
+     * Calls the constructor, possibly with interception
+     * 
+     * @param args The arguments to the constructor
+     * @param plan If not null the constructor will be called directly by
+     * the plan when there is no interception, in which case the caller is
+     * responsible for the context class loader
+     * @return The new object
+     * @throws Throwable Any exception from the constructor
+     */
+    private Object createMe(final Object args[], InjectionPlan plan) throws Throwable {
+        final Constructor<?> c = (Constructor<?>) myConstructor.baseElement;
+        
         Utilities.Interceptors interceptors = Utilities.getAllInterceptors(locator, selfDescriptor, implClass, c);
         final Map<Method, List<MethodInterceptor>> methodInterceptors = interceptors.getMethodInterceptors();
         List<ConstructorInterceptor> constructorInterceptors = interceptors.getConstructorInterceptors();
@@ -269,6 +377,8 @@ public class ClazzCreator<T> implements Creator<T> {
         if ((methodInterceptors == null || methodInterceptors.isEmpty()) &&
             ((constructorInterceptors == null) || constructorInterceptors.isEmpty())) {
             // No need for any kind of interception
+            if (plan != null) return plan.construct(args);
+            
             return ReflectionHelper.makeMe(c, args, locator.getNeutralContextClassLoader()); 
         }
         
@@ -343,6 +453,9 @@ public class ClazzCreator<T> implements Creator<T> {
 
         if (preDestroyMethod == null) return;
 
+        InjectionPlan currentPlan = plan;
+        if ((currentPlan != null) && currentPlan.preDestroy(t)) return;
+
         ReflectionHelper.invoke(t, preDestroyMethod, new Object[0], locator.getNeutralContextClassLoader());
     }
 
@@ -352,6 +465,9 @@ public class ClazzCreator<T> implements Creator<T> {
     @SuppressWarnings("unchecked")
     @Override
     public T create(ServiceHandle<?> root, SystemDescriptor<?> eventThrower) {
+        InjectionPlan currentPlan = plan;
+        if (currentPlan != null) return create(currentPlan, root, eventThrower);
+        
         String failureLocation = "resolve";
         try {
 
@@ -396,6 +512,67 @@ public class ClazzCreator<T> implements Creator<T> {
         }
     }
 
+    @SuppressWarnings("unchecked")
+    private T create(InjectionPlan plan, ServiceHandle<?> root, SystemDescriptor<?> eventThrower) {
+        String failureLocation = "resolve";
+        
+        final boolean neutral = locator.getNeutralContextClassLoader();
+        final ClassLoader originalCCL = (neutral) ? ContextClassLoaderHelper.getContextClassLoader() : null;
+        try {
+            final Object allResolved[] = resolveAllDependencies(plan, root);
+            
+            Map<Injectee, Object> eventMap = null;
+            if (eventThrower != null && eventThrower.hasInstanceListeners()) {
+                eventMap = plan.toResolvedMap(allResolved);
+                
+                eventThrower.invokeInstanceListeners(new InstanceLifecycleEventImpl(InstanceLifecycleEventType.PRE_PRODUCTION,
+                    null, eventMap, eventThrower));
+            }
+            
+            failureLocation = "create";
+            T retVal = (T) createMe(plan.getConstructorArguments(allResolved), plan);
+            
+            failureLocation = "field inject";
+            plan.injectFields(retVal, allResolved);
+            
+            failureLocation = "method inject";
+            plan.injectMethods(retVal, allResolved);
+            
+            failureLocation = "post construct";
+            if (retVal instanceof PostConstruct) {
+                ((PostConstruct) retVal).postConstruct();
+            }
+            else if (retVal != null) {
+                plan.postConstruct(retVal);
+            }
+            
+            if (eventMap != null) {
+                eventThrower.invokeInstanceListeners(new InstanceLifecycleEventImpl(InstanceLifecycleEventType.POST_PRODUCTION,
+                    retVal, eventMap, eventThrower));
+            }
+            
+            return retVal;
+        } catch (Throwable th) {
+            if (th instanceof MultiException) {
+                MultiException me = (MultiException) th;
+
+                me.addError(new IllegalStateException("Unable to perform operation: " + failureLocation + " on " + implClass.getName()));
+
+                throw me;
+            }
+
+            MultiException me = new MultiException(th);
+            me.addError(new IllegalStateException("Unable to perform operation: " + failureLocation + " on " + implClass.getName()));
+
+            throw me;
+        }
+        finally {
+            if (neutral) {
+                ContextClassLoaderHelper.restoreContextClassLoader(originalCCL);
+            }
+        }
+    }
+
     /* (non-Javadoc)
      * @see org.jvnet.hk2.internal.Creator#dispose(java.lang.Object)
      */
@@ -0,0 +1,171 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.jvnet.hk2.internal;
+
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps the context class loader of the current thread intact around
+ * user code, and runs work on other threads with the context class loader
+ * of the thread that handed out the work
+ * 
+ * @author jwells
+ *
+ */
+/* package */ class ContextClassLoaderHelper {
+    /**
+     * Gets the context class loader of the current thread so that it can
+     * be restored with {@link #restoreContextClassLoader(ClassLoader)} once
+     * all of the user code of a creation has been called
+     * 
+     * @return The current context class loader, may be null
+     */
+    /* package */ static ClassLoader getContextClassLoader() {
+        return AccessController.doPrivileged(new PrivilegedAction<ClassLoader>() {
+
+            @Override
+            public ClassLoader run() {
+                return Thread.currentThread().getContextClassLoader();
+            }
+            
+        });
+    }
+    
+    /**
+     * Puts back the context class loader of the current thread if user
+     * code has changed it
+     * 
+     * @param original The value returned from {@link #getContextClassLoader()}
+     */
+    /* package */ static void restoreContextClassLoader(final ClassLoader original) {
+        AccessController.doPrivileged(new PrivilegedAction<Object>() {
+
+            @Override
+            public Object run() {
+                Thread current = Thread.currentThread();
+                if (current.getContextClassLoader() != original) {
+                    current.setContextClassLoader(original);
+                }
+                return null;
+            }
+            
+        });
+    }
+    
+    /**
+     * Wraps the runnable so that it runs with the given context class loader
+     * on whichever thread it ends up on.  The context class loader of that
+     * thread is put back afterwards
+     * 
+     * @param runnable The work to run
+     * @param loader The context class loader to run it with, may be null
+     * @return A runnable that runs the given runnable with the loader
+     */
+    /* package */ static Runnable withContextClassLoader(Runnable runnable, ClassLoader loader) {
+        return new ContextClassLoaderRunnable(runnable, loader);
+    }
+    
+    /**
+     * Creates an executor of daemon threads whose threads go away
+     * when they have been idle for a while
+     * 
+     * @param numThreads The number of threads of the executor
+     * @param threadName The name of the threads, which is followed by a number
+     * @return The executor, or null if numThreads is not greater than one
+     */
+    /* package */ static ExecutorService createExecutor(int numThreads, String threadName) {
+        if (numThreads <= 1) return null;
+        
+        ThreadPoolExecutor retVal = new ThreadPoolExecutor(numThreads, numThreads,
+                60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new DaemonThreadFactory(threadName));
+        retVal.allowCoreThreadTimeOut(true);
+        
+        return retVal;
+    }
+    
+    private static class ContextClassLoaderRunnable implements Runnable {
+        private final Runnable runnable;
+        private final ClassLoader loader;
+        
+        private ContextClassLoaderRunnable(Runnable runnable, ClassLoader loader) {
+            this.runnable = runnable;
+            this.loader = loader;
+        }
+
+        @Override
+        public void run() {
+            ClassLoader original = getContextClassLoader();
+            
+            restoreContextClassLoader(loader);
+            try {
+                runnable.run();
+            }
+            finally {
+                restoreContextClassLoader(original);
+            }
+        }
+    }
+    
+    private static class DaemonThreadFactory implements ThreadFactory {
+        private final String threadName;
+        private final AtomicInteger threadNumber = new AtomicInteger();
+        
+        private DaemonThreadFactory(String threadName) {
+            this.threadName = threadName;
+        }
+        
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, threadName + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.jvnet.hk2.internal;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.glassfish.hk2.api.ValidationService;
+
+/**
+ * An immutable, versioned copy of the descriptor indexes of a
+ * {@link ServiceLocatorImpl}.  When lock-free lookups are enabled
+ * the locator publishes a new snapshot (while holding its write lock)
+ * every time the indexes change, and lookups read the most recently
+ * published snapshot without taking the locator lock.
+ * <p>
+ * Nothing in a snapshot may be modified once it has been published
+ * 
+ * @author jwells
+ *
+ */
+public class DescriptorSnapshot {
+    /* package */ final static DescriptorSnapshot EMPTY = new DescriptorSnapshot(0L,
+            Collections.<SystemDescriptor<?>>emptyList(),
+            new HashMap<String, List<SystemDescriptor<?>>>(),
+            new HashMap<String, List<SystemDescriptor<?>>>(),
+            new LinkedHashSet<ValidationService>());
+    
+    private final long version;
+    private final List<SystemDescriptor<?>> allDescriptors;
+    private final HashMap<String, List<SystemDescriptor<?>>> descriptorsByAdvertisedContract;
+    private final HashMap<String, List<SystemDescriptor<?>>> descriptorsByName;
+    private final LinkedHashSet<ValidationService> validators;
+    
+    private DescriptorSnapshot(long version,
+            List<SystemDescriptor<?>> allDescriptors,
+            HashMap<String, List<SystemDescriptor<?>>> descriptorsByAdvertisedContract,
+            HashMap<String, List<SystemDescriptor<?>>> descriptorsByName,
+            LinkedHashSet<ValidationService> validators) {
+        this.version = version;
+        this.allDescriptors = allDescriptors;
+        this.descriptorsByAdvertisedContract = descriptorsByAdvertisedContract;
+        this.descriptorsByName = descriptorsByName;
+        this.validators = validators;
+    }
+    
+    /**
+     * Creates the next version of this snapshot.  Only the index entries
+     * named in changedContracts and changedNames are copied from the live
+     * indexes, all other entries are shared with this snapshot.  Must be
+     * called with the write lock of the locator held
+     * 
+     * @param liveAll The live index of all descriptors
+     * @param liveByContract The live index of descriptors by contract
+     * @param changedContracts The contracts whose index entries have changed,
+     * or null if every contract entry should be copied
+     * @param liveByName The live index of descriptors by name
+     * @param changedNames The names whose index entries have changed, or
+     * null if every name entry should be copied
+     * @param liveValidators The current set of local validation services
+     * @return A new snapshot with a version one greater than this one
+     */
+    /* package */ DescriptorSnapshot next(IndexedListData liveAll,
+            Map<String, IndexedListData> liveByContract,
+            Set<String> changedContracts,
+            Map<String, IndexedListData> liveByName,
+            Set<String> changedNames,
+            Collection<ValidationService> liveValidators) {
+        return new DescriptorSnapshot(version + 1,
+                sortedListOf(liveAll),
+                nextIndex(descriptorsByAdvertisedContract, liveByContract, changedContracts),
+                nextIndex(descriptorsByName, liveByName, changedNames),
+                new LinkedHashSet<ValidationService>(liveValidators));
+    }
+    
+    private static HashMap<String, List<SystemDescriptor<?>>> nextIndex(
+            HashMap<String, List<SystemDescriptor<?>>> current,
+            Map<String, IndexedListData> live,
+            Set<String> changed) {
+        HashMap<String, List<SystemDescriptor<?>>> retVal;
+        
+        if (changed == null) {
+            retVal = new HashMap<String, List<SystemDescriptor<?>>>();
+            
+            for (Map.Entry<String, IndexedListData> entry : live.entrySet()) {
+                retVal.put(entry.getKey(), sortedListOf(entry.getValue()));
+            }
+            
+            return retVal;
+        }
+        
+        if (changed.isEmpty()) return current;
+        
+        retVal = new HashMap<String, List<SystemDescriptor<?>>>(current);
+        for (String key : changed) {
+            IndexedListData ild = live.get(key);
+            if (ild == null || ild.isEmpty()) {
+                retVal.remove(key);
+            }
+            else {
+                retVal.put(key, sortedListOf(ild));
+            }
+        }
+        
+        return retVal;
+    }
+    
+    private static List<SystemDescriptor<?>> sortedListOf(IndexedListData ild) {
+        // The sorted list of an IndexedListData is never modified, so it can be shared
+        return ild.getSortedList();
+    }
+    
+    /**
+     * @return The version of this snapshot, which increases by one
+     * for every snapshot published by a locator
+     */
+    public long getVersion() {
+        return version;
+    }
+    
+    /* package */ List<SystemDescriptor<?>> getAllDescriptors() {
+        return allDescriptors;
+    }
+    
+    /* package */ List<SystemDescriptor<?>> getDescriptorsByAdvertisedContract(String contract) {
+        return descriptorsByAdvertisedContract.get(contract);
+    }
+    
+    /* package */ List<SystemDescriptor<?>> getDescriptorsByName(String name) {
+        return descriptorsByName.get(name);
+    }
+    
+    /* package */ LinkedHashSet<ValidationService> getValidators() {
+        return validators;
+    }
+    
+    @Override
+    public String toString() {
+        return "DescriptorSnapshot(" + version + "," + allDescriptors.size() + "," +
+            System.identityHashCode(this) + ")";
+    }
+}
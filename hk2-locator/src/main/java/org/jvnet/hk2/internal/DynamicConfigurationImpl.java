@@ -40,7 +40,9 @@
 
 package org.jvnet.hk2.internal;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
 
 import org.glassfish.hk2.api.ActiveDescriptor;
 import org.glassfish.hk2.api.Descriptor;
@@ -61,7 +63,7 @@ import org.glassfish.hk2.utilities.reflection.Pretty;
  */
 public class DynamicConfigurationImpl implements DynamicConfiguration {
     private final ServiceLocatorImpl locator;
-    private final LinkedList<SystemDescriptor<?>> allDescriptors = new LinkedList<SystemDescriptor<?>>();
+    private final ArrayList<SystemDescriptor<?>> allDescriptors = new ArrayList<SystemDescriptor<?>>();
     private final LinkedList<Filter> allUnbindFilters = new LinkedList<Filter>();
     private final LinkedList<Filter> allIdempotentFilters = new LinkedList<Filter>();
     private final LinkedList<TwoPhaseResource> allResources = new LinkedList<TwoPhaseResource>();
@@ -313,7 +315,7 @@ public class DynamicConfigurationImpl implements DynamicConfiguration {
     /**
      * @return the allDescriptors
      */
-    /* package */ LinkedList<SystemDescriptor<?>> getAllDescriptors() {
+    /* package */ List<SystemDescriptor<?>> getAllDescriptors() {
         return allDescriptors;
     }
     
@@ -89,6 +89,14 @@ public class FactoryCreator<T> implements Creator<T> {
         instantiationService = found;
     }
 
+    /**
+     * @return true if the factory has the InstantiationService injected,
+     * and hence wants to know the injectee it is producing for
+     */
+    /* package */ boolean hasInstantiationService() {
+        return instantiationService != null;
+    }
+    
     /* (non-Javadoc)
      * @see org.jvnet.hk2.internal.Creator#getInjectees()
      */
@@ -40,97 +40,233 @@
 
 package org.jvnet.hk2.internal;
 
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.ListIterator;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
 /**
- * This object contains a list of values.  The list is not always sorted, but will
- * always be returned sorted.
+ * This object contains a list of values.  The values are kept in a
+ * tree sorted by ranking, so adding and removing a descriptor costs
+ * O(log n).  Readers are given an immutable sorted array (wrapped in
+ * a list) which is only rebuilt, without sorting, after the contents
+ * have changed.
  * 
- * All of the methods on here must be called with lock held.
+ * All of the mutating methods on here must be called with lock held.
+ * The list returned from getSortedList is never modified and may be
+ * used without any lock
  * 
  * @author jwells
  *
  */
 public class IndexedListData {
-    private final ArrayList<SystemDescriptor<?>> unsortedList = new ArrayList<SystemDescriptor<?>>();
-    private volatile boolean sorted = true;
+    private final static List<SystemDescriptor<?>> EMPTY_LIST = Collections.emptyList();
     
-    public Collection<SystemDescriptor<?>> getSortedList() {
-        if (sorted) return unsortedList;
+    /** Batches smaller than this are inserted one descriptor at a time */
+    private final static int MINIMUM_BATCH = 32;
+    
+    private TreeSet<SystemDescriptor<?>> sortedSet =
+            new TreeSet<SystemDescriptor<?>>(ServiceLocatorImpl.DESCRIPTOR_COMPARATOR);
+    
+    /** Null if the contents have changed since the last time it was published */
+    private volatile List<SystemDescriptor<?>> published = EMPTY_LIST;
+    
+    public List<SystemDescriptor<?>> getSortedList() {
+        List<SystemDescriptor<?>> retVal = published;
+        if (retVal != null) return retVal;
         
         synchronized (this) {
-            if (sorted) return unsortedList;
-        
-            if (unsortedList.size() <= 1) {
-                sorted = true;
-                return unsortedList;
-            }
+            if (published != null) return published;
             
-            Collections.sort(unsortedList, ServiceLocatorImpl.DESCRIPTOR_COMPARATOR);
-        
-            sorted = true;
-            return unsortedList;
+            SystemDescriptor<?> asArray[] = sortedSet.toArray(new SystemDescriptor<?>[sortedSet.size()]);
+            
+            published = Collections.unmodifiableList(Arrays.asList(asArray));
+            return published;
         }
     }
     
     public synchronized void addDescriptor(SystemDescriptor<?> descriptor) {
-        unsortedList.add(descriptor);
+        sortedSet.add(descriptor);
+        published = null;
         
-        if (unsortedList.size() > 1) {
-            sorted = false;
+        descriptor.addList(this);
+    }
+    
+    /**
+     * Adds several descriptors at once.  If the batch is large compared to
+     * the current contents it is sorted once and merged with the contents,
+     * and the tree is rebuilt from the merged array in linear time rather
+     * than inserting the descriptors one by one
+     * 
+     * @param descriptors The descriptors to add
+     */
+    public synchronized void addDescriptors(Collection<SystemDescriptor<?>> descriptors) {
+        if ((descriptors.size() < MINIMUM_BATCH) ||
+                (descriptors.size() < (sortedSet.size() / 4))) {
+            for (SystemDescriptor<?> descriptor : descriptors) {
+                sortedSet.add(descriptor);
+            }
         }
         else {
-            sorted = true;
+            SystemDescriptor<?> batch[] = descriptors.toArray(new SystemDescriptor<?>[descriptors.size()]);
+            Arrays.sort(batch, ServiceLocatorImpl.DESCRIPTOR_COMPARATOR);
+            
+            sortedSet = new TreeSet<SystemDescriptor<?>>(merge(sortedSet, batch));
         }
         
-        descriptor.addList(this);
+        published = null;
+        
+        for (SystemDescriptor<?> descriptor : descriptors) {
+            descriptor.addList(this);
+        }
     }
     
-    public synchronized void removeDescriptor(SystemDescriptor<?> descriptor) {
-        ListIterator<SystemDescriptor<?>> iterator = unsortedList.listIterator();
-        while (iterator.hasNext()) {
-            SystemDescriptor<?> candidate = iterator.next();
-            if (ServiceLocatorImpl.DESCRIPTOR_COMPARATOR.compare(descriptor, candidate) == 0) {
-                iterator.remove();
-                break;
+    /**
+     * Merges two sorted sequences, dropping duplicates
+     */
+    private static SortedArray merge(TreeSet<SystemDescriptor<?>> current, SystemDescriptor<?> batch[]) {
+        SystemDescriptor<?> merged[] = new SystemDescriptor<?>[current.size() + batch.length];
+        int size = 0;
+        
+        Iterator<SystemDescriptor<?>> currentIterator = current.iterator();
+        SystemDescriptor<?> next = currentIterator.hasNext() ? currentIterator.next() : null;
+        
+        int batchIndex = 0;
+        while (next != null || batchIndex < batch.length) {
+            SystemDescriptor<?> add;
+            
+            if (batchIndex >= batch.length) {
+                add = next;
+                next = currentIterator.hasNext() ? currentIterator.next() : null;
             }
+            else if (next == null) {
+                add = batch[batchIndex++];
+            }
+            else {
+                int compare = ServiceLocatorImpl.DESCRIPTOR_COMPARATOR.compare(next, batch[batchIndex]);
+                if (compare <= 0) {
+                    if (compare == 0) batchIndex++;
+                    
+                    add = next;
+                    next = currentIterator.hasNext() ? currentIterator.next() : null;
+                }
+                else {
+                    add = batch[batchIndex++];
+                }
+            }
+            
+            if (size > 0 && ServiceLocatorImpl.DESCRIPTOR_COMPARATOR.compare(merged[size - 1], add) == 0) {
+                continue;
+            }
+            
+            merged[size++] = add;
         }
         
-        if (unsortedList.size() > 1) {
-            sorted = false;
-        }
-        else {
-            sorted = true;
+        return new SortedArray(merged, size);
+    }
+    
+    public synchronized void removeDescriptor(SystemDescriptor<?> descriptor) {
+        if (sortedSet.remove(descriptor)) {
+            published = null;
         }
         
         descriptor.removeList(this);
     }
     
     public synchronized boolean isEmpty() {
-        return unsortedList.isEmpty();
+        return sortedSet.isEmpty();
     }
     
     /**
-     * Called by a SystemDescriptor when its ranking has changed
+     * Called by a SystemDescriptor when its ranking has changed.  The
+     * tree is no longer in order and so must be rebuilt
      */
     public synchronized void unSort() {
-        if (unsortedList.size() > 1) {
-            sorted = false;
-        }
+        if (sortedSet.size() <= 1) return;
+        
+        // Copied to a list first so that the new set does not
+        // assume the old (now out of order) set is sorted
+        ArrayList<SystemDescriptor<?>> all = new ArrayList<SystemDescriptor<?>>(sortedSet);
+        
+        sortedSet = new TreeSet<SystemDescriptor<?>>(ServiceLocatorImpl.DESCRIPTOR_COMPARATOR);
+        sortedSet.addAll(all);
+        
+        published = null;
     }
     
     public synchronized void clear() {
-        for (SystemDescriptor<?> descriptor : unsortedList) {
+        for (SystemDescriptor<?> descriptor : sortedSet) {
             descriptor.removeList(this);
         }
         
-        unsortedList.clear();
+        sortedSet.clear();
+        published = EMPTY_LIST;
     }
     
     public synchronized int size() {
-        return unsortedList.size();
+        return sortedSet.size();
+    }
+    
+    /**
+     * Exists only so that the TreeSet(SortedSet) constructor builds the
+     * tree from the merged array in linear time, without comparing the
+     * elements.  That constructor only calls comparator, size and
+     * iterator, so this must never be used as a general SortedSet: the
+     * range views are not supported
+     */
+    private static class SortedArray extends AbstractSet<SystemDescriptor<?>> implements SortedSet<SystemDescriptor<?>> {
+        private final SystemDescriptor<?> contents[];
+        private final int size;
+        
+        private SortedArray(SystemDescriptor<?> contents[], int size) {
+            this.contents = contents;
+            this.size = size;
+        }
+
+        @Override
+        public Iterator<SystemDescriptor<?>> iterator() {
+            return Arrays.asList(contents).subList(0, size).iterator();
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Comparator<? super SystemDescriptor<?>> comparator() {
+            return ServiceLocatorImpl.DESCRIPTOR_COMPARATOR;
+        }
+
+        @Override
+        public SortedSet<SystemDescriptor<?>> subSet(SystemDescriptor<?> fromElement, SystemDescriptor<?> toElement) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SortedSet<SystemDescriptor<?>> headSet(SystemDescriptor<?> toElement) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SortedSet<SystemDescriptor<?>> tailSet(SystemDescriptor<?> fromElement) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SystemDescriptor<?> first() {
+            return contents[0];
+        }
+
+        @Override
+        public SystemDescriptor<?> last() {
+            return contents[size - 1];
+        }
     }
 }
@@ -0,0 +1,420 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.jvnet.hk2.internal;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.glassfish.hk2.api.GeneratedCreator;
+import org.glassfish.hk2.api.Injectee;
+import org.glassfish.hk2.utilities.reflection.Logger;
+import org.glassfish.hk2.utilities.reflection.ReflectionHelper;
+
+/**
+ * A pre-computed plan for creating and initializing instances of an
+ * implementation class.  The plan is compiled once per {@link ClazzCreator}
+ * after the class has been analyzed.  All of the injection points are
+ * flattened into one array of slots (constructor parameters first, then
+ * fields, then initializer method parameters, which is the order in which
+ * they are resolved) and every member is made accessible up front, so that
+ * creating an instance needs no maps, no per-call access checks and no
+ * per-call context class loader switching.
+ * <p>
+ * If the plan cannot be compiled (for example because the security manager
+ * will not allow the members to be made accessible) the creator falls back
+ * to the reflective path that does these steps on every creation.
+ * <p>
+ * When the class has a {@link GeneratedCreator} the plan calls it rather
+ * than the reflected members, which then never need to be made accessible
+ * 
+ * @author jwells
+ *
+ */
+public class InjectionPlan {
+    private final static Object[] NO_ARGS = new Object[0];
+    
+    private final Constructor<?> constructor;
+    private final int constructorSlots;
+    
+    private final Field[] fields;
+    private final int[] fieldSlots;
+    
+    private final Method[] initializers;
+    private final int[] initializerFirstSlots;
+    private final int[] initializerSlotCounts;
+    
+    private final Method postConstruct;
+    private final SystemInjecteeImpl[] slots;
+    
+    private final GeneratedCreator<Object> generatedCreator;
+    private final int[] fieldPoints;
+    private final int[] initializerPoints;
+    
+    private InjectionPlan(Constructor<?> constructor,
+            int constructorSlots,
+            Field[] fields,
+            int[] fieldSlots,
+            Method[] initializers,
+            int[] initializerFirstSlots,
+            int[] initializerSlotCounts,
+            Method postConstruct,
+            SystemInjecteeImpl[] slots,
+            ClassAnalysis.GeneratedBinding generatedBinding) {
+        this.constructor = constructor;
+        this.constructorSlots = constructorSlots;
+        this.fields = fields;
+        this.fieldSlots = fieldSlots;
+        this.initializers = initializers;
+        this.initializerFirstSlots = initializerFirstSlots;
+        this.initializerSlotCounts = initializerSlotCounts;
+        this.postConstruct = postConstruct;
+        this.slots = slots;
+        
+        if (generatedBinding != null) {
+            generatedCreator = generatedBinding.getCreator();
+            fieldPoints = generatedBinding.getFieldPoints();
+            initializerPoints = generatedBinding.getInitializerPoints();
+        }
+        else {
+            generatedCreator = null;
+            fieldPoints = null;
+            initializerPoints = null;
+        }
+    }
+    
+    /**
+     * Compiles a plan from the analyzed constructor, fields and initializer
+     * methods of a class
+     * 
+     * @param constructor The constructor to call.  May not be null
+     * @param constructorInjectees The injectees of the constructor
+     * @param fields The fields to inject, in injection order
+     * @param fieldInjectees The injectee of each field, in the same order as fields
+     * @param initializers The initializer methods to call, in call order
+     * @param initializerInjectees The injectees of each initializer method, in
+     * the same order as initializers
+     * @param postConstruct The postConstruct method, or null if there is none
+     * @param generatedBinding The generated creator to use in place of the
+     * members, or null if the members are to be called reflectively
+     * @return The compiled plan, or null if this class cannot be created with a plan
+     */
+    /* package */ static InjectionPlan compile(Constructor<?> constructor,
+            List<SystemInjecteeImpl> constructorInjectees,
+            List<Field> fields,
+            List<SystemInjecteeImpl> fieldInjectees,
+            List<Method> initializers,
+            List<List<SystemInjecteeImpl>> initializerInjectees,
+            Method postConstruct,
+            ClassAnalysis.GeneratedBinding generatedBinding) {
+        int numSlots = constructorInjectees.size() + fieldInjectees.size();
+        for (List<SystemInjecteeImpl> injectees : initializerInjectees) {
+            numSlots += injectees.size();
+        }
+        
+        SystemInjecteeImpl slots[] = new SystemInjecteeImpl[numSlots];
+        
+        int constructorSlots = constructorInjectees.size();
+        if (!fillSlots(slots, 0, constructorInjectees)) return null;
+        
+        int currentSlot = constructorSlots;
+        
+        int fieldSlots[] = new int[fields.size()];
+        for (int lcv = 0; lcv < fieldSlots.length; lcv++) {
+            slots[currentSlot] = fieldInjectees.get(lcv);
+            fieldSlots[lcv] = currentSlot++;
+        }
+        
+        int initializerFirstSlots[] = new int[initializers.size()];
+        int initializerSlotCounts[] = new int[initializers.size()];
+        for (int lcv = 0; lcv < initializerFirstSlots.length; lcv++) {
+            List<SystemInjecteeImpl> injectees = initializerInjectees.get(lcv);
+            
+            if (!fillSlots(slots, currentSlot, injectees)) return null;
+            
+            initializerFirstSlots[lcv] = currentSlot;
+            initializerSlotCounts[lcv] = injectees.size();
+            currentSlot += injectees.size();
+        }
+        
+        Field fieldArray[] = fields.toArray(new Field[fields.size()]);
+        Method initializerArray[] = initializers.toArray(new Method[initializers.size()]);
+        
+        if (generatedBinding == null) {
+            for (Field field : fieldArray) {
+                if (!makeAccessible(field)) return null;
+            }
+            for (Method initializer : initializerArray) {
+                if (!makeAccessible(initializer)) return null;
+            }
+            if (postConstruct != null && !makeAccessible(postConstruct)) return null;
+        }
+        
+        return new InjectionPlan(constructor,
+                constructorSlots,
+                fieldArray,
+                fieldSlots,
+                initializerArray,
+                initializerFirstSlots,
+                initializerSlotCounts,
+                postConstruct,
+                slots,
+                generatedBinding);
+    }
+    
+    /**
+     * Puts the injectees into the slots in parameter position order
+     * 
+     * @return false if the positions are not exactly 0 to size-1
+     */
+    private static boolean fillSlots(SystemInjecteeImpl slots[], int firstSlot, List<SystemInjecteeImpl> injectees) {
+        int size = injectees.size();
+        
+        for (SystemInjecteeImpl injectee : injectees) {
+            int position = injectee.getPosition();
+            if (position < 0 || position >= size) return false;
+            if (slots[firstSlot + position] != null) return false;
+            
+            slots[firstSlot + position] = injectee;
+        }
+        
+        return true;
+    }
+    
+    private static boolean makeAccessible(final AccessibleObject ao) {
+        if (ao.isAccessible()) return true;
+        
+        try {
+            AccessController.doPrivileged(new PrivilegedAction<Object>() {
+
+                @Override
+                public Object run() {
+                    ao.setAccessible(true);
+                    return null;
+                }
+                
+            });
+        }
+        catch (SecurityException se) {
+            Logger.getLogger().debug("InjectionPlan", "makeAccessible", se);
+            return false;
+        }
+        
+        return true;
+    }
+    
+    /**
+     * All of the injection points of the class, in the order in which they
+     * must be resolved.  The array must not be modified
+     * 
+     * @return The injectee of every slot
+     */
+    /* package */ SystemInjecteeImpl[] getSlots() {
+        return slots;
+    }
+    
+    /**
+     * Creates the map of injectees to resolved values that is given to
+     * instance lifecycle listeners
+     * 
+     * @param resolved The resolved value of every slot
+     * @return A map from injectee to resolved value, without null values
+     */
+    /* package */ Map<Injectee, Object> toResolvedMap(Object resolved[]) {
+        Map<Injectee, Object> retVal = new LinkedHashMap<Injectee, Object>();
+        
+        for (int lcv = 0; lcv < slots.length; lcv++) {
+            if (resolved[lcv] == null) continue;
+            
+            retVal.put(slots[lcv], resolved[lcv]);
+        }
+        
+        return retVal;
+    }
+    
+    /* package */ Constructor<?> getConstructor() {
+        return constructor;
+    }
+    
+    /**
+     * Gets the arguments to the constructor from the resolved slots
+     * 
+     * @param resolved The resolved value of every slot
+     * @return The arguments to pass to the constructor
+     */
+    /* package */ Object[] getConstructorArguments(Object resolved[]) {
+        if (constructorSlots == 0) return NO_ARGS;
+        
+        Object retVal[] = new Object[constructorSlots];
+        System.arraycopy(resolved, 0, retVal, 0, constructorSlots);
+        
+        return retVal;
+    }
+    
+    /**
+     * Calls the constructor without interception.  The context
+     * class loader is not protected by this method
+     * 
+     * @param args The arguments from {@link #getConstructorArguments(Object[])}
+     * @return The newly created object
+     * @throws Throwable The unwrapped exception from the constructor
+     */
+    /* package */ Object construct(Object args[]) throws Throwable {
+        if (generatedCreator != null) return generatedCreator.create(args);
+        
+        try {
+            return constructor.newInstance(args);
+        }
+        catch (InvocationTargetException ite) {
+            Throwable targetException = ite.getTargetException();
+            Logger.getLogger().debug(constructor.getDeclaringClass().getName(), constructor.getName(), targetException);
+            throw targetException;
+        }
+    }
+    
+    /**
+     * Sets the fields of the given object.  The context class loader
+     * is not protected by this method
+     * 
+     * @param t The object to inject into
+     * @param resolved The resolved value of every slot
+     * @throws Throwable Any exception setting the fields
+     */
+    /* package */ void injectFields(Object t, Object resolved[]) throws Throwable {
+        if (generatedCreator != null) {
+            for (int lcv = 0; lcv < fieldPoints.length; lcv++) {
+                generatedCreator.inject(t, fieldPoints[lcv], new Object[] { resolved[fieldSlots[lcv]] });
+            }
+            
+            return;
+        }
+        
+        for (int lcv = 0; lcv < fields.length; lcv++) {
+            fields[lcv].set(t, resolved[fieldSlots[lcv]]);
+        }
+    }
+    
+    /**
+     * Calls the initializer methods of the given object.  The context
+     * class loader is not protected by this method
+     * 
+     * @param t The object to initialize
+     * @param resolved The resolved value of every slot
+     * @throws Throwable The unwrapped exception from an initializer method
+     */
+    /* package */ void injectMethods(Object t, Object resolved[]) throws Throwable {
+        for (int lcv = 0; lcv < initializers.length; lcv++) {
+            int count = initializerSlotCounts[lcv];
+            
+            Object args[];
+            if (count == 0) {
+                args = NO_ARGS;
+            }
+            else {
+                args = new Object[count];
+                System.arraycopy(resolved, initializerFirstSlots[lcv], args, 0, count);
+            }
+            
+            if (generatedCreator != null) {
+                generatedCreator.inject(t, initializerPoints[lcv], args);
+            }
+            else {
+                invoke(t, initializers[lcv], args);
+            }
+        }
+    }
+    
+    /**
+     * Calls the postConstruct method of the given object, if there
+     * is one.  The context class loader is not protected by this method
+     * 
+     * @param t The object to call postConstruct on
+     * @throws Throwable The unwrapped exception from the postConstruct method
+     */
+    /* package */ void postConstruct(Object t) throws Throwable {
+        if (postConstruct == null) return;
+        
+        if (generatedCreator != null) {
+            generatedCreator.postConstruct(t);
+            return;
+        }
+        
+        invoke(t, postConstruct, NO_ARGS);
+    }
+    
+    /**
+     * Calls the preDestroy method of the given object with the
+     * generated creator, if this plan has one
+     * 
+     * @param t The object to call preDestroy on
+     * @return false if there is no generated creator, in which case
+     * the caller must find and call the preDestroy method itself
+     * @throws Throwable The exception from the preDestroy method
+     */
+    /* package */ boolean preDestroy(Object t) throws Throwable {
+        if (generatedCreator == null) return false;
+        
+        generatedCreator.preDestroy(t);
+        return true;
+    }
+    
+    private static void invoke(Object t, Method m, Object args[]) throws Throwable {
+        try {
+            m.invoke(ReflectionHelper.isStatic(m) ? null : t, args);
+        }
+        catch (InvocationTargetException ite) {
+            Throwable targetException = ite.getTargetException();
+            Logger.getLogger().debug(m.getDeclaringClass().getName(), m.getName(), targetException);
+            throw targetException;
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return "InjectionPlan(" + constructor + "," + slots.length + "," + System.identityHashCode(this) + ")";
+    }
+}
@@ -76,9 +76,13 @@ public class MethodInterceptorHandler implements MethodHandler {
             
     });
     
+    private final static MethodInterceptor[] NO_INTERCEPTORS = new MethodInterceptor[0];
+    
     private final ServiceLocatorImpl locator;
     private final Map<Method, List<MethodInterceptor>> interceptorLists;
     private final ActiveDescriptor<?> underlyingDescriptor;
+    /** Only set when running compiled chains */
+    private final Map<Method, MethodInterceptor[]> compiledChains;
     
     /* package */ MethodInterceptorHandler(ServiceLocatorImpl locator,
             ActiveDescriptor<?> underlyingDescriptor,
@@ -86,6 +90,31 @@ public class MethodInterceptorHandler implements MethodHandler {
         this.locator = locator;
         this.interceptorLists = interceptorLists;
         this.underlyingDescriptor = underlyingDescriptor;
+        
+        if (locator.getCompiledInterceptors() && !DEBUG_INTERCEPTION) {
+            compiledChains = compile(interceptorLists);
+        }
+        else {
+            compiledChains = null;
+        }
+    }
+    
+    /**
+     * Turns the interceptor lists into arrays that are never copied
+     * again.  Methods without interceptors are left out, so their
+     * invocations go straight to the underlying method
+     */
+    private static Map<Method, MethodInterceptor[]> compile(Map<Method, List<MethodInterceptor>> interceptorLists) {
+        HashMap<Method, MethodInterceptor[]> retVal = new HashMap<Method, MethodInterceptor[]>();
+        
+        for (Map.Entry<Method, List<MethodInterceptor>> entry : interceptorLists.entrySet()) {
+            List<MethodInterceptor> interceptors = entry.getValue();
+            if (interceptors == null || interceptors.isEmpty()) continue;
+            
+            retVal.put(entry.getKey(), interceptors.toArray(NO_INTERCEPTORS));
+        }
+        
+        return retVal;
     }
 
     /* (non-Javadoc)
@@ -98,6 +127,15 @@ public class MethodInterceptorHandler implements MethodHandler {
             return underlyingDescriptor;
         }
         
+        if (compiledChains != null) {
+            MethodInterceptor chain[] = compiledChains.get(thisMethod);
+            if (chain == null) {
+                return ReflectionHelper.invoke(self, proceed, args, locator.getNeutralContextClassLoader());
+            }
+            
+            return new CompiledCall(args, thisMethod, self, chain, proceed).start();
+        }
+        
         List<MethodInterceptor> interceptors = interceptorLists.get(thisMethod);
         if (interceptors == null || interceptors.isEmpty()) {
             return ReflectionHelper.invoke(self, proceed, args, locator.getNeutralContextClassLoader());
@@ -251,4 +289,110 @@ public class MethodInterceptorHandler implements MethodHandler {
         
     }
 
+    
+    /**
+     * One of these is created per call of an intercepted method.  It holds
+     * what the whole chain shares along with one immutable invocation per
+     * position in the chain, so that an interceptor that keeps its
+     * invocation and proceeds again always continues after its own position
+     */
+    private class CompiledCall {
+        private final Object[] arguments;  // Live!
+        private final Method method;
+        private final Object myself;
+        private final MethodInterceptor[] chain;
+        private final Method proceed;
+        private final CompiledMethodInvocation[] invocations;
+        private HashMap<String, Object> userData;
+        
+        private CompiledCall(Object[] arguments,
+                Method method,
+                Object myself,
+                MethodInterceptor[] chain,
+                Method proceed) {
+            this.arguments = arguments;
+            this.method = method;
+            this.myself = myself;
+            this.chain = chain;
+            this.proceed = proceed;
+            
+            invocations = new CompiledMethodInvocation[chain.length];
+            for (int lcv = 0; lcv < chain.length; lcv++) {
+                invocations[lcv] = new CompiledMethodInvocation(this, lcv);
+            }
+        }
+        
+        private Object start() throws Throwable {
+            return chain[0].invoke(invocations[0]);
+        }
+    }
+    
+    private class CompiledMethodInvocation implements MethodInvocation, HK2Invocation {
+        private final CompiledCall call;
+        private final int index;
+        
+        private CompiledMethodInvocation(CompiledCall call, int index) {
+            this.call = call;
+            this.index = index;
+        }
+
+        @Override
+        public Object[] getArguments() {
+            return call.arguments;
+        }
+
+        @Override
+        public AccessibleObject getStaticPart() {
+            return call.method;
+        }
+
+        @Override
+        public Object getThis() {
+            return call.myself;
+        }
+
+        @Override
+        public Method getMethod() {
+            return call.method;
+        }
+        
+        @Override
+        public Object proceed() throws Throwable {
+            int next = index + 1;
+            if (next >= call.chain.length) {
+                // Call the actual method
+                return ReflectionHelper.invoke(call.myself, call.proceed, call.arguments, locator.getNeutralContextClassLoader());
+            }
+            
+            return call.chain[next].invoke(call.invocations[next]);
+        }
+
+        /* (non-Javadoc)
+         * @see org.glassfish.hk2.api.HK2Invocation#setUserData(java.lang.String, java.lang.Object)
+         */
+        @Override
+        public void setUserData(String key, Object data) {
+            if (key == null) throw new IllegalArgumentException();
+            
+            if (call.userData == null) call.userData = new HashMap<String, Object>();
+            
+            if (data == null) {
+                call.userData.remove(key);
+            }
+            else {
+                call.userData.put(key, data);
+            }
+        }
+
+        /* (non-Javadoc)
+         * @see org.glassfish.hk2.api.HK2Invocation#getUserData(java.lang.String)
+         */
+        @Override
+        public Object getUserData(String key) {
+            if (key == null) throw new IllegalArgumentException();
+            
+            if (call.userData == null) return null;
+            return call.userData.get(key);
+        }
+    }
 }
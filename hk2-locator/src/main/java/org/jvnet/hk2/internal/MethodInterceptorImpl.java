@@ -57,14 +57,17 @@ import org.glassfish.hk2.utilities.reflection.ReflectionHelper;
  * @author mtaube
  */
 public class MethodInterceptorImpl implements MethodHandler {
-    private final static String PROXY_MORE_METHOD_NAME = "__make";
-    
     private final ServiceLocatorImpl locator;
     private final ActiveDescriptor<?> descriptor;
     /** Original root node, needed for proper destruction */
     private final ServiceHandleImpl<?> root;
-    /** Actual injectee, needed for InstantiationService */
-    private final WeakReference<Injectee> myInjectee;
+    /**
+     * Actual injectee, needed for InstantiationService.  Null once it
+     * is known that nothing will ask for it
+     */
+    private volatile WeakReference<Injectee> myInjectee;
+    /** The last context resolved for the descriptor, may be null */
+    private volatile ResolvedContext resolvedContext;
     
     /* package */ MethodInterceptorImpl(ServiceLocatorImpl sli,
             ActiveDescriptor<?> descriptor,
@@ -85,7 +88,7 @@ public class MethodInterceptorImpl implements MethodHandler {
         Context<?> context;
         Object service;
 
-        context = locator.resolveContext(descriptor.getScopeAnnotation());
+        context = getContext();
         service = context.findOrCreate(descriptor, root);
 
         if (service == null) {
@@ -94,12 +97,12 @@ public class MethodInterceptorImpl implements MethodHandler {
                     " and handle " + root));
         }
 
-        if (method.getName().equals(PROXY_MORE_METHOD_NAME)) {
-            // We did what we came here to do
+        if (method.getDeclaringClass() == ProxyCtl.class) {
+            // __make, we did what we came here to do
             return service;
         }
         
-        if (isEquals(method) && (params.length == 1) && (params[0] != null) && (params[0] instanceof ProxyCtl)) {
+        if ((params != null) && (params.length == 1) && (params[0] instanceof ProxyCtl) && isEquals(method)) {
             ProxyCtl equalsProxy = (ProxyCtl) params[0];
             
             params = new Object[1];
@@ -110,11 +113,39 @@ public class MethodInterceptorImpl implements MethodHandler {
         
     }
 
+    /**
+     * The scope of the descriptor does not change, so the context is only
+     * resolved again from the locator when it goes inactive or when the
+     * set of contexts in the locator may have changed
+     */
+    private Context<?> getContext() {
+        ResolvedContext resolved = resolvedContext;
+        if (resolved != null &&
+                resolved.generation == locator.getContextGeneration() &&
+                resolved.context.isActive()) {
+            return resolved.context;
+        }
+        
+        // The generation must be read before resolving
+        int generation = locator.getContextGeneration();
+        Context<?> context = locator.resolveContext(descriptor.getScopeAnnotation());
+        
+        resolvedContext = new ResolvedContext(context, generation);
+        
+        return context;
+    }
+
     @Override
     public Object invoke(Object target, Method method, Method proceed, Object[] params) throws Throwable {
+        WeakReference<Injectee> injecteeReference = myInjectee;
+        if (injecteeReference == null) {
+            // Nothing will ask for the injectee, so there is nothing to push
+            return internalInvoke(target, method, proceed, params);
+        }
+        
         boolean pushed = false;
-        if (root != null && myInjectee != null) {
-            Injectee ref = myInjectee.get();
+        if (root != null) {
+            Injectee ref = injecteeReference.get();
             if (ref != null) {
                 root.pushInjectee(ref);
                 pushed = true;
@@ -128,6 +159,11 @@ public class MethodInterceptorImpl implements MethodHandler {
             if (pushed) {
                 root.popInjectee();
             }
+            
+            if (!ProxyUtilities.carriesInjectee(descriptor)) {
+                // Now that the descriptor is reified we know better
+                myInjectee = null;
+            }
         }
 
     }
@@ -142,4 +178,14 @@ public class MethodInterceptorImpl implements MethodHandler {
         if (!Object.class.equals(params[0])) return false;
         return true;
     }
+    
+    private final static class ResolvedContext {
+        private final Context<?> context;
+        private final int generation;
+        
+        private ResolvedContext(Context<?> context, int generation) {
+            this.context = context;
+            this.generation = generation;
+        }
+    }
 }
@@ -40,12 +40,23 @@
 
 package org.jvnet.hk2.internal;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.glassfish.hk2.api.ActiveDescriptor;
 import org.glassfish.hk2.api.DescriptorFileFinder;
@@ -56,6 +67,7 @@ import org.glassfish.hk2.api.MultiException;
 import org.glassfish.hk2.api.Populator;
 import org.glassfish.hk2.api.PopulatorPostProcessor;
 import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.utilities.BinaryDescriptorFile;
 import org.glassfish.hk2.utilities.ClasspathDescriptorFileFinder;
 import org.glassfish.hk2.utilities.DescriptorImpl;
 
@@ -65,6 +77,24 @@ import org.glassfish.hk2.utilities.DescriptorImpl;
  * @author jwells
  */
 public class PopulatorImpl implements Populator {
+    private final static String POPULATOR_THREADS_PROPERTY = "org.jvnet.hk2.properties.populator.threads";
+    
+    /**
+     * If greater than one descriptor files are read and post-processed on
+     * an executor with this many threads.  The post-processors must then
+     * be safe to call from several threads at once
+     */
+    private final static int POPULATOR_THREADS = AccessController.doPrivileged(new PrivilegedAction<Integer>() {
+
+        @Override
+        public Integer run() {
+            return Integer.getInteger(POPULATOR_THREADS_PROPERTY, 0);
+        }
+            
+    });
+    
+    private final static ExecutorService PARALLEL_EXECUTOR = ContextClassLoaderHelper.createExecutor(POPULATOR_THREADS, "PopulatorThread");
+    
     private final ServiceLocator serviceLocator;
     private final DynamicConfigurationService dcs;
     
@@ -111,75 +141,83 @@ public class PopulatorImpl implements Populator {
             throw new MultiException(th);
         }
         
-        Collector collector = new Collector();
-
-        DynamicConfiguration config = dcs.createDynamicConfiguration();
-
+        List<DescriptorFile> files = new ArrayList<DescriptorFile>(descriptorFileInputStreams.size());
+        
         int lcv = 0;
         for (InputStream is : descriptorFileInputStreams) {
             String identifier = (descriptorInformation == null) ? null : descriptorInformation.get(lcv) ;
             lcv++;
-
-            BufferedReader br = new BufferedReader(new InputStreamReader(is));
-
-            try {
-                boolean readOne = false;
-
-                do {
-                    DescriptorImpl descriptorImpl = new DescriptorImpl();
-
-                    try {
-                        readOne = descriptorImpl.readObject(br);
-                    }
-                    catch (IOException ioe) {
-                        if (identifier != null) {
-                            collector.addThrowable(new IOException("InputStream with identifier \"" + identifier + "\" failed", ioe));
-                        }
-                        else {
-                            collector.addThrowable(ioe);
-                        }
-                    }
-
-                    if (readOne) {
-                            
-                        for (PopulatorPostProcessor pp : postProcessors) {
-                            try {
-                                descriptorImpl = pp.process(serviceLocator, descriptorImpl);
-                            }
-                            catch (Throwable th) {
-                                if (identifier != null) {
-                                    collector.addThrowable(new IOException("InputStream with identifier \"" + identifier + "\" failed", th));
-                                }
-                                else {
-                                    collector.addThrowable(th);
-                                }
-                                descriptorImpl = null;
-                            }
-
-                            if (descriptorImpl == null) {
-                                break;
-                            }
-                        }
-                            
-                        if (descriptorImpl != null) {
-                            descriptors.add(config.bind(descriptorImpl, false));
-                        }
-
-                    }
-                } while (readOne);
-
-            } finally {
-                br.close();
+            
+            files.add(new DescriptorFile(is, identifier, postProcessors));
+        }
+        
+        if (PARALLEL_EXECUTOR == null || files.size() <= 1) {
+            for (DescriptorFile file : files) {
+                file.run();
             }
         }
+        else {
+            readInParallel(files);
+        }
+        
+        // Errors and descriptors are gathered in file order no matter how the files were read
+        Collector collector = new Collector();
+        for (DescriptorFile file : files) {
+            collector.addThrowable(file.getErrors());
+        }
         
         // Prior to commit!
         collector.throwIfErrors();
+        
+        DynamicConfiguration config = dcs.createDynamicConfiguration();
+        
+        for (DescriptorFile file : files) {
+            for (DescriptorImpl descriptorImpl : file.getDescriptors()) {
+                descriptors.add(config.bind(descriptorImpl, false));
+            }
+        }
 
         config.commit();
 
         return descriptors;
     }
+    
+    /**
+     * Reads the files on the parallel executor and waits for all of them
+     * to finish.  The files are read with the context class loader of
+     * the calling thread
+     */
+    private static void readInParallel(List<DescriptorFile> files) throws IOException {
+        ClassLoader loader = ContextClassLoaderHelper.getContextClassLoader();
+        
+        List<Future<?>> futures = new ArrayList<Future<?>>(files.size());
+        for (DescriptorFile file : files) {
+            futures.add(PARALLEL_EXECUTOR.submit(ContextClassLoaderHelper.withContextClassLoader(file, loader)));
+        }
+        
+        for (int lcv = 0; lcv < futures.size(); lcv++) {
+            try {
+                futures.get(lcv).get();
+            }
+            catch (ExecutionException ee) {
+                // DescriptorFile catches its own errors, so this is unexpected
+                throw new MultiException(ee.getCause());
+            }
+            catch (InterruptedException ie) {
+                for (int inner = lcv; inner < futures.size(); inner++) {
+                    if (futures.get(inner).cancel(false)) {
+                        files.get(inner).close();
+                    }
+                }
+                
+                Thread.currentThread().interrupt();
+                
+                InterruptedIOException iioe = new InterruptedIOException("Interrupted while reading descriptor files");
+                iioe.initCause(ie);
+                throw iioe;
+            }
+        }
+    }
 
     /* (non-Javadoc)
      * @see org.glassfish.hk2.api.Populator#populate()
@@ -189,4 +227,165 @@ public class PopulatorImpl implements Populator {
         return populate(new ClasspathDescriptorFileFinder());
     }
 
+    /**
+     * Reads a single descriptor file and runs the post-processors over the
+     * descriptors found in it.  This is the unit of work that can be done
+     * in parallel, since it does not touch the DynamicConfiguration
+     */
+    private class DescriptorFile implements Runnable {
+        private final InputStream is;
+        private final String identifier;
+        private final PopulatorPostProcessor postProcessors[];
+        private final List<DescriptorImpl> descriptors = new ArrayList<DescriptorImpl>();
+        private final Collector collector = new Collector();
+        
+        private DescriptorFile(InputStream is, String identifier, PopulatorPostProcessor postProcessors[]) {
+            this.is = is;
+            this.identifier = identifier;
+            this.postProcessors = postProcessors;
+        }
+        
+        @Override
+        public void run() {
+            InputStream input = is;
+            try {
+                BinaryDescriptorFile binary;
+                if (is instanceof FileInputStream) {
+                    ByteBuffer mapped = mapIfBinary((FileInputStream) is);
+                    binary = (mapped == null) ? null : new BinaryDescriptorFile(mapped) ;
+                }
+                else {
+                    if (!input.markSupported()) input = new BufferedInputStream(input);
+                    
+                    binary = BinaryDescriptorFile.readIfBinary(input);
+                }
+                
+                if (binary != null) {
+                    readBinary(binary);
+                }
+                else {
+                    readText(new BufferedReader(new InputStreamReader(input)));
+                }
+            }
+            catch (Throwable th) {
+                addError(th);
+            }
+            finally {
+                try {
+                    input.close();
+                }
+                catch (IOException ioe) {
+                    addError(ioe);
+                }
+            }
+        }
+        
+        /**
+         * Reads every descriptor from a text descriptor file, as written by
+         * {@link DescriptorImpl#writeObject(java.io.PrintWriter)}
+         */
+        private void readText(BufferedReader br) {
+            boolean readOne = false;
+
+            do {
+                DescriptorImpl descriptorImpl = new DescriptorImpl();
+
+                try {
+                    readOne = descriptorImpl.readObject(br);
+                }
+                catch (IOException ioe) {
+                    addError(ioe);
+                }
+
+                if (readOne) {
+                    process(descriptorImpl);
+                }
+            } while (readOne);
+        }
+        
+        /**
+         * Reads every descriptor from a binary descriptor file, as written by
+         * {@link BinaryDescriptorFile#write(java.util.Collection, java.io.OutputStream)}
+         */
+        private void readBinary(BinaryDescriptorFile file) throws IOException {
+            int numDescriptors = file.getNumDescriptors();
+            for (int lcv = 0; lcv < numDescriptors; lcv++) {
+                process(file.getDescriptor(lcv));
+            }
+        }
+        
+        private void process(DescriptorImpl descriptorImpl) {
+            for (PopulatorPostProcessor pp : postProcessors) {
+                try {
+                    descriptorImpl = pp.process(serviceLocator, descriptorImpl);
+                }
+                catch (Throwable th) {
+                    addError(th);
+                    descriptorImpl = null;
+                }
+
+                if (descriptorImpl == null) {
+                    return;
+                }
+            }
+            
+            descriptors.add(descriptorImpl);
+        }
+        
+        private void addError(Throwable th) {
+            if (identifier != null) {
+                collector.addThrowable(new IOException("InputStream with identifier \"" + identifier + "\" failed", th));
+            }
+            else {
+                collector.addThrowable(th);
+            }
+        }
+        
+        private void close() {
+            try {
+                is.close();
+            }
+            catch (IOException ioe) {
+                // Ignored, the file was never read
+            }
+        }
+        
+        private List<DescriptorImpl> getDescriptors() {
+            return descriptors;
+        }
+        
+        private MultiException getErrors() {
+            try {
+                collector.throwIfErrors();
+                return null;
+            }
+            catch (MultiException me) {
+                return me;
+            }
+        }
+    }
+    
+    /**
+     * Memory maps the remainder of the file if it is a binary descriptor
+     * file.  The position of the stream is not changed
+     * 
+     * @return The mapped file, or null if this is not a binary descriptor file
+     */
+    private static ByteBuffer mapIfBinary(FileInputStream fis) throws IOException {
+        FileChannel channel = fis.getChannel();
+        
+        long position = channel.position();
+        long size = channel.size() - position;
+        if (size < 4 || size > Integer.MAX_VALUE) return null;
+        
+        ByteBuffer magic = ByteBuffer.allocate(4);
+        while (magic.hasRemaining()) {
+            if (channel.read(magic, position + magic.position()) < 0) return null;
+        }
+        
+        if (magic.getInt(0) != BinaryDescriptorFile.MAGIC) return null;
+        
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+    }
+
 }
@@ -40,11 +40,14 @@
 
 package org.jvnet.hk2.internal;
 
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Proxy;
 import java.security.AccessControlException;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.glassfish.hk2.api.ActiveDescriptor;
 import org.glassfish.hk2.api.Injectee;
@@ -57,14 +60,16 @@ import javassist.util.proxy.ProxyFactory;
 import javassist.util.proxy.ProxyObject;
 
 /**
- * Utilities around proxying
+ * Utilities around proxying.  The proxy classes are generated once per
+ * superclass, set of interfaces and classloader, after which creating a
+ * proxy is a lock-free lookup of the cached constructor
  * 
  * @author jwells
  *
  */
 public class ProxyUtilities {
-    private final static Object proxyCreationLock = new Object();
-    private final HashMap<ClassLoader, DelegatingClassLoader> superClassToDelegator = new HashMap<ClassLoader, DelegatingClassLoader>();
+    private final ConcurrentHashMap<ClassLoader, DelegatingClassLoader> superClassToDelegator = new ConcurrentHashMap<ClassLoader, DelegatingClassLoader>();
+    private final ConcurrentHashMap<ProxyKey, Constructor<?>> proxyConstructors = new ConcurrentHashMap<ProxyKey, Constructor<?>>();
     
     /**
      * We put the anchor as the value even though we don't use it in order to
@@ -78,10 +83,11 @@ public class ProxyUtilities {
      * map should leak that it will leak big, making it easier to detect
      * @return
      */
+    @SuppressWarnings("unchecked")
     private <T> T secureCreate(final Class<?> superclass,
             final Class<?>[] interfaces,
             final MethodHandler callback,
-            boolean useJDKProxy,
+            final boolean useJDKProxy,
             ServiceLocator anchor) {
 
         /* construct the classloader where the generated proxy will be created --
@@ -113,82 +119,90 @@ public class ProxyUtilities {
             
         });
         
-        DelegatingClassLoader initDelegatingLoader;
-        synchronized (superClassToDelegator) {
-            initDelegatingLoader = superClassToDelegator.get(loader);
-            if (initDelegatingLoader == null) {
-                initDelegatingLoader = AccessController.doPrivileged(new PrivilegedAction<DelegatingClassLoader>() {
-
-                    @Override
-                    public DelegatingClassLoader run() {
-                        return new DelegatingClassLoader(
-                                loader,
-                                ProxyFactory.class.getClassLoader(),
-                                ProxyCtl.class.getClassLoader());
-                    }
-                    
-                });
-                
-                superClassToDelegator.put(loader, initDelegatingLoader);
-            }
+        ProxyKey key = new ProxyKey(loader, superclass, interfaces, useJDKProxy);
+        Constructor<?> proxyConstructor = proxyConstructors.get(key);
+        if (proxyConstructor == null) {
+            proxyConstructor = createProxyConstructor(loader, superclass, interfaces, useJDKProxy);
+            
+            Constructor<?> existing = proxyConstructors.putIfAbsent(key, proxyConstructor);
+            if (existing != null) proxyConstructor = existing;
         }
         
-        final DelegatingClassLoader delegatingLoader = initDelegatingLoader;
-
-        if (useJDKProxy) {
-            return AccessController.doPrivileged(new PrivilegedAction<T>() {
-
-                @SuppressWarnings("unchecked")
-                @Override
-                public T run() {
-                    return (T) Proxy.newProxyInstance(delegatingLoader, interfaces,
-                            new MethodInterceptorInvocationHandler(callback));
-                }
+        try {
+            if (useJDKProxy) {
+                return (T) proxyConstructor.newInstance(new MethodInterceptorInvocationHandler(callback));
+            }
+            
+            T proxy = (T) proxyConstructor.newInstance();
 
-            });
+            ((ProxyObject) proxy).setHandler(callback);
 
+            return proxy;
+        }
+        catch (Exception e1) {
+            throw new RuntimeException(e1);
         }
 
-        return AccessController.doPrivileged(new PrivilegedAction<T>() {
+    }
+    
+    private DelegatingClassLoader getDelegatingLoader(final ClassLoader loader) {
+        DelegatingClassLoader retVal = superClassToDelegator.get(loader);
+        if (retVal != null) return retVal;
+        
+        retVal = AccessController.doPrivileged(new PrivilegedAction<DelegatingClassLoader>() {
 
-            @SuppressWarnings("unchecked")
             @Override
-            public T run() {
-                synchronized (proxyCreationLock) {
-                    ProxyFactory.ClassLoaderProvider originalProvider = ProxyFactory.classLoaderProvider;
-                    ProxyFactory.classLoaderProvider = new ProxyFactory.ClassLoaderProvider() {
-                        
-                        @Override
-                        public ClassLoader get(ProxyFactory arg0) {
-                            return delegatingLoader;
-                        }
-                    };
-                    
-                    try {
-                        ProxyFactory proxyFactory = new ProxyFactory();
+            public DelegatingClassLoader run() {
+                return new DelegatingClassLoader(
+                        loader,
+                        ProxyFactory.class.getClassLoader(),
+                        ProxyCtl.class.getClassLoader());
+            }
+            
+        });
+        
+        DelegatingClassLoader existing = superClassToDelegator.putIfAbsent(loader, retVal);
+        return (existing != null) ? existing : retVal;
+    }
+    
+    /**
+     * Generates the proxy class and returns the accessible constructor
+     * used to create instances of it.  Two threads may race to get here
+     * with the same key, in which case the loser's constructor is dropped
+     */
+    private Constructor<?> createProxyConstructor(final ClassLoader loader,
+            final Class<?> superclass,
+            final Class<?>[] interfaces,
+            final boolean useJDKProxy) {
+        final DelegatingClassLoader delegatingLoader = getDelegatingLoader(loader);
+        
+        return AccessController.doPrivileged(new PrivilegedAction<Constructor<?>>() {
+
+            @Override
+            public Constructor<?> run() {
+                Constructor<?> retVal;
+                try {
+                    if (useJDKProxy) {
+                        retVal = Proxy.getProxyClass(delegatingLoader, interfaces).getConstructor(InvocationHandler.class);
+                    }
+                    else {
+                        ProxyFactory proxyFactory = new DelegatingProxyFactory(delegatingLoader);
                         proxyFactory.setInterfaces(interfaces);
                         proxyFactory.setSuperclass(superclass);
 
-                        Class<?> proxyClass = proxyFactory.createClass();
-
-                        try {
-                            T proxy = (T) proxyClass.newInstance();
-
-                            ((ProxyObject) proxy).setHandler(callback);
-
-                            return proxy;
-                        } catch (Exception e1) {
-                            throw new RuntimeException(e1);
-                        }
-                    }
-                    finally {
-                        ProxyFactory.classLoaderProvider = originalProvider;
+                        retVal = proxyFactory.createClass().getDeclaredConstructor();
                     }
                 }
+                catch (NoSuchMethodException nsme) {
+                    throw new RuntimeException(nsme);
+                }
+                
+                retVal.setAccessible(true);
+                
+                return retVal;
             }
 
         });
-
     }
     
     @SuppressWarnings("unchecked")
@@ -217,7 +231,7 @@ public class ProxyUtilities {
         try {
             proxy = (T) secureCreate(proxyClass,
                 iFaces,
-                new MethodInterceptorImpl(locator, root, handle, injectee),
+                new MethodInterceptorImpl(locator, root, handle, carriesInjectee(root) ? injectee : null),
                 isInterface, locator);
         }
         catch (Throwable th) {
@@ -240,9 +254,76 @@ public class ProxyUtilities {
         return proxy;
     }
     
+    /**
+     * A proxy need only push its injectee onto the root handle for every
+     * call if creating the service might ask the InstantiationService for it.
+     * That is not known until the descriptor has been reified
+     */
+    /* package */ static boolean carriesInjectee(ActiveDescriptor<?> root) {
+        if (!(root instanceof SystemDescriptor) || !root.isReified()) return true;
+        
+        return ((SystemDescriptor<?>) root).isInstantiationServiceConsumer();
+    }
+    
     public void releaseCache() {
-        synchronized (superClassToDelegator) {
-            superClassToDelegator.clear();
+        proxyConstructors.clear();
+        superClassToDelegator.clear();
+    }
+    
+    /**
+     * Defines the proxy class in the given loader without going through
+     * the static {@link ProxyFactory#classLoaderProvider}, which would
+     * otherwise have to be swapped under a JVM-wide lock
+     */
+    private static class DelegatingProxyFactory extends ProxyFactory {
+        private final ClassLoader loader;
+        
+        private DelegatingProxyFactory(ClassLoader loader) {
+            this.loader = loader;
+        }
+        
+        @Override
+        protected ClassLoader getClassLoader() {
+            return loader;
+        }
+    }
+    
+    private final static class ProxyKey {
+        private final ClassLoader loader;
+        private final Class<?> superclass;
+        private final Class<?>[] interfaces;
+        private final boolean useJDKProxy;
+        private final int hashCode;
+        
+        private ProxyKey(ClassLoader loader, Class<?> superclass, Class<?>[] interfaces, boolean useJDKProxy) {
+            this.loader = loader;
+            this.superclass = superclass;
+            this.interfaces = interfaces;
+            this.useJDKProxy = useJDKProxy;
+            
+            int hash = System.identityHashCode(loader);
+            hash = (31 * hash) + superclass.hashCode();
+            hash = (31 * hash) + Arrays.hashCode(interfaces);
+            hashCode = useJDKProxy ? ~hash : hash;
+        }
+        
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) return true;
+            if (!(o instanceof ProxyKey)) return false;
+            
+            ProxyKey other = (ProxyKey) o;
+            if (hashCode != other.hashCode) return false;
+            
+            return (loader == other.loader) &&
+                    superclass.equals(other.superclass) &&
+                    (useJDKProxy == other.useJDKProxy) &&
+                    Arrays.equals(interfaces, other.interfaces);
         }
     }
 }
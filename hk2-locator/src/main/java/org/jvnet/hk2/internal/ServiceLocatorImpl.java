@@ -49,11 +49,13 @@ import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -70,6 +72,7 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
 
+import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Provider;
 import javax.inject.Singleton;
@@ -84,6 +87,7 @@ import org.glassfish.hk2.api.DynamicConfigurationListener;
 import org.glassfish.hk2.api.ErrorService;
 import org.glassfish.hk2.api.ErrorType;
 import org.glassfish.hk2.api.Filter;
+import org.glassfish.hk2.api.GeneratedCreator;
 import org.glassfish.hk2.api.HK2Loader;
 import org.glassfish.hk2.api.IndexedFilter;
 import org.glassfish.hk2.api.Injectee;
@@ -111,15 +115,19 @@ import org.glassfish.hk2.api.Validator;
 import org.glassfish.hk2.api.messaging.Topic;
 import org.glassfish.hk2.utilities.BuilderHelper;
 import org.glassfish.hk2.utilities.InjecteeImpl;
-import org.glassfish.hk2.utilities.cache.CacheKeyFilter;
+import org.glassfish.hk2.utilities.cache.CacheKeyIndexer;
+import org.glassfish.hk2.utilities.cache.CacheStatistics;
 import org.glassfish.hk2.utilities.cache.CacheUtilities;
 import org.glassfish.hk2.utilities.cache.ComputationErrorException;
 import org.glassfish.hk2.utilities.cache.WeakCARCache;
+import org.glassfish.hk2.utilities.cache.internal.AdaptiveCacheSizer;
 import org.glassfish.hk2.utilities.reflection.ClassReflectionHelper;
 import org.glassfish.hk2.utilities.reflection.Logger;
 import org.glassfish.hk2.utilities.reflection.ParameterizedTypeImpl;
 import org.glassfish.hk2.utilities.reflection.ReflectionHelper;
 import org.glassfish.hk2.utilities.reflection.internal.ClassReflectionHelperImpl;
+import org.glassfish.hk2.utilities.reflection.internal.SharedClassReflectionHelperImpl;
+import org.jvnet.hk2.external.runtime.ServiceLocatorRuntimeBean;
 
 /**
  * @author jwells
@@ -145,7 +153,20 @@ public class ServiceLocatorImpl implements ServiceLocator {
             
     });
 
+    private final static String LOCK_FREE_LOOKUPS_PROPERTY = "org.jvnet.hk2.properties.lockFreeLookups";
+    private final static String COMPILED_INTERCEPTORS_PROPERTY = "org.jvnet.hk2.properties.compiledInterceptors";
+    private final static String SHARED_REFLECTION_CACHE_PROPERTY = "org.jvnet.hk2.properties.sharedReflectionCache";
+    private final static String SHARED_CLASS_ANALYSIS_PROPERTY = "org.jvnet.hk2.properties.sharedClassAnalysis";
+    private final static String GENERATED_CREATORS_PROPERTY = "org.jvnet.hk2.properties.generatedCreators";
+    private final static String CONCURRENT_SERVICE_CACHE_PROPERTY = "org.jvnet.hk2.properties.serviceCache.concurrent";
+
+    private final static String SERVICE_CACHE_SIZE_PROPERTY = "org.jvnet.hk2.properties.serviceCache.size";
+    private final static String SERVICE_CACHE_ADAPTIVE_PROPERTY = "org.jvnet.hk2.properties.serviceCache.adaptive";
+
     private final static int CACHE_SIZE = 20000;
+    
+    /** The size an adaptive service cache starts at, and will not shrink below */
+    private final static int ADAPTIVE_MIN_CACHE_SIZE = 256;
     private final static Object sLock = new Object();
     private static long currentLocatorId = 0L;
 
@@ -160,7 +181,10 @@ public class ServiceLocatorImpl implements ServiceLocator {
     private final long id;
     private final ServiceLocatorImpl parent;
     private volatile boolean neutralContextClassLoader = true;
-    private final ClassReflectionHelper classReflectionHelper = new ClassReflectionHelperImpl();
+    private final ClassReflectionHelper classReflectionHelper;
+    private final boolean sharedReflectionCache;
+    private final boolean sharedClassAnalysis;
+    private final boolean generatedCreators;
     private final PerLocatorUtilities perLocatorUtilities = new PerLocatorUtilities(this);
 
     private final IndexedListData allDescriptors = new IndexedListData();
@@ -172,8 +196,8 @@ public class ServiceLocatorImpl implements ServiceLocator {
     private final Context<PerLookup> perLookupContext = new PerLookupContext();
     private final LinkedHashSet<ValidationService> allValidators =
             new LinkedHashSet<ValidationService>();
-    private final LinkedList<ErrorService> errorHandlers =
-            new LinkedList<ErrorService>();
+    private volatile LinkedList<ErrorService> errorHandlers =
+            new LinkedList<ErrorService>();  // Never modified, replaced when changed
     private final LinkedList<ServiceHandle<?>> configListeners =
             new LinkedList<ServiceHandle<?>>();
     
@@ -188,6 +212,11 @@ public class ServiceLocatorImpl implements ServiceLocator {
             return _resolveContext(a);
         }
     });
+    /**
+     * Incremented every time the contextCache is cleared, so that holders
+     * of a resolved Context (such as proxies) can tell it may be stale
+     */
+    private volatile int contextGeneration = 0;
     private final Map<ServiceLocatorImpl, ServiceLocatorImpl> children =
             new WeakHashMap<ServiceLocatorImpl, ServiceLocatorImpl>(); // Must be Weak for throw away children
 
@@ -210,6 +239,33 @@ public class ServiceLocatorImpl implements ServiceLocator {
     });
 
     private ServiceLocatorState state = ServiceLocatorState.RUNNING;
+    
+    /**
+     * If true lookups read descriptorSnapshot and do not take rLock.  The
+     * cacheEpoch and invalidationEpochs are used to detect cache entries
+     * that were computed against a snapshot that was replaced while the
+     * entry was being computed
+     */
+    private final boolean lockFreeLookups;
+    private final boolean compiledInterceptors;
+    private volatile DescriptorSnapshot descriptorSnapshot = DescriptorSnapshot.EMPTY;
+    private volatile long cacheEpoch = 0L;
+    private final ConcurrentHashMap<String, Long> invalidationEpochs =
+            new ConcurrentHashMap<String, Long>();
+    
+    /**
+     * The result of getService(Class) lookups with no name and no qualifiers,
+     * keyed by the name of the class.  These are removed by reupCache along
+     * with the other lookup caches, and are only used when there are no
+     * validation services
+     */
+    private final ConcurrentHashMap<String, FastLookup> fastLookups =
+            new ConcurrentHashMap<String, FastLookup>();
+    
+    private final Object serviceCacheSizeLock = new Object();
+    private volatile int serviceCacheCeiling = CACHE_SIZE;
+    private volatile AdaptiveCacheSizer igdSizer;
+    private volatile AdaptiveCacheSizer igashSizer;
 
     private static long getAndIncrementLocatorId() {
         synchronized (sLock) {
@@ -231,6 +287,77 @@ public class ServiceLocatorImpl implements ServiceLocator {
         }
 
         id = getAndIncrementLocatorId();
+        
+        lockFreeLookups = AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
+            @Override
+            public Boolean run() {
+                return Boolean.parseBoolean(
+                    System.getProperty(LOCK_FREE_LOOKUPS_PROPERTY, "false"));
+            }
+            
+        });
+        
+        compiledInterceptors = AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
+            @Override
+            public Boolean run() {
+                return Boolean.parseBoolean(
+                    System.getProperty(COMPILED_INTERCEPTORS_PROPERTY, "false"));
+            }
+            
+        });
+        
+        sharedReflectionCache = AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
+            @Override
+            public Boolean run() {
+                return Boolean.parseBoolean(
+                    System.getProperty(SHARED_REFLECTION_CACHE_PROPERTY, "false"));
+            }
+            
+        });
+        classReflectionHelper = (sharedReflectionCache) ?
+                SharedClassReflectionHelperImpl.getInstance() :
+                new ClassReflectionHelperImpl();
+        
+        sharedClassAnalysis = AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
+            @Override
+            public Boolean run() {
+                return Boolean.parseBoolean(
+                    System.getProperty(SHARED_CLASS_ANALYSIS_PROPERTY, "false"));
+            }
+            
+        });
+        
+        generatedCreators = AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
+            @Override
+            public Boolean run() {
+                return Boolean.parseBoolean(
+                    System.getProperty(GENERATED_CREATORS_PROPERTY, "false"));
+            }
+            
+        });
+        
+        int serviceCacheSize = AccessController.doPrivileged(new PrivilegedAction<Integer>() {
+            @Override
+            public Integer run() {
+                return Integer.getInteger(SERVICE_CACHE_SIZE_PROPERTY, CACHE_SIZE);
+            }
+            
+        });
+        if (serviceCacheSize > 0 && serviceCacheSize != CACHE_SIZE) {
+            setServiceCacheMaximumSize(serviceCacheSize);
+        }
+        
+        boolean adaptiveServiceCache = AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
+            @Override
+            public Boolean run() {
+                return Boolean.parseBoolean(
+                    System.getProperty(SERVICE_CACHE_ADAPTIVE_PROPERTY, "false"));
+            }
+            
+        });
+        if (adaptiveServiceCache) {
+            setServiceCacheAdaptive(true);
+        }
 
         Logger.getLogger().debug("Created ServiceLocator " + this);
         if (BIND_TRACING_PATTERN != null) {
@@ -245,7 +372,7 @@ public class ServiceLocatorImpl implements ServiceLocator {
      * @param vi The non-null validation
      * @return
      */
-    private boolean callValidate(ValidationService vs, ValidationInformation vi) {
+    /* package */ boolean callValidate(ValidationService vs, ValidationInformation vi) {
         try {
             return vs.getValidator().validate(vi);
         }
@@ -308,81 +435,110 @@ public class ServiceLocatorImpl implements ServiceLocator {
         if (filter == null) throw new IllegalArgumentException("filter is null");
 
         LinkedList<SystemDescriptor<?>> retVal;
-        rLock.lock();
-        try {
-            Collection<SystemDescriptor<?>> sortMeOut;
-            if (filter instanceof IndexedFilter) {
-                IndexedFilter df = (IndexedFilter) filter;
+        if (useDescriptorSnapshot()) {
+            retVal = getLocalDescriptors(descriptorSnapshot, filter, onBehalfOf, doValidation, getLocals);
+        }
+        else {
+            rLock.lock();
+            try {
+                retVal = getLocalDescriptors(null, filter, onBehalfOf, doValidation, getLocals);
+            } finally {
+                rLock.unlock();
+            }
+        }
+
+        // Must be done outside of lock, or there can be a deadlock between child and parent
+        if (getParents && parent != null) {
+            TreeSet<SystemDescriptor<?>> sorter = new TreeSet<SystemDescriptor<?>>(DESCRIPTOR_COMPARATOR);
 
-                if (df.getName() != null) {
-                    Collection<SystemDescriptor<?>> scopedByName;
+            sorter.addAll(retVal);
+            sorter.addAll(parent.getDescriptors(filter, onBehalfOf, getParents, doValidation, false));
 
-                    String name = df.getName();
+            retVal.clear();
 
-                    IndexedListData ild = descriptorsByName.get(name);
-                    scopedByName = (ild == null) ? null : ild.getSortedList();
-                    if (scopedByName == null) {
-                        scopedByName = Collections.emptyList();
-                    }
+            retVal.addAll(sorter);
+        }
 
-                    if (df.getAdvertisedContract() != null) {
-                        sortMeOut = new LinkedList<SystemDescriptor<?>>();
+        return retVal;
+    }
 
-                        for (SystemDescriptor<?> candidate : scopedByName) {
-                            if (candidate.getAdvertisedContracts().contains(df.getAdvertisedContract())) {
-                                sortMeOut.add(candidate);
-                            }
-                        }
-                    }
-                    else {
-                        sortMeOut = scopedByName;
-                    }
+    /**
+     * Gets the matching descriptors from this locator only.  If snapshot is
+     * null the live indexes are used and the read lock must be held
+     */
+    private LinkedList<SystemDescriptor<?>> getLocalDescriptors(DescriptorSnapshot snapshot,
+            Filter filter,
+            Injectee onBehalfOf,
+            boolean doValidation,
+            boolean getLocals) {
+        Collection<SystemDescriptor<?>> sortMeOut;
+        if (filter instanceof IndexedFilter) {
+            IndexedFilter df = (IndexedFilter) filter;
+
+            if (df.getName() != null) {
+                Collection<SystemDescriptor<?>> scopedByName;
+
+                String name = df.getName();
+
+                if (snapshot != null) {
+                    scopedByName = snapshot.getDescriptorsByName(name);
+                }
+                else {
+                    IndexedListData ild = descriptorsByName.get(name);
+                    scopedByName = (ild == null) ? null : ild.getSortedList();
+                }
+                if (scopedByName == null) {
+                    scopedByName = Collections.emptyList();
                 }
-                else if (df.getAdvertisedContract() != null) {
-                    String advertisedContract = df.getAdvertisedContract();
 
-                    IndexedListData ild = descriptorsByAdvertisedContract.get(advertisedContract);
-                    sortMeOut = (ild == null) ? null : ild.getSortedList();
-                    if (sortMeOut == null) {
-                        sortMeOut = Collections.emptyList();
+                if (df.getAdvertisedContract() != null) {
+                    sortMeOut = new LinkedList<SystemDescriptor<?>>();
 
+                    for (SystemDescriptor<?> candidate : scopedByName) {
+                        if (candidate.getAdvertisedContracts().contains(df.getAdvertisedContract())) {
+                            sortMeOut.add(candidate);
+                        }
                     }
                 }
                 else {
-                    sortMeOut = allDescriptors.getSortedList();
+                    sortMeOut = scopedByName;
                 }
             }
-            else {
-                sortMeOut = allDescriptors.getSortedList();
-            }
+            else if (df.getAdvertisedContract() != null) {
+                String advertisedContract = df.getAdvertisedContract();
 
-            retVal = new LinkedList<SystemDescriptor<?>>();
-
-            for (SystemDescriptor<?> candidate : sortMeOut) {
-                if (!getLocals && DescriptorVisibility.LOCAL.equals(candidate.getDescriptorVisibility())) {
-                    continue;
+                if (snapshot != null) {
+                    sortMeOut = snapshot.getDescriptorsByAdvertisedContract(advertisedContract);
                 }
+                else {
+                    IndexedListData ild = descriptorsByAdvertisedContract.get(advertisedContract);
+                    sortMeOut = (ild == null) ? null : ild.getSortedList();
+                }
+                if (sortMeOut == null) {
+                    sortMeOut = Collections.emptyList();
 
-                if (doValidation && !validate(candidate, onBehalfOf, filter)) continue;
-
-                if (filter.matches(candidate)) {
-                    retVal.add(candidate);
                 }
             }
-        } finally {
-            rLock.unlock();
+            else {
+                sortMeOut = (snapshot != null) ? snapshot.getAllDescriptors() : allDescriptors.getSortedList();
+            }
+        }
+        else {
+            sortMeOut = (snapshot != null) ? snapshot.getAllDescriptors() : allDescriptors.getSortedList();
         }
 
-        // Must be done outside of lock, or there can be a deadlock between child and parent
-        if (getParents && parent != null) {
-            TreeSet<SystemDescriptor<?>> sorter = new TreeSet<SystemDescriptor<?>>(DESCRIPTOR_COMPARATOR);
+        LinkedList<SystemDescriptor<?>> retVal = new LinkedList<SystemDescriptor<?>>();
 
-            sorter.addAll(retVal);
-            sorter.addAll(parent.getDescriptors(filter, onBehalfOf, getParents, doValidation, false));
+        for (SystemDescriptor<?> candidate : sortMeOut) {
+            if (!getLocals && DescriptorVisibility.LOCAL.equals(candidate.getDescriptorVisibility())) {
+                continue;
+            }
 
-            retVal.clear();
+            if (doValidation && !validate(candidate, onBehalfOf, filter)) continue;
 
-            retVal.addAll(sorter);
+            if (filter.matches(candidate)) {
+                retVal.add(candidate);
+            }
         }
 
         return retVal;
@@ -770,6 +926,14 @@ public class ServiceLocatorImpl implements ServiceLocator {
             return (T) retVal;
         }
 
+        if (name == null && unqualified == null && qualifiers.length == 0 &&
+                !calledFromSecondChanceResolveMethod && (contractOrImpl instanceof Class)) {
+            ActiveDescriptor<T> fast = (ActiveDescriptor<T>) getFastLookup((Class<?>) contractOrImpl);
+            if (fast != null) {
+                return Utilities.createService(fast, null, this, null, rawType);
+            }
+        }
+
         ActiveDescriptor<T> ad = internalGetDescriptor(null, contractOrImpl, name,
                 unqualified, false, calledFromSecondChanceResolveMethod, qualifiers);
         if (ad == null) return null;
@@ -939,11 +1103,19 @@ public class ServiceLocatorImpl implements ServiceLocator {
             allResolvers.clear();
             injecteeToResolverCache.clear();
             allValidators.clear();
-            errorHandlers.clear();
+            errorHandlers = new LinkedList<ErrorService>();
+            if (lockFreeLookups) {
+                publishDescriptorSnapshot(null, null);
+            }
             igdCache.clear();
             igashCache.clear();
-            classReflectionHelper.dispose();
+            fastLookups.clear();
+            if (!sharedReflectionCache) {
+                // The shared cache is still being used by others
+                classReflectionHelper.dispose();
+            }
             contextCache.clear();
+            contextGeneration++;
             perLocatorUtilities.shutdown();
             
             synchronized (children) {
@@ -1165,23 +1337,58 @@ public class ServiceLocatorImpl implements ServiceLocator {
     private class IgdValue {
         final NarrowResults results;
         final ImmediateResults immediate;
+        final long epoch;
         final AtomicInteger freshnessKeeper = new AtomicInteger(1);
 
-        public IgdValue(NarrowResults results, ImmediateResults immediate) {
+        public IgdValue(NarrowResults results, ImmediateResults immediate, long epoch) {
             this.results = results;
             this.immediate = immediate;
+            this.epoch = epoch;
         }
     }
 
+    /**
+     * Groups the keys of the lookup caches by contract name so that
+     * {@link #reupCache(HashSet)} only visits the keys of the affected contracts
+     */
+    private final static CacheKeyIndexer<IgdCacheKey> IGD_CACHE_KEY_INDEXER = new CacheKeyIndexer<IgdCacheKey>() {
+
+        @Override
+        public Object getIndex(IgdCacheKey key) {
+            return key.cacheKey.getRemovalName();
+        }
+        
+    };
+
+    /**
+     * If true the igdCache and igashCache compute the values of different keys
+     * at the same time rather than under one lock.  Must be declared before the
+     * caches, which are created when the fields are initialized
+     */
+    private final boolean concurrentServiceCache = AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
+        @Override
+        public Boolean run() {
+            return Boolean.parseBoolean(
+                System.getProperty(CONCURRENT_SERVICE_CACHE_PROPERTY, "false"));
+        }
+        
+    });
+
     private final WeakCARCache<IgdCacheKey, IgdValue> igdCache = CacheUtilities.createWeakCARCache(
             new Computable<IgdCacheKey, IgdValue>() {
                 @Override
                 public IgdValue compute(final IgdCacheKey key) {
                     return igdCacheCompute(key);
                 }
-            }, CACHE_SIZE, false);
+            }, CACHE_SIZE, false, IGD_CACHE_KEY_INDEXER, concurrentServiceCache);
     
     private IgdValue igdCacheCompute(final IgdCacheKey key) {
+        final AdaptiveCacheSizer sizer = igdSizer;
+        if (sizer != null) sizer.missed();
+        
+        // Must be read before the descriptors are gathered
+        final long epoch = cacheEpoch;
+        
         final List<SystemDescriptor<?>> candidates = getDescriptors(key.filter, key.onBehalfOf, true, false, true);
         final ImmediateResults immediate = narrow(ServiceLocatorImpl.this, // locator
                 candidates, // candidates
@@ -1197,10 +1404,102 @@ public class ServiceLocatorImpl implements ServiceLocator {
         final NarrowResults results = immediate.getTimelessResults();
         if (!results.getErrors().isEmpty()) {
             Utilities.handleErrors(results, new LinkedList<ErrorService>(errorHandlers));
-            throw new ComputationErrorException(new IgdValue(results, immediate));
+            throw new ComputationErrorException(new IgdValue(results, immediate, epoch));
+        }
+        
+        return new IgdValue(results, immediate, epoch);
+    }
+    
+    /**
+     * Gets the descriptor of a previous unnamed and unqualified lookup of
+     * exactly this class.  This allocates nothing
+     * 
+     * @param contract The class being looked up
+     * @return The descriptor found by the previous lookup, or null if
+     * the slow path must be taken
+     */
+    private ActiveDescriptor<?> getFastLookup(Class<?> contract) {
+        final boolean locked = !lockFreeLookups;
+        if (locked) rLock.lock();
+        try {
+            if (hasValidators()) return null;
+            
+            FastLookup fastLookup = fastLookups.get(contract.getName());
+            if (fastLookup == null || fastLookup.contract != contract) return null;
+            
+            return fastLookup.descriptor;
+        }
+        finally {
+            if (locked) rLock.unlock();
+        }
+    }
+    
+    /**
+     * Remembers the result of an unnamed and unqualified lookup.  Must be
+     * called with rLock held when lookups are not lock free
+     * 
+     * @param contract The class that was looked up
+     * @param descriptor The validated result of the lookup
+     * @param epoch The cacheEpoch read before the lookup started
+     */
+    private void putFastLookup(Class<?> contract, ActiveDescriptor<?> descriptor, long epoch) {
+        if (contract.isPrimitive() || hasValidators()) return;
+        
+        String key = contract.getName();
+        FastLookup fastLookup = new FastLookup(contract, descriptor);
+        fastLookups.put(key, fastLookup);
+        
+        if (lockFreeLookups && epoch != cacheEpoch) {
+            // The descriptors may have changed while this lookup was running
+            fastLookups.remove(key, fastLookup);
         }
+    }
+    
+    /**
+     * Like !getAllValidators().isEmpty() but without creating
+     * the combined set
+     */
+    private boolean hasValidators() {
+        LinkedHashSet<ValidationService> localValidators = useDescriptorSnapshot() ?
+                descriptorSnapshot.getValidators() : allValidators ;
+        if (!localValidators.isEmpty()) return true;
+        
+        if (parent == null) return false;
         
-        return new IgdValue(results, immediate);
+        return parent.hasValidators();
+    }
+    
+    private final static class FastLookup {
+        private final Class<?> contract;
+        private final ActiveDescriptor<?> descriptor;
+        
+        private FastLookup(Class<?> contract, ActiveDescriptor<?> descriptor) {
+            this.contract = contract;
+            this.descriptor = descriptor;
+        }
+    }
+
+    /**
+     * Gets the value from the given cache.  When lookups are lock-free a value
+     * that was computed against descriptors that have since been invalidated
+     * by {@link #reupCache(HashSet)} is thrown away and computed again
+     */
+    private IgdValue computeIgdValue(WeakCARCache<IgdCacheKey, IgdValue> cache, IgdCacheKey key) {
+        IgdValue value = cache.compute(key);
+        if (!lockFreeLookups) return value;
+        
+        String removalName = key.cacheKey.getRemovalName();
+        if (removalName == null) return value;
+        
+        Long invalidatedAt;
+        while (((invalidatedAt = invalidationEpochs.get(removalName)) != null) &&
+                (value.epoch < invalidatedAt.longValue())) {
+            cache.remove(key);
+            
+            value = cache.compute(key);
+        }
+        
+        return value;
     }
     
     private Unqualified getEffectiveUnqualified(Unqualified givenUnqualified, boolean isIterable, Annotation qualifiers[]) {
@@ -1243,6 +1542,10 @@ public class ServiceLocatorImpl implements ServiceLocator {
 
         ImmediateResults immediate = null;
         
+        final Class<?> fastLookupKey = (onBehalfOf == null && name == null && unqualified == null &&
+                !isIterable && qualifiers.length == 0 && contractOrImpl == rawClass &&
+                !calledFromSecondChanceResolveMethod) ? rawClass : null;
+        
         unqualified = getEffectiveUnqualified(unqualified, isIterable, qualifiers);
 
         final CacheKey cacheKey = new CacheKey(contractOrImpl, name, unqualified, qualifiers);
@@ -1255,9 +1558,12 @@ public class ServiceLocatorImpl implements ServiceLocator {
                 qualifiers,
                 filter);
 
-        rLock.lock();
+        final long fastLookupEpoch = cacheEpoch;
+
+        final boolean locked = !lockFreeLookups;
+        if (locked) rLock.lock();
         try {
-            final IgdValue value = igdCache.compute(igdCacheKey);
+            final IgdValue value = computeIgdValue(igdCache, igdCacheKey);
             final boolean freshOne = value.freshnessKeeper.compareAndSet(1, 2);
             if (!freshOne) {
                 immediate = narrow(this,  // locator
@@ -1279,8 +1585,11 @@ public class ServiceLocatorImpl implements ServiceLocator {
             if (!results.getErrors().isEmpty()) {
                 currentErrorHandlers = new LinkedList<ErrorService>(errorHandlers);
             }
+            else if (fastLookupKey != null && !immediate.getImmediateResults().isEmpty()) {
+                putFastLookup(fastLookupKey, immediate.getImmediateResults().get(0), fastLookupEpoch);
+            }
         } finally {
-            rLock.unlock();
+            if (locked) rLock.unlock();
         }
 
         if (currentErrorHandlers != null) {
@@ -1390,6 +1699,11 @@ public class ServiceLocatorImpl implements ServiceLocator {
             CacheUtilities.createWeakCARCache(new Computable<IgdCacheKey, IgdValue>() {
         @Override
         public IgdValue compute(final IgdCacheKey key) {
+            final AdaptiveCacheSizer sizer = igashSizer;
+            if (sizer != null) sizer.missed();
+            
+            // Must be read before the descriptors are gathered
+            final long epoch = cacheEpoch;
 
             List<SystemDescriptor<?>> candidates = getDescriptors(key.filter, null, true, false, true);
             ImmediateResults immediate = narrow(ServiceLocatorImpl.this,
@@ -1405,12 +1719,12 @@ public class ServiceLocatorImpl implements ServiceLocator {
             NarrowResults results = immediate.getTimelessResults();
             if (!results.getErrors().isEmpty()) {
                 Utilities.handleErrors(results, new LinkedList<ErrorService>(errorHandlers));
-                throw new ComputationErrorException(new IgdValue(results, immediate)) ;
+                throw new ComputationErrorException(new IgdValue(results, immediate, epoch)) ;
             }
             
-            return new IgdValue(results, immediate);
+            return new IgdValue(results, immediate, epoch);
         }
-    }, CACHE_SIZE, false);
+    }, CACHE_SIZE, false, IGD_CACHE_KEY_INDEXER, concurrentServiceCache);
 
     private List<?> internalGetAllServiceHandles(
             Type contractOrImpl,
@@ -1447,9 +1761,10 @@ public class ServiceLocatorImpl implements ServiceLocator {
                 qualifiers,
                 filter);
 
-        rLock.lock();
+        final boolean locked = !lockFreeLookups;
+        if (locked) rLock.lock();
         try {
-            final IgdValue value = igashCache.compute(igdCacheKey);
+            final IgdValue value = computeIgdValue(igashCache, igdCacheKey);
             final boolean freshOne = value.freshnessKeeper.compareAndSet(1, 2);
             if (!freshOne) {
                 immediate = narrow(this,
@@ -1474,7 +1789,7 @@ public class ServiceLocatorImpl implements ServiceLocator {
             }
         }
         finally {
-            rLock.unlock();
+            if (locked) rLock.unlock();
         }
 
         if (currentErrorHandlers != null) {
@@ -1603,9 +1918,11 @@ public class ServiceLocatorImpl implements ServiceLocator {
      * Checks the configuration operation before anything happens to the internal data structures.
      *
      * @param dci The configuration that contains the proposed modifications
+     * @param bindValidation The BIND validation done before the lock was taken (may be null)
      * @return A set of descriptors that is being removed fromthe configuration
      */
-    private CheckConfigurationData checkConfiguration(DynamicConfigurationImpl dci) {
+    private CheckConfigurationData checkConfiguration(DynamicConfigurationImpl dci,
+            BindValidation bindValidation) {
         List<SystemDescriptor<?>> retVal = new LinkedList<SystemDescriptor<?>>();
         boolean addOrRemoveOfInstanceListener = false;
         boolean addOrRemoveOfInjectionResolver = false;
@@ -1615,6 +1932,9 @@ public class ServiceLocatorImpl implements ServiceLocator {
         boolean addOrRemoveOfInterceptionService = false;
         HashSet<String> affectedContracts = new HashSet<String>();
         TwoPhaseTransactionDataImpl transactionData = new TwoPhaseTransactionDataImpl();
+        
+        List<ValidationService> validators = new ArrayList<ValidationService>(getAllValidators());
+        boolean preValidated = (bindValidation != null) && bindValidation.isCurrent(validators);
 
         for (Filter unbindFilter : dci.getUnbindFilters()) {
             List<SystemDescriptor<?>> results = getDescriptors(unbindFilter, null, false, false, true);
@@ -1624,7 +1944,7 @@ public class ServiceLocatorImpl implements ServiceLocator {
 
                 if (retVal.contains(candidate)) continue;
 
-                for (ValidationService vs : getAllValidators()) {
+                for (ValidationService vs : validators) {
                     if (!callValidate(vs, new ValidationInformationImpl(
                             Operation.UNBIND, candidate))) {
                         throw new MultiException(new IllegalArgumentException("Descriptor " +
@@ -1656,7 +1976,11 @@ public class ServiceLocatorImpl implements ServiceLocator {
             }
         }
 
+        int index = 0;
         for (SystemDescriptor<?> sd : dci.getAllDescriptors()) {
+            boolean passedValidation = preValidated && bindValidation.passed(index);
+            index++;
+            
             transactionData.toAdd(sd);
             
             affectedContracts.addAll(getAllContracts(sd));
@@ -1724,7 +2048,15 @@ public class ServiceLocatorImpl implements ServiceLocator {
                 }
             }
 
-            for (ValidationService vs : getAllValidators()) {
+            if (preValidated) {
+                if (!passedValidation) {
+                    throw new MultiException(new IllegalArgumentException("Descriptor " + sd + " did not pass the BIND validation"));
+                }
+                
+                continue;
+            }
+
+            for (ValidationService vs : validators) {
                 Validator validator = vs.getValidator();
                 if (validator == null) {
                     throw new MultiException(new IllegalArgumentException("Validator was null from validation service" + vs));
@@ -1888,9 +2220,13 @@ public class ServiceLocatorImpl implements ServiceLocator {
 
     @SuppressWarnings("unchecked")
     private List<SystemDescriptor<?>> addConfigurationInternal(DynamicConfigurationImpl dci) {
-        List<SystemDescriptor<?>> thingsAdded = new LinkedList<SystemDescriptor<?>>();
+        List<SystemDescriptor<?>> thingsAdded = new ArrayList<SystemDescriptor<?>>(dci.getAllDescriptors());
+        
+        // Each index is changed once for the whole configuration rather than once per descriptor
+        LinkedHashMap<String, List<SystemDescriptor<?>>> byContract = new LinkedHashMap<String, List<SystemDescriptor<?>>>();
+        LinkedHashMap<String, List<SystemDescriptor<?>>> byName = new LinkedHashMap<String, List<SystemDescriptor<?>>>();
 
-        for (SystemDescriptor<?> sd : dci.getAllDescriptors()) {
+        for (SystemDescriptor<?> sd : thingsAdded) {
             if ((BIND_TRACING_PATTERN != null) && doTrace(sd)) {
                 Logger.getLogger().debug("HK2 Bind Tracing: Adding Descriptor " + sd);
                 if (BIND_TRACING_STACKS) {
@@ -1898,32 +2234,20 @@ public class ServiceLocatorImpl implements ServiceLocator {
                 }
             }
 
-            thingsAdded.add(sd);
-            allDescriptors.addDescriptor(sd);
-
-            List<String> allContracts = getAllContracts(sd);
-
-            for (String advertisedContract : allContracts) {
-                IndexedListData ild = descriptorsByAdvertisedContract.get(advertisedContract);
-                if (ild == null) {
-                    ild = new IndexedListData();
-                    descriptorsByAdvertisedContract.put(advertisedContract, ild);
-                }
-
-                ild.addDescriptor(sd);
+            for (String advertisedContract : getAllContracts(sd)) {
+                addToBatch(byContract, advertisedContract, sd);
             }
 
             if (sd.getName() != null) {
-                String name = sd.getName();
-                IndexedListData ild = descriptorsByName.get(name);
-                if (ild == null) {
-                    ild = new IndexedListData();
-                    descriptorsByName.put(name, ild);
-                }
-
-                ild.addDescriptor(sd);
+                addToBatch(byName, sd.getName(), sd);
             }
-
+        }
+        
+        allDescriptors.addDescriptors(thingsAdded);
+        addBatch(descriptorsByAdvertisedContract, byContract);
+        addBatch(descriptorsByName, byName);
+        
+        for (SystemDescriptor<?> sd : thingsAdded) {
             if (sd.getAdvertisedContracts().contains(ValidationService.class.getName())) {
                 ServiceHandle<ValidationService> handle = getServiceHandle((ActiveDescriptor<ValidationService>) sd);
                 ValidationService vs = handle.getService();
@@ -1933,6 +2257,59 @@ public class ServiceLocatorImpl implements ServiceLocator {
 
         return thingsAdded;
     }
+    
+    private static void addToBatch(Map<String, List<SystemDescriptor<?>>> batch, String key, SystemDescriptor<?> sd) {
+        List<SystemDescriptor<?>> batchList = batch.get(key);
+        if (batchList == null) {
+            batchList = new ArrayList<SystemDescriptor<?>>();
+            batch.put(key, batchList);
+        }
+        
+        batchList.add(sd);
+    }
+    
+    private static void addBatch(HashMap<String, IndexedListData> index, Map<String, List<SystemDescriptor<?>>> batch) {
+        for (Map.Entry<String, List<SystemDescriptor<?>>> entry : batch.entrySet()) {
+            IndexedListData ild = index.get(entry.getKey());
+            if (ild == null) {
+                ild = new IndexedListData();
+                index.put(entry.getKey(), ild);
+            }
+            
+            ild.addDescriptors(entry.getValue());
+        }
+    }
+    
+    /**
+     * Does the BIND validation of a large configuration before the write
+     * lock is taken, so that the lock is not held while the validators run
+     * 
+     * @param dci The configuration about to be committed
+     * @return The results of the validation, or null if the configuration
+     * should be validated under the lock
+     */
+    private BindValidation preValidate(DynamicConfigurationImpl dci) {
+        List<SystemDescriptor<?>> descriptors = dci.getAllDescriptors();
+        if (descriptors.size() < BindValidation.MINIMUM_SIZE) return null;
+        
+        List<ValidationService> validators;
+        rLock.lock();
+        try {
+            validators = new ArrayList<ValidationService>(getAllValidators());
+        }
+        finally {
+            rLock.unlock();
+        }
+        
+        for (ValidationService vs : validators) {
+            // Reported as an error under the lock
+            if (vs.getValidator() == null) return null;
+        }
+        
+        // The validators may not be called below checkConfiguration, or even on this thread
+        return new BindValidation(this, validators, descriptors,
+                validators.isEmpty() ? null : ValidationInformationImpl.getConfigurationCaller());
+    }
 
     private void reupInjectionResolvers() {
         HashMap<Class<? extends Annotation>, InjectionResolver<?>> newResolvers =
@@ -1973,8 +2350,7 @@ public class ServiceLocatorImpl implements ServiceLocator {
     private void reupErrorHandlers() {
         List<ErrorService> allErrorServices = protectedGetAllServices(ErrorService.class);
 
-        errorHandlers.clear();
-        errorHandlers.addAll(allErrorServices);
+        errorHandlers = new LinkedList<ErrorService>(allErrorServices);
     }
     
     private void reupConfigListeners() {
@@ -2016,17 +2392,20 @@ public class ServiceLocatorImpl implements ServiceLocator {
         // This lock must be acquired as reupCache is called on children
         wLock.lock();
         try {
+            if (lockFreeLookups && !affectedContracts.isEmpty()) {
+                // Lookups that started computing before this point will see that
+                // their results are from an older epoch and re-compute them
+                Long epoch = new Long(++cacheEpoch);
+                
+                for (String affectedContract : affectedContracts) {
+                    invalidationEpochs.put(affectedContract, epoch);
+                }
+            }
+            
             for (String affectedContract : affectedContracts) {
-                final String fAffectedContract = affectedContract;
-                final CacheKeyFilter<IgdCacheKey> cacheKeyFilter = new CacheKeyFilter<IgdCacheKey>() {
-                    @Override
-                    public boolean matches(IgdCacheKey key) {
-                        return key.cacheKey.matchesRemovalName(fAffectedContract);
-                    }
-                };
-
-                igdCache.releaseMatching(cacheKeyFilter);
-                igashCache.releaseMatching(cacheKeyFilter);
+                igdCache.releaseIndexed(affectedContract);
+                igashCache.releaseIndexed(affectedContract);
+                fastLookups.remove(affectedContract);
             }
         } finally {
             wLock.unlock();
@@ -2076,6 +2455,7 @@ public class ServiceLocatorImpl implements ServiceLocator {
         }
 
         contextCache.clear();
+        contextGeneration++;
     }
 
     private void getAllChildren(LinkedList<ServiceLocatorImpl> allMyChildren) {
@@ -2112,14 +2492,29 @@ public class ServiceLocatorImpl implements ServiceLocator {
         
         List<ServiceHandle<?>> allConfigurationListeners = null;
         MultiException configurationError = null;
+        
+        BindValidation bindValidation = preValidate(dci);
 
         wLock.lock();
         try {
-            checkData = checkConfiguration(dci);  // Does as much preliminary checking as possible
+            checkData = checkConfiguration(dci, bindValidation);  // Does as much preliminary checking as possible
 
             removeConfigurationInternal(checkData.getUnbinds());
 
             List<SystemDescriptor<?>> thingsAdded = addConfigurationInternal(dci);
+            
+            if (lockFreeLookups) {
+                // Must be published before reup, which does lookups of its own
+                HashSet<String> affectedNames = new HashSet<String>();
+                for (SystemDescriptor<?> unbind : checkData.getUnbinds()) {
+                    if (unbind.getName() != null) affectedNames.add(unbind.getName());
+                }
+                for (SystemDescriptor<?> added : thingsAdded) {
+                    if (added.getName() != null) affectedNames.add(added.getName());
+                }
+                
+                publishDescriptorSnapshot(checkData.getAffectedContracts(), affectedNames);
+            }
 
             reup(thingsAdded,
                     checkData.getInstanceLifecycleModificationsMade(),
@@ -2235,6 +2630,17 @@ public class ServiceLocatorImpl implements ServiceLocator {
         return contextCache.compute(scope);
     }
 
+    /**
+     * A Context returned from {@link #resolveContext(Class)} may be
+     * re-used without resolving it again for as long as it is active
+     * and this value has not changed since before it was resolved
+     * 
+     * @return The current generation of the context cache
+     */
+    /* package */ int getContextGeneration() {
+        return contextGeneration;
+    }
+
     private Class<?> loadClass(Descriptor descriptor, Injectee injectee) {
         if (descriptor == null) throw new IllegalArgumentException();
 
@@ -2394,14 +2800,17 @@ public class ServiceLocatorImpl implements ServiceLocator {
     }
 
     private LinkedHashSet<ValidationService> getAllValidators() {
+        LinkedHashSet<ValidationService> localValidators = useDescriptorSnapshot() ?
+                descriptorSnapshot.getValidators() : allValidators ;
+        
         if (parent == null) {
-            return allValidators;
+            return localValidators;
         }
 
         LinkedHashSet<ValidationService> retVal = new LinkedHashSet<ValidationService>();
 
         retVal.addAll(parent.getAllValidators());
-        retVal.addAll(allValidators);
+        retVal.addAll(localValidators);
 
         return retVal;
     }
@@ -2441,6 +2850,7 @@ public class ServiceLocatorImpl implements ServiceLocator {
         wLock.lock();
         try {
             defaultUnqualified = unqualified;
+            fastLookups.clear();
         }
         finally {
             wLock.unlock();
@@ -2595,6 +3005,40 @@ public class ServiceLocatorImpl implements ServiceLocator {
     public boolean getNeutralContextClassLoader() {
         return neutralContextClassLoader;
     }
+    
+    /**
+     * @return true if method interceptors of services created by this
+     * locator should be run as compiled chains
+     */
+    /* package */ boolean getCompiledInterceptors() {
+        return compiledInterceptors;
+    }
+    
+    /**
+     * @return true if services created by this locator should use the
+     * {@link GeneratedCreator} of their class when there is one
+     */
+    /* package */ boolean getGeneratedCreators() {
+        return generatedCreators;
+    }
+    
+    /**
+     * An analysis may only be shared with other locators when it
+     * depends on nothing particular to this locator.  That is the case
+     * for the default analyzer so long as the only injection resolver
+     * is the one for {@link Inject}
+     * 
+     * @param analyzer The analyzer that will analyze a class
+     * @return true if the analysis done by this analyzer may be taken
+     * from and given to the shared {@link ClassAnalysisCache}
+     */
+    /* package */ boolean isClassAnalysisShareable(ClassAnalyzer analyzer) {
+        if (!sharedClassAnalysis) return false;
+        if (!DefaultClassAnalyzer.class.equals(analyzer.getClass())) return false;
+        if (allResolvers.size() != 1) return false;
+        
+        return (allResolvers.get(Inject.class) instanceof ThreeThirtyResolver);
+    }
 
     @Override
     public void setNeutralContextClassLoader(boolean neutralContextClassLoader) {
@@ -2665,8 +3109,66 @@ public class ServiceLocatorImpl implements ServiceLocator {
         return igdCache.getMaxSize();
     }
 
+    /**
+     * Sets the maximum size of the igdCache and the igashCache.  If the caches
+     * are adaptive this is the largest size they will grow to
+     * 
+     * @param maxSize The maximum size of the service caches, must be at least one
+     */
+    /* package */ void setServiceCacheMaximumSize(int maxSize) {
+        if (maxSize < 1) throw new IllegalArgumentException("The service cache size must be at least one: " + maxSize);
+        
+        synchronized (serviceCacheSizeLock) {
+            serviceCacheCeiling = maxSize;
+            
+            if (igdSizer != null) {
+                igdSizer.setCeiling(maxSize);
+                igashSizer.setCeiling(maxSize);
+            }
+            else {
+                igdCache.setMaxSize(maxSize);
+                igashCache.setMaxSize(maxSize);
+            }
+        }
+    }
+    
+    /**
+     * Turns adaptive sizing of the igdCache and igashCache on or off.  When
+     * turned on the caches start out small and grow as needed up to the
+     * maximum size.  When turned off they go back to the maximum size
+     * 
+     * @param adaptive true if the service caches should be sized adaptively
+     */
+    /* package */ void setServiceCacheAdaptive(boolean adaptive) {
+        synchronized (serviceCacheSizeLock) {
+            if (adaptive == (igdSizer != null)) return;
+            
+            if (adaptive) {
+                int startSize = Math.min(ADAPTIVE_MIN_CACHE_SIZE, serviceCacheCeiling);
+                
+                igdCache.setMaxSize(startSize);
+                igashCache.setMaxSize(startSize);
+                
+                igdSizer = new AdaptiveCacheSizer(igdCache, startSize, serviceCacheCeiling);
+                igashSizer = new AdaptiveCacheSizer(igashCache, startSize, serviceCacheCeiling);
+            }
+            else {
+                igdSizer = null;
+                igashSizer = null;
+                
+                igdCache.setMaxSize(serviceCacheCeiling);
+                igashCache.setMaxSize(serviceCacheCeiling);
+            }
+        }
+    }
+    
+    /* package */ boolean isServiceCacheAdaptive() {
+        return igdSizer != null;
+    }
+
     /* package */ void clearServiceCache() {
         igdCache.clear();
+        fastLookups.clear();
         
     }
 
@@ -2684,6 +3186,20 @@ public class ServiceLocatorImpl implements ServiceLocator {
         }
     }
     
+    /* package */ Map<String, CacheStatistics> getCacheStatistics() {
+        Map<String, CacheStatistics> retVal = new LinkedHashMap<String, CacheStatistics>();
+        
+        retVal.put(ServiceLocatorRuntimeBean.SERVICE_CACHE, igdCache.getStatistics());
+        retVal.put(ServiceLocatorRuntimeBean.ALL_SERVICES_CACHE, igashCache.getStatistics());
+        retVal.put(ServiceLocatorRuntimeBean.INJECTION_RESOLVER_CACHE, injecteeToResolverCache.getStatistics());
+        
+        for (Map.Entry<String, CacheStatistics> reflection : classReflectionHelper.getStatistics().entrySet()) {
+            retVal.put(ServiceLocatorRuntimeBean.REFLECTION_CACHE_PREFIX + reflection.getKey(), reflection.getValue());
+        }
+        
+        return retVal;
+    }
+    
     /* package */ int unsortIndexes(int newRank, SystemDescriptor<?> desc, Set<IndexedListData> myLists) {
         wLock.lock();
         try {
@@ -2693,6 +3209,10 @@ public class ServiceLocatorImpl implements ServiceLocator {
                 myList.unSort();
             }
             
+            if (lockFreeLookups) {
+                publishDescriptorSnapshot(null, null);
+            }
+            
             return retVal;
         }
         finally {
@@ -2701,6 +3221,35 @@ public class ServiceLocatorImpl implements ServiceLocator {
         
     }
 
+    /**
+     * Publishes a new snapshot of the descriptor indexes for lock-free
+     * lookups.  Must be called with the write lock held
+     * 
+     * @param affectedContracts The contracts whose index entries changed, or
+     * null if all contract entries should be copied
+     * @param affectedNames The names whose index entries changed, or
+     * null if all name entries should be copied
+     */
+    private void publishDescriptorSnapshot(Set<String> affectedContracts, Set<String> affectedNames) {
+        descriptorSnapshot = descriptorSnapshot.next(allDescriptors,
+                descriptorsByAdvertisedContract,
+                affectedContracts,
+                descriptorsByName,
+                affectedNames,
+                allValidators);
+    }
+    
+    /**
+     * The thread making a configuration change must see its own changes
+     * (for example when creating a ValidationService) before the next
+     * snapshot has been published, so it keeps using the live indexes
+     * 
+     * @return true if the lookup should use the descriptor snapshot
+     */
+    private boolean useDescriptorSnapshot() {
+        return lockFreeLookups && !wLock.isHeldByCurrentThread();
+    }
+
     @Override
     public String toString() {
         return "ServiceLocatorImpl(" + locatorName + "," + id + "," + System.identityHashCode(this) + ")";
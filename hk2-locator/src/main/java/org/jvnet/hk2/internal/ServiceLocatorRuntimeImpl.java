@@ -39,12 +39,15 @@
  */
 package org.jvnet.hk2.internal;
 
+import java.util.Map;
+
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import org.glassfish.hk2.api.DescriptorVisibility;
 import org.glassfish.hk2.api.ServiceLocator;
 import org.glassfish.hk2.api.Visibility;
+import org.glassfish.hk2.utilities.cache.CacheStatistics;
 import org.jvnet.hk2.external.runtime.ServiceLocatorRuntimeBean;
 
 /**
@@ -93,6 +96,30 @@ public class ServiceLocatorRuntimeImpl implements ServiceLocatorRuntimeBean {
         return locator.getServiceCacheMaximumSize();
     }
 
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.external.runtime.ServiceLocatorRuntimeBean#setServiceCacheMaximumSize(int)
+     */
+    @Override
+    public void setServiceCacheMaximumSize(int maxSize) {
+        locator.setServiceCacheMaximumSize(maxSize);
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.external.runtime.ServiceLocatorRuntimeBean#setServiceCacheAdaptive(boolean)
+     */
+    @Override
+    public void setServiceCacheAdaptive(boolean adaptive) {
+        locator.setServiceCacheAdaptive(adaptive);
+    }
+
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.external.runtime.ServiceLocatorRuntimeBean#isServiceCacheAdaptive()
+     */
+    @Override
+    public boolean isServiceCacheAdaptive() {
+        return locator.isServiceCacheAdaptive();
+    }
+
     /* (non-Javadoc)
      * @see org.jvnet.hk2.external.runtime.ServiceLocatorRuntimeBean#clearServiceCache()
      */
@@ -119,4 +146,12 @@ public class ServiceLocatorRuntimeImpl implements ServiceLocatorRuntimeBean {
 
     }
 
+    /* (non-Javadoc)
+     * @see org.jvnet.hk2.external.runtime.ServiceLocatorRuntimeBean#getCacheStatistics()
+     */
+    @Override
+    public Map<String, CacheStatistics> getCacheStatistics() {
+        return locator.getCacheStatistics();
+    }
+
 }
@@ -45,6 +45,9 @@ import java.lang.annotation.Annotation;
 import java.util.Comparator;
 import java.util.List;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.inject.Singleton;
 
@@ -53,9 +56,6 @@ import org.glassfish.hk2.api.Context;
 import org.glassfish.hk2.api.MultiException;
 import org.glassfish.hk2.api.ServiceHandle;
 import org.glassfish.hk2.utilities.BuilderHelper;
-import org.glassfish.hk2.utilities.ContextualInput;
-import org.glassfish.hk2.utilities.cache.Cache;
-import org.glassfish.hk2.utilities.cache.Computable;
 import org.glassfish.hk2.utilities.reflection.Logger;
 
 /**
@@ -64,39 +64,16 @@ import org.glassfish.hk2.utilities.reflection.Logger;
  */
 @Singleton
 public class SingletonContext implements Context<Singleton> {
-    private int generationNumber = Integer.MIN_VALUE;
+    private final AtomicInteger generationNumber = new AtomicInteger(Integer.MIN_VALUE);
     private final ServiceLocatorImpl locator;
-
-    private final Cache<ContextualInput<Object>, Object> valueCache =
-            new Cache<ContextualInput<Object>, Object>(new Computable<ContextualInput<Object>, Object>() {
-
-        @Override
-        public Object compute(ContextualInput<Object> a) {
-
-            final ActiveDescriptor<Object> activeDescriptor = a.getDescriptor();
-
-            final Object cachedVal = activeDescriptor.getCache();
-            if (cachedVal != null) {
-                return cachedVal;
-            }
-
-            final Object createdVal = activeDescriptor.create(a.getRoot());
-            activeDescriptor.setCache(createdVal);
-            if (activeDescriptor instanceof SystemDescriptor) {
-                ((SystemDescriptor<?>) activeDescriptor).setSingletonGeneration(generationNumber++);
-            }
-
-            return createdVal;
-        }
-    }, new Cache.CycleHandler<ContextualInput<Object>>(){
-
-        @Override
-        public void handleCycle(ContextualInput<Object> key) {
-            throw new MultiException(new IllegalStateException(
-                            "A circular dependency involving Singleton service " + key.getDescriptor().getImplementation() +
-                            " was found.  Full descriptor is " + key.getDescriptor()));
-        }
-    });
+    
+    /**
+     * The singletons created by or being created by this context, keyed by
+     * descriptor.  Entries are removed when the creation fails or when the
+     * singleton is destroyed
+     */
+    private final ConcurrentHashMap<ActiveDescriptor<?>, Creation> creations =
+            new ConcurrentHashMap<ActiveDescriptor<?>, Creation>();
 
     /* package */ SingletonContext(ServiceLocatorImpl impl) {
         locator = impl;
@@ -117,9 +94,14 @@ public class SingletonContext implements Context<Singleton> {
     @Override
     public <T> T findOrCreate(ActiveDescriptor<T> activeDescriptor,
             ServiceHandle<?> root) {
+        // Fast path, the singleton has already been created by this context
+        if (activeDescriptor.isCacheSet() && creations.containsKey(activeDescriptor)) {
+            T cachedVal = activeDescriptor.getCache();
+            if (cachedVal != null) return cachedVal;
+        }
 
         try {
-            return (T)valueCache.compute(new ContextualInput<Object>((ActiveDescriptor<Object>) activeDescriptor, root));
+            return (T) create((ActiveDescriptor<Object>) activeDescriptor, root);
         } catch (Throwable th) {
             if (th instanceof MultiException) {
                 throw (MultiException) th;
@@ -127,14 +109,62 @@ public class SingletonContext implements Context<Singleton> {
             throw new MultiException(th);
         }
     }
+    
+    /**
+     * Creates the singleton or waits for another thread that is already
+     * creating it.  Creations of different descriptors do not block
+     * each other.  A descriptor whose cache was set by someone else is
+     * recorded here the first time it is asked for
+     */
+    private Object create(ActiveDescriptor<Object> activeDescriptor, ServiceHandle<?> root) throws Throwable {
+        Creation mine = new Creation();
+        
+        Creation existing;
+        while ((existing = creations.putIfAbsent(activeDescriptor, mine)) != null) {
+            Thread existingOwner = existing.owner;
+            if (existingOwner == mine.owner) {
+                throw new MultiException(new IllegalStateException(
+                        "A circular dependency involving Singleton service " + activeDescriptor.getImplementation() +
+                        " was found.  Full descriptor is " + activeDescriptor));
+            }
+            
+            if (existingOwner != null) return existing.get();
+            
+            Object cachedVal = activeDescriptor.getCache();
+            if (cachedVal != null) return cachedVal;
+            
+            // The cache was released without going through destroyOne
+            creations.remove(activeDescriptor, existing);
+        }
+        
+        try {
+            Object createdVal = activeDescriptor.getCache();
+            if (createdVal == null) {
+                createdVal = activeDescriptor.create(root);
+                activeDescriptor.setCache(createdVal);
+                if (activeDescriptor instanceof SystemDescriptor) {
+                    ((SystemDescriptor<?>) activeDescriptor).setSingletonGeneration(generationNumber.getAndIncrement());
+                }
+            }
+            
+            mine.set(createdVal, null);
+            
+            return createdVal;
+        }
+        catch (Throwable th) {
+            creations.remove(activeDescriptor, mine);
+            mine.set(null, th);
+            
+            throw th;
+        }
+    }
 
     /* (non-Javadoc)
      * @see org.glassfish.hk2.api.Context#find(org.glassfish.hk2.api.Descriptor)
      */
-    @SuppressWarnings("unchecked")
     @Override
     public boolean containsKey(ActiveDescriptor<?> descriptor) {
-        return valueCache.containsKey(new ContextualInput<Object>((ActiveDescriptor<Object>) descriptor, null));
+        return creations.containsKey(descriptor);
     }
 
     /* (non-Javadoc)
@@ -192,9 +222,8 @@ public class SingletonContext implements Context<Singleton> {
     @SuppressWarnings("unchecked")
     @Override
     public void destroyOne(ActiveDescriptor<?> one) {
-        Object value;
-        valueCache.remove(new ContextualInput<Object>((ActiveDescriptor<Object>) one, null));
-        value = one.getCache();
+        creations.remove(one);
+        Object value = one.getCache();
         one.releaseCache();
 
         if (value == null) return;
@@ -208,6 +237,40 @@ public class SingletonContext implements Context<Singleton> {
 
     }
 
+    /**
+     * A creation, which may still be in progress.  The thread doing the
+     * creation is remembered in order to detect cycles, and is forgotten
+     * once the creation is done
+     */
+    private static class Creation {
+        private volatile Thread owner = Thread.currentThread();
+        private final CountDownLatch done = new CountDownLatch(1);
+        private Object value;
+        private Throwable failure;
+        
+        private void set(Object value, Throwable failure) {
+            this.value = value;
+            this.failure = failure;
+            owner = null;
+            
+            done.countDown();
+        }
+        
+        private Object get() throws Throwable {
+            try {
+                done.await();
+            }
+            catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw ie;
+            }
+            
+            if (failure != null) throw failure;
+            
+            return value;
+        }
+    }
+
     private static class GenerationComparator implements Comparator<SystemDescriptor<Object>>, Serializable {
 
         /**
@@ -96,8 +96,8 @@ public class SystemDescriptor<T> implements ActiveDescriptor<T>, Closeable {
     private volatile boolean closed = false;
 
     private final Object cacheLock = new Object();
-    private boolean cacheSet = false;
-    private T cachedValue;
+    private volatile boolean cacheSet = false;
+    private volatile T cachedValue;
 
     // These are used when we are doing the reifying ourselves
     private Class<?> implClass;
@@ -118,7 +118,7 @@ public class SystemDescriptor<T> implements ActiveDescriptor<T>, Closeable {
 
     private final Set<IndexedListData> myLists = new HashSet<IndexedListData>();
 
-    private int singletonGeneration = Integer.MAX_VALUE;
+    private volatile int singletonGeneration = Integer.MAX_VALUE;
 
     /* package */ @SuppressWarnings("unchecked")
     SystemDescriptor(Descriptor baseDescriptor, boolean requiresDeepCopy, ServiceLocatorImpl locator, Long serviceId) {
@@ -461,6 +461,33 @@ public class SystemDescriptor<T> implements ActiveDescriptor<T>, Closeable {
         }
     }
 
+    /**
+     * Tells proxies whether the injectee they were created for must be
+     * made available while the service is created.  Only factories that
+     * have the InstantiationService injected ever look at it
+     * 
+     * @return true if the creation of this service may consult the
+     * InstantiationService (or if that is not yet known)
+     */
+    /* package */ boolean isInstantiationServiceConsumer() {
+        Creator<T> current = creator;
+        if (current == null) return true;
+        if (!(current instanceof FactoryCreator)) return false;
+        
+        return ((FactoryCreator<T>) current).hasInstantiationService();
+    }
+    
+    /**
+     * Allows creators to skip building lifecycle events that nobody
+     * will receive
+     *
+     * @return true if there is at least one instance lifecycle listener
+     * for this descriptor
+     */
+    /* package */ boolean hasInstanceListeners() {
+        return !instanceListeners.isEmpty();
+    }
+
     /* (non-Javadoc)
      * @see org.glassfish.hk2.api.ActiveDescriptor#create(org.glassfish.hk2.api.ServiceHandle)
      */
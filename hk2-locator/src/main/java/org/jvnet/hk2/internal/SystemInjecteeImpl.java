@@ -108,6 +108,25 @@ public class SystemInjecteeImpl implements Injectee {
         }
     }
 
+    /**
+     * Creates a copy of the given injectee that belongs to another descriptor
+     *
+     * @param template The injectee to copy
+     * @param injecteeDescriptor The descriptor of the new injectee (may be null)
+     */
+    /* package */ SystemInjecteeImpl(SystemInjecteeImpl template, ActiveDescriptor<?> injecteeDescriptor) {
+        this.requiredType = template.requiredType;
+        this.position = template.position;
+        this.parent = template.parent;
+        this.qualifiers = template.qualifiers;
+        this.isOptional = template.isOptional;
+        this.isSelf = template.isSelf;
+        this.unqualified = template.unqualified;
+        this.injecteeDescriptor = injecteeDescriptor;
+        this.pClass = template.pClass;
+        this.parentIdentifier = template.parentIdentifier;
+    }
+
     /* (non-Javadoc)
      * @see org.glassfish.hk2.api.Injectee#getRequiredType()
      */
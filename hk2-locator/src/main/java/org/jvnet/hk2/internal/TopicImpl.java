@@ -54,6 +54,9 @@ import org.glassfish.hk2.utilities.NamedImpl;
  *
  */
 public class TopicImpl<T> implements Topic<T> {
+    /** Passed explicitly so that publishing does not allocate a varargs array */
+    private final static Annotation NO_QUALIFIERS[] = new Annotation[0];
+    
     private final ServiceLocatorImpl locator;
     private final Type topicType;
     private final Set<Annotation> requiredQualifiers;
@@ -73,7 +76,7 @@ public class TopicImpl<T> implements Topic<T> {
     public void publish(T message) {
         if (message == null) throw new IllegalArgumentException();
         
-        TopicDistributionService distributor = locator.getService(TopicDistributionService.class);
+        TopicDistributionService distributor = locator.getService(TopicDistributionService.class, NO_QUALIFIERS);
             
         if (distributor == null) {
              throw new IllegalStateException("There is no implementation of the TopicDistributionService to distribute the message");
@@ -56,6 +56,7 @@ public class ValidationInformationImpl implements ValidationInformation {
     private final static String SERVICE_LOCATOR_IMPL = "org.jvnet.hk2.internal.ServiceLocatorImpl";
     private final static String VALIDATE_METHOD = "validate";
     private final static String CHECK_METHOD = "checkConfiguration";
+    private final static String ADD_CONFIGURATION_METHOD = "addConfiguration";
 
     private final static String[] SKIP_ME = {
         "org.jvnet.hk2.internal",
@@ -84,6 +85,8 @@ public class ValidationInformationImpl implements ValidationInformation {
     private final ActiveDescriptor<?> candidate;
     private final Injectee injectee;
     private final Filter filter;
+    private final boolean callerKnown;
+    private final StackTraceElement caller;
 
     /**
      * Creates the validation information
@@ -100,6 +103,28 @@ public class ValidationInformationImpl implements ValidationInformation {
         this.candidate = candidate;
         this.injectee = injectee;
         this.filter = filter;
+        this.callerKnown = false;
+        this.caller = null;
+    }
+    
+    /**
+     * Creates the validation information for a validation that is not
+     * done on the thread of the caller, or not below the usual methods
+     * of ServiceLocatorImpl
+     * 
+     * @param operation The operation to perform
+     * @param candidate The candidate to perform it on
+     * @param caller The caller as found by {@link #getConfigurationCaller()}, may be null
+     */
+    /* package */ ValidationInformationImpl(Operation operation,
+            ActiveDescriptor<?> candidate,
+            StackTraceElement caller) {
+        this.operation = operation;
+        this.candidate = candidate;
+        this.injectee = null;
+        this.filter = null;
+        this.callerKnown = true;
+        this.caller = caller;
     }
 
     /**
@@ -144,7 +169,7 @@ public class ValidationInformationImpl implements ValidationInformation {
         return filter;
     }
 
-    private String getPackage(String name) {
+    private static String getPackage(String name) {
         int index = name.lastIndexOf('.');
         if (index < 0) return name;
 
@@ -159,14 +184,32 @@ public class ValidationInformationImpl implements ValidationInformation {
      */
     @Override
     public StackTraceElement getCaller() {
+        if (callerKnown) return caller;
+        
+        return findCaller(VALIDATE_METHOD, CHECK_METHOD);
+    }
+    
+    /**
+     * Finds the caller of a configuration commit while on the thread
+     * doing the commit, so that validations done before the commit reaches
+     * checkConfiguration (possibly on other threads) can report the same
+     * caller as the validations done under the lock
+     * 
+     * @return The caller of ServiceLocatorImpl.addConfiguration, or null if it could not be found
+     */
+    /* package */ static StackTraceElement getConfigurationCaller() {
+        return findCaller(ADD_CONFIGURATION_METHOD, ADD_CONFIGURATION_METHOD);
+    }
+    
+    private static StackTraceElement findCaller(String methodOne, String methodTwo) {
         StackTraceElement frames[] = Thread.currentThread().getStackTrace();
 
         boolean foundValidationCaller = false;
         for (StackTraceElement e : frames) {
             if (!foundValidationCaller) {
                 if (SERVICE_LOCATOR_IMPL.equals(e.getClassName()) &&
-                        (VALIDATE_METHOD.equals(e.getMethodName()) ||
-                         CHECK_METHOD.equals(e.getMethodName()))) {
+                        (methodOne.equals(e.getMethodName()) ||
+                         methodTwo.equals(e.getMethodName()))) {
                     foundValidationCaller = true;
                 }
             }
@@ -0,0 +1,414 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.tests.locator.binarypopulate;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import javax.inject.Singleton;
+
+import org.glassfish.hk2.api.ActiveDescriptor;
+import org.glassfish.hk2.api.DescriptorFileFinder;
+import org.glassfish.hk2.api.DescriptorType;
+import org.glassfish.hk2.api.DescriptorVisibility;
+import org.glassfish.hk2.api.DynamicConfigurationService;
+import org.glassfish.hk2.api.MultiException;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
+import org.glassfish.hk2.utilities.BinaryDescriptorFile;
+import org.glassfish.hk2.utilities.BuilderHelper;
+import org.glassfish.hk2.utilities.DescriptorImpl;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for populating a locator from binary descriptor files
+ * 
+ * @author jwells
+ *
+ */
+public class BinaryPopulateTest {
+    private final static String DUMMY_IMPL = "com.acme.binary.Dummy";
+    private final static String DUMMY_CONTRACT = "com.acme.binary.DummyContract";
+    private final static String DUMMY_QUALIFIER = "com.acme.binary.DummyQualifier";
+    private final static String DUMMY_SCOPE = "com.acme.binary.DummyScope";
+    private final static String KEY = "key";
+    private final static String VALUE = "value";
+    private final static String VALUE2 = "value2";
+    
+    private final static int NUM_BENCHMARK_DESCRIPTORS = 5000;
+    private final static int NUM_BENCHMARK_RUNS = 20;
+    
+    private static List<DescriptorImpl> createDescriptors(int count) {
+        List<DescriptorImpl> retVal = new ArrayList<DescriptorImpl>(count);
+        
+        for (int lcv = 0; lcv < count; lcv++) {
+            DescriptorImpl di = new DescriptorImpl();
+            di.setImplementation(DUMMY_IMPL + lcv);
+            di.addAdvertisedContract(DUMMY_IMPL + lcv);
+            di.addAdvertisedContract(DUMMY_CONTRACT);
+            di.addQualifier(DUMMY_QUALIFIER);
+            di.setName("name" + lcv);
+            di.addMetadata(KEY, VALUE);
+            di.addMetadata(KEY, VALUE2);
+            
+            switch (lcv % 4) {
+            case 0:
+                di.setScope(Singleton.class.getName());
+                di.setRanking(lcv);
+                break;
+            case 1:
+                di.setScope(DUMMY_SCOPE);
+                di.setDescriptorType(DescriptorType.PROVIDE_METHOD);
+                di.setProxiable(Boolean.TRUE);
+                di.setProxyForSameScope(Boolean.FALSE);
+                break;
+            case 2:
+                di.setDescriptorVisibility(DescriptorVisibility.LOCAL);
+                di.setProxiable(Boolean.FALSE);
+                di.setClassAnalysisName("analysis");
+                break;
+            default:
+                // Not in its own contracts
+                di.removeAdvertisedContract(DUMMY_IMPL + lcv);
+                di.setName(null);
+                break;
+            }
+            
+            retVal.add(di);
+        }
+        
+        return retVal;
+    }
+    
+    private static byte[] writeText(List<DescriptorImpl> descriptors) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        PrintWriter pw = new PrintWriter(baos);
+        
+        pw.println("# A comment");
+        pw.println();
+        
+        for (DescriptorImpl di : descriptors) {
+            di.writeObject(pw);
+        }
+        
+        pw.close();
+        
+        return baos.toByteArray();
+    }
+    
+    private static byte[] writeBinary(List<DescriptorImpl> descriptors) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        
+        BinaryDescriptorFile.write(descriptors, baos);
+        
+        return baos.toByteArray();
+    }
+    
+    private static List<DescriptorImpl> readText(byte[] text) throws IOException {
+        BufferedReader br = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(text)));
+        
+        List<DescriptorImpl> retVal = new ArrayList<DescriptorImpl>();
+        
+        DescriptorImpl di = new DescriptorImpl();
+        while (di.readObject(br)) {
+            retVal.add(di);
+            di = new DescriptorImpl();
+        }
+        
+        return retVal;
+    }
+    
+    private static String toText(DescriptorImpl di) throws IOException {
+        StringWriter sw = new StringWriter();
+        PrintWriter pw = new PrintWriter(sw);
+        
+        di.writeObject(pw);
+        pw.close();
+        
+        return sw.toString();
+    }
+    
+    private static List<ActiveDescriptor<?>> populate(ServiceLocator locator, InputStream... streams) throws IOException {
+        DynamicConfigurationService dcs = locator.getService(DynamicConfigurationService.class);
+        
+        return dcs.getPopulator().populate(new StreamDescriptorFinder(streams));
+    }
+    
+    /**
+     * Tests that descriptors read from the binary format are the same
+     * as descriptors read from the text format
+     * 
+     * @throws IOException
+     */
+    @Test // @org.junit.Ignore
+    public void testBinaryMatchesText() throws IOException {
+        List<DescriptorImpl> original = createDescriptors(8);
+        
+        List<DescriptorImpl> fromText = readText(writeText(original));
+        
+        byte[] binary = writeBinary(original);
+        Assert.assertTrue(BinaryDescriptorFile.isBinary(ByteBuffer.wrap(binary)));
+        Assert.assertTrue(BinaryDescriptorFile.isBinary(new ByteArrayInputStream(binary)));
+        Assert.assertFalse(BinaryDescriptorFile.isBinary(new ByteArrayInputStream(writeText(original))));
+        
+        BinaryDescriptorFile file = new BinaryDescriptorFile(ByteBuffer.wrap(binary));
+        Assert.assertEquals(original.size(), file.getNumDescriptors());
+        
+        List<DescriptorImpl> fromBinary = file.getDescriptors();
+        Assert.assertEquals(fromText.size(), fromBinary.size());
+        
+        for (int lcv = 0; lcv < fromText.size(); lcv++) {
+            DescriptorImpl textDescriptor = fromText.get(lcv);
+            DescriptorImpl binaryDescriptor = fromBinary.get(lcv);
+            
+            Assert.assertEquals(textDescriptor, binaryDescriptor);
+            Assert.assertEquals(toText(textDescriptor), toText(binaryDescriptor));
+            Assert.assertEquals(textDescriptor.getAdvertisedContracts().toString(),
+                    binaryDescriptor.getAdvertisedContracts().toString());
+        }
+        
+        // Random access to a single record
+        Assert.assertEquals(toText(fromText.get(5)), toText(file.getDescriptor(5)));
+    }
+    
+    /**
+     * Tests that readDescriptors, which is used by readers of descriptor
+     * files other than the Populator, reads both formats
+     * 
+     * @throws IOException
+     */
+    @Test // @org.junit.Ignore
+    public void testReadDescriptorsReadsEitherFormat() throws IOException {
+        List<DescriptorImpl> original = createDescriptors(8);
+        
+        List<DescriptorImpl> fromText = BinaryDescriptorFile.readDescriptors(new ByteArrayInputStream(writeText(original)));
+        List<DescriptorImpl> fromBinary = BinaryDescriptorFile.readDescriptors(new ByteArrayInputStream(writeBinary(original)));
+        
+        Assert.assertEquals(original.size(), fromText.size());
+        Assert.assertEquals(original.size(), fromBinary.size());
+        
+        for (int lcv = 0; lcv < original.size(); lcv++) {
+            Assert.assertEquals(toText(fromText.get(lcv)), toText(fromBinary.get(lcv)));
+        }
+        
+        // A stream that does not support mark
+        File binaryFile = File.createTempFile("binaryDescriptors", ".bin");
+        binaryFile.deleteOnExit();
+        
+        FileOutputStream fos = new FileOutputStream(binaryFile);
+        try {
+            fos.write(writeBinary(original));
+        }
+        finally {
+            fos.close();
+        }
+        
+        FileInputStream fis = new FileInputStream(binaryFile);
+        try {
+            Assert.assertEquals(original.size(), BinaryDescriptorFile.readDescriptors(fis).size());
+        }
+        finally {
+            fis.close();
+        }
+    }
+    
+    /**
+     * Tests that a locator can be populated from a binary stream that
+     * is not a file, and that the services work
+     * 
+     * @throws IOException
+     */
+    @Test // @org.junit.Ignore
+    public void testPopulateFromBinaryStream() throws IOException {
+        ServiceLocator locator = LocatorHelper.create();
+        
+        DescriptorImpl di = new DescriptorImpl();
+        di.setImplementation(BinaryService.class.getName());
+        di.addAdvertisedContract(BinaryService.class.getName());
+        di.addAdvertisedContract(BinaryContract.class.getName());
+        di.setScope(Singleton.class.getName());
+        
+        List<DescriptorImpl> descriptors = new LinkedList<DescriptorImpl>();
+        descriptors.add(di);
+        
+        List<ActiveDescriptor<?>> added = populate(locator, new ByteArrayInputStream(writeBinary(descriptors)));
+        Assert.assertEquals(1, added.size());
+        
+        BinaryContract contract = locator.getService(BinaryContract.class);
+        Assert.assertNotNull(contract);
+        Assert.assertTrue(contract instanceof BinaryService);
+        
+        Assert.assertSame(contract, locator.getService(BinaryService.class));
+    }
+    
+    /**
+     * Tests that a binary file (which will be memory mapped) and a text
+     * file can be populated together
+     * 
+     * @throws IOException
+     */
+    @Test // @org.junit.Ignore
+    public void testPopulateFromBinaryFileAndTextStream() throws IOException {
+        ServiceLocator locator = LocatorHelper.create();
+        
+        List<DescriptorImpl> descriptors = createDescriptors(10);
+        
+        File binaryFile = File.createTempFile("BinaryPopulateTest", ".hk2");
+        binaryFile.deleteOnExit();
+        
+        FileOutputStream fos = new FileOutputStream(binaryFile);
+        try {
+            fos.write(writeBinary(descriptors.subList(0, 5)));
+        }
+        finally {
+            fos.close();
+        }
+        
+        List<ActiveDescriptor<?>> added = populate(locator,
+                new FileInputStream(binaryFile),
+                new ByteArrayInputStream(writeText(descriptors.subList(5, 10))));
+        Assert.assertEquals(10, added.size());
+        
+        for (int lcv = 0; lcv < 10; lcv++) {
+            Assert.assertEquals(DUMMY_IMPL + lcv, added.get(lcv).getImplementation());
+        }
+        
+        Assert.assertEquals(10, locator.getDescriptors(BuilderHelper.createContractFilter(DUMMY_CONTRACT)).size());
+        
+        ActiveDescriptor<?> local = locator.getBestDescriptor(BuilderHelper.createContractFilter(DUMMY_IMPL + 2));
+        Assert.assertNotNull(local);
+        Assert.assertEquals(DescriptorVisibility.LOCAL, local.getDescriptorVisibility());
+        Assert.assertEquals(Boolean.FALSE, local.isProxiable());
+    }
+    
+    /**
+     * Tests that a truncated binary file is reported as an error
+     * 
+     * @throws IOException
+     */
+    @Test // @org.junit.Ignore
+    public void testTruncatedBinaryFileFails() throws IOException {
+        ServiceLocator locator = LocatorHelper.create();
+        
+        byte[] binary = writeBinary(createDescriptors(3));
+        byte[] truncated = new byte[binary.length - 10];
+        System.arraycopy(binary, 0, truncated, 0, truncated.length);
+        
+        try {
+            populate(locator, new ByteArrayInputStream(truncated));
+            Assert.fail("A truncated binary file should fail");
+        }
+        catch (MultiException me) {
+            Assert.assertTrue(me.getErrors().get(0) instanceof IOException);
+        }
+        
+        Assert.assertNull(locator.getBestDescriptor(BuilderHelper.createContractFilter(DUMMY_CONTRACT)));
+    }
+    
+    /**
+     * Compares the time it takes to populate a locator from the text
+     * format and from the binary format
+     * 
+     * @throws IOException
+     */
+    @Test // @org.junit.Ignore
+    public void testPopulateTimeTextVersusBinary() throws IOException {
+        List<DescriptorImpl> descriptors = createDescriptors(NUM_BENCHMARK_DESCRIPTORS);
+        
+        byte[] text = writeText(descriptors);
+        byte[] binary = writeBinary(descriptors);
+        
+        long textTime = 0L;
+        long binaryTime = 0L;
+        for (int lcv = 0; lcv < NUM_BENCHMARK_RUNS; lcv++) {
+            ServiceLocator textLocator = LocatorHelper.create();
+            
+            long start = System.nanoTime();
+            Assert.assertEquals(NUM_BENCHMARK_DESCRIPTORS, populate(textLocator, new ByteArrayInputStream(text)).size());
+            textTime += System.nanoTime() - start;
+            
+            ServiceLocator binaryLocator = LocatorHelper.create();
+            
+            start = System.nanoTime();
+            Assert.assertEquals(NUM_BENCHMARK_DESCRIPTORS, populate(binaryLocator, new ByteArrayInputStream(binary)).size());
+            binaryTime += System.nanoTime() - start;
+            
+            textLocator.shutdown();
+            binaryLocator.shutdown();
+        }
+        
+        System.out.println("Populating " + NUM_BENCHMARK_DESCRIPTORS + " descriptors took " +
+            (textTime / NUM_BENCHMARK_RUNS / 1000L) + " us from text (" + text.length + " bytes) and " +
+            (binaryTime / NUM_BENCHMARK_RUNS / 1000L) + " us from binary (" + binary.length + " bytes)");
+    }
+    
+    private static class StreamDescriptorFinder implements DescriptorFileFinder {
+        private final InputStream streams[];
+        
+        private StreamDescriptorFinder(InputStream streams[]) {
+            this.streams = streams;
+        }
+
+        @Override
+        public List<InputStream> findDescriptorFiles() throws IOException {
+            List<InputStream> retVal = new LinkedList<InputStream>();
+            for (InputStream stream : streams) {
+                retVal.add(stream);
+            }
+            
+            return retVal;
+        }
+        
+    }
+}
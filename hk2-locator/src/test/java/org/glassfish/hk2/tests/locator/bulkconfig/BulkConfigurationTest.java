@@ -0,0 +1,199 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.hk2.tests.locator.bulkconfig;
+
+import java.util.List;
+
+import org.glassfish.hk2.api.ActiveDescriptor;
+import org.glassfish.hk2.api.DynamicConfiguration;
+import org.glassfish.hk2.api.DynamicConfigurationService;
+import org.glassfish.hk2.api.MultiException;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
+import org.glassfish.hk2.utilities.BuilderHelper;
+import org.glassfish.hk2.utilities.DescriptorImpl;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for configurations that add many descriptors in a single commit
+ * 
+ * @author jwells
+ *
+ */
+public class BulkConfigurationTest {
+    private final static String IMPL_PREFIX = "com.acme.bulk.Service";
+    private final static String CONTRACT_PREFIX = "com.acme.bulk.Contract";
+    private final static String NAME_PREFIX = "Name";
+    
+    private final static int NUM_CONTRACTS = 10;
+    private final static int NUM_NAMES = 7;
+    
+    private final static int BENCHMARK_SIZES[] = { 1000, 10000, 100000 };
+    
+    private static DescriptorImpl createDescriptor(int lcv) {
+        DescriptorImpl di = new DescriptorImpl();
+        di.setImplementation(IMPL_PREFIX + lcv);
+        di.addAdvertisedContract(CONTRACT_PREFIX + (lcv % NUM_CONTRACTS));
+        di.setName(NAME_PREFIX + (lcv % NUM_NAMES));
+        di.setRanking(lcv % 5);
+        
+        return di;
+    }
+    
+    private static void addDescriptors(ServiceLocator locator, int start, int count, int rejected) {
+        DynamicConfiguration config = locator.getService(DynamicConfigurationService.class).createDynamicConfiguration();
+        
+        for (int lcv = start; lcv < start + count; lcv++) {
+            DescriptorImpl di = createDescriptor(lcv);
+            if (lcv == rejected) {
+                di.setImplementation(di.getImplementation() + RejectingValidationService.REJECTED_SUFFIX);
+            }
+            
+            config.bind(di, false);
+        }
+        
+        config.commit();
+    }
+    
+    private static void checkSorted(List<ActiveDescriptor<?>> descriptors) {
+        for (int lcv = 1; lcv < descriptors.size(); lcv++) {
+            ActiveDescriptor<?> previous = descriptors.get(lcv - 1);
+            ActiveDescriptor<?> current = descriptors.get(lcv);
+            
+            Assert.assertTrue(previous.getRanking() >= current.getRanking());
+            if (previous.getRanking() == current.getRanking()) {
+                Assert.assertTrue(previous.getServiceId() < current.getServiceId());
+            }
+        }
+    }
+    
+    /**
+     * Tests that every index is complete and sorted after a large
+     * commit, and after a second one that adds to the same indexes
+     */
+    @Test // @org.junit.Ignore
+    public void testLargeCommitIsIndexedAndSorted() {
+        ServiceLocator locator = LocatorHelper.create();
+        
+        addDescriptors(locator, 0, 1000, -1);
+        addDescriptors(locator, 1000, 500, -1);
+        
+        for (int contract = 0; contract < NUM_CONTRACTS; contract++) {
+            List<ActiveDescriptor<?>> descriptors = locator.getDescriptors(
+                    BuilderHelper.createContractFilter(CONTRACT_PREFIX + contract));
+            
+            Assert.assertEquals(150, descriptors.size());
+            checkSorted(descriptors);
+        }
+        
+        int total = 0;
+        for (int name = 0; name < NUM_NAMES; name++) {
+            List<ActiveDescriptor<?>> descriptors = locator.getDescriptors(
+                    BuilderHelper.createNameFilter(NAME_PREFIX + name));
+            
+            total += descriptors.size();
+            checkSorted(descriptors);
+        }
+        
+        Assert.assertEquals(1500, total);
+        
+        ActiveDescriptor<?> best = locator.getBestDescriptor(
+                BuilderHelper.createContractFilter(CONTRACT_PREFIX + 4));
+        Assert.assertEquals(IMPL_PREFIX + 4, best.getImplementation());
+    }
+    
+    /**
+     * Tests that a descriptor failing validation in a large commit
+     * fails the whole commit, and that every descriptor is validated
+     * once when all of them pass
+     */
+    @Test // @org.junit.Ignore
+    public void testLargeCommitIsValidated() {
+        ServiceLocator locator = LocatorHelper.create();
+        ServiceLocatorUtilities.addClasses(locator, RejectingValidationService.class);
+        
+        RejectingValidationService validator = locator.getService(RejectingValidationService.class);
+        
+        try {
+            addDescriptors(locator, 0, 1000, 600);
+            Assert.fail("The rejected descriptor should have failed the commit");
+        }
+        catch (MultiException me) {
+            Assert.assertTrue(me.getMessage(), me.getMessage().contains(RejectingValidationService.REJECTED_SUFFIX));
+        }
+        
+        Assert.assertTrue(locator.getDescriptors(
+                BuilderHelper.createContractFilter(CONTRACT_PREFIX + 0)).isEmpty());
+        
+        int before = validator.getBindValidations();
+        
+        addDescriptors(locator, 0, 1000, -1);
+        
+        Assert.assertEquals(1000, validator.getBindValidations() - before);
+        Assert.assertEquals(100, locator.getDescriptors(
+                BuilderHelper.createContractFilter(CONTRACT_PREFIX + 0)).size());
+    }
+    
+    /**
+     * Times single commits of 1k, 10k and 100k descriptors
+     */
+    @Test // @org.junit.Ignore
+    public void benchmarkLargeCommits() {
+        // Warms up the commit path
+        addDescriptors(LocatorHelper.create(), 0, BENCHMARK_SIZES[0], -1);
+        
+        for (int size : BENCHMARK_SIZES) {
+            ServiceLocator locator = LocatorHelper.create();
+            ServiceLocatorUtilities.addClasses(locator, RejectingValidationService.class);
+            
+            long elapsed = System.nanoTime();
+            addDescriptors(locator, 0, size, -1);
+            elapsed = System.nanoTime() - elapsed;
+            
+            System.out.println("Committed " + size + " descriptors in " + (elapsed / 1000000L) + " ms");
+            
+            Assert.assertEquals(size / NUM_CONTRACTS, locator.getDescriptors(
+                    BuilderHelper.createContractFilter(CONTRACT_PREFIX + 0)).size());
+        }
+    }
+}
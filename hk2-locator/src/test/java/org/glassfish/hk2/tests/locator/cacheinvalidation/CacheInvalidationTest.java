@@ -0,0 +1,125 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.tests.locator.cacheinvalidation;
+
+import java.util.List;
+
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for removing entries from the lookup caches when
+ * the services of a contract change
+ * 
+ * @author jwells
+ *
+ */
+public class CacheInvalidationTest {
+    private final static String NAME_PREFIX = "name";
+    private final static int NUM_CONFIGURATIONS = 200;
+    private final static int CACHE_FILL_SIZES[] = { 0, 1000, 5000, 15000 };
+    
+    private static void fillCache(ServiceLocator locator, int numKeys) {
+        for (int lcv = 0; lcv < numKeys; lcv++) {
+            locator.getService(CachedContract.class, NAME_PREFIX + lcv);
+        }
+    }
+    
+    /**
+     * Cached lookups of a contract must see services added to that
+     * contract, while lookups of other contracts keep working
+     */
+    @Test // @org.junit.Ignore
+    public void testOnlyAffectedContractIsInvalidated() {
+        ServiceLocator locator = LocatorHelper.create();
+        ServiceLocatorUtilities.addClasses(locator, CachedService.class);
+        
+        CachedContract cached = locator.getService(CachedContract.class);
+        Assert.assertNotNull(cached);
+        fillCache(locator, 100);
+        
+        Assert.assertNull(locator.getService(ChangingContract.class));
+        Assert.assertEquals(0, locator.getAllServices(ChangingContract.class).size());
+        
+        ServiceLocatorUtilities.addClasses(locator, ChangingService.class);
+        
+        Assert.assertNotNull(locator.getService(ChangingContract.class));
+        Assert.assertEquals(1, locator.getAllServices(ChangingContract.class).size());
+        
+        ServiceLocatorUtilities.addClasses(locator, ChangingService.class);
+        
+        List<ChangingContract> all = locator.getAllServices(ChangingContract.class);
+        Assert.assertEquals(2, all.size());
+        
+        Assert.assertSame(cached, locator.getService(CachedContract.class));
+        Assert.assertNull(locator.getService(CachedContract.class, NAME_PREFIX + 0));
+    }
+    
+    /**
+     * Measures how long adding configurations takes while more and
+     * more unrelated keys are in the lookup cache.  The time per
+     * configuration should not grow with the size of the cache
+     */
+    @Test // @org.junit.Ignore
+    public void testAddConfigurationLatencyAgainstCacheSize() {
+        for (int fillSize : CACHE_FILL_SIZES) {
+            ServiceLocator locator = LocatorHelper.create();
+            ServiceLocatorUtilities.addClasses(locator, CachedService.class);
+            
+            fillCache(locator, fillSize);
+            
+            long elapsedTime = System.nanoTime();
+            for (int lcv = 0; lcv < NUM_CONFIGURATIONS; lcv++) {
+                ServiceLocatorUtilities.addClasses(locator, ChangingService.class);
+            }
+            elapsedTime = System.nanoTime() - elapsedTime;
+            
+            Assert.assertEquals(NUM_CONFIGURATIONS, locator.getAllServices(ChangingContract.class).size());
+            
+            System.out.println("With " + fillSize + " cached keys " + NUM_CONFIGURATIONS +
+                    " configurations took " + (elapsedTime / 1000000L) + " milliseconds");
+            
+            locator.shutdown();
+        }
+    }
+}
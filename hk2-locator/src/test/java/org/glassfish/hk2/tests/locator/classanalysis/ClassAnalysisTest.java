@@ -45,6 +45,7 @@ import org.glassfish.hk2.api.DynamicConfigurationService;
 import org.glassfish.hk2.api.ServiceHandle;
 import org.glassfish.hk2.api.ServiceLocator;
 import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -60,6 +61,8 @@ public class ClassAnalysisTest {
     
     public static final String ALTERNATE_DEFAULT_ANALYZER = "AlternateDefaultAnalyzer";
     
+    private final static String SHARED_CLASS_ANALYSIS_PROPERTY = "org.jvnet.hk2.properties.sharedClassAnalysis";
+    
     @Test
     public void testChangeDefaultAnalyzer() {
         AlternateDefaultAnalyzer alternate = null;
@@ -193,4 +196,57 @@ public class ClassAnalysisTest {
         ServiceWithValidHK2NoArgConstructor service = locator.getService(ServiceWithValidHK2NoArgConstructor.class);
         service.check();
     }
+    
+    /**
+     * Tests that locators sharing the analysis of a class each
+     * get services injected with their own injectees
+     */
+    @Test // @org.junit.Ignore
+    public void testSharedClassAnalysis() {
+        ServiceLocator locator1;
+        ServiceLocator locator2;
+        System.setProperty(SHARED_CLASS_ANALYSIS_PROPERTY, "true");
+        try {
+            locator1 = LocatorHelper.create();
+            locator2 = LocatorHelper.create();
+        }
+        finally {
+            System.clearProperty(SHARED_CLASS_ANALYSIS_PROPERTY);
+        }
+        
+        ServiceLocatorUtilities.addClasses(locator1, SharedAnalysisService.class,
+                SimpleService1.class, SimpleService2.class);
+        ServiceLocatorUtilities.addClasses(locator2, SharedAnalysisService.class,
+                SimpleService1.class, SimpleService2.class);
+        
+        locator1.getService(SharedAnalysisService.class).check(locator1);
+        
+        // The second locator uses the analysis done by the first
+        locator2.getService(SharedAnalysisService.class).check(locator2);
+        
+        // And still works once the first is gone
+        locator1.shutdown();
+        locator2.getService(SharedAnalysisService.class).check(locator2);
+    }
+    
+    /**
+     * Tests that custom analyzers are still used when
+     * class analysis is shared
+     */
+    @Test // @org.junit.Ignore
+    public void testSharedClassAnalysisWithCustomAnalyzer() {
+        ServiceLocator sharing;
+        System.setProperty(SHARED_CLASS_ANALYSIS_PROPERTY, "true");
+        try {
+            sharing = LocatorHelper.create(TEST_NAME + "Shared", new ClassAnalysisModule());
+        }
+        finally {
+            System.clearProperty(SHARED_CLASS_ANALYSIS_PROPERTY);
+        }
+        
+        ServiceWithManyDoubles service = sharing.create(ServiceWithManyDoubles.class, DoubleClassAnalyzer.DOUBLE_ANALYZER);
+        Assert.assertNotNull(service);
+        
+        service.checkAfterConstructor();
+    }
 }
@@ -0,0 +1,106 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.tests.locator.classanalysis;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+
+import org.glassfish.hk2.api.ActiveDescriptor;
+import org.glassfish.hk2.api.Injectee;
+import org.glassfish.hk2.api.Self;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.junit.Assert;
+
+/**
+ * Uses every kind of injection point, so that an analysis
+ * shared between locators can be checked
+ * 
+ * @author jwells
+ *
+ */
+public class SharedAnalysisService {
+    private final SimpleService1 viaConstructor;
+    
+    @Inject
+    private SimpleService2 viaField;
+    
+    @Inject @Self
+    private ActiveDescriptor<?> self;
+    
+    private ServiceLocator viaMethod;
+    private boolean postConstructCalled;
+    
+    @Inject
+    private SharedAnalysisService(SimpleService1 viaConstructor) {
+        this.viaConstructor = viaConstructor;
+    }
+    
+    /**
+     * Called by HK2
+     * 
+     * @param viaMethod The locator that created this service
+     */
+    @Inject
+    public void setLocator(ServiceLocator viaMethod) {
+        this.viaMethod = viaMethod;
+    }
+    
+    @PostConstruct
+    private void postConstruct() {
+        postConstructCalled = true;
+    }
+    
+    /**
+     * Checks that everything was injected by the given locator
+     * 
+     * @param locator The locator this service was gotten from
+     */
+    public void check(ServiceLocator locator) {
+        Assert.assertNotNull(viaConstructor);
+        Assert.assertNotNull(viaField);
+        Assert.assertSame(locator, viaMethod);
+        Assert.assertTrue(postConstructCalled);
+        
+        Assert.assertEquals(locator.getLocatorId(), self.getLocatorId().longValue());
+        for (Injectee injectee : self.getInjectees()) {
+            Assert.assertSame(self, injectee.getInjecteeDescriptor());
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.tests.locator.fastlookup;
+
+import java.lang.annotation.Annotation;
+import java.lang.management.ManagementFactory;
+
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for getService(Class) lookups with no name and no qualifiers
+ * 
+ * @author jwells
+ *
+ */
+public class FastLookupTest {
+    private final static Annotation[] NO_QUALIFIERS = new Annotation[0];
+    private final static int NUM_LOOKUPS = 200000;
+    
+    /**
+     * The fast lookup must see services added after it was cached
+     */
+    @Test // @org.junit.Ignore
+    public void testFastLookupSeesNewServices() {
+        ServiceLocator locator = LocatorHelper.create();
+        ServiceLocatorUtilities.addClasses(locator, FirstFastService.class);
+        
+        Assert.assertEquals(FirstFastService.NAME, locator.getService(FastContract.class).getName());
+        Assert.assertEquals(FirstFastService.NAME, locator.getService(FastContract.class).getName());
+        
+        ServiceLocatorUtilities.addClasses(locator, SecondFastService.class);
+        
+        Assert.assertEquals(SecondFastService.NAME, locator.getService(FastContract.class).getName());
+        
+        ServiceLocatorUtilities.removeFilter(locator, 
+                org.glassfish.hk2.utilities.BuilderHelper.createContractFilter(SecondFastService.class.getName()));
+        
+        Assert.assertEquals(FirstFastService.NAME, locator.getService(FastContract.class).getName());
+    }
+    
+    /**
+     * A validation service added after the lookup was cached must
+     * still be consulted
+     */
+    @Test // @org.junit.Ignore
+    public void testFastLookupHonorsLaterValidators() {
+        ServiceLocator locator = LocatorHelper.create();
+        ServiceLocatorUtilities.addClasses(locator, FirstFastService.class, SecondFastService.class);
+        
+        Assert.assertEquals(SecondFastService.NAME, locator.getService(FastContract.class).getName());
+        Assert.assertEquals(SecondFastService.NAME, locator.getService(FastContract.class).getName());
+        
+        ServiceLocatorUtilities.addClasses(locator, RejectingValidationService.class);
+        
+        Assert.assertEquals(FirstFastService.NAME, locator.getService(FastContract.class).getName());
+    }
+    
+    /**
+     * A child locator must see services added to its parent
+     * after the lookup was cached in the child
+     */
+    @Test // @org.junit.Ignore
+    public void testFastLookupSeesParentChanges() {
+        ServiceLocator parent = LocatorHelper.create();
+        ServiceLocator child = LocatorHelper.create(parent);
+        ServiceLocatorUtilities.addClasses(parent, FirstFastService.class);
+        
+        Assert.assertEquals(FirstFastService.NAME, child.getService(FastContract.class).getName());
+        Assert.assertEquals(FirstFastService.NAME, child.getService(FastContract.class).getName());
+        
+        ServiceLocatorUtilities.addClasses(parent, SecondFastService.class);
+        
+        Assert.assertEquals(SecondFastService.NAME, child.getService(FastContract.class).getName());
+    }
+    
+    /**
+     * Looks up a created singleton many times and makes sure the lookups
+     * allocate nothing on this thread, when the JVM can tell
+     */
+    @Test // @org.junit.Ignore
+    public void testWarmLookupAllocation() {
+        ServiceLocator locator = LocatorHelper.create();
+        ServiceLocatorUtilities.addClasses(locator, FirstFastService.class);
+        
+        FastContract expected = locator.getService(FastContract.class, NO_QUALIFIERS);
+        
+        // Warm up
+        for (int lcv = 0; lcv < NUM_LOOKUPS; lcv++) {
+            Assert.assertSame(expected, locator.getService(FastContract.class, NO_QUALIFIERS));
+        }
+        
+        long allocatedBefore = getAllocatedBytes();
+        long elapsedTime = System.currentTimeMillis();
+        for (int lcv = 0; lcv < NUM_LOOKUPS; lcv++) {
+            if (expected != locator.getService(FastContract.class, NO_QUALIFIERS)) {
+                Assert.fail("Got a different singleton");
+            }
+        }
+        elapsedTime = System.currentTimeMillis() - elapsedTime;
+        long allocatedAfter = getAllocatedBytes();
+        
+        if (allocatedBefore < 0 || allocatedAfter < 0) {
+            System.out.println("Did " + NUM_LOOKUPS + " warm lookups in " + elapsedTime + " milliseconds");
+            return;
+        }
+        
+        double bytesPerLookup = ((double) (allocatedAfter - allocatedBefore)) / NUM_LOOKUPS;
+        System.out.println("Did " + NUM_LOOKUPS + " warm lookups in " + elapsedTime +
+                " milliseconds allocating " + bytesPerLookup + " bytes per lookup");
+        
+        // The only allocations allowed are the ones of the measurement itself
+        Assert.assertTrue("Warm lookups allocated " + bytesPerLookup + " bytes each", bytesPerLookup < 1.0);
+    }
+    
+    /**
+     * Uses the HotSpot extension of the ThreadMXBean if it is available
+     * 
+     * @return The number of bytes allocated by this thread, or -1 if
+     * that cannot be measured
+     */
+    private static long getAllocatedBytes() {
+        Object bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return -1L;
+        
+        com.sun.management.ThreadMXBean hotspotBean = (com.sun.management.ThreadMXBean) bean;
+        if (!hotspotBean.isThreadAllocatedMemorySupported() || !hotspotBean.isThreadAllocatedMemoryEnabled()) {
+            return -1L;
+        }
+        
+        return hotspotBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
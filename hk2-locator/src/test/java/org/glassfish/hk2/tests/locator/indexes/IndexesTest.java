@@ -0,0 +1,203 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.tests.locator.indexes;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import org.glassfish.hk2.api.ActiveDescriptor;
+import org.glassfish.hk2.api.DynamicConfiguration;
+import org.glassfish.hk2.api.DynamicConfigurationService;
+import org.glassfish.hk2.api.Filter;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
+import org.glassfish.hk2.utilities.BuilderHelper;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the ordering of the per-contract indexes of the locator
+ * 
+ * @author jwells
+ *
+ */
+public class IndexesTest {
+    private final static int NUM_DESCRIPTORS = 1000;
+    private final static int NUM_CONFIGURATIONS = 10;
+    private final static int BIG_NUMBER = 2000;
+    
+    private final static Filter CONTRACT_FILTER = BuilderHelper.createContractFilter(IndexedContract.class.getName());
+    
+    private static void assertSorted(List<ActiveDescriptor<?>> descriptors) {
+        ActiveDescriptor<?> previous = null;
+        for (ActiveDescriptor<?> current : descriptors) {
+            if (previous != null) {
+                Assert.assertTrue("Rank of " + previous + " is less than " + current,
+                        previous.getRanking() >= current.getRanking());
+                
+                if (previous.getRanking() == current.getRanking()) {
+                    Assert.assertTrue("Service id of " + previous + " is greater than " + current,
+                        previous.getServiceId() < current.getServiceId());
+                }
+            }
+            
+            previous = current;
+        }
+    }
+    
+    private static List<ActiveDescriptor<?>> addRanked(ServiceLocator locator, int... ranks) {
+        DynamicConfiguration config = locator.getService(DynamicConfigurationService.class).createDynamicConfiguration();
+        
+        List<ActiveDescriptor<?>> retVal = new LinkedList<ActiveDescriptor<?>>();
+        for (int rank : ranks) {
+            retVal.add(config.bind(BuilderHelper.link(IndexedService.class).
+                    to(IndexedContract.class).ofRank(rank).build()));
+        }
+        
+        config.commit();
+        
+        return retVal;
+    }
+    
+    /**
+     * Adds many descriptors with random ranks over several
+     * configurations and makes sure they always come back sorted
+     */
+    @Test // @org.junit.Ignore
+    public void testManyRankedDescriptorsAreSorted() {
+        ServiceLocator locator = LocatorHelper.create();
+        Random random = new Random(13L);
+        
+        for (int config = 0; config < NUM_CONFIGURATIONS; config++) {
+            int ranks[] = new int[NUM_DESCRIPTORS / NUM_CONFIGURATIONS];
+            for (int lcv = 0; lcv < ranks.length; lcv++) {
+                ranks[lcv] = random.nextInt(20) - 10;
+            }
+            
+            addRanked(locator, ranks);
+            
+            List<ActiveDescriptor<?>> all = locator.getDescriptors(CONTRACT_FILTER);
+            Assert.assertEquals((config + 1) * ranks.length, all.size());
+            
+            assertSorted(all);
+        }
+    }
+    
+    /**
+     * Removes descriptors from the front, middle and back of an index
+     */
+    @Test // @org.junit.Ignore
+    public void testRemoveFromAllPositions() {
+        ServiceLocator locator = LocatorHelper.create();
+        
+        List<ActiveDescriptor<?>> added = addRanked(locator, 5, 4, 3, 2, 1);
+        
+        ServiceLocatorUtilities.removeOneDescriptor(locator, added.get(0));
+        ServiceLocatorUtilities.removeOneDescriptor(locator, added.get(2));
+        ServiceLocatorUtilities.removeOneDescriptor(locator, added.get(4));
+        
+        List<ActiveDescriptor<?>> all = locator.getDescriptors(CONTRACT_FILTER);
+        Assert.assertEquals(2, all.size());
+        Assert.assertEquals(4, all.get(0).getRanking());
+        Assert.assertEquals(2, all.get(1).getRanking());
+        
+        // Remove a descriptor that is already gone
+        ServiceLocatorUtilities.removeOneDescriptor(locator, added.get(0));
+        Assert.assertEquals(2, locator.getDescriptors(CONTRACT_FILTER).size());
+    }
+    
+    /**
+     * Tests that changing the rank of a descriptor re-orders the index
+     * and that the descriptor can still be removed afterwards
+     */
+    @Test // @org.junit.Ignore
+    public void testRankChangeReorders() {
+        ServiceLocator locator = LocatorHelper.create();
+        
+        List<ActiveDescriptor<?>> added = addRanked(locator, 3, 2, 1);
+        ActiveDescriptor<?> lowest = added.get(2);
+        
+        Assert.assertEquals(lowest, locator.getDescriptors(CONTRACT_FILTER).get(2));
+        
+        lowest.setRanking(10);
+        
+        List<ActiveDescriptor<?>> all = locator.getDescriptors(CONTRACT_FILTER);
+        Assert.assertEquals(lowest, all.get(0));
+        assertSorted(all);
+        
+        ServiceLocatorUtilities.removeOneDescriptor(locator, lowest);
+        
+        all = locator.getDescriptors(CONTRACT_FILTER);
+        Assert.assertEquals(2, all.size());
+        Assert.assertFalse(all.contains(lowest));
+    }
+    
+    /**
+     * Interleaves single additions with lookups against a large index,
+     * which is the pattern that used to force a full sort of the index
+     * on the first lookup after every change.  Prints the elapsed time
+     */
+    @Test // @org.junit.Ignore
+    public void testInterleavedAddAndLookup() {
+        ServiceLocator locator = LocatorHelper.create();
+        
+        int ranks[] = new int[BIG_NUMBER * 5];
+        for (int lcv = 0; lcv < ranks.length; lcv++) {
+            ranks[lcv] = lcv % 7;
+        }
+        addRanked(locator, ranks);
+        
+        long elapsedTime = System.currentTimeMillis();
+        for (int lcv = 0; lcv < BIG_NUMBER; lcv++) {
+            addRanked(locator, lcv % 7);
+            
+            Assert.assertEquals(ranks.length + lcv + 1, locator.getDescriptors(CONTRACT_FILTER).size());
+        }
+        elapsedTime = System.currentTimeMillis() - elapsedTime;
+        
+        assertSorted(locator.getDescriptors(CONTRACT_FILTER));
+        
+        System.out.println("Interleaved " + BIG_NUMBER + " additions and lookups against an index of " +
+            ranks.length + " descriptors in " + elapsedTime + " milliseconds");
+    }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.tests.locator.injectionplan;
+
+import java.util.List;
+
+import org.glassfish.hk2.api.InstanceLifecycleEvent;
+import org.glassfish.hk2.api.InstanceLifecycleEventType;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the pre-computed creation of services
+ * 
+ * @author jwells
+ *
+ */
+public class InjectionPlanTest {
+    private final static int NUM_CREATIONS = 200000;
+    
+    /**
+     * Makes sure constructor, field, method and postConstruct injection
+     * all happen, in order, on private members
+     */
+    @Test // @org.junit.Ignore
+    public void testAllInjectionPoints() {
+        ServiceLocator locator = LocatorHelper.create();
+        ServiceLocatorUtilities.addClasses(locator, Dependency.class, PlannedService.class);
+        
+        Dependency dependency = locator.getService(Dependency.class);
+        
+        for (int lcv = 0; lcv < 3; lcv++) {
+            PlannedService service = locator.getService(PlannedService.class);
+            
+            Assert.assertSame(dependency, service.getFromConstructor());
+            Assert.assertSame(dependency, service.getFromField());
+            Assert.assertSame(dependency, service.getFromMethod());
+            Assert.assertSame(locator, service.getLocator());
+            Assert.assertTrue(service.isPostConstructCalled());
+        }
+    }
+    
+    /**
+     * Lifecycle listeners must still get every resolved injectee
+     */
+    @Test // @org.junit.Ignore
+    public void testListenersGetKnownInjectees() {
+        ServiceLocator locator = LocatorHelper.create();
+        ServiceLocatorUtilities.addClasses(locator, CountingListener.class, Dependency.class, PlannedService.class);
+        
+        PlannedService service = locator.getService(PlannedService.class);
+        
+        List<InstanceLifecycleEvent> events = locator.getService(CountingListener.class).getEvents();
+        Assert.assertEquals(2, events.size());
+        
+        InstanceLifecycleEvent pre = events.get(0);
+        Assert.assertEquals(InstanceLifecycleEventType.PRE_PRODUCTION, pre.getEventType());
+        Assert.assertNull(pre.getLifecycleObject());
+        
+        // Constructor, field and two method parameters
+        Assert.assertEquals(4, pre.getKnownInjectees().size());
+        
+        InstanceLifecycleEvent post = events.get(1);
+        Assert.assertEquals(InstanceLifecycleEventType.POST_PRODUCTION, post.getEventType());
+        Assert.assertSame(service, post.getLifecycleObject());
+        Assert.assertEquals(4, post.getKnownInjectees().size());
+    }
+    
+    /**
+     * User code changing the context class loader must not
+     * leak out of the creation when the locator is neutral
+     */
+    @Test // @org.junit.Ignore
+    public void testContextClassLoaderIsRestored() {
+        ServiceLocator locator = LocatorHelper.create();
+        ServiceLocatorUtilities.addClasses(locator, Dependency.class, ClassLoaderChangingService.class);
+        
+        ClassLoader original = Thread.currentThread().getContextClassLoader();
+        try {
+            Assert.assertNotNull(locator.getService(ClassLoaderChangingService.class));
+            
+            Assert.assertSame(original, Thread.currentThread().getContextClassLoader());
+        }
+        finally {
+            Thread.currentThread().setContextClassLoader(original);
+        }
+    }
+    
+    /**
+     * Creates a lot of per lookup services and prints how long it took
+     */
+    @Test // @org.junit.Ignore
+    public void testPerLookupCreationSpeed() {
+        ServiceLocator locator = LocatorHelper.create();
+        ServiceLocatorUtilities.addClasses(locator, Dependency.class, PlannedService.class);
+        
+        // Warm up
+        for (int lcv = 0; lcv < NUM_CREATIONS / 10; lcv++) {
+            locator.getService(PlannedService.class);
+        }
+        
+        long elapsedTime = System.currentTimeMillis();
+        for (int lcv = 0; lcv < NUM_CREATIONS; lcv++) {
+            Assert.assertTrue(locator.getService(PlannedService.class).isPostConstructCalled());
+        }
+        elapsedTime = System.currentTimeMillis() - elapsedTime;
+        
+        System.out.println("Created " + NUM_CREATIONS + " per lookup services in " + elapsedTime + " milliseconds");
+    }
+}
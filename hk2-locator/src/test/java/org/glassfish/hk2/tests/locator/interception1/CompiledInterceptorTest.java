@@ -0,0 +1,174 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.tests.locator.interception1;
+
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Runs interceptors as compiled chains
+ * 
+ * @author jwells
+ *
+ */
+public class CompiledInterceptorTest {
+    private final static String COMPILED_INTERCEPTORS_PROPERTY = "org.jvnet.hk2.properties.compiledInterceptors";
+    
+    private final static int WARMUP_CALLS = 100000;
+    private final static int TIMED_CALLS = 1000000;
+    
+    private static ServiceLocator createCompiled(Class<?>... classes) {
+        System.setProperty(COMPILED_INTERCEPTORS_PROPERTY, "true");
+        try {
+            return LocatorHelper.getServiceLocator(classes);
+        }
+        finally {
+            System.clearProperty(COMPILED_INTERCEPTORS_PROPERTY);
+        }
+    }
+    
+    /**
+     * Ensures that all interceptors of a compiled chain are called
+     */
+    @Test // @org.junit.Ignore
+    public void testCompiledMultipleInterceptors() {
+        ServiceLocator locator = createCompiled(
+                AddingService.class,
+                AddThreeInterceptorService.class);
+        
+        AddingService adder = locator.getService(AddingService.class);
+        
+        // Same as the interpreted chain, +6 for the interceptors and +1 for the service
+        Assert.assertEquals(7, adder.addOne(0));
+        
+        // And again, the compiled chain must start at the beginning every time
+        Assert.assertEquals(7, adder.addOne(0));
+    }
+    
+    /**
+     * Ensures that a compiled chain can be cut short
+     */
+    @Test // @org.junit.Ignore
+    public void testCompiledMiddleInterceptorDoesNotProceed() {
+        ServiceLocator locator = createCompiled(
+                RecordInputService.class,
+                MiddleInterceptorNoProceedService.class);
+        
+        RecordInputService recorder = locator.getService(RecordInputService.class);
+        
+        recorder.recordInput(1000);
+        
+        // Should be zero because the middle interceptor did not proceed
+        Assert.assertEquals(0, recorder.getLastInput());
+    }
+    
+    /**
+     * Ensures that exceptions come through a compiled chain
+     */
+    @Test // @org.junit.Ignore
+    public void testCompiledChangeExceptionInterceptor() {
+        ServiceLocator locator = createCompiled(
+                ThrowingService.class,
+                ChangeExceptionInterceptorService.class);
+        
+        ThrowingService thrower = locator.getService(ThrowingService.class);
+        
+        try {
+          thrower.throwy();
+          Assert.fail("Should have thrown an exception");
+        }
+        catch (ExceptionB b) {
+            // Success, because the interceptor changed from A to B
+        }
+    }
+    
+    /**
+     * Ensures that proceeding through an invocation kept by an interceptor
+     * continues from the position of that interceptor
+     */
+    @Test // @org.junit.Ignore
+    public void testCompiledKeptInvocationProceedsFromItsPosition() {
+        ServiceLocator locator = createCompiled(
+                AddingService.class,
+                ReenterInterceptorService.class);
+        
+        AddingService adder = locator.getService(AddingService.class);
+        
+        Assert.assertEquals(1, adder.addOne(0));
+        
+        // Once directly and once more through the invocation of the outer interceptor
+        Assert.assertEquals(2, locator.getService(ReenterInterceptorService.class).getInnerCalls());
+    }
+    
+    /**
+     * Compares the time taken to call through the interpreted
+     * and compiled chains of three interceptors
+     */
+    @Test // @org.junit.Ignore
+    public void benchmarkCompiledAgainstInterpreted() {
+        AddingService interpreted = LocatorHelper.getServiceLocator(
+                AddingService.class,
+                AddThreeInterceptorService.class).getService(AddingService.class);
+        AddingService compiled = createCompiled(
+                AddingService.class,
+                AddThreeInterceptorService.class).getService(AddingService.class);
+        
+        time(interpreted, WARMUP_CALLS);
+        time(compiled, WARMUP_CALLS);
+        
+        long interpretedTime = time(interpreted, TIMED_CALLS);
+        long compiledTime = time(compiled, TIMED_CALLS);
+        
+        System.out.println("Calls through three interceptors took " +
+            (interpretedTime / TIMED_CALLS) + "ns interpreted and " +
+            (compiledTime / TIMED_CALLS) + "ns compiled");
+    }
+    
+    private static long time(AddingService adder, int calls) {
+        long elapsed = System.nanoTime();
+        for (int lcv = 0; lcv < calls; lcv++) {
+            Assert.assertEquals(7, adder.addOne(0));
+        }
+        return System.nanoTime() - elapsed;
+    }
+
+}
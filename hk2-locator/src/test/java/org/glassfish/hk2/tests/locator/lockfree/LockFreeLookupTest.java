@@ -0,0 +1,221 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.tests.locator.lockfree;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.glassfish.hk2.api.ActiveDescriptor;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
+import org.glassfish.hk2.utilities.BuilderHelper;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the lock-free lookup mode of the locator
+ * 
+ * @author jwells
+ *
+ */
+public class LockFreeLookupTest {
+    private final static String LOCK_FREE_LOOKUPS_PROPERTY = "org.jvnet.hk2.properties.lockFreeLookups";
+    
+    private final static int NUM_READERS = 4;
+    private final static int NUM_WRITES = 200;
+    
+    private static ServiceLocator createLockFree(ServiceLocator parent) {
+        System.setProperty(LOCK_FREE_LOOKUPS_PROPERTY, "true");
+        try {
+            if (parent == null) return LocatorHelper.create();
+            return LocatorHelper.create(parent);
+        }
+        finally {
+            System.clearProperty(LOCK_FREE_LOOKUPS_PROPERTY);
+        }
+    }
+    
+    /**
+     * Tests that lookups see services as they are added and removed
+     */
+    @Test // @org.junit.Ignore
+    public void testAddAndRemoveAreSeen() {
+        ServiceLocator locator = createLockFree(null);
+        
+        Assert.assertNull(locator.getService(SimpleContract.class));
+        Assert.assertTrue(locator.getAllServices(SimpleContract.class).isEmpty());
+        
+        List<ActiveDescriptor<?>> added = ServiceLocatorUtilities.addClasses(locator, AliceService.class);
+        
+        Assert.assertEquals(AliceService.NAME, locator.getService(SimpleContract.class).getName());
+        Assert.assertEquals(1, locator.getAllServices(SimpleContract.class).size());
+        
+        ServiceLocatorUtilities.addClasses(locator, BobService.class);
+        
+        Assert.assertEquals(AliceService.NAME, locator.getService(SimpleContract.class).getName());
+        Assert.assertEquals(2, locator.getAllServices(SimpleContract.class).size());
+        
+        ServiceLocatorUtilities.removeOneDescriptor(locator, added.get(0));
+        
+        Assert.assertEquals(BobService.NAME, locator.getService(SimpleContract.class).getName());
+        Assert.assertEquals(1, locator.getAllServices(SimpleContract.class).size());
+        Assert.assertNull(locator.getService(AliceService.class));
+    }
+    
+    /**
+     * Tests that lookups by name work with the snapshot
+     */
+    @Test // @org.junit.Ignore
+    public void testLookupByName() {
+        ServiceLocator locator = createLockFree(null);
+        
+        ServiceLocatorUtilities.addOneDescriptor(locator, BuilderHelper.link(AliceService.class).
+                to(SimpleContract.class).named(AliceService.NAME).build());
+        ServiceLocatorUtilities.addOneDescriptor(locator, BuilderHelper.link(BobService.class).
+                to(SimpleContract.class).named(BobService.NAME).build());
+        
+        Assert.assertEquals(BobService.NAME, locator.getService(SimpleContract.class, BobService.NAME).getName());
+        Assert.assertEquals(AliceService.NAME, locator.getService(SimpleContract.class, AliceService.NAME).getName());
+        Assert.assertNull(locator.getService(SimpleContract.class, "Carol"));
+    }
+    
+    /**
+     * Tests that a change of rank made after the services were
+     * added is seen by lookups
+     */
+    @Test // @org.junit.Ignore
+    public void testRankChangeIsSeen() {
+        ServiceLocator locator = createLockFree(null);
+        
+        ServiceLocatorUtilities.addClasses(locator, AliceService.class);
+        ActiveDescriptor<?> bob = ServiceLocatorUtilities.addClasses(locator, BobService.class).get(0);
+        
+        bob.setRanking(10);
+        
+        Assert.assertEquals(BobService.NAME, locator.getAllServices(SimpleContract.class).get(0).getName());
+    }
+    
+    /**
+     * Tests that a child sees changes made in a lock-free parent
+     */
+    @Test // @org.junit.Ignore
+    public void testChildSeesParentChanges() {
+        ServiceLocator parent = createLockFree(null);
+        ServiceLocator child = createLockFree(parent);
+        
+        Assert.assertNull(child.getService(SimpleContract.class));
+        
+        ActiveDescriptor<?> alice = ServiceLocatorUtilities.addClasses(parent, AliceService.class).get(0);
+        
+        Assert.assertEquals(AliceService.NAME, child.getService(SimpleContract.class).getName());
+        
+        ServiceLocatorUtilities.removeOneDescriptor(parent, alice);
+        
+        Assert.assertNull(child.getService(SimpleContract.class));
+    }
+    
+    /**
+     * Has several threads doing lookups while another thread adds and
+     * removes services.  The lookups must never fail and must never
+     * see a stale result once the writer has finished
+     * 
+     * @throws Throwable
+     */
+    @Test // @org.junit.Ignore
+    public void testConcurrentLookupsDuringConfiguration() throws Throwable {
+        final ServiceLocator locator = createLockFree(null);
+        ServiceLocatorUtilities.addClasses(locator, AliceService.class);
+        
+        final AtomicBoolean done = new AtomicBoolean(false);
+        final List<Throwable> errors = new LinkedList<Throwable>();
+        
+        List<Thread> readers = new LinkedList<Thread>();
+        for (int lcv = 0; lcv < NUM_READERS; lcv++) {
+            Thread reader = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        while (!done.get()) {
+                            SimpleContract sc = locator.getService(SimpleContract.class);
+                            if (sc == null) throw new AssertionError("Alice should always be there");
+                            
+                            int size = locator.getAllServices(SimpleContract.class).size();
+                            if (size < 1 || size > 2) throw new AssertionError("Unexpected size " + size);
+                        }
+                    }
+                    catch (Throwable th) {
+                        synchronized (errors) {
+                            errors.add(th);
+                        }
+                    }
+                }
+            };
+            
+            readers.add(reader);
+            reader.start();
+        }
+        
+        try {
+            for (int lcv = 0; lcv < NUM_WRITES; lcv++) {
+                ActiveDescriptor<?> bob = ServiceLocatorUtilities.addClasses(locator, BobService.class).get(0);
+                
+                Assert.assertEquals(2, locator.getAllServices(SimpleContract.class).size());
+                
+                ServiceLocatorUtilities.removeOneDescriptor(locator, bob);
+                
+                Assert.assertEquals(1, locator.getAllServices(SimpleContract.class).size());
+            }
+        }
+        finally {
+            done.set(true);
+            
+            for (Thread reader : readers) {
+                reader.join();
+            }
+        }
+        
+        synchronized (errors) {
+            if (!errors.isEmpty()) throw errors.get(0);
+        }
+    }
+
+}
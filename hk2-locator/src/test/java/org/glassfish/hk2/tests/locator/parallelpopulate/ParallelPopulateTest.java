@@ -0,0 +1,250 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.tests.locator.parallelpopulate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.glassfish.hk2.api.ActiveDescriptor;
+import org.glassfish.hk2.api.DescriptorFileFinder;
+import org.glassfish.hk2.api.DescriptorFileFinderInformation;
+import org.glassfish.hk2.api.DynamicConfigurationService;
+import org.glassfish.hk2.api.MultiException;
+import org.glassfish.hk2.api.PopulatorPostProcessor;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
+import org.glassfish.hk2.utilities.BinaryDescriptorFile;
+import org.glassfish.hk2.utilities.BuilderHelper;
+import org.glassfish.hk2.utilities.DescriptorImpl;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests that populating from many files gives the same result no matter
+ * whether the files are read serially or in parallel (which is controlled
+ * with the org.jvnet.hk2.properties.populator.threads property)
+ * 
+ * @author jwells
+ *
+ */
+public class ParallelPopulateTest {
+    private final static String IMPL_PREFIX = "com.acme.parallel.Service";
+    private final static String CONTRACT = "com.acme.parallel.Contract";
+    private final static String KEY = "loader";
+    
+    private final static int NUM_FILES = 64;
+    private final static int NUM_PER_FILE = 25;
+    
+    private static String getImplementation(int file, int descriptor) {
+        return IMPL_PREFIX + "_" + file + "_" + descriptor;
+    }
+    
+    private static InputStream createFile(int file) throws IOException {
+        List<DescriptorImpl> descriptors = new ArrayList<DescriptorImpl>(NUM_PER_FILE);
+        for (int lcv = 0; lcv < NUM_PER_FILE; lcv++) {
+            DescriptorImpl di = new DescriptorImpl();
+            di.setImplementation(getImplementation(file, lcv));
+            di.addAdvertisedContract(CONTRACT);
+            
+            descriptors.add(di);
+        }
+        
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        if ((file % 2) == 0) {
+            PrintWriter pw = new PrintWriter(baos);
+            for (DescriptorImpl di : descriptors) {
+                di.writeObject(pw);
+            }
+            pw.close();
+        }
+        else {
+            BinaryDescriptorFile.write(descriptors, baos);
+        }
+        
+        return new ByteArrayInputStream(baos.toByteArray());
+    }
+    
+    /**
+     * Tests that descriptors from many files come back in file order, and
+     * that post-processors are run exactly once per descriptor with the
+     * context class loader of the caller
+     * 
+     * @throws IOException
+     */
+    @Test // @org.junit.Ignore
+    public void testManyFilesKeepFileOrder() throws IOException {
+        ServiceLocator locator = LocatorHelper.create();
+        
+        List<InputStream> streams = new ArrayList<InputStream>(NUM_FILES);
+        for (int lcv = 0; lcv < NUM_FILES; lcv++) {
+            streams.add(createFile(lcv));
+        }
+        
+        CountingPostProcessor counter = new CountingPostProcessor();
+        
+        long elapsed = System.nanoTime();
+        List<ActiveDescriptor<?>> added = locator.getService(DynamicConfigurationService.class).getPopulator().populate(
+                new ListDescriptorFinder(streams, null), counter);
+        elapsed = System.nanoTime() - elapsed;
+        
+        System.out.println("Populated " + added.size() + " descriptors from " + NUM_FILES +
+                " files in " + (elapsed / 1000L) + " us");
+        
+        Assert.assertEquals(NUM_FILES * NUM_PER_FILE, added.size());
+        Assert.assertEquals(NUM_FILES * NUM_PER_FILE, counter.getCount());
+        
+        int index = 0;
+        for (int file = 0; file < NUM_FILES; file++) {
+            for (int descriptor = 0; descriptor < NUM_PER_FILE; descriptor++) {
+                ActiveDescriptor<?> ad = added.get(index++);
+                
+                Assert.assertEquals(getImplementation(file, descriptor), ad.getImplementation());
+                Assert.assertEquals(CountingPostProcessor.getLoaderName(),
+                        ad.getMetadata().get(KEY).get(0));
+            }
+        }
+        
+        Assert.assertEquals(NUM_FILES * NUM_PER_FILE,
+                locator.getDescriptors(BuilderHelper.createContractFilter(CONTRACT)).size());
+    }
+    
+    /**
+     * Tests that errors from several files are all reported, in file
+     * order, and that nothing is added to the locator
+     * 
+     * @throws IOException
+     */
+    @Test // @org.junit.Ignore
+    public void testErrorsReportedInFileOrder() throws IOException {
+        ServiceLocator locator = LocatorHelper.create();
+        
+        List<InputStream> streams = new ArrayList<InputStream>(NUM_FILES);
+        List<String> identifiers = new ArrayList<String>(NUM_FILES);
+        for (int lcv = 0; lcv < NUM_FILES; lcv++) {
+            streams.add(createFile(lcv));
+            identifiers.add("file" + lcv);
+        }
+        
+        try {
+            locator.getService(DynamicConfigurationService.class).getPopulator().populate(
+                    new ListDescriptorFinder(streams, identifiers), new FailingPostProcessor());
+            Assert.fail("The post-processor should have failed");
+        }
+        catch (MultiException me) {
+            List<Throwable> errors = me.getErrors();
+            Assert.assertEquals(NUM_FILES / 8, errors.size());
+            
+            for (int lcv = 0; lcv < errors.size(); lcv++) {
+                Assert.assertTrue(errors.get(lcv).getMessage(),
+                        errors.get(lcv).getMessage().contains("\"file" + (lcv * 8) + "\""));
+            }
+        }
+        
+        Assert.assertTrue(locator.getDescriptors(BuilderHelper.createContractFilter(CONTRACT)).isEmpty());
+    }
+    
+    private static class ListDescriptorFinder implements DescriptorFileFinder, DescriptorFileFinderInformation {
+        private final List<InputStream> streams;
+        private final List<String> identifiers;
+        
+        private ListDescriptorFinder(List<InputStream> streams, List<String> identifiers) {
+            this.streams = streams;
+            this.identifiers = identifiers;
+        }
+
+        @Override
+        public List<InputStream> findDescriptorFiles() throws IOException {
+            return new LinkedList<InputStream>(streams);
+        }
+
+        @Override
+        public List<String> getDescriptorFileInformation() {
+            return identifiers;
+        }
+        
+    }
+    
+    private static class CountingPostProcessor implements PopulatorPostProcessor {
+        private final AtomicInteger count = new AtomicInteger();
+        
+        private static String getLoaderName() {
+            return String.valueOf(Thread.currentThread().getContextClassLoader());
+        }
+
+        @Override
+        public DescriptorImpl process(ServiceLocator serviceLocator,
+                DescriptorImpl descriptorImpl) {
+            count.incrementAndGet();
+            descriptorImpl.addMetadata(KEY, getLoaderName());
+            
+            return descriptorImpl;
+        }
+        
+        private int getCount() {
+            return count.get();
+        }
+    }
+    
+    private static class FailingPostProcessor implements PopulatorPostProcessor {
+
+        @Override
+        public DescriptorImpl process(ServiceLocator serviceLocator,
+                DescriptorImpl descriptorImpl) {
+            String parts[] = descriptorImpl.getImplementation().split("_");
+            int file = Integer.parseInt(parts[1]);
+            int descriptor = Integer.parseInt(parts[2]);
+            
+            // Fails on the first descriptor of every eighth file
+            if (descriptor == 0 && (file % 8) == 0) {
+                throw new IllegalStateException("Expected failure for " + descriptorImpl.getImplementation());
+            }
+            
+            return descriptorImpl;
+        }
+        
+    }
+}
@@ -43,6 +43,8 @@ package org.glassfish.hk2.tests.locator.proxiableinterface;
 import junit.framework.Assert;
 
 import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.utilities.BuilderHelper;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
 import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
 import org.junit.Test;
 
@@ -65,4 +67,55 @@ public class ProxiableInterfaceTest {
         Assert.assertEquals(Earth.NAME, planet.getName());
     }
 
+    /**
+     * Tests that proxies for the same interface share one generated class
+     */
+    @Test // @org.junit.Ignore
+    public void testProxyClassIsShared() {
+        Planet planet1 = locator.getService(Planet.class);
+        Planet planet2 = locator.getService(Planet.class);
+        
+        Assert.assertNotSame(planet1, planet2);
+        Assert.assertSame(planet1.getClass(), planet2.getClass());
+        
+        Assert.assertEquals(Earth.NAME, planet2.getName());
+    }
+    
+    /**
+     * Tests that two proxies of the same service are equal, which
+     * compares the underlying services rather than the proxies
+     */
+    @Test // @org.junit.Ignore
+    public void testProxiesAreEqual() {
+        Planet planet1 = locator.getService(Planet.class);
+        Planet planet2 = locator.getService(Planet.class);
+        
+        Assert.assertTrue(planet1.equals(planet2));
+        Assert.assertTrue(planet2.equals(planet1));
+        Assert.assertFalse(planet1.equals(new Earth()));
+    }
+    
+    /**
+     * Tests that a proxy does not keep using a context that has
+     * been removed from the locator
+     */
+    @Test // @org.junit.Ignore
+    public void testProxyNoticesRemovedContext() {
+        ServiceLocator removalLocator = LocatorHelper.create(TEST_NAME + "Removal", new ProxiableInterfaceModule());
+        
+        Planet planet = removalLocator.getService(Planet.class);
+        Assert.assertEquals(Earth.NAME, planet.getName());
+        
+        ServiceLocatorUtilities.removeFilter(removalLocator,
+                BuilderHelper.createContractFilter(ProxiableSingletonContext.class.getName()));
+        
+        try {
+            planet.getName();
+            Assert.fail("The proxy should not have found the removed context");
+        }
+        catch (RuntimeException re) {
+            // Expected
+        }
+    }
+
 }
@@ -40,11 +40,13 @@
 package org.glassfish.hk2.tests.locator.runtime;
 
 import java.util.List;
+import java.util.Map;
 
 import org.glassfish.hk2.api.ActiveDescriptor;
 import org.glassfish.hk2.api.ServiceLocator;
 import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
 import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
+import org.glassfish.hk2.utilities.cache.CacheStatistics;
 import org.junit.Assert;
 import org.junit.Test;
 import org.jvnet.hk2.external.runtime.ServiceLocatorRuntimeBean;
@@ -54,6 +56,9 @@ import org.jvnet.hk2.external.runtime.ServiceLocatorRuntimeBean;
  *
  */
 public class RuntimeBeanTest {
+    private final static String SHARED_REFLECTION_CACHE_PROPERTY = "org.jvnet.hk2.properties.sharedReflectionCache";
+    private final static String SERVICE_CACHE_ADAPTIVE_PROPERTY = "org.jvnet.hk2.properties.serviceCache.adaptive";
+    
     /**
      * Tests that the number of descriptors
      * is correct
@@ -182,5 +187,121 @@ public class RuntimeBeanTest {
         
         Assert.assertTrue(bean.getReflectionCacheSize() > 0);
     }
+    
+    /**
+     * Tests that the statistics of the locator caches count lookups
+     */
+    @Test // @org.junit.Ignore
+    public void testCacheStatistics() {
+        ServiceLocator locator = LocatorHelper.create();
+        ServiceLocatorRuntimeBean bean = locator.getService(ServiceLocatorRuntimeBean.class);
+        
+        ServiceLocatorUtilities.addClasses(locator, SimpleService.class);
+        
+        CacheStatistics before = bean.getCacheStatistics().get(ServiceLocatorRuntimeBean.SERVICE_CACHE);
+        
+        Assert.assertNotNull(locator.getService(SimpleService.class));
+        
+        Map<String, CacheStatistics> statistics = bean.getCacheStatistics();
+        Assert.assertTrue(statistics.containsKey(ServiceLocatorRuntimeBean.ALL_SERVICES_CACHE));
+        Assert.assertTrue(statistics.containsKey(ServiceLocatorRuntimeBean.INJECTION_RESOLVER_CACHE));
+        
+        CacheStatistics after = statistics.get(ServiceLocatorRuntimeBean.SERVICE_CACHE);
+        Assert.assertEquals(before.getMissCount() + 1, after.getMissCount());
+        Assert.assertEquals(bean.getServiceCacheSize(), after.getSize());
+        Assert.assertEquals(bean.getServiceCacheMaximumSize(), after.getMaxSize());
+        
+        CacheStatistics methods = statistics.get(ServiceLocatorRuntimeBean.REFLECTION_CACHE_PREFIX + "methods");
+        Assert.assertNotNull(methods);
+        Assert.assertTrue(methods.getMissCount() > 0);
+        
+        bean.clearServiceCache();
+        
+        after = bean.getCacheStatistics().get(ServiceLocatorRuntimeBean.SERVICE_CACHE);
+        Assert.assertEquals(0, after.getSize());
+        Assert.assertTrue(after.getInvalidationCount() > 0);
+    }
+
+    /**
+     * Tests that the service cache can be resized and made adaptive
+     */
+    @Test // @org.junit.Ignore
+    public void testServiceCacheSizing() {
+        ServiceLocator locator;
+        
+        // The locator must start with a fixed size cache whatever the build sets
+        String adaptive = System.setProperty(SERVICE_CACHE_ADAPTIVE_PROPERTY, "false");
+        try {
+            locator = LocatorHelper.create();
+        }
+        finally {
+            if (adaptive == null) {
+                System.clearProperty(SERVICE_CACHE_ADAPTIVE_PROPERTY);
+            }
+            else {
+                System.setProperty(SERVICE_CACHE_ADAPTIVE_PROPERTY, adaptive);
+            }
+        }
+        
+        ServiceLocatorRuntimeBean bean = locator.getService(ServiceLocatorRuntimeBean.class);
+        
+        Assert.assertFalse(bean.isServiceCacheAdaptive());
+        
+        bean.setServiceCacheMaximumSize(1000);
+        Assert.assertEquals(1000, bean.getServiceCacheMaximumSize());
+        
+        bean.setServiceCacheAdaptive(true);
+        Assert.assertTrue(bean.isServiceCacheAdaptive());
+        Assert.assertTrue(bean.getServiceCacheMaximumSize() < 1000);
+        
+        ServiceLocatorUtilities.addClasses(locator, SimpleService.class);
+        Assert.assertNotNull(locator.getService(SimpleService.class));
+        Assert.assertTrue(bean.getServiceCacheSize() > 0);
+        Assert.assertTrue(bean.getServiceCacheSize() <= bean.getServiceCacheMaximumSize());
+        
+        bean.setServiceCacheAdaptive(false);
+        Assert.assertFalse(bean.isServiceCacheAdaptive());
+        Assert.assertEquals(1000, bean.getServiceCacheMaximumSize());
+        
+        try {
+            bean.setServiceCacheMaximumSize(0);
+            Assert.fail("A zero sized cache should not be allowed");
+        }
+        catch (IllegalArgumentException iae) {
+            // Expected
+        }
+    }
+
+    /**
+     * Tests that locators can share one reflection cache
+     */
+    @Test // @org.junit.Ignore
+    public void testSharedReflectionCache() {
+        ServiceLocator locator1;
+        ServiceLocator locator2;
+        System.setProperty(SHARED_REFLECTION_CACHE_PROPERTY, "true");
+        try {
+            locator1 = LocatorHelper.create();
+            locator2 = LocatorHelper.create();
+        }
+        finally {
+            System.clearProperty(SHARED_REFLECTION_CACHE_PROPERTY);
+        }
+        
+        ServiceLocatorRuntimeBean bean1 = locator1.getService(ServiceLocatorRuntimeBean.class);
+        ServiceLocatorRuntimeBean bean2 = locator2.getService(ServiceLocatorRuntimeBean.class);
+        
+        ServiceLocatorUtilities.addClasses(locator1, SimpleService.class);
+        Assert.assertNotNull(locator1.getService(SimpleService.class));
+        
+        // Both see the analysis done by the first
+        int sharedSize = bean1.getReflectionCacheSize();
+        Assert.assertTrue(sharedSize > 0);
+        Assert.assertEquals(sharedSize, bean2.getReflectionCacheSize());
+        
+        // Shutting down one locator leaves the cache of the other alone
+        locator1.shutdown();
+        Assert.assertEquals(sharedSize, bean2.getReflectionCacheSize());
+    }
 
 }
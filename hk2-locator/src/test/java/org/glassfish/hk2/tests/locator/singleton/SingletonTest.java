@@ -51,6 +51,7 @@ import org.glassfish.hk2.api.ServiceLocator;
 import org.glassfish.hk2.api.ServiceLocatorFactory;
 import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
 import org.glassfish.hk2.utilities.BuilderHelper;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
 import org.junit.Test;
 
 /**
@@ -65,6 +66,7 @@ public class SingletonTest {
     private final static ServiceLocator locator2 = LocatorHelper.create(TEST_NAME2, new SingletonModule2());
     
     private final static int NUM_THREADS = 20;
+    private final static int NUM_LOOKUPS = 1000000;
     private final Object lock = new Object();
     private int threadsRun = 0;
     
@@ -120,6 +122,100 @@ public class SingletonTest {
         Assert.assertTrue(triple.getWasPreDestroyed());
     }
     
+    /**
+     * A singleton being slowly created on one thread must not
+     * hold up the creation of an unrelated singleton on another
+     * 
+     * @throws InterruptedException
+     */
+    @Test
+    public void testUnrelatedSingletonsCreatedIndependently() throws InterruptedException {
+        final ServiceLocator independent = LocatorHelper.create();
+        ServiceLocatorUtilities.addClasses(independent, SlowService.class, QuickService.class);
+        
+        final List<Object> slowResult = new LinkedList<Object>();
+        Thread slowThread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                Object slow = independent.getService(SlowService.class);
+                synchronized (slowResult) {
+                    slowResult.add(slow);
+                }
+            }
+            
+        });
+        slowThread.start();
+        
+        try {
+            SlowService.waitForStart();
+            
+            Assert.assertNotNull(independent.getService(QuickService.class));
+        }
+        finally {
+            SlowService.finish();
+            slowThread.join();
+        }
+        
+        synchronized (slowResult) {
+            Assert.assertEquals(1, slowResult.size());
+            Assert.assertSame(independent.getService(SlowService.class), slowResult.get(0));
+        }
+    }
+    
+    /**
+     * Looks up an already created singleton many times and prints how
+     * long it took
+     */
+    @Test
+    public void testWarmSingletonLookupSpeed() {
+        ServiceLocator warm = LocatorHelper.create();
+        ServiceLocatorUtilities.addClasses(warm, QuickService.class);
+        
+        ActiveDescriptor<?> ad = warm.getBestDescriptor(
+                BuilderHelper.createContractFilter(QuickService.class.getName()));
+        Object expected = warm.getServiceHandle(ad).getService();
+        
+        long elapsedTime = System.currentTimeMillis();
+        for (int lcv = 0; lcv < NUM_LOOKUPS; lcv++) {
+            Assert.assertSame(expected, warm.getServiceHandle(ad).getService());
+        }
+        elapsedTime = System.currentTimeMillis() - elapsedTime;
+        
+        System.out.println("Looked up a created singleton " + NUM_LOOKUPS + " times in " + elapsedTime + " milliseconds");
+    }
+    
+    /**
+     * Tests that a handle is only active once the singleton context
+     * has handed out the service, even if the descriptor already has
+     * its value, and is no longer active once the service is destroyed
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testHandleActiveOnlyAfterContextCreation() {
+        ServiceLocator active = LocatorHelper.create();
+        
+        ActiveDescriptor<Object> preset = (ActiveDescriptor<Object>)
+                ServiceLocatorUtilities.addClasses(active, QuickService.class).get(0);
+        QuickService presetValue = new QuickService();
+        preset.setCache(presetValue);
+        Assert.assertFalse(active.getServiceHandle(preset).isActive());
+        
+        Assert.assertSame(presetValue, active.getServiceHandle(preset).getService());
+        Assert.assertTrue(active.getServiceHandle(preset).isActive());
+        
+        ServiceLocator created = LocatorHelper.create();
+        ActiveDescriptor<?> ad = ServiceLocatorUtilities.addClasses(created, QuickService.class).get(0);
+        Assert.assertFalse(created.getServiceHandle(ad).isActive());
+        
+        ServiceHandle<?> handle = created.getServiceHandle(ad);
+        Assert.assertNotNull(handle.getService());
+        Assert.assertTrue(created.getServiceHandle(ad).isActive());
+        
+        handle.destroy();
+        Assert.assertFalse(created.getServiceHandle(ad).isActive());
+    }
+    
     private class MyWorker implements Runnable {
         private final ServiceHandle<?> handle;
         
@@ -290,6 +290,34 @@ public class ValidatingTest {
         Assert.assertEquals("testBindUnbindCaller", callerFrame.getMethodName());
     }
 
+    /**
+     * Tests that the stack frame for the binds of a configuration large
+     * enough to be validated before the commit takes its lock is this one
+     */
+    @Test
+    public void testLargeBindCaller() {
+        ServiceLocator testLocator = generateGetCallerLocators("testLargeBindCaller");
+
+        CheckCallerValidationService val = testLocator.getService(CheckCallerValidationService.class);
+        Assert.assertNotNull(val);
+        
+        DynamicConfiguration config = testLocator.getService(DynamicConfigurationService.class).createDynamicConfiguration();
+        for (int lcv = 0; lcv < 64; lcv++) {
+            config.bind(BuilderHelper.link(SuperSecretService.class).named("Large" + lcv).build());
+        }
+        
+        val.clear();
+        config.commit();
+        
+        Assert.assertEquals(64, val.getLastCaller().size());
+        for (StackTraceElement callerFrame : val.getLastCaller()) {
+            Assert.assertNotNull(callerFrame);
+
+            Assert.assertEquals(getClass().getName(), callerFrame.getClassName());
+            Assert.assertEquals("testLargeBindCaller", callerFrame.getMethodName());
+        }
+    }
+
     /**
      * Tests that the stack frame is returning the correct thing for all the nested injections
      */
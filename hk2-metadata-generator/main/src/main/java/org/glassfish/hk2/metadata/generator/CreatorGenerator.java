@@ -0,0 +1,447 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.metadata.generator;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.inject.Inject;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.JavaFileObject;
+
+import org.glassfish.hk2.api.GeneratedCreator;
+
+/**
+ * Writes the {@link GeneratedCreator} of a service class.  A creator
+ * is only written when the constructor, every injected field and
+ * initializer method and the postConstruct and preDestroy methods can
+ * be called directly from a class in the package of the service.  The
+ * members are found the way the default ClassAnalyzer finds them; should
+ * the analysis at runtime disagree HK2 will not use the creator
+ * 
+ * @author jwells
+ *
+ */
+public class CreatorGenerator {
+    private final static String INIT = "<init>";
+    
+    private final TypeElement clazz;
+    private final ProcessingEnvironment processingEnv;
+    private final Elements elements;
+    private final Types types;
+    private final String packageName;
+    
+    private ExecutableElement constructor;
+    private final List<VariableElement> fields = new ArrayList<VariableElement>();
+    private final List<ExecutableElement> initializers = new ArrayList<ExecutableElement>();
+    private ExecutableElement postConstruct;
+    private ExecutableElement preDestroy;
+    
+    private CreatorGenerator(TypeElement clazz, ProcessingEnvironment processingEnv) {
+        this.clazz = clazz;
+        this.processingEnv = processingEnv;
+        elements = processingEnv.getElementUtils();
+        types = processingEnv.getTypeUtils();
+        packageName = ServiceUtilities.nameToString(elements.getPackageOf(clazz).getQualifiedName());
+    }
+    
+    /**
+     * Writes the GeneratedCreator of the given service class, if one can
+     * be written for it
+     * 
+     * @param clazz The non-null service class
+     * @param processingEnv The environment of the processor
+     * @return true if a creator was written
+     * @throws IOException If the creator could not be written
+     */
+    public static boolean generate(TypeElement clazz, ProcessingEnvironment processingEnv) throws IOException {
+        CreatorGenerator generator = new CreatorGenerator(clazz, processingEnv);
+        if (!generator.analyze()) return false;
+        
+        generator.write();
+        
+        return true;
+    }
+    
+    private boolean analyze() {
+        if (!ElementKind.CLASS.equals(clazz.getKind())) return false;
+        if (clazz.getModifiers().contains(Modifier.ABSTRACT)) return false;
+        
+        Element current = clazz;
+        while (current instanceof TypeElement) {
+            if (current.getModifiers().contains(Modifier.PRIVATE)) return false;
+            if (NestingKind.MEMBER.equals(((TypeElement) current).getNestingKind()) &&
+                    !current.getModifiers().contains(Modifier.STATIC)) return false;
+            
+            current = current.getEnclosingElement();
+        }
+        if (!NestingKind.TOP_LEVEL.equals(clazz.getNestingKind()) &&
+                !NestingKind.MEMBER.equals(clazz.getNestingKind())) return false;
+        
+        ExecutableElement zeroArg = null;
+        for (ExecutableElement candidate : ElementFilter.constructorsIn(clazz.getEnclosedElements())) {
+            if (candidate.getAnnotation(Inject.class) != null) {
+                if (constructor != null) return false;
+                constructor = candidate;
+            }
+            if (candidate.getParameters().isEmpty()) zeroArg = candidate;
+        }
+        if (constructor == null) constructor = zeroArg;
+        if (constructor == null || !isAccessible(constructor)) return false;
+        
+        // Hidden fields are injected too, so every class is searched
+        TypeElement declaring = clazz;
+        while (declaring != null) {
+            for (VariableElement field : ElementFilter.fieldsIn(declaring.getEnclosedElements())) {
+                if (field.getAnnotation(Inject.class) == null) continue;
+                if (field.getModifiers().contains(Modifier.STATIC)) continue;
+                if (field.getModifiers().contains(Modifier.FINAL)) return false;
+                if (!isAccessible(field)) return false;
+                
+                fields.add(field);
+            }
+            
+            declaring = getSuperclass(declaring);
+        }
+        
+        for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(clazz))) {
+            if (method.getModifiers().contains(Modifier.STATIC)) continue;
+            
+            if (method.getAnnotation(Inject.class) != null) {
+                if (!isAccessible(method)) return false;
+                
+                initializers.add(method);
+            }
+            if (method.getAnnotation(PostConstruct.class) != null) {
+                if (!method.getParameters().isEmpty() || !isAccessible(method)) return false;
+                
+                postConstruct = method;
+            }
+            if (method.getAnnotation(PreDestroy.class) != null) {
+                if (!method.getParameters().isEmpty() || !isAccessible(method)) return false;
+                
+                preDestroy = method;
+            }
+        }
+        
+        // HK2 calls these interfaces directly
+        if (isA(org.glassfish.hk2.api.PostConstruct.class)) postConstruct = null;
+        if (isA(org.glassfish.hk2.api.PreDestroy.class)) preDestroy = null;
+        
+        return true;
+    }
+    
+    private TypeElement getSuperclass(TypeElement element) {
+        TypeMirror superMirror = element.getSuperclass();
+        if (!TypeKind.DECLARED.equals(superMirror.getKind())) return null;
+        
+        TypeElement retVal = (TypeElement) types.asElement(superMirror);
+        if (Object.class.getName().equals(ServiceUtilities.nameToString(retVal.getQualifiedName()))) return null;
+        
+        return retVal;
+    }
+    
+    private boolean isA(Class<?> iFace) {
+        TypeElement iFaceElement = elements.getTypeElement(iFace.getName());
+        if (iFaceElement == null) return false;
+        
+        return types.isAssignable(types.erasure(clazz.asType()), types.erasure(iFaceElement.asType()));
+    }
+    
+    /**
+     * A member can be used from the creator if it is public in a public
+     * class, or is not private and is declared in the package of the service
+     */
+    private boolean isAccessible(Element member) {
+        Set<Modifier> modifiers = member.getModifiers();
+        if (modifiers.contains(Modifier.PRIVATE)) return false;
+        
+        TypeElement declaring = (TypeElement) member.getEnclosingElement();
+        String declaringPackage = ServiceUtilities.nameToString(elements.getPackageOf(declaring).getQualifiedName());
+        if (packageName.equals(declaringPackage)) return true;
+        
+        return modifiers.contains(Modifier.PUBLIC) && declaring.getModifiers().contains(Modifier.PUBLIC);
+    }
+    
+    /**
+     * The instance only needs to be cast when the field is hidden by
+     * a field of the same name in a subclass of its declaring class
+     */
+    private String getFieldOwner(VariableElement field) {
+        TypeElement fieldDeclarer = (TypeElement) field.getEnclosingElement();
+        
+        for (TypeElement declaring = clazz; !fieldDeclarer.equals(declaring); declaring = getSuperclass(declaring)) {
+            for (VariableElement other : ElementFilter.fieldsIn(declaring.getEnclosedElements())) {
+                if (other.getSimpleName().contentEquals(field.getSimpleName())) {
+                    return "((" + getSourceName(fieldDeclarer) + ") instance)";
+                }
+            }
+        }
+        
+        return "instance";
+    }
+    
+    private void write() throws IOException {
+        String binaryName = ServiceUtilities.nameToString(elements.getBinaryName(clazz));
+        String creatorName = binaryName + GeneratedCreator.CLASS_NAME_SUFFIX;
+        String simpleCreatorName = (packageName.length() == 0) ? creatorName :
+            creatorName.substring(packageName.length() + 1);
+        String service = getSourceName(clazz);
+        
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(creatorName, clazz);
+        PrintWriter writer = new PrintWriter(file.openWriter());
+        try {
+            if (packageName.length() > 0) {
+                writer.println("package " + packageName + ";");
+                writer.println();
+            }
+            
+            writer.println("/**");
+            writer.println(" * Generated by hk2-metadata-generator");
+            writer.println(" */");
+            writer.println("@SuppressWarnings({ \"unchecked\", \"rawtypes\" })");
+            writer.println("public final class " + simpleCreatorName + " implements " +
+                    GeneratedCreator.class.getName() + "<" + service + "> {");
+            
+            writer.print("    private final static String[] INJECTION_POINTS = {");
+            boolean first = true;
+            for (VariableElement field : fields) {
+                writer.print((first ? " " : ", ") + quote(getSignature(field)));
+                first = false;
+            }
+            for (ExecutableElement initializer : initializers) {
+                writer.print((first ? " " : ", ") + quote(getSignature(initializer)));
+                first = false;
+            }
+            writer.println(" };");
+            writer.println();
+            
+            writer.println("    public String getConstructor() {");
+            writer.println("        return " + quote(getSignature(constructor)) + ";");
+            writer.println("    }");
+            writer.println();
+            writer.println("    public String[] getInjectionPoints() {");
+            writer.println("        return INJECTION_POINTS.clone();");
+            writer.println("    }");
+            writer.println();
+            writer.println("    public String getPostConstruct() {");
+            writer.println("        return " + ((postConstruct == null) ? "null" : quote(getSignature(postConstruct))) + ";");
+            writer.println("    }");
+            writer.println();
+            writer.println("    public String getPreDestroy() {");
+            writer.println("        return " + ((preDestroy == null) ? "null" : quote(getSignature(preDestroy))) + ";");
+            writer.println("    }");
+            writer.println();
+            
+            writer.println("    public " + service + " create(Object[] arguments) throws Throwable {");
+            writer.println("        return new " + service + "(" + getArguments(constructor) + ");");
+            writer.println("    }");
+            writer.println();
+            
+            writer.println("    public void inject(" + service + " instance, int injectionPoint, Object[] arguments) throws Throwable {");
+            writer.println("        switch (injectionPoint) {");
+            int point = 0;
+            for (VariableElement field : fields) {
+                writer.println("        case " + point++ + ":");
+                writer.println("            " + getFieldOwner(field) + "." +
+                        field.getSimpleName() + " = " + getArgument(field.asType(), 0) + ";");
+                writer.println("            return;");
+            }
+            for (ExecutableElement initializer : initializers) {
+                writer.println("        case " + point++ + ":");
+                writer.println("            instance." + initializer.getSimpleName() + "(" + getArguments(initializer) + ");");
+                writer.println("            return;");
+            }
+            writer.println("        default:");
+            writer.println("            throw new IllegalArgumentException(\"Unknown injection point \" + injectionPoint);");
+            writer.println("        }");
+            writer.println("    }");
+            writer.println();
+            
+            writer.println("    public void postConstruct(" + service + " instance) throws Throwable {");
+            if (postConstruct != null) {
+                writer.println("        instance." + postConstruct.getSimpleName() + "();");
+            }
+            writer.println("    }");
+            writer.println();
+            
+            writer.println("    public void preDestroy(" + service + " instance) throws Throwable {");
+            if (preDestroy != null) {
+                writer.println("        instance." + preDestroy.getSimpleName() + "();");
+            }
+            writer.println("    }");
+            writer.println("}");
+        }
+        finally {
+            writer.close();
+        }
+    }
+    
+    private static String quote(String value) {
+        return "\"" + value + "\"";
+    }
+    
+    private static String getSourceName(TypeElement element) {
+        return ServiceUtilities.nameToString(element.getQualifiedName());
+    }
+    
+    /**
+     * The parameters are typed as seen from the (raw) service class, which
+     * is how the generated code calls the constructor or method
+     */
+    private String getArguments(ExecutableElement executable) {
+        DeclaredType serviceType = (DeclaredType) types.erasure(clazz.asType());
+        ExecutableType memberType = (ExecutableType) types.asMemberOf(serviceType, executable);
+        
+        StringBuilder sb = new StringBuilder();
+        
+        int position = 0;
+        for (TypeMirror parameterType : memberType.getParameterTypes()) {
+            if (position > 0) sb.append(", ");
+            sb.append(getArgument(parameterType, position++));
+        }
+        
+        return sb.toString();
+    }
+    
+    /**
+     * Casts an element of the arguments array to the (erased) type
+     * it is given as, unboxing primitives
+     */
+    private String getArgument(TypeMirror type, int position) {
+        TypeMirror erased = types.erasure(type);
+        
+        if (erased.getKind().isPrimitive()) {
+            TypeElement boxed = types.boxedClass((PrimitiveType) erased);
+            return "((" + getSourceName(boxed) + ") arguments[" + position + "])." + erased.toString() + "Value()";
+        }
+        
+        return "((" + erased.toString() + ") arguments[" + position + "])";
+    }
+    
+    private String getSignature(VariableElement field) {
+        return ServiceUtilities.nameToString(elements.getBinaryName((TypeElement) field.getEnclosingElement())) +
+                "#" + field.getSimpleName();
+    }
+    
+    private String getSignature(ExecutableElement executable) {
+        StringBuilder sb = new StringBuilder();
+        
+        if (ElementKind.CONSTRUCTOR.equals(executable.getKind())) {
+            sb.append(INIT);
+        }
+        else {
+            sb.append(ServiceUtilities.nameToString(elements.getBinaryName((TypeElement) executable.getEnclosingElement())));
+            sb.append('#');
+            sb.append(executable.getSimpleName());
+        }
+        
+        sb.append('(');
+        boolean first = true;
+        for (VariableElement parameter : executable.getParameters()) {
+            if (!first) sb.append(',');
+            first = false;
+            
+            sb.append(getRuntimeName(types.erasure(parameter.asType()), false));
+        }
+        
+        return sb.append(')').toString();
+    }
+    
+    /**
+     * Gets the name {@link Class#getName()} would return for the given
+     * erased type
+     * 
+     * @param type The erased type
+     * @param inArray true if the name is of the component of an array
+     * @return The runtime name of the type
+     */
+    private String getRuntimeName(TypeMirror type, boolean inArray) {
+        TypeKind kind = type.getKind();
+        
+        if (kind.isPrimitive()) {
+            if (!inArray) return type.toString();
+            
+            switch (kind) {
+            case BOOLEAN: return "Z";
+            case BYTE: return "B";
+            case CHAR: return "C";
+            case DOUBLE: return "D";
+            case FLOAT: return "F";
+            case INT: return "I";
+            case LONG: return "J";
+            case SHORT: return "S";
+            default:
+                throw new AssertionError("Unknown primitive type " + type);
+            }
+        }
+        
+        if (TypeKind.ARRAY.equals(kind)) {
+            return "[" + getRuntimeName(((ArrayType) type).getComponentType(), true);
+        }
+        
+        String binaryName = ServiceUtilities.nameToString(
+                elements.getBinaryName((TypeElement) ((DeclaredType) type).asElement()));
+        if (!inArray) return binaryName;
+        
+        return "L" + binaryName + ";";
+    }
+}
@@ -40,6 +40,7 @@
 package org.glassfish.hk2.metadata.generator;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.Writer;
 import java.util.ArrayList;
@@ -61,6 +62,7 @@ import javax.tools.FileObject;
 import javax.tools.StandardLocation;
 
 import org.glassfish.hk2.api.MultiException;
+import org.glassfish.hk2.utilities.BinaryDescriptorFile;
 import org.glassfish.hk2.utilities.DescriptorImpl;
 
 /**
@@ -70,10 +72,12 @@ import org.glassfish.hk2.utilities.DescriptorImpl;
  *
  */
 @SupportedAnnotationTypes("org.jvnet.hk2.annotations.Service")
-@SupportedOptions("org.glassfish.hk2.metadata.location")
+@SupportedOptions({ "org.glassfish.hk2.metadata.location", "org.glassfish.hk2.metadata.binary", "org.glassfish.hk2.metadata.creators" })
 public class ServiceProcessor extends AbstractProcessor {
     private static final String LOCATION_OPTION = "org.glassfish.hk2.metadata.location";
     private static final String LOCATION_DEFAULT = "META-INF/hk2-locator/default";
+    private static final String BINARY_OPTION = "org.glassfish.hk2.metadata.binary";
+    private static final String CREATORS_OPTION = "org.glassfish.hk2.metadata.creators";
     
     private final TreeSet<DescriptorImpl> allDescriptors = new TreeSet<DescriptorImpl>(new DescriptorComparitor());
     private final ArrayList<Element> originators = new ArrayList<Element>();
@@ -84,6 +88,8 @@ public class ServiceProcessor extends AbstractProcessor {
     @Override
     public boolean process(Set<? extends TypeElement> annotations,
             RoundEnvironment roundEnv) {
+        boolean creators = Boolean.parseBoolean(processingEnv.getOptions().get(CREATORS_OPTION));
+        
         MultiException collectedExceptions = null;
         for (TypeElement annotation : annotations) {
             Set<? extends Element> clazzes = roundEnv.getElementsAnnotatedWith(annotation);
@@ -96,6 +102,10 @@ public class ServiceProcessor extends AbstractProcessor {
                 List<DescriptorImpl> descriptors;
                 try {
                     descriptors = ServiceUtilities.getDescriptorsFromClass(clazz, processingEnv);
+                    
+                    if (creators && !descriptors.isEmpty()) {
+                        CreatorGenerator.generate(clazz, processingEnv);
+                    }
                 }
                 catch (Throwable th) {
                     if (collectedExceptions == null) {
@@ -157,6 +167,18 @@ public class ServiceProcessor extends AbstractProcessor {
                 "", location, 
                 originators.toArray(new Element[originators.size()]));
         
+        if (Boolean.parseBoolean(processingEnv.getOptions().get(BINARY_OPTION))) {
+            OutputStream os = fileObject.openOutputStream();
+            try {
+                BinaryDescriptorFile.write(allDescriptors, os);
+            }
+            finally {
+                os.close();
+            }
+            
+            return;
+        }
+        
         Writer fileWriter = fileObject.openWriter();
         PrintWriter printWriter = null;
         try {
@@ -0,0 +1,151 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.jvnet.hk2.metadata.tests.creator;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+
+import org.glassfish.hk2.api.PerLookup;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.jvnet.hk2.annotations.Service;
+import org.jvnet.hk2.metadata.tests.NormalService;
+
+/**
+ * All of the members of this service can be used from
+ * its generated creator
+ * 
+ * @author jwells
+ *
+ */
+@Service @PerLookup
+public class CreatedService extends CreatorBase<NormalService> {
+    private final NormalService viaConstructor;
+    private final String constructedBy;
+    
+    @Inject
+    ServiceLocator viaField;
+    
+    private int viaMethod;
+    private String initializedBy;
+    private boolean postConstructCalled;
+    private boolean preDestroyCalled;
+    
+    /**
+     * Called by HK2
+     * 
+     * @param viaConstructor A service from the constructor
+     */
+    @Inject
+    public CreatedService(NormalService viaConstructor) {
+        this.viaConstructor = viaConstructor;
+        constructedBy = getCaller();
+    }
+    
+    /**
+     * Called by HK2
+     * 
+     * @param locator The locator, used to check the method was called
+     */
+    @Inject
+    void initialize(ServiceLocator locator) {
+        viaMethod = (locator == null) ? 0 : 1;
+        initializedBy = getCaller();
+    }
+    
+    @PostConstruct
+    void postConstruct() {
+        postConstructCalled = true;
+    }
+    
+    @PreDestroy
+    public void preDestroy() {
+        preDestroyCalled = true;
+    }
+    
+    /**
+     * @return The service given to the constructor
+     */
+    public NormalService getViaConstructor() {
+        return viaConstructor;
+    }
+    
+    /**
+     * @return The service injected into the field
+     */
+    public ServiceLocator getViaField() {
+        return viaField;
+    }
+    
+    /**
+     * @return 1 if the initializer method was called
+     */
+    public int getViaMethod() {
+        return viaMethod;
+    }
+    
+    /**
+     * @return The name of the class that called the constructor
+     */
+    public String getConstructedBy() {
+        return constructedBy;
+    }
+    
+    /**
+     * @return The name of the class that called the initializer method
+     */
+    public String getInitializedBy() {
+        return initializedBy;
+    }
+    
+    /**
+     * @return true if the postConstruct method was called
+     */
+    public boolean isPostConstructCalled() {
+        return postConstructCalled;
+    }
+    
+    /**
+     * @return true if the preDestroy method was called
+     */
+    public boolean isPreDestroyCalled() {
+        return preDestroyCalled;
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.jvnet.hk2.metadata.tests;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.tools.JavaCompiler;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import org.glassfish.hk2.api.GeneratedCreator;
+import org.glassfish.hk2.api.ServiceHandle;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.metadata.generator.CreatorGenerator;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jvnet.hk2.metadata.tests.creator.CreatedService;
+import org.jvnet.hk2.metadata.tests.creator.CreatorBase;
+import org.jvnet.hk2.metadata.tests.creator.UncreatedService;
+
+/**
+ * Tests for the generated creators
+ * 
+ * @author jwells
+ *
+ */
+public class GeneratedCreatorTest {
+    private final static String GENERATED_CREATORS_PROPERTY = "org.jvnet.hk2.properties.generatedCreators";
+    private final static String CREATOR_NAME = CreatedService.class.getName() + GeneratedCreator.CLASS_NAME_SUFFIX;
+    
+    @Rule
+    public TemporaryFolder generatedSources = new TemporaryFolder();
+    
+    /**
+     * Tests that the creator names all of the members of the service
+     */
+    @Test // @org.junit.Ignore
+    public void testCreatorIsGenerated() throws Exception {
+        GeneratedCreator<?> creator = (GeneratedCreator<?>) Class.forName(CREATOR_NAME).newInstance();
+        
+        Assert.assertEquals("<init>(" + NormalService.class.getName() + ")", creator.getConstructor());
+        
+        List<String> points = Arrays.asList(creator.getInjectionPoints());
+        Assert.assertEquals(3, points.size());
+        Assert.assertTrue(points.contains(CreatedService.class.getName() + "#viaField"));
+        Assert.assertTrue(points.contains(CreatedService.class.getName() + "#initialize(" +
+                ServiceLocator.class.getName() + ")"));
+        Assert.assertTrue(points.contains(CreatorBase.class.getName() + "#setValue(java.lang.Object)"));
+        
+        Assert.assertEquals(CreatedService.class.getName() + "#postConstruct()", creator.getPostConstruct());
+        Assert.assertEquals(CreatedService.class.getName() + "#preDestroy()", creator.getPreDestroy());
+    }
+    
+    /**
+     * Tests that no creator is generated for a service with private members
+     */
+    @Test(expected=ClassNotFoundException.class) // @org.junit.Ignore
+    public void testNoCreatorForPrivateMembers() throws Exception {
+        Class.forName(UncreatedService.class.getName() + GeneratedCreator.CLASS_NAME_SUFFIX);
+    }
+    
+    /**
+     * Tests that no creator is generated for an abstract class, even though
+     * its members could be reached
+     */
+    @Test // @org.junit.Ignore
+    public void testNoCreatorForAbstractClass() {
+        Map<String, Boolean> generated = generate(
+                new StringSource("creatorcheck.AbstractService",
+                        "package creatorcheck; public abstract class AbstractService { public AbstractService() {} }"),
+                new StringSource("creatorcheck.ConcreteService",
+                        "package creatorcheck; public class ConcreteService { public ConcreteService() {} }"));
+        
+        Assert.assertEquals(Boolean.FALSE, generated.get("creatorcheck.AbstractService"));
+        Assert.assertEquals(Boolean.TRUE, generated.get("creatorcheck.ConcreteService"));
+    }
+    
+    /**
+     * Tests that the creator only casts the instance for a field
+     * that is hidden by a field of a subclass
+     */
+    @Test // @org.junit.Ignore
+    public void testFieldCastOnlyWhenHidden() throws IOException {
+        Map<String, Boolean> generated = generate(
+                new StringSource("creatorcheck.BaseService",
+                        "package creatorcheck; public class BaseService { " +
+                        "@javax.inject.Inject Object hidden; @javax.inject.Inject Object inherited; }"),
+                new StringSource("creatorcheck.HidingService",
+                        "package creatorcheck; public class HidingService extends BaseService { " +
+                        "@javax.inject.Inject Object hidden; public HidingService() {} }"));
+        Assert.assertEquals(Boolean.TRUE, generated.get("creatorcheck.HidingService"));
+        
+        File creator = new File(generatedSources.getRoot(),
+                "creatorcheck/HidingService" + GeneratedCreator.CLASS_NAME_SUFFIX + ".java");
+        String source = readFile(creator);
+        
+        Assert.assertTrue(source, source.contains("((creatorcheck.BaseService) instance).hidden = "));
+        Assert.assertTrue(source, source.contains(" instance.hidden = "));
+        Assert.assertTrue(source, source.contains(" instance.inherited = "));
+        Assert.assertFalse(source, source.contains("instance).inherited"));
+    }
+    
+    /**
+     * Tests that the generated creator is used when the locator allows it
+     */
+    @Test // @org.junit.Ignore
+    public void testServiceCreatedByGeneratedCreator() {
+        ServiceLocator locator;
+        System.setProperty(GENERATED_CREATORS_PROPERTY, "true");
+        try {
+            locator = ServiceLocatorUtilities.createAndPopulateServiceLocator();
+        }
+        finally {
+            System.clearProperty(GENERATED_CREATORS_PROPERTY);
+        }
+        
+        ServiceHandle<CreatedService> handle = locator.getServiceHandle(CreatedService.class);
+        CreatedService service = handle.getService();
+        
+        checkService(service, locator);
+        Assert.assertEquals(CREATOR_NAME, service.getConstructedBy());
+        Assert.assertEquals(CREATOR_NAME, service.getInitializedBy());
+        
+        handle.destroy();
+        Assert.assertTrue(service.isPreDestroyCalled());
+        
+        // The service without a creator is still injected
+        Assert.assertNotNull(locator.getService(UncreatedService.class).getViaField());
+    }
+    
+    /**
+     * Tests that the generated creator is not used by default
+     */
+    @Test // @org.junit.Ignore
+    public void testServiceCreatedReflectively() {
+        ServiceLocator locator = ServiceLocatorUtilities.createAndPopulateServiceLocator();
+        
+        ServiceHandle<CreatedService> handle = locator.getServiceHandle(CreatedService.class);
+        CreatedService service = handle.getService();
+        
+        checkService(service, locator);
+        Assert.assertFalse(CREATOR_NAME.equals(service.getConstructedBy()));
+        
+        handle.destroy();
+        Assert.assertTrue(service.isPreDestroyCalled());
+    }
+    
+    /**
+     * Runs the creator generator over the given sources, writing the
+     * creators into the temporary folder
+     * 
+     * @return Whether a creator was generated for each class
+     */
+    private Map<String, Boolean> generate(StringSource... sources) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        
+        GenerateProcessor processor = new GenerateProcessor();
+        JavaCompiler.CompilationTask task = compiler.getTask(null, null, null,
+                Arrays.asList("-proc:only", "-s", generatedSources.getRoot().getAbsolutePath()),
+                null,
+                Arrays.asList(sources));
+        task.setProcessors(Collections.singletonList(processor));
+        
+        Assert.assertTrue(task.call());
+        
+        return processor.generated;
+    }
+    
+    /**
+     * Records whether a creator was generated for each class in the first round
+     */
+    @SupportedAnnotationTypes("*")
+    private static class GenerateProcessor extends AbstractProcessor {
+        private final Map<String, Boolean> generated = new HashMap<String, Boolean>();
+        
+        @Override
+        public SourceVersion getSupportedSourceVersion() {
+            return SourceVersion.latestSupported();
+        }
+
+        @Override
+        public boolean process(Set<? extends TypeElement> annotations,
+                RoundEnvironment roundEnv) {
+            if (!generated.isEmpty()) return false;
+            
+            for (Element element : roundEnv.getRootElements()) {
+                if (!(element instanceof TypeElement)) continue;
+                TypeElement clazz = (TypeElement) element;
+                
+                try {
+                    generated.put(clazz.getQualifiedName().toString(),
+                            CreatorGenerator.generate(clazz, processingEnv));
+                }
+                catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+            }
+            
+            return false;
+        }
+    }
+    
+    private static String readFile(File file) throws IOException {
+        StringBuilder retVal = new StringBuilder();
+        
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                retVal.append(line).append('\n');
+            }
+        }
+        finally {
+            reader.close();
+        }
+        
+        return retVal.toString();
+    }
+    
+    private static class StringSource extends SimpleJavaFileObject {
+        private final String code;
+        
+        private StringSource(String className, String code) {
+            super(URI.create("string:///" + className.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+            this.code = code;
+        }
+        
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return code;
+        }
+    }
+    
+    private static void checkService(CreatedService service, ServiceLocator locator) {
+        Assert.assertNotNull(service.getViaConstructor());
+        Assert.assertSame(locator, service.getViaField());
+        Assert.assertEquals(1, service.getViaMethod());
+        Assert.assertSame(service.getViaConstructor(), service.getValue());
+        Assert.assertTrue(service.isPostConstructCalled());
+        Assert.assertFalse(service.isPreDestroyCalled());
+    }
+}
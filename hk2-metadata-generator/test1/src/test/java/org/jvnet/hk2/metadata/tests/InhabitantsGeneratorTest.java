@@ -614,6 +614,26 @@ public class InhabitantsGeneratorTest {
         
             EXPECTED_DESCRIPTORS.put(di, 1);
         }
+        
+        {
+            // A service with a generated creator
+            DescriptorImpl di = new DescriptorImpl();
+            di.setImplementation("org.jvnet.hk2.metadata.tests.creator.CreatedService");
+            di.addAdvertisedContract("org.jvnet.hk2.metadata.tests.creator.CreatedService");
+            di.setScope(PerLookup.class.getName());
+        
+            EXPECTED_DESCRIPTORS.put(di, 0);
+        }
+        
+        {
+            // A service that cannot have a generated creator
+            DescriptorImpl di = new DescriptorImpl();
+            di.setImplementation("org.jvnet.hk2.metadata.tests.creator.UncreatedService");
+            di.addAdvertisedContract("org.jvnet.hk2.metadata.tests.creator.UncreatedService");
+            di.setScope(Singleton.class.getName());
+        
+            EXPECTED_DESCRIPTORS.put(di, 0);
+        }
     }
     
     private void getAllDescriptorsFromInputStream(InputStream is, Set<DescriptorImpl> retVal) throws IOException {
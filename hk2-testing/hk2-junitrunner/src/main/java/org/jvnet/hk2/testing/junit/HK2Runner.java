@@ -40,13 +40,11 @@
 
 package org.jvnet.hk2.testing.junit;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.URL;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
@@ -64,6 +62,7 @@ import org.glassfish.hk2.api.DynamicConfiguration;
 import org.glassfish.hk2.api.DynamicConfigurationService;
 import org.glassfish.hk2.api.ServiceLocator;
 import org.glassfish.hk2.api.ServiceLocatorFactory;
+import org.glassfish.hk2.utilities.BinaryDescriptorFile;
 import org.glassfish.hk2.utilities.DescriptorImpl;
 import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
 import org.junit.Before;
@@ -321,19 +320,16 @@ public class HK2Runner {
             try {
                 InputStream urlStream = url.openStream();
                 
-                BufferedReader reader = new BufferedReader(new InputStreamReader(urlStream));
-                
-                boolean goOn = true;
-                while (goOn) {
-                    DescriptorImpl bindMe = new DescriptorImpl();
-                
-                    goOn = bindMe.readObject(reader);
-                    if (goOn == true && !excludes.contains(bindMe.getImplementation())) {
-                        config.bind(bindMe);
+                try {
+                    for (DescriptorImpl bindMe : BinaryDescriptorFile.readDescriptors(urlStream)) {
+                        if (!excludes.contains(bindMe.getImplementation())) {
+                            config.bind(bindMe);
+                        }
                     }
                 }
-                
-                reader.close();
+                finally {
+                    urlStream.close();
+                }
             }
             catch (IOException ioe) {
                 ioe.printStackTrace();
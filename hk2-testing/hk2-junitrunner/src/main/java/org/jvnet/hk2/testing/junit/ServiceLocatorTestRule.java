@@ -39,13 +39,11 @@
  */
 package org.jvnet.hk2.testing.junit;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.PrintStream; // for javadoc only
 
 import java.lang.annotation.Annotation;
@@ -90,6 +88,7 @@ import org.glassfish.hk2.external.org.objectweb.asm.ClassVisitor;
 import org.glassfish.hk2.external.org.objectweb.asm.Opcodes;
 
 import org.glassfish.hk2.utilities.AbstractActiveDescriptor;
+import org.glassfish.hk2.utilities.BinaryDescriptorFile;
 import org.glassfish.hk2.utilities.Binder;
 import org.glassfish.hk2.utilities.BuilderHelper;
 import org.glassfish.hk2.utilities.DescriptorImpl;
@@ -1245,9 +1244,8 @@ public class ServiceLocatorTestRule<T> extends ExternalResource implements Binde
 
   /**
    * {@linkplain URL#openStream() Opens an <code>InputStream</code>}
-   * to the supplied {@link URL}, wraps a {@link BufferedReader}
-   * around it, and calls the {@link #bind(DynamicConfiguration,
-   * BufferedReader)} method.
+   * to the supplied {@link URL} and calls the {@link
+   * #bind(DynamicConfiguration, InputStream)} method.
    *
    * @param configuration a {@link DynamicConfiguration} that will
    * perform the binding; must not be {@code null}
@@ -1261,18 +1259,18 @@ public class ServiceLocatorTestRule<T> extends ExternalResource implements Binde
    * @exception IOException if there was a problem reading locator
    * files
    *
-   * @see #bind(DynamicConfiguration, BufferedReader)
+   * @see #bind(DynamicConfiguration, InputStream)
    */
   private static final void bind(final DynamicConfiguration configuration, final URL locatorResource) throws IOException {
     assertNotNull(configuration);
     if (locatorResource != null) {
-      final BufferedReader reader = new BufferedReader(new InputStreamReader(locatorResource.openStream()));
+      final InputStream stream = locatorResource.openStream();
       try {
-        bind(configuration, reader);
+        bind(configuration, stream);
       } finally {
-        if (reader != null) {
+        if (stream != null) {
           try {
-            reader.close();
+            stream.close();
           } catch (final IOException ignore) {
             
           }
@@ -1282,19 +1280,19 @@ public class ServiceLocatorTestRule<T> extends ExternalResource implements Binde
   }
 
   /**
-   * {@linkplain DescriptorImpl#readObject(BufferedReader) Reads} the
-   * HK2 locator file represented by the supplied {@link
-   * BufferedReader} and {@linkplain
-   * DynamicConfiguration#bind(Descriptor) binds the
+   * {@linkplain BinaryDescriptorFile#readDescriptors(InputStream)
+   * Reads} the HK2 locator file represented by the supplied {@link
+   * InputStream}, in either the text or the binary format, and
+   * {@linkplain DynamicConfiguration#bind(Descriptor) binds the
    * <code>Descriptor</code>}s it represents.
    *
    * @param configuration a {@link DynamicConfiguration} that will
    * perform the binding; must not be {@code null}
    *
-   * @param reader a {@link BufferedReader} reading a stream of
-   * descriptor information as parseable by the {@link
-   * DescriptorImpl#readObject(BufferedReader)} method; may be {@code
-   * null} in which case no action will be performed
+   * @param stream an {@link InputStream} of descriptor information
+   * as parseable by the {@link
+   * BinaryDescriptorFile#readDescriptors(InputStream)} method; may be
+   * {@code null} in which case no action will be performed
    *
    * @exception AssertionError if {@code configuration} is {@code
    * null}
@@ -1302,17 +1300,15 @@ public class ServiceLocatorTestRule<T> extends ExternalResource implements Binde
    * @exception IOException if there was a problem reading locator
    * files
    *
-   * @see DescriptorImpl#readObject(BufferedReader)
+   * @see BinaryDescriptorFile#readDescriptors(InputStream)
    *
    * @see DynamicConfiguration#bind(Descriptor)
    */
-  private static final void bind(final DynamicConfiguration configuration, final BufferedReader reader) throws IOException {
+  private static final void bind(final DynamicConfiguration configuration, final InputStream stream) throws IOException {
     assertNotNull(configuration);
-    if (reader != null) {
-      DescriptorImpl descriptor = new DescriptorImpl();
-      while (descriptor.readObject(reader)) {
+    if (stream != null) {
+      for (final DescriptorImpl descriptor : BinaryDescriptorFile.readDescriptors(stream)) {
         configuration.bind(descriptor);
-        descriptor = new DescriptorImpl();
       }
     }
   }
@@ -47,6 +47,8 @@ import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
+import org.glassfish.hk2.utilities.cache.internal.CacheStatisticsRecorder;
+
 /**
  * Cache implementation that relies on FutureTask.
  * Desired value will only be computed once and computed value stored in the cache.
@@ -93,10 +95,12 @@ public class Cache<K,V> implements Computable<K,V> {
             Callable<V> eval = new Callable<V>() {
                 @Override
                 public V call() throws Exception {
+                    long computeStart = System.nanoTime();
                     try {
                         return computable.compute(key);
                     } finally {
                         threadId = -1;
+                        statistics.computed(System.nanoTime() - computeStart);
                     }
                 }
             };
@@ -163,6 +167,7 @@ public class Cache<K,V> implements Computable<K,V> {
 
     private final ConcurrentHashMap<K, OriginThreadAwareFuture> cache = new ConcurrentHashMap<K, OriginThreadAwareFuture>();
     private final Computable<K, V> computable;
+    private final CacheStatisticsRecorder statistics = new CacheStatisticsRecorder();
 
     /**
      * Create new cache with given computable to compute values.
@@ -195,10 +200,15 @@ public class Cache<K,V> implements Computable<K,V> {
 
                 f = cache.putIfAbsent(key, ft);
                 if (f == null) {
+                    statistics.miss();
                     f = ft;
                     ft.run();
                 }
+                else {
+                    statistics.hit();
+                }
             } else {
+                statistics.hit();
                 final long tid = f.threadId;
                 
                 if ((tid != -1) && (Thread.currentThread().getId() == f.threadId)) {
@@ -229,6 +239,7 @@ public class Cache<K,V> implements Computable<K,V> {
      * Empty cache.
      */
     public void clear() {
+        statistics.invalidated(cache.size());
         cache.clear();
     }
 
@@ -248,7 +259,9 @@ public class Cache<K,V> implements Computable<K,V> {
      * @param key item key.
      */
     public void remove(final K key) {
-        cache.remove(key);
+        if (cache.remove(key) != null) {
+            statistics.invalidated(1);
+        }
     }
     
     /**
@@ -258,4 +271,14 @@ public class Cache<K,V> implements Computable<K,V> {
     public int size() {
         return cache.size();
     }
+    
+    /**
+     * Returns the counters kept by this cache since it was created.
+     * This cache has no maximum size
+     * 
+     * @return A snapshot of the statistics of this cache
+     */
+    public CacheStatistics getStatistics() {
+        return statistics.getStatistics(cache.size(), -1);
+    }
 }
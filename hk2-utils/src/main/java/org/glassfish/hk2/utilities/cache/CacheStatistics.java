@@ -0,0 +1,127 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.utilities.cache;
+
+/**
+ * A point in time view of the counters kept by a cache.  The counters
+ * start when the cache is created and are not reset when the cache
+ * is cleared, so that they can be sampled over the life of a process
+ * in order to size the cache.
+ * <p>
+ * The counters are updated without locking and a snapshot is not taken
+ * atomically, so the values may be slightly inconsistent with each other
+ * if the cache is being used while they are read
+ * 
+ * @author jwells
+ *
+ */
+public interface CacheStatistics {
+    /**
+     * The number of lookups that found a value in the cache
+     * 
+     * @return The number of cache hits
+     */
+    public long getHitCount();
+    
+    /**
+     * The number of lookups that did not find a value in the cache
+     * 
+     * @return The number of cache misses
+     */
+    public long getMissCount();
+    
+    /**
+     * The number of values that were removed from the cache in
+     * order to make room for other values
+     * 
+     * @return The number of values evicted by the cache
+     */
+    public long getEvictionCount();
+    
+    /**
+     * The number of values that were removed from the cache because
+     * they were explicitly removed, released or cleared
+     * 
+     * @return The number of values invalidated
+     */
+    public long getInvalidationCount();
+    
+    /**
+     * The total time spent computing values for misses
+     * 
+     * @return The total compute time in nanoseconds
+     */
+    public long getTotalComputeTime();
+    
+    /**
+     * The upper bounds, in nanoseconds, of the buckets of the
+     * compute time histogram.  The histogram has one more bucket
+     * than this array has bounds, which holds all computations that
+     * took longer than the last bound
+     * 
+     * @return A copy of the upper bound in nanoseconds of each
+     * bucket but the last
+     */
+    public long[] getComputeTimeBucketBounds();
+    
+    /**
+     * The number of computations whose time fell into each bucket
+     * of the histogram described by {@link #getComputeTimeBucketBounds()}
+     * 
+     * @return A copy of the count of computations in each bucket
+     */
+    public long[] getComputeTimeHistogram();
+    
+    /**
+     * The number of values in the cache when this snapshot was taken
+     * 
+     * @return The current number of values in the cache
+     */
+    public int getSize();
+    
+    /**
+     * The maximum number of values the cache will keep
+     * 
+     * @return The maximum size of the cache, or -1 if the
+     * cache has no maximum size
+     */
+    public int getMaxSize();
+
+}
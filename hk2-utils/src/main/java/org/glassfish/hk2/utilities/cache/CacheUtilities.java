@@ -39,6 +39,7 @@
  */
 package org.glassfish.hk2.utilities.cache;
 
+import org.glassfish.hk2.utilities.cache.internal.ConcurrentWeakCARCacheImpl;
 import org.glassfish.hk2.utilities.cache.internal.WeakCARCacheImpl;
 
 /**
@@ -64,5 +65,54 @@ public class CacheUtilities {
     public static <K,V> WeakCARCache<K,V> createWeakCARCache(Computable<K,V> computable, int maxSize, boolean isWeak) {
         return new WeakCARCacheImpl<K,V>(computable, maxSize, isWeak);
     }
+    
+    /**
+     * Returns a WEAKCarCache with the given computable and the given maximum value size of the cache
+     * whose keys are indexed with the given indexer.  All of the keys with the same index can be
+     * removed with {@link WeakCARCache#releaseIndexed(Object)} at a cost that is proportional
+     * to the number of keys with that index rather than to the size of the cache
+     * 
+     * @param computable The computable that is used to get the V from the given K
+     * @param maxSize The maximumSize of the cache
+     * @param isWeak if true this will keep weak keyes, if false the keys will
+     * be hard and will not go away even if they do not exist anywhere else
+     * but this cache
+     * @param indexer The non-null indexer used to group the keys of the cache
+     * @return A WeakCARCache that is empty
+     */
+    public static <K,V> WeakCARCache<K,V> createWeakCARCache(Computable<K,V> computable, int maxSize, boolean isWeak,
+            CacheKeyIndexer<K> indexer) {
+        if (indexer == null) throw new IllegalArgumentException("indexer may not be null");
+        
+        return new WeakCARCacheImpl<K,V>(computable, maxSize, isWeak, indexer);
+    }
+    
+    /**
+     * Returns a WEAKCarCache with the given computable and the given maximum value size of the cache,
+     * optionally one that can be used by many threads at the same time.
+     * <p>
+     * A concurrent cache reads hits without taking a lock and computes a missing key
+     * in only one thread without stopping other threads from computing other keys.  Since
+     * the {@link Computable} is called without a lock, a concurrent cache should only be
+     * used with a computable that can be called by more than one thread at a time
+     * 
+     * @param computable The computable that is used to get the V from the given K
+     * @param maxSize The maximumSize of the cache
+     * @param isWeak if true this will keep weak keyes, if false the keys will
+     * be hard and will not go away even if they do not exist anywhere else
+     * but this cache
+     * @param indexer The indexer used to group the keys of the cache, or null
+     * if {@link WeakCARCache#releaseIndexed(Object)} will not be used
+     * @param concurrent if true the cache will not hold a lock while calling the computable
+     * @return A WeakCARCache that is empty
+     */
+    public static <K,V> WeakCARCache<K,V> createWeakCARCache(Computable<K,V> computable, int maxSize, boolean isWeak,
+            CacheKeyIndexer<K> indexer, boolean concurrent) {
+        if (concurrent) {
+            return new ConcurrentWeakCARCacheImpl<K,V>(computable, maxSize, isWeak, indexer);
+        }
+        
+        return new WeakCARCacheImpl<K,V>(computable, maxSize, isWeak, indexer);
+    }
 
 }
@@ -101,4 +101,14 @@ public abstract class LRUCache<K,V> {
      * will be removed from the cache
      */
     public abstract void releaseMatching(CacheKeyFilter<K> filter);
+    
+    /**
+     * Returns the counters kept by this cache since it was created.
+     * Since values are added to this cache with {@link #put(Object, Object)}
+     * rather than computed by it, the compute time of the returned
+     * statistics is always zero
+     * 
+     * @return A snapshot of the statistics of this cache
+     */
+    public abstract CacheStatistics getStatistics();
 }
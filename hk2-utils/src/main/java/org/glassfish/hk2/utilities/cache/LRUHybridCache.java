@@ -50,6 +50,8 @@ import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
+import org.glassfish.hk2.utilities.cache.internal.CacheStatisticsRecorder;
+
 /**
  * Hybrid cache that allows explicit removals of included entries as well
  * as implicit removal of entries that have been least recently accessed.
@@ -111,11 +113,13 @@ public class LRUHybridCache<K,V> implements Computable<K, HybridCacheEntry<V>> {
             Callable<HybridCacheEntry<V>> eval = new Callable<HybridCacheEntry<V>>() {
                 @Override
                 public HybridCacheEntry<V> call() throws Exception {
+                    long computeStart = System.nanoTime();
                     try {
                         final HybridCacheEntry<V> result = computable.compute(key);
                         return result;
                     } finally {
                         threadId = -1;
+                        statistics.computed(System.nanoTime() - computeStart);
                     }
                 }
             };
@@ -185,6 +189,7 @@ public class LRUHybridCache<K,V> implements Computable<K, HybridCacheEntry<V>> {
 
     private final Object prunningLock = new Object();
     private final int maxCacheSize;
+    private final CacheStatisticsRecorder statistics = new CacheStatisticsRecorder();
 
     /**
      * Create new cache with given computable to compute values.
@@ -288,10 +293,15 @@ public class LRUHybridCache<K,V> implements Computable<K, HybridCacheEntry<V>> {
                     f = cache.putIfAbsent(key, ft);
                 }
                 if (f == null) {
+                    statistics.miss();
                     f = ft;
                     ft.run();
                 }
+                else {
+                    statistics.hit();
+                }
             } else {
+                statistics.hit();
                 long tid = f.threadId;
                 
                 if ((tid != -1) && (Thread.currentThread().getId() == f.threadId)) {
@@ -322,6 +332,7 @@ public class LRUHybridCache<K,V> implements Computable<K, HybridCacheEntry<V>> {
      * Empty the cache.
      */
     public void clear() {
+        statistics.invalidated(cache.size());
         cache.clear();
     }
     
@@ -336,6 +347,15 @@ public class LRUHybridCache<K,V> implements Computable<K, HybridCacheEntry<V>> {
     public int getMaximumCacheSize() {
         return maxCacheSize;
     }
+    
+    /**
+     * Returns the counters kept by this cache since it was created
+     * 
+     * @return A snapshot of the statistics of this cache
+     */
+    public CacheStatistics getStatistics() {
+        return statistics.getStatistics(cache.size(), maxCacheSize);
+    }
 
     /**
      * Returns true if the key has already been cached.
@@ -353,7 +373,9 @@ public class LRUHybridCache<K,V> implements Computable<K, HybridCacheEntry<V>> {
      * @param key item key.
      */
     public void remove(final K key) {
-        cache.remove(key);
+        if (cache.remove(key) != null) {
+            statistics.invalidated(1);
+        }
     }
 
     /**
@@ -363,7 +385,9 @@ public class LRUHybridCache<K,V> implements Computable<K, HybridCacheEntry<V>> {
      */
     private void removeLRUItem() {
         final Collection<LRUHybridCache<K,V>.OriginThreadAwareFuture> values = cache.values();
-        cache.remove((K)Collections.min(values, COMPARATOR).key);
+        if (cache.remove((K)Collections.min(values, COMPARATOR).key) != null) {
+            statistics.evicted();
+        }
     }
 
     private static final Comparator<LRUHybridCache.OriginThreadAwareFuture> COMPARATOR = new CacheEntryImplComparator();
@@ -388,8 +412,8 @@ public class LRUHybridCache<K,V> implements Computable<K, HybridCacheEntry<V>> {
     public void releaseMatching(CacheKeyFilter<K> filter) {
         if (filter == null) return;
         for (K key : cache.keySet()) {
-            if (filter.matches(key)) {
-                cache.remove(key);
+            if (filter.matches(key) && (cache.remove(key) != null)) {
+                statistics.invalidated(1);
             }
         }
     }
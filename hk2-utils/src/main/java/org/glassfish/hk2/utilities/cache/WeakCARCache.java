@@ -135,6 +135,17 @@ public interface WeakCARCache<K,V> {
      */
     public int getMaxSize();
     
+    /**
+     * Changes the maximum size of the cache.  If the cache currently
+     * holds more values than the new maximum size then values and
+     * keys are removed using the CAR algorithm until it fits
+     * 
+     * @param maxSize The new maximum number of values that will
+     * be kept by this cache.  Must be greater than zero
+     * @throws IllegalArgumentException if maxSize is less than one
+     */
+    public void setMaxSize(int maxSize);
+    
     /**
      * The computable associated with this cache
      * 
@@ -158,6 +169,19 @@ public interface WeakCARCache<K,V> {
      */
     public void releaseMatching(CacheKeyFilter<K> filter);
     
+    /**
+     * Releases all key/value pairs whose key has the given index.
+     * This only visits the keys with that index, unlike
+     * {@link #releaseMatching(CacheKeyFilter)} which visits
+     * every key in the cache
+     * 
+     * @param index The index, as returned by the {@link CacheKeyIndexer}
+     * of this cache, of the keys to release.  May not be null
+     * @throws IllegalStateException if this cache was created
+     * without a {@link CacheKeyIndexer}
+     */
+    public void releaseIndexed(Object index);
+    
     /**
      * Causes stale references to be cleared from the data
      * structures.  Since this is a weak cache the references
@@ -190,5 +214,12 @@ public interface WeakCARCache<K,V> {
      * or 0 if there is no data
      */
     public double getHitRate();
+    
+    /**
+     * Returns the counters kept by this cache since it was created
+     * 
+     * @return A snapshot of the statistics of this cache
+     */
+    public CacheStatistics getStatistics();
 
 }
@@ -0,0 +1,183 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.utilities.cache.internal;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.glassfish.hk2.utilities.cache.CacheStatistics;
+import org.glassfish.hk2.utilities.cache.WeakCARCache;
+
+/**
+ * Changes the maximum size of a {@link WeakCARCache} based on how
+ * well the cache is doing and on how full the heap is.
+ * <p>
+ * Every {@link #MISSES_PER_ADJUSTMENT} misses the hit ratio and evictions
+ * since the last adjustment are looked at.  If the heap is more than
+ * {@link #HEAP_PRESSURE_LIMIT} full the cache is halved, down to the
+ * minimum size.  Otherwise if the cache evicted values and the hit ratio
+ * was below {@link #TARGET_HIT_RATIO} the cache is doubled, up to the ceiling.
+ * Since the sizer only runs on misses, a cache that is mostly hit is
+ * left alone
+ * 
+ * @author jwells
+ *
+ */
+public class AdaptiveCacheSizer {
+    public final static int MISSES_PER_ADJUSTMENT = 256;
+    public final static double TARGET_HIT_RATIO = 0.90;
+    public final static double HEAP_PRESSURE_LIMIT = 0.90;
+    
+    private final WeakCARCache<?, ?> cache;
+    private final int minSize;
+    private volatile int ceiling;
+    private final AtomicInteger misses = new AtomicInteger();
+    
+    // Guarded by this
+    private CacheStatistics lastStatistics;
+    
+    /**
+     * Creates a sizer for the given cache
+     * 
+     * @param cache The non-null cache whose size should be adjusted
+     * @param minSize The smallest size the cache will be shrunk to
+     * @param ceiling The largest size the cache will be grown to
+     */
+    public AdaptiveCacheSizer(WeakCARCache<?, ?> cache, int minSize, int ceiling) {
+        if (minSize < 1 || ceiling < minSize) {
+            throw new IllegalArgumentException("Invalid cache sizes min=" + minSize + " ceiling=" + ceiling);
+        }
+        
+        this.cache = cache;
+        this.minSize = minSize;
+        this.ceiling = ceiling;
+        
+        lastStatistics = cache.getStatistics();
+    }
+    
+    /**
+     * Should be called by the computable of the cache, or by whatever
+     * notices that the cache missed
+     */
+    public void missed() {
+        if ((misses.incrementAndGet() % MISSES_PER_ADJUSTMENT) != 0) return;
+        
+        adjust();
+    }
+    
+    /**
+     * Changes the largest size the cache will be grown to.  If the
+     * cache is larger than the new ceiling it is shrunk
+     * 
+     * @param ceiling The new ceiling, which is raised to the minimum
+     * size if it is lower
+     */
+    public void setCeiling(int ceiling) {
+        if (ceiling < minSize) ceiling = minSize;
+        this.ceiling = ceiling;
+        
+        if (cache.getMaxSize() > ceiling) {
+            cache.setMaxSize(ceiling);
+        }
+    }
+    
+    public int getCeiling() {
+        return ceiling;
+    }
+    
+    public int getMinSize() {
+        return minSize;
+    }
+    
+    /**
+     * Looks at the statistics since the last adjustment and changes
+     * the maximum size of the cache if need be
+     * 
+     * @return The maximum size of the cache after the adjustment
+     */
+    public synchronized int adjust() {
+        CacheStatistics current = cache.getStatistics();
+        
+        long hits = current.getHitCount() - lastStatistics.getHitCount();
+        long windowMisses = current.getMissCount() - lastStatistics.getMissCount();
+        long evictions = current.getEvictionCount() - lastStatistics.getEvictionCount();
+        lastStatistics = current;
+        
+        int size = cache.getMaxSize();
+        int newSize = size;
+        
+        if (getHeapPressure() > HEAP_PRESSURE_LIMIT) {
+            newSize = Math.max(minSize, size / 2);
+        }
+        else if (evictions > 0L && (hits + windowMisses) > 0L &&
+                (((double) hits) / ((double) (hits + windowMisses))) < TARGET_HIT_RATIO) {
+            long doubled = 2L * size;
+            newSize = (int) Math.min((long) ceiling, doubled);
+        }
+        
+        if (newSize != size) {
+            cache.setMaxSize(newSize);
+        }
+        
+        return newSize;
+    }
+    
+    /**
+     * Returns how full the heap is
+     * 
+     * @return The fraction of the maximum heap size currently in use,
+     * between zero and one
+     */
+    protected double getHeapPressure() {
+        Runtime runtime = Runtime.getRuntime();
+        
+        long maxMemory = runtime.maxMemory();
+        if (maxMemory <= 0L || maxMemory == Long.MAX_VALUE) return 0.0;
+        
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        return ((double) used) / ((double) maxMemory);
+    }
+    
+    @Override
+    public String toString() {
+        return "AdaptiveCacheSizer(min=" + minSize + ",ceiling=" + ceiling + ",current=" + cache.getMaxSize() +
+                "," + System.identityHashCode(this) + ")";
+    }
+
+}
@@ -0,0 +1,220 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.utilities.cache.internal;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.glassfish.hk2.utilities.cache.CacheStatistics;
+
+/**
+ * Keeps the counters of one cache.  Hits are counted with a
+ * {@link StripedCounter} so that threads hitting the cache at the
+ * same time do not contend on the counter.  The other counters are
+ * only updated on misses, when the cost of the computation dwarfs
+ * the cost of the counter
+ * 
+ * @author jwells
+ *
+ */
+public class CacheStatisticsRecorder {
+    private final static long BUCKET_BOUNDS[] = {
+        1000L,              // 1 microsecond
+        10000L,
+        100000L,
+        1000000L,           // 1 millisecond
+        10000000L,
+        100000000L,
+        1000000000L         // 1 second
+    };
+    
+    private final StripedCounter hits = new StripedCounter();
+    private final StripedCounter misses = new StripedCounter();
+    private final StripedCounter evictions = new StripedCounter();
+    private final StripedCounter invalidations = new StripedCounter();
+    private final StripedCounter computeTime = new StripedCounter();
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKET_BOUNDS.length + 1);
+    
+    public void hit() {
+        hits.increment();
+    }
+    
+    public void miss() {
+        misses.increment();
+    }
+    
+    public void evicted() {
+        evictions.increment();
+    }
+    
+    public void invalidated(int count) {
+        if (count <= 0) return;
+        
+        invalidations.add(count);
+    }
+    
+    /**
+     * Records the time taken by one computation
+     * 
+     * @param nanos The number of nanoseconds the computation took
+     */
+    public void computed(long nanos) {
+        computeTime.add(nanos);
+        
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS.length && nanos > BUCKET_BOUNDS[bucket]) {
+            bucket++;
+        }
+        
+        histogram.getAndIncrement(bucket);
+    }
+    
+    public long getHitCount() {
+        return hits.sum();
+    }
+    
+    public long getMissCount() {
+        return misses.sum();
+    }
+    
+    /**
+     * Takes a snapshot of the current counters
+     * 
+     * @param size The current number of values in the cache
+     * @param maxSize The maximum size of the cache, or -1 if it is unbounded
+     * @return A snapshot of the counters of this cache
+     */
+    public CacheStatistics getStatistics(int size, int maxSize) {
+        long counts[] = new long[histogram.length()];
+        for (int lcv = 0; lcv < counts.length; lcv++) {
+            counts[lcv] = histogram.get(lcv);
+        }
+        
+        return new CacheStatisticsImpl(hits.sum(),
+                misses.sum(),
+                evictions.sum(),
+                invalidations.sum(),
+                computeTime.sum(),
+                counts,
+                size,
+                maxSize);
+    }
+    
+    private static class CacheStatisticsImpl implements CacheStatistics {
+        private final long hitCount;
+        private final long missCount;
+        private final long evictionCount;
+        private final long invalidationCount;
+        private final long totalComputeTime;
+        private final long histogram[];
+        private final int size;
+        private final int maxSize;
+        
+        private CacheStatisticsImpl(long hitCount,
+                long missCount,
+                long evictionCount,
+                long invalidationCount,
+                long totalComputeTime,
+                long histogram[],
+                int size,
+                int maxSize) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.invalidationCount = invalidationCount;
+            this.totalComputeTime = totalComputeTime;
+            this.histogram = histogram;
+            this.size = size;
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        @Override
+        public long getMissCount() {
+            return missCount;
+        }
+
+        @Override
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+
+        @Override
+        public long getInvalidationCount() {
+            return invalidationCount;
+        }
+
+        @Override
+        public long getTotalComputeTime() {
+            return totalComputeTime;
+        }
+
+        @Override
+        public long[] getComputeTimeBucketBounds() {
+            return BUCKET_BOUNDS.clone();
+        }
+
+        @Override
+        public long[] getComputeTimeHistogram() {
+            return histogram.clone();
+        }
+
+        @Override
+        public int getSize() {
+            return size;
+        }
+
+        @Override
+        public int getMaxSize() {
+            return maxSize;
+        }
+        
+        @Override
+        public String toString() {
+            return "CacheStatistics(hits=" + hitCount + ",misses=" + missCount +
+                    ",evictions=" + evictionCount + ",invalidations=" + invalidationCount +
+                    ",computeTime=" + totalComputeTime + "ns,size=" + size + ",maxSize=" + maxSize + ")";
+        }
+    }
+
+}
@@ -0,0 +1,710 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.utilities.cache.internal;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.glassfish.hk2.utilities.cache.CacheKeyFilter;
+import org.glassfish.hk2.utilities.cache.CacheKeyIndexer;
+import org.glassfish.hk2.utilities.cache.CacheStatistics;
+import org.glassfish.hk2.utilities.cache.Computable;
+import org.glassfish.hk2.utilities.cache.ComputationErrorException;
+import org.glassfish.hk2.utilities.cache.WeakCARCache;
+import org.glassfish.hk2.utilities.general.ConcurrentWeakKeyMap;
+import org.glassfish.hk2.utilities.general.GeneralUtilities;
+import org.glassfish.hk2.utilities.general.WeakHashClock;
+import org.glassfish.hk2.utilities.general.WeakHashLRU;
+
+/**
+ * Implements the same CAR algorithm as {@link WeakCARCacheImpl}, but
+ * without holding a lock around the {@link Computable}.
+ * <p>
+ * Every value in t1 or t2 is also kept in a {@link ConcurrentWeakKeyMap},
+ * so a hit is a single map read and never takes a lock.  A miss is
+ * computed by exactly one thread per key, other threads asking for the
+ * same key wait for that result while threads asking for other keys
+ * compute their own values at the same time.  The lock on this object is
+ * only held while the four lists are updated after a value has been
+ * computed.  A value whose computation overlapped any removal from the
+ * cache is returned to the caller but is not kept, since it may have
+ * been computed from the state that the removal was meant to discard.
+ * <p>
+ * A thread that is already computing a value, in this or any other
+ * concurrent cache, never waits for another thread's computation.  It
+ * computes the value itself without keeping it, since two computables
+ * that each ask for the key the other is computing would otherwise wait
+ * on each other forever.
+ * <p>
+ * Keys that have been collected are removed from that map in small
+ * batches when values are added, so hits never pay for clearing them
+ * 
+ * @author jwells
+ *
+ */
+public class ConcurrentWeakCARCacheImpl<K,V> implements WeakCARCache<K, V> {
+    /** How many computables of concurrent caches the current thread is inside of */
+    private final static ThreadLocal<int[]> COMPUTING_DEPTH = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+    
+    private final Computable<K,V> computable;
+    private volatile int maxSize;
+    private final boolean isWeak;
+    
+    // The values of every key in t1 or t2
+    private final ConcurrentWeakKeyMap<K, CarValue<V>> values;
+    
+    // The keys being computed right now
+    private final ConcurrentHashMap<K, Computation<V>> computing = new ConcurrentHashMap<K, Computation<V>>();
+    
+    // Everything from here to generation, and changes to maxSize, are guarded by this
+    private final WeakHashClock<K,CarValue<V>> t1;
+    private final WeakHashClock<K,CarValue<V>> t2;
+    private final WeakHashLRU<K> b1;
+    private final WeakHashLRU<K> b2;
+    
+    // Every key in any of the four lists, grouped by index.  Null if there is no indexer
+    private final CacheKeyIndexer<K> indexer;
+    private final HashMap<Object, Set<K>> indices;
+    
+    // The target size of t1, adaptive
+    private volatile int p = 0;
+    
+    // Changed by every removal, so that a computation that overlaps a removal is not kept
+    private volatile long generation = 0L;
+    
+    private final CacheStatisticsRecorder statistics = new CacheStatisticsRecorder();
+    
+    // The hit and miss counts when clear was last called, for the hit rate
+    private volatile long hitsAtClear = 0L;
+    private volatile long missesAtClear = 0L;
+    
+    public ConcurrentWeakCARCacheImpl(Computable<K,V> computable, int maxSize, boolean isWeak) {
+        this(computable, maxSize, isWeak, null);
+    }
+    
+    public ConcurrentWeakCARCacheImpl(Computable<K,V> computable, int maxSize, boolean isWeak, CacheKeyIndexer<K> indexer) {
+        this.computable = computable;
+        this.maxSize = maxSize;
+        this.isWeak = isWeak;
+        this.indexer = indexer;
+        indices = (indexer == null) ? null : new HashMap<Object, Set<K>>();
+        values = new ConcurrentWeakKeyMap<K, CarValue<V>>(isWeak, true);
+        
+        t1 = GeneralUtilities.getWeakHashClock(isWeak);
+        t2 = GeneralUtilities.getWeakHashClock(isWeak);
+        b1 = GeneralUtilities.getWeakHashLRU(isWeak);
+        b2 = GeneralUtilities.getWeakHashLRU(isWeak);
+    }
+    
+    private V getValue(K key) {
+        CarValue<V> cValue = values.get(key);
+        if (cValue == null) return null;
+        
+        // Only write when it changes, so hot keys do not bounce between processors
+        if (!cValue.referenceBit) cValue.referenceBit = true;
+        
+        return cValue.value;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.WeakCARCache#compute(java.lang.Object)
+     */
+    @Override
+    public V compute(K key) {
+        V value = getValue(key);
+        if (value != null) {
+            statistics.hit();
+            return value;
+        }
+        
+        Computation<V> mine = new Computation<V>();
+        Computation<V> running = computing.putIfAbsent(key, mine);
+        if (running != null) {
+            if (running.owner == Thread.currentThread()) {
+                // The computable asked for its own key, do what the locked cache would do
+                return computeOnly(key);
+            }
+            
+            if (COMPUTING_DEPTH.get()[0] > 0) {
+                // The other thread may be waiting on a key this thread is computing
+                return computeOnly(key);
+            }
+            
+            statistics.hit();
+            return running.get();
+        }
+        
+        try {
+            // Another thread may have finished this key between the read and the putIfAbsent
+            value = getValue(key);
+            if (value != null) {
+                statistics.hit();
+            }
+            else {
+                statistics.miss();
+                value = computeAndAdd(key);
+            }
+            
+            mine.set(value);
+            return value;
+        }
+        catch (RuntimeException re) {
+            mine.fail(re);
+            throw re;
+        }
+        catch (Error er) {
+            mine.fail(er);
+            throw er;
+        }
+        finally {
+            computing.remove(key, mine);
+        }
+    }
+    
+    @SuppressWarnings("unchecked")
+    private V computeOnly(K key) {
+        try {
+            return computable.compute(key);
+        }
+        catch (ComputationErrorException cee) {
+            return (V) cee.getComputation();
+        }
+    }
+    
+    @SuppressWarnings("unchecked")
+    private V computeAndAdd(K key) {
+        long startGeneration = generation;
+        
+        // Cache Miss.  First, get the value.  Any failures
+        // will bubble up prior to us messing with any data structures
+        V value;
+        long computeStart = System.nanoTime();
+        int depth[] = COMPUTING_DEPTH.get();
+        depth[0]++;
+        try {
+            value = computable.compute(key);
+        }
+        catch (ComputationErrorException cee) {
+            // In this case the value should not be kept in the cache
+            return (V) cee.getComputation();
+        }
+        finally {
+            depth[0]--;
+            statistics.computed(System.nanoTime() - computeStart);
+        }
+        
+        synchronized (this) {
+            if (generation != startGeneration) {
+                // Something was removed while this was computed
+                return value;
+            }
+            
+            int cacheSize = getValueSize();
+            if (cacheSize >= maxSize) {
+                replace();
+            
+                boolean inB1 = b1.contains(key);
+                boolean inB2 = b2.contains(key);
+                if (!inB1 && !inB2) {
+                    if ((t1.size() + b1.size()) >= maxSize) {
+                        removeFromIndex(b1.remove());
+                    }
+                    else if ((t1.size() + t2.size() + b1.size() + b2.size()) >= (2 * maxSize)) {
+                        removeFromIndex(b2.remove());
+                    }
+                }
+            }
+        
+            boolean inB1 = b1.contains(key);
+            boolean inB2 = b2.contains(key);
+            
+            CarValue<V> cValue = new CarValue<V>(value);
+        
+            if (!inB1 && !inB2) {
+                t1.put(key, cValue);
+            }
+            else if (inB1) {
+                int b1size = b1.size();
+                if (b1size == 0) b1size = 1;  // Can happen in a weak situation, we fake the one
+            
+                int b2size = b2.size();
+            
+                int ratio = b2size / b1size;  // integer division
+                if (ratio <= 0) ratio = 1;
+            
+                int newP = p + ratio;
+                p = (newP > maxSize) ? maxSize : newP ;
+            
+                b1.remove(key);
+                t2.put(key, cValue);
+            }
+            else {
+                // Must be in B2
+                int b2size = b2.size();
+                if (b2size == 0) b2size = 1;  // Can happen in a weak situation, we fake the one
+            
+                int b1size = b1.size();
+            
+                int ratio = b1size / b2size;
+                if (ratio <= 0) ratio = 1;
+            
+                int newP = p - ratio;
+                p = (newP < 0) ? 0 : newP ;
+            
+                b2.remove(key);
+                t2.put(key, cValue);
+            }
+            
+            values.put(key, cValue);
+            
+            addToIndex(key);
+        }
+        
+        return value;
+    }
+    
+    private void addToIndex(K key) {
+        if (indexer == null) return;
+        
+        Object index = indexer.getIndex(key);
+        if (index == null) return;
+        
+        Set<K> keys = indices.get(index);
+        if (keys == null) {
+            if (isWeak) {
+                keys = Collections.newSetFromMap(new WeakHashMap<K, Boolean>());
+            }
+            else {
+                keys = new HashSet<K>();
+            }
+            
+            indices.put(index, keys);
+        }
+        
+        keys.add(key);
+    }
+    
+    private void removeFromIndex(K key) {
+        if (indexer == null || key == null) return;
+        
+        Object index = indexer.getIndex(key);
+        if (index == null) return;
+        
+        Set<K> keys = indices.get(index);
+        if (keys == null) return;
+        
+        keys.remove(key);
+        if (keys.isEmpty()) {
+            indices.remove(index);
+        }
+    }
+    
+    private void replace() {
+        boolean found = false;
+        while (!found) {
+            int trySize = p;
+            if (trySize < 1) trySize = 1;
+            
+            if (t1.size() >= trySize) {
+                Map.Entry<K, CarValue<V>> entry = t1.next();
+                
+                if (entry.getValue().referenceBit == false) {
+                    found = true;
+                    
+                    t1.remove(entry.getKey());
+                    values.remove(entry.getKey());
+                    b1.add(entry.getKey());
+                    statistics.evicted();
+                }
+                else {
+                    CarValue<V> entryValue = entry.getValue();
+                    entryValue.referenceBit = false;
+                    
+                    t1.remove(entry.getKey());
+                    t2.put(entry.getKey(), entryValue);
+                }
+            }
+            else {
+                Map.Entry<K, CarValue<V>> entry = t2.next();
+                
+                if (entry.getValue().referenceBit == false) {
+                    found = true;
+                    
+                    t2.remove(entry.getKey());
+                    values.remove(entry.getKey());
+                    b2.add(entry.getKey());
+                    statistics.evicted();
+                }
+                else {
+                    CarValue<V> entryValue = entry.getValue();
+                    entryValue.referenceBit = false;
+                }
+            }
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.WeakCARCache#getKeySize()
+     */
+    @Override
+    public synchronized int getKeySize() {
+        return t1.size() + t2.size() + b1.size() + b2.size();
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.WeakCARCache#getValueSize()
+     */
+    @Override
+    public synchronized int getValueSize() {
+        return t1.size() + t2.size();
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.WeakCARCache#clear()
+     */
+    @Override
+    public synchronized void clear() {
+        generation++;
+        statistics.invalidated(getValueSize());
+        
+        values.clear();
+        t1.clear();
+        t2.clear();
+        b1.clear();
+        b2.clear();
+        if (indices != null) indices.clear();
+        
+        p = 0;
+        
+        hitsAtClear = statistics.getHitCount();
+        missesAtClear = statistics.getMissCount();
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.WeakCARCache#getMaxSize()
+     */
+    @Override
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.WeakCARCache#setMaxSize(int)
+     */
+    @Override
+    public synchronized void setMaxSize(int maxSize) {
+        if (maxSize < 1) throw new IllegalArgumentException("The maximum size of a cache must be at least one: " + maxSize);
+        
+        this.maxSize = maxSize;
+        if (p > maxSize) p = maxSize;
+        
+        while (getValueSize() > maxSize) {
+            replace();
+        }
+        
+        // The key history may not be more than the maximum size in t1 and b1, or twice that in total
+        while ((t1.size() + b1.size()) > maxSize && b1.size() > 0) {
+            removeFromIndex(b1.remove());
+        }
+        while (getKeySize() > (2 * maxSize) && b2.size() > 0) {
+            removeFromIndex(b2.remove());
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.WeakCARCache#getComputable()
+     */
+    @Override
+    public Computable<K, V> getComputable() {
+        return computable;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.WeakCARCache#remove(java.lang.Object)
+     */
+    @Override
+    public synchronized boolean remove(K key) {
+        generation++;
+        
+        removeFromIndex(key);
+        values.remove(key);
+        
+        if (t1.remove(key) == null) {
+            if (t2.remove(key) == null) {
+                if (!b1.remove(key)) {
+                    return b2.remove(key);
+                }
+                
+                return true;
+            }
+            
+            statistics.invalidated(1);
+            return true;
+        }
+        
+        statistics.invalidated(1);
+        return true;
+    }
+    
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.WeakCARCache#releaseMatching(org.glassfish.hk2.utilities.cache.CacheKeyFilter)
+     */
+    @Override
+    public synchronized void releaseMatching(final CacheKeyFilter<K> filter) {
+        if (filter == null) return;
+        
+        generation++;
+        
+        CacheKeyFilter<K> releaser = new CacheKeyFilter<K>() {
+
+            @Override
+            public boolean matches(K key) {
+                if (!filter.matches(key)) return false;
+                
+                removeFromIndex(key);
+                values.remove(key);
+                return true;
+            }
+            
+        };
+        
+        b2.releaseMatching(releaser);
+        b1.releaseMatching(releaser);
+        
+        int valueSize = getValueSize();
+        t1.releaseMatching(releaser);
+        t2.releaseMatching(releaser);
+        statistics.invalidated(valueSize - getValueSize());
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.WeakCARCache#releaseIndexed(java.lang.Object)
+     */
+    @Override
+    public synchronized void releaseIndexed(Object index) {
+        if (indexer == null) {
+            throw new IllegalStateException("This cache was not created with a CacheKeyIndexer");
+        }
+        if (index == null) return;
+        
+        generation++;
+        
+        Set<K> keys = indices.remove(index);
+        if (keys == null) return;
+        
+        for (K key : keys) {
+            values.remove(key);
+            
+            if (t1.remove(key) != null || t2.remove(key) != null) {
+                statistics.invalidated(1);
+                continue;
+            }
+            
+            if (b1.remove(key)) continue;
+            b2.remove(key);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.WeakCARCache#clearStaleReferences()
+     */
+    @Override
+    public synchronized void clearStaleReferences() {
+        values.clearStaleReferences();
+        
+        t1.clearStaleReferences();
+        t2.clearStaleReferences();
+        b1.clearStaleReferences();
+        b2.clearStaleReferences();
+        
+        if (indices != null && isWeak) {
+            Iterator<Set<K>> iterator = indices.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().isEmpty()) iterator.remove();
+            }
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.WeakCARCache#getT1Size()
+     */
+    @Override
+    public int getT1Size() {
+        return t1.size();
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.WeakCARCache#getT2Size()
+     */
+    @Override
+    public int getT2Size() {
+        return t2.size();
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.WeakCARCache#getB1Size()
+     */
+    @Override
+    public int getB1Size() {
+        return b1.size();
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.WeakCARCache#getB2Size()
+     */
+    @Override
+    public int getB2Size() {
+        return b2.size();
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.WeakCARCache#getP()
+     */
+    @Override
+    public int getP() {
+        return p;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.WeakCARCache#dumpAllLists()
+     */
+    @Override
+    public synchronized String dumpAllLists() {
+        StringBuffer sb = new StringBuffer("p=" + p + "\nT1: " + t1.toString() + "\n");
+        sb.append("T2: " + t2.toString() + "\n");
+        sb.append("B1: " + b1.toString() + "\n");
+        sb.append("B2: " + b2.toString() + "\n");
+        
+        return sb.toString();
+    }
+    
+    @Override
+    public double getHitRate() {
+        long localHits = statistics.getHitCount() - hitsAtClear;
+        long localTries = localHits + (statistics.getMissCount() - missesAtClear);
+        if (localTries <= 0) localTries = 1;
+        
+        return ((double) localHits / (double) localTries) * 100.00;
+    }
+    
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.WeakCARCache#getStatistics()
+     */
+    @Override
+    public CacheStatistics getStatistics() {
+        return statistics.getStatistics(getValueSize(), maxSize);
+    }
+    
+    @Override
+    public String toString() {
+        return "ConcurrentWeakCARCacheImpl(t1size=" + t1.size() + ",t2Size=" + t2.size() +
+                ",b1Size=" + b1.size() + ",b2Size=" + b2.size() + ",p=" + p + "," +
+                "hitRate=" + getHitRate() + "%," + System.identityHashCode(this) + ")";
+    }
+    
+    private static class CarValue<V> {
+        private final V value;
+        private volatile boolean referenceBit = false;
+        
+        private CarValue(V value) {
+            this.value = value;
+        }
+        
+    }
+    
+    /**
+     * The result of one miss, which the threads that missed on the
+     * same key at the same time wait for
+     */
+    private static class Computation<V> {
+        private final Thread owner = Thread.currentThread();
+        private boolean done;
+        private V value;
+        private Throwable error;
+        
+        private synchronized void set(V value) {
+            this.value = value;
+            done = true;
+            
+            notifyAll();
+        }
+        
+        private synchronized void fail(Throwable error) {
+            this.error = error;
+            done = true;
+            
+            notifyAll();
+        }
+        
+        private synchronized V get() {
+            boolean interrupted = false;
+            try {
+                while (!done) {
+                    try {
+                        wait();
+                    }
+                    catch (InterruptedException ie) {
+                        interrupted = true;
+                    }
+                }
+            }
+            finally {
+                if (interrupted) Thread.currentThread().interrupt();
+            }
+            
+            if (error == null) return value;
+            
+            if (error instanceof RuntimeException) throw (RuntimeException) error;
+            throw (Error) error;
+        }
+    }
+
+}
@@ -48,6 +48,7 @@ import java.util.concurrent.ConcurrentHashMap;
 
 import org.glassfish.hk2.utilities.cache.CacheEntry;
 import org.glassfish.hk2.utilities.cache.CacheKeyFilter;
+import org.glassfish.hk2.utilities.cache.CacheStatistics;
 import org.glassfish.hk2.utilities.cache.LRUCache;
 
 /**
@@ -68,6 +69,7 @@ public class LRUCacheCheapRead<K,V> extends LRUCache<K,V> {
 
     final int maxCacheSize;
     Map<K,CacheEntryImpl<K, V>> cache = new ConcurrentHashMap<K, CacheEntryImpl<K,V>>();
+    final CacheStatisticsRecorder statistics = new CacheStatisticsRecorder();
 
     /**
      * Create new cache with given maximum capacity.
@@ -81,7 +83,13 @@ public class LRUCacheCheapRead<K,V> extends LRUCache<K,V> {
     @Override
     public V get(K key) {
         final CacheEntryImpl<K, V> entry = cache.get(key);
-        return entry != null ? entry.hit().value : null;
+        if (entry == null) {
+            statistics.miss();
+            return null;
+        }
+        
+        statistics.hit();
+        return entry.hit().value;
     }
 
     @Override
@@ -98,6 +106,7 @@ public class LRUCacheCheapRead<K,V> extends LRUCache<K,V> {
 
     @Override
     public void releaseCache() {
+        statistics.invalidated(cache.size());
         cache.clear();
     }
 
@@ -105,6 +114,11 @@ public class LRUCacheCheapRead<K,V> extends LRUCache<K,V> {
     public int getMaxCacheSize() {
         return maxCacheSize;
     }
+    
+    @Override
+    public CacheStatistics getStatistics() {
+        return statistics.getStatistics(cache.size(), maxCacheSize);
+    }
 
     @Override
     public void releaseMatching(CacheKeyFilter<K> filter) {
@@ -125,7 +139,9 @@ public class LRUCacheCheapRead<K,V> extends LRUCache<K,V> {
      */
     private void removeLRUItem() {
         final Collection<CacheEntryImpl<K, V>> values = cache.values();
-        Collections.min(values, COMPARATOR).removeFromCache();
+        if (cache.remove(Collections.min(values, COMPARATOR).key) != null) {
+            statistics.evicted();
+        }
     }
 
     private static final CacheEntryImplComparator COMPARATOR = new CacheEntryImplComparator();
@@ -156,7 +172,9 @@ public class LRUCacheCheapRead<K,V> extends LRUCache<K,V> {
 
         @Override
         public void removeFromCache() {
-            parent.cache.remove(key);
+            if (parent.cache.remove(key) != null) {
+                parent.statistics.invalidated(1);
+            }
         }
 
         public CacheEntryImpl<K,V> hit() {
@@ -0,0 +1,149 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.utilities.cache.internal;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that many threads can increment without all of them
+ * updating the same memory location.  Until two threads collide the
+ * counter is a single value.  After that each thread is mapped by its id
+ * to one of several cells which are padded apart from each other, and
+ * the value of the counter is the sum of the cells
+ * 
+ * @author jwells
+ *
+ */
+public class StripedCounter {
+    /** Spaces the cells a 64 byte cache line apart */
+    private final static int PADDING = 8;
+    
+    private final static int NUM_STRIPES;
+    static {
+        int processors = Runtime.getRuntime().availableProcessors();
+        
+        int stripes = 1;
+        while (stripes < processors && stripes < 64) {
+            stripes <<= 1;
+        }
+        
+        NUM_STRIPES = stripes;
+    }
+    
+    private final AtomicLong base = new AtomicLong();
+    
+    /** Only allocated the first time an update of base fails */
+    private volatile AtomicLongArray cells;
+    
+    private static int getCell() {
+        long id = Thread.currentThread().getId();
+        
+        // Spread sequential thread ids across the stripes
+        int hash = (int) (id * 0x9E3779B9L);
+        hash ^= (hash >>> 16);
+        
+        // The first cell is left empty so that the array header does not share a line with a cell
+        return ((hash & (NUM_STRIPES - 1)) + 1) * PADDING;
+    }
+    
+    private AtomicLongArray getCells() {
+        AtomicLongArray retVal = cells;
+        if (retVal != null) return retVal;
+        
+        synchronized (this) {
+            if (cells == null) {
+                cells = new AtomicLongArray((NUM_STRIPES + 1) * PADDING);
+            }
+            
+            return cells;
+        }
+    }
+    
+    /**
+     * Adds one to this counter
+     */
+    public void increment() {
+        add(1L);
+    }
+    
+    /**
+     * Adds the given amount to this counter
+     * 
+     * @param amount The amount to add, which may be negative
+     */
+    public void add(long amount) {
+        AtomicLongArray localCells = cells;
+        if (localCells == null) {
+            long current = base.get();
+            if (base.compareAndSet(current, current + amount)) return;
+            
+            // Another thread got there first, stop sharing base from now on
+            localCells = getCells();
+        }
+        
+        localCells.getAndAdd(getCell(), amount);
+    }
+    
+    /**
+     * Returns the current value of this counter.  Increments that
+     * happen while the cells are being summed may or may not be included
+     * 
+     * @return The current value of this counter
+     */
+    public long sum() {
+        long retVal = base.get();
+        
+        AtomicLongArray localCells = cells;
+        if (localCells == null) return retVal;
+        
+        for (int lcv = PADDING; lcv < localCells.length(); lcv += PADDING) {
+            retVal += localCells.get(lcv);
+        }
+        
+        return retVal;
+    }
+    
+    @Override
+    public String toString() {
+        return Long.toString(sum());
+    }
+
+}
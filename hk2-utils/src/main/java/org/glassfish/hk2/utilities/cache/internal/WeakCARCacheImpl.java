@@ -39,10 +39,17 @@
  */
 package org.glassfish.hk2.utilities.cache.internal;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.Set;
+import java.util.WeakHashMap;
 
 import org.glassfish.hk2.utilities.cache.CacheKeyFilter;
+import org.glassfish.hk2.utilities.cache.CacheKeyIndexer;
+import org.glassfish.hk2.utilities.cache.CacheStatistics;
 import org.glassfish.hk2.utilities.cache.Computable;
 import org.glassfish.hk2.utilities.cache.ComputationErrorException;
 import org.glassfish.hk2.utilities.cache.WeakCARCache;
@@ -60,22 +67,37 @@ import org.glassfish.hk2.utilities.general.WeakHashLRU;
  */
 public class WeakCARCacheImpl<K,V> implements WeakCARCache<K, V> {
     private final Computable<K,V> computable;
-    private final int maxSize;  // TODO, make this dynamic
+    private volatile int maxSize;
     
     private final WeakHashClock<K,CarValue<V>> t1;
     private final WeakHashClock<K,CarValue<V>> t2;
     private final WeakHashLRU<K> b1;
     private final WeakHashLRU<K> b2;
     
+    // Every key in any of the four lists, grouped by index.  Null if there is no indexer
+    private final CacheKeyIndexer<K> indexer;
+    private final boolean isWeak;
+    private final HashMap<Object, Set<K>> indices;
+    
     // The target size of t1, adaptive
     private int p = 0;
     
-    private final AtomicLong hits = new AtomicLong(0L);
-    private final AtomicLong tries = new AtomicLong(0L);
+    private final CacheStatisticsRecorder statistics = new CacheStatisticsRecorder();
+    
+    // The hit and miss counts when clear was last called, for the hit rate
+    private volatile long hitsAtClear = 0L;
+    private volatile long missesAtClear = 0L;
     
     public WeakCARCacheImpl(Computable<K,V> computable, int maxSize, boolean isWeak) {
+        this(computable, maxSize, isWeak, null);
+    }
+    
+    public WeakCARCacheImpl(Computable<K,V> computable, int maxSize, boolean isWeak, CacheKeyIndexer<K> indexer) {
         this.computable = computable;
         this.maxSize = maxSize;
+        this.indexer = indexer;
+        this.isWeak = isWeak;
+        indices = (indexer == null) ? null : new HashMap<Object, Set<K>>();
         
         t1 = GeneralUtilities.getWeakHashClock(isWeak);
         t2 = GeneralUtilities.getWeakHashClock(isWeak);
@@ -107,23 +129,24 @@ public class WeakCARCacheImpl<K,V> implements WeakCARCache<K, V> {
     @SuppressWarnings("unchecked")
     @Override
     public V compute(K key) {
-        tries.getAndIncrement();
-        
         V value = getValueFromT(key);
         if (value != null) {
-            hits.getAndIncrement();
+            statistics.hit();
             return value;
         }
         
         synchronized (this) {
             value = getValueFromT(key);
             if (value != null) {
-                hits.getAndIncrement();
+                statistics.hit();
                 return value;
             }
             
+            statistics.miss();
+            
             // Cache Miss.  First, get the value.  Any failures
             // will bubble up prior to us messing with any data structures
+            long computeStart = System.nanoTime();
             try {
                 value = computable.compute(key);
             }
@@ -131,6 +154,9 @@ public class WeakCARCacheImpl<K,V> implements WeakCARCache<K, V> {
                 // In this case the value should not be kept in the cache
                 return (V) cee.getComputation();
             }
+            finally {
+                statistics.computed(System.nanoTime() - computeStart);
+            }
             
             int cacheSize = getValueSize();
             if (cacheSize >= maxSize) {
@@ -140,10 +166,10 @@ public class WeakCARCacheImpl<K,V> implements WeakCARCache<K, V> {
                 boolean inB2 = b2.contains(key);
                 if (!inB1 && !inB2) {
                     if ((t1.size() + b1.size()) >= maxSize) {
-                        b1.remove();
+                        removeFromIndex(b1.remove());
                     }
                     else if ((t1.size() + t2.size() + b1.size() + b2.size()) >= (2 * maxSize)) {
-                        b2.remove();
+                        removeFromIndex(b2.remove());
                     }
                 }
             }
@@ -185,11 +211,49 @@ public class WeakCARCacheImpl<K,V> implements WeakCARCache<K, V> {
                 b2.remove(key);
                 t2.put(key, new CarValue<V>(value));
             }
+            
+            addToIndex(key);
         }
         
         return value;
     }
     
+    private void addToIndex(K key) {
+        if (indexer == null) return;
+        
+        Object index = indexer.getIndex(key);
+        if (index == null) return;
+        
+        Set<K> keys = indices.get(index);
+        if (keys == null) {
+            if (isWeak) {
+                keys = Collections.newSetFromMap(new WeakHashMap<K, Boolean>());
+            }
+            else {
+                keys = new HashSet<K>();
+            }
+            
+            indices.put(index, keys);
+        }
+        
+        keys.add(key);
+    }
+    
+    private void removeFromIndex(K key) {
+        if (indexer == null || key == null) return;
+        
+        Object index = indexer.getIndex(key);
+        if (index == null) return;
+        
+        Set<K> keys = indices.get(index);
+        if (keys == null) return;
+        
+        keys.remove(key);
+        if (keys.isEmpty()) {
+            indices.remove(index);
+        }
+    }
+    
     private void replace() {
         boolean found = false;
         while (!found) {
@@ -204,6 +268,7 @@ public class WeakCARCacheImpl<K,V> implements WeakCARCache<K, V> {
                     
                     t1.remove(entry.getKey());
                     b1.add(entry.getKey());
+                    statistics.evicted();
                 }
                 else {
                     CarValue<V> entryValue = entry.getValue();
@@ -221,6 +286,7 @@ public class WeakCARCacheImpl<K,V> implements WeakCARCache<K, V> {
                     
                     t2.remove(entry.getKey());
                     b2.add(entry.getKey());
+                    statistics.evicted();
                 }
                 else {
                     CarValue<V> entryValue = entry.getValue();
@@ -251,15 +317,18 @@ public class WeakCARCacheImpl<K,V> implements WeakCARCache<K, V> {
      */
     @Override
     public synchronized void clear() {
+        statistics.invalidated(getValueSize());
+        
         t1.clear();
         t2.clear();
         b1.clear();
         b2.clear();
+        if (indices != null) indices.clear();
         
         p = 0;
         
-        tries.set(0);
-        hits.set(0);
+        hitsAtClear = statistics.getHitCount();
+        missesAtClear = statistics.getMissCount();
     }
 
     /* (non-Javadoc)
@@ -270,6 +339,29 @@ public class WeakCARCacheImpl<K,V> implements WeakCARCache<K, V> {
         return maxSize;
     }
 
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.WeakCARCache#setMaxSize(int)
+     */
+    @Override
+    public synchronized void setMaxSize(int maxSize) {
+        if (maxSize < 1) throw new IllegalArgumentException("The maximum size of a cache must be at least one: " + maxSize);
+        
+        this.maxSize = maxSize;
+        if (p > maxSize) p = maxSize;
+        
+        while (getValueSize() > maxSize) {
+            replace();
+        }
+        
+        // The key history may not be more than the maximum size in t1 and b1, or twice that in total
+        while ((t1.size() + b1.size()) > maxSize && b1.size() > 0) {
+            removeFromIndex(b1.remove());
+        }
+        while (getKeySize() > (2 * maxSize) && b2.size() > 0) {
+            removeFromIndex(b2.remove());
+        }
+    }
+
     /* (non-Javadoc)
      * @see org.glassfish.hk2.utilities.cache.WeakCARCache#getComputable()
      */
@@ -283,6 +375,8 @@ public class WeakCARCacheImpl<K,V> implements WeakCARCache<K, V> {
      */
     @Override
     public synchronized boolean remove(K key) {
+        removeFromIndex(key);
+        
         if (t1.remove(key) == null) {
             if (t2.remove(key) == null) {
                 if (!b1.remove(key)) {
@@ -292,9 +386,11 @@ public class WeakCARCacheImpl<K,V> implements WeakCARCache<K, V> {
                 return true;
             }
             
+            statistics.invalidated(1);
             return true;
         }
         
+        statistics.invalidated(1);
         return true;
     }
     
@@ -305,10 +401,52 @@ public class WeakCARCacheImpl<K,V> implements WeakCARCache<K, V> {
     public synchronized void releaseMatching(CacheKeyFilter<K> filter) {
         if (filter == null) return;
         
+        if (indexer != null) {
+            final CacheKeyFilter<K> userFilter = filter;
+            filter = new CacheKeyFilter<K>() {
+
+                @Override
+                public boolean matches(K key) {
+                    if (!userFilter.matches(key)) return false;
+                    
+                    removeFromIndex(key);
+                    return true;
+                }
+                
+            };
+        }
+        
         b2.releaseMatching(filter);
         b1.releaseMatching(filter);
+        
+        int valueSize = getValueSize();
         t1.releaseMatching(filter);
         t2.releaseMatching(filter);
+        statistics.invalidated(valueSize - getValueSize());
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.WeakCARCache#releaseIndexed(java.lang.Object)
+     */
+    @Override
+    public synchronized void releaseIndexed(Object index) {
+        if (indexer == null) {
+            throw new IllegalStateException("This cache was not created with a CacheKeyIndexer");
+        }
+        if (index == null) return;
+        
+        Set<K> keys = indices.remove(index);
+        if (keys == null) return;
+        
+        for (K key : keys) {
+            if (t1.remove(key) != null || t2.remove(key) != null) {
+                statistics.invalidated(1);
+                continue;
+            }
+            
+            if (b1.remove(key)) continue;
+            b2.remove(key);
+        }
     }
 
     /* (non-Javadoc)
@@ -320,6 +458,13 @@ public class WeakCARCacheImpl<K,V> implements WeakCARCache<K, V> {
         t2.clearStaleReferences();
         b1.clearStaleReferences();
         b2.clearStaleReferences();
+        
+        if (indices != null && isWeak) {
+            Iterator<Set<K>> iterator = indices.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().isEmpty()) iterator.remove();
+            }
+        }
     }
     
     private static class CarValue<V> {
@@ -387,13 +532,21 @@ public class WeakCARCacheImpl<K,V> implements WeakCARCache<K, V> {
     
     @Override
     public double getHitRate() {
-        long localHits = hits.get();
-        long localTries = tries.get();
-        if (localTries == 0) localTries = 1;
+        long localHits = statistics.getHitCount() - hitsAtClear;
+        long localTries = localHits + (statistics.getMissCount() - missesAtClear);
+        if (localTries <= 0) localTries = 1;
         
         return ((double) localHits / (double) localTries) * (double) 100.00;
     }
     
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.cache.WeakCARCache#getStatistics()
+     */
+    @Override
+    public CacheStatistics getStatistics() {
+        return statistics.getStatistics(getValueSize(), maxSize);
+    }
+    
     @Override
     public String toString() {
         return "WeakCARCacheImpl(t1size=" + t1.size() + ",t2Size=" + t2.size() +
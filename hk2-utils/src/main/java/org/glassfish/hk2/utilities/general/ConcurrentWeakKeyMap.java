@@ -0,0 +1,349 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.utilities.general;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A concurrent map whose keys may be held weakly.  Reads take no lock
+ * and create no references.  Entries whose key has been collected are
+ * removed in small batches by the writers.
+ * <p>
+ * A value that is held strongly keeps its key alive, and so never
+ * leaves the map until it is removed.  When a key is a {@link Class}
+ * this means its {@link ClassLoader} can not be collected either.  A map
+ * that does not pin classloaders therefore only holds a value strongly
+ * when its key is a class that can not be unloaded before this map's own
+ * classloader.  The values of other classes are held weakly, and so must
+ * be kept alive by whoever uses them
+ * 
+ * @author jwells
+ *
+ */
+public class ConcurrentWeakKeyMap<K, V> {
+    /** The most stale entries removed from the map by a single write */
+    private final static int DRAIN_BATCH_SIZE = 64;
+    
+    private final boolean isWeak;
+    private final boolean pinsClassLoaders;
+    
+    /** The keys are WeakKey when isWeak, the values V or WeakValue */
+    private final ConcurrentHashMap<Object, Object> map = new ConcurrentHashMap<Object, Object>();
+    private final ReferenceQueue<Object> stale = new ReferenceQueue<Object>();
+    
+    /**
+     * Creates a map with weak keys whose values are held strongly
+     */
+    public ConcurrentWeakKeyMap() {
+        this(true, true);
+    }
+    
+    /**
+     * Creates a map
+     * 
+     * @param isWeak If false the keys are held strongly, and this map
+     * is an ordinary concurrent map
+     * @param pinsClassLoaders If false, the values of classes from
+     * classloaders that may go away before this map's own are held weakly
+     */
+    public ConcurrentWeakKeyMap(boolean isWeak, boolean pinsClassLoaders) {
+        this.isWeak = isWeak;
+        this.pinsClassLoaders = pinsClassLoaders;
+    }
+    
+    /**
+     * Gets the value of the given key
+     * 
+     * @param key The non-null key to look for
+     * @return The value, or null if there is none
+     */
+    public V get(K key) {
+        return getValue(map.get(lookupKey(key)));
+    }
+    
+    /**
+     * Associates the given value with the given key
+     * 
+     * @param key The non-null key
+     * @param value The non-null value
+     * @return The value that was replaced, or null if there was none
+     */
+    public V put(K key, V value) {
+        drainStale();
+        
+        Object mapKey = createKey(key);
+        return getValue(map.put(mapKey, createValue(mapKey, key, value)));
+    }
+    
+    /**
+     * Associates the given value with the given key if the key
+     * has no value
+     * 
+     * @param key The non-null key
+     * @param value The non-null value
+     * @return The value the key already had, or null if the
+     * given value was added
+     */
+    public V putIfAbsent(K key, V value) {
+        drainStale();
+        
+        Object mapKey = createKey(key);
+        Object holder = createValue(mapKey, key, value);
+        
+        while (true) {
+            Object existing = map.putIfAbsent(mapKey, holder);
+            if (existing == null) return null;
+            
+            V retVal = getValue(existing);
+            if (retVal != null) return retVal;
+            
+            // The existing value was collected
+            if (map.replace(mapKey, existing, holder)) return null;
+        }
+    }
+    
+    /**
+     * Removes the given key
+     * 
+     * @param key The non-null key to remove
+     * @return The value removed, or null if there was none
+     */
+    public V remove(K key) {
+        return getValue(map.remove(lookupKey(key)));
+    }
+    
+    /**
+     * Removes every entry
+     * 
+     * @return The values that were removed
+     */
+    public List<V> clear() {
+        List<V> retVal = new LinkedList<V>();
+        
+        for (Object key : map.keySet()) {
+            V removed = getValue(map.remove(key));
+            if (removed != null) retVal.add(removed);
+        }
+        
+        drainStale();
+        
+        return retVal;
+    }
+    
+    /**
+     * Returns the values currently in the map
+     * 
+     * @return A copy of the values that have not been collected
+     */
+    public List<V> values() {
+        List<V> retVal = new LinkedList<V>();
+        
+        for (Object holder : map.values()) {
+            V value = getValue(holder);
+            if (value != null) retVal.add(value);
+        }
+        
+        return retVal;
+    }
+    
+    /**
+     * The number of entries in the map.  Entries that have
+     * been collected but not yet removed are counted
+     * 
+     * @return The number of entries in the map
+     */
+    public int size() {
+        return map.size();
+    }
+    
+    /**
+     * Removes every entry whose key or value has been collected
+     */
+    public void clearStaleReferences() {
+        while (drainStale()) {
+        }
+    }
+    
+    private Object lookupKey(K key) {
+        return (isWeak) ? new LookupKey(key) : key ;
+    }
+    
+    private Object createKey(K key) {
+        return (isWeak) ? new WeakKey(key, stale) : key ;
+    }
+    
+    private Object createValue(Object mapKey, K key, V value) {
+        if (pinsClassLoaders || !(key instanceof Class)) return value;
+        if (!mayBeUnloaded(((Class<?>) key).getClassLoader())) return value;
+        
+        return new WeakValue(mapKey, value, stale);
+    }
+    
+    @SuppressWarnings("unchecked")
+    private V getValue(Object holder) {
+        if (holder instanceof WeakValue) {
+            return (V) ((WeakValue) holder).get();
+        }
+        
+        return (V) holder;
+    }
+    
+    /**
+     * A classloader can only be unloaded before this map if it is not
+     * the loader of this class or one of its parents
+     */
+    private static boolean mayBeUnloaded(ClassLoader loader) {
+        if (loader == null) return false;
+        
+        for (ClassLoader mine = ConcurrentWeakKeyMap.class.getClassLoader(); mine != null; mine = mine.getParent()) {
+            if (mine == loader) return false;
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Removes up to one batch of stale entries
+     * 
+     * @return true if there may be more stale entries
+     */
+    private boolean drainStale() {
+        for (int lcv = 0; lcv < DRAIN_BATCH_SIZE; lcv++) {
+            Reference<? extends Object> reference = stale.poll();
+            if (reference == null) return false;
+            
+            if (reference instanceof WeakValue) {
+                map.remove(((WeakValue) reference).mapKey, reference);
+            }
+            else {
+                map.remove(reference);
+            }
+        }
+        
+        return true;
+    }
+    
+    @Override
+    public String toString() {
+        return "ConcurrentWeakKeyMap(" + isWeak + "," + pinsClassLoaders + "," + System.identityHashCode(this) + ")";
+    }
+    
+    /**
+     * The key kept in the map when keys are weak, which is
+     * enqueued once its referent has been collected
+     */
+    private final static class WeakKey extends WeakReference<Object> {
+        private final int hash;
+        
+        private WeakKey(Object key, ReferenceQueue<Object> queue) {
+            super(key, queue);
+            
+            hash = key.hashCode();
+        }
+        
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) return true;
+            
+            Object key = get();
+            if (key == null) return false;
+            
+            if (o instanceof LookupKey) {
+                return key.equals(((LookupKey) o).key);
+            }
+            if (o instanceof WeakKey) {
+                return key.equals(((WeakKey) o).get());
+            }
+            
+            return false;
+        }
+    }
+    
+    /**
+     * Used to find a WeakKey in the map without creating another reference
+     */
+    private final static class LookupKey {
+        private final Object key;
+        
+        private LookupKey(Object key) {
+            this.key = key;
+        }
+        
+        @Override
+        public int hashCode() {
+            return key.hashCode();
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof WeakKey) {
+                return key.equals(((WeakKey) o).get());
+            }
+            if (o instanceof LookupKey) {
+                return key.equals(((LookupKey) o).key);
+            }
+            
+            return false;
+        }
+    }
+    
+    /**
+     * A value that does not keep its key alive
+     */
+    private final static class WeakValue extends WeakReference<Object> {
+        private final Object mapKey;
+        
+        private WeakValue(Object mapKey, Object value, ReferenceQueue<Object> queue) {
+            super(value, queue);
+            
+            this.mapKey = mapKey;
+        }
+    }
+}
@@ -41,8 +41,11 @@ package org.glassfish.hk2.utilities.reflection;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.Map;
 import java.util.Set;
 
+import org.glassfish.hk2.utilities.cache.CacheStatistics;
+
 /**
  * An interface representing useful reflection utilities
  * 
@@ -112,5 +115,14 @@ public interface ClassReflectionHelper {
      * @return An approximation of the current size of the cache
      */
     public int size();
+    
+    /**
+     * Returns the statistics of each of the caches kept by this
+     * helper, keyed by the name of the cache
+     * 
+     * @return A map from the name of each cache to a snapshot of its
+     * statistics.  Will not return null
+     */
+    public Map<String, CacheStatistics> getStatistics();
 
 }
@@ -41,8 +41,11 @@ package org.glassfish.hk2.utilities.reflection.internal;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 
+import org.glassfish.hk2.utilities.cache.CacheStatistics;
 import org.glassfish.hk2.utilities.cache.Computable;
 import org.glassfish.hk2.utilities.cache.HybridCacheEntry;
 import org.glassfish.hk2.utilities.cache.LRUHybridCache;
@@ -61,7 +64,9 @@ public class ClassReflectionHelperImpl implements ClassReflectionHelper {
 
                 @Override
                 public HybridCacheEntry<Method> compute(LifecycleKey key) {
-                    return postConstructCache.createCacheEntry(key, getPostConstructMethod(key.clazz, key.matchingClass), false);
+                    Method postConstruct = ClassReflectionHelperUtilities.getPostConstructMethod(
+                            ClassReflectionHelperImpl.this, key.clazz, key.matchingClass);
+                    return postConstructCache.createCacheEntry(key, postConstruct, false);
                 }
                 
             });
@@ -71,7 +76,9 @@ public class ClassReflectionHelperImpl implements ClassReflectionHelper {
 
                 @Override
                 public HybridCacheEntry<Method> compute(LifecycleKey key) {
-                    return preDestroyCache.createCacheEntry(key, getPreDestroyMethod(key.clazz, key.matchingClass), false);
+                    Method preDestroy = ClassReflectionHelperUtilities.getPreDestroyMethod(
+                            ClassReflectionHelperImpl.this, key.clazz, key.matchingClass);
+                    return preDestroyCache.createCacheEntry(key, preDestroy, false);
                 }
                 
             });
@@ -164,57 +171,20 @@ public class ClassReflectionHelperImpl implements ClassReflectionHelper {
                 fieldCache.size();
     }
     
-    private Method getPostConstructMethod(Class<?> clazz, Class<?> matchingClass) {
-        if (clazz == null || Object.class.equals(clazz)) return null;
-        
-        if (matchingClass.isAssignableFrom(clazz)) {
-            // A little performance optimization
-            Method retVal;
-            
-            try {
-                retVal = clazz.getMethod(ClassReflectionHelperUtilities.CONVENTION_POST_CONSTRUCT, new Class<?>[0]);
-            }
-            catch (NoSuchMethodException e) {
-                retVal = null;
-            }
-            
-            return retVal;
-        }
-        
-        for (MethodWrapper wrapper : getAllMethods(clazz)) {
-            Method m = wrapper.getMethod();
-            if (ClassReflectionHelperUtilities.isPostConstruct(m)) return m;
-        }
-        
-        return null;
-    }
-    
-    private Method getPreDestroyMethod(Class<?> clazz, Class<?> matchingClass) {
-        if (clazz == null || Object.class.equals(clazz)) return null;
-        
-        if (matchingClass.isAssignableFrom(clazz)) {
-            // A little performance optimization
-            Method retVal;
-            
-            try {
-                retVal = clazz.getMethod(ClassReflectionHelperUtilities.CONVENTION_PRE_DESTROY, new Class<?>[0]);
-            }
-            catch (NoSuchMethodException e) {
-                retVal = null;
-            }
-            
-            return retVal;
-        }
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.reflection.ClassReflectionHelper#getStatistics()
+     */
+    @Override
+    public Map<String, CacheStatistics> getStatistics() {
+        Map<String, CacheStatistics> retVal = new LinkedHashMap<String, CacheStatistics>();
         
-        for (MethodWrapper wrapper : getAllMethods(clazz)) {
-            Method m = wrapper.getMethod();
-            if (ClassReflectionHelperUtilities.isPreDestroy(m)) return m;
-        }
+        retVal.put("methods", methodCache.getStatistics());
+        retVal.put("fields", fieldCache.getStatistics());
+        retVal.put("postConstruct", postConstructCache.getStatistics());
+        retVal.put("preDestroy", preDestroyCache.getStatistics());
         
-        return null;
+        return retVal;
     }
-
-    
     
     @Override
     public String toString() {
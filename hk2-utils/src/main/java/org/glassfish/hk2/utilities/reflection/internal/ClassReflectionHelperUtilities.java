@@ -50,6 +50,7 @@ import java.util.Set;
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 
+import org.glassfish.hk2.utilities.reflection.ClassReflectionHelper;
 import org.glassfish.hk2.utilities.reflection.MethodWrapper;
 import org.glassfish.hk2.utilities.reflection.Pretty;
 
@@ -223,4 +224,70 @@ public class ClassReflectionHelperUtilities {
         return CONVENTION_PRE_DESTROY.equals(m.getName());
     }
 
+    /**
+     * Finds the postConstruct method of the class
+     * 
+     * @param helper The helper used to get all the methods of the class
+     * @param clazz The class to search
+     * @param matchingClass The PostConstruct interface
+     * @return The postConstruct method, or null if there is none
+     */
+    static Method getPostConstructMethod(ClassReflectionHelper helper, Class<?> clazz, Class<?> matchingClass) {
+        if (clazz == null || Object.class.equals(clazz)) return null;
+        
+        if (matchingClass.isAssignableFrom(clazz)) {
+            // A little performance optimization
+            Method retVal;
+            
+            try {
+                retVal = clazz.getMethod(CONVENTION_POST_CONSTRUCT, new Class<?>[0]);
+            }
+            catch (NoSuchMethodException e) {
+                retVal = null;
+            }
+            
+            return retVal;
+        }
+        
+        for (MethodWrapper wrapper : helper.getAllMethods(clazz)) {
+            Method m = wrapper.getMethod();
+            if (isPostConstruct(m)) return m;
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Finds the preDestroy method of the class
+     * 
+     * @param helper The helper used to get all the methods of the class
+     * @param clazz The class to search
+     * @param matchingClass The PreDestroy interface
+     * @return The preDestroy method, or null if there is none
+     */
+    static Method getPreDestroyMethod(ClassReflectionHelper helper, Class<?> clazz, Class<?> matchingClass) {
+        if (clazz == null || Object.class.equals(clazz)) return null;
+        
+        if (matchingClass.isAssignableFrom(clazz)) {
+            // A little performance optimization
+            Method retVal;
+            
+            try {
+                retVal = clazz.getMethod(CONVENTION_PRE_DESTROY, new Class<?>[0]);
+            }
+            catch (NoSuchMethodException e) {
+                retVal = null;
+            }
+            
+            return retVal;
+        }
+        
+        for (MethodWrapper wrapper : helper.getAllMethods(clazz)) {
+            Method m = wrapper.getMethod();
+            if (isPreDestroy(m)) return m;
+        }
+        
+        return null;
+    }
+
 }
@@ -0,0 +1,320 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.utilities.reflection.internal;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.glassfish.hk2.utilities.cache.CacheStatistics;
+import org.glassfish.hk2.utilities.cache.internal.CacheStatisticsRecorder;
+import org.glassfish.hk2.utilities.general.ConcurrentWeakKeyMap;
+import org.glassfish.hk2.utilities.reflection.ClassReflectionHelper;
+import org.glassfish.hk2.utilities.reflection.MethodWrapper;
+
+/**
+ * A ClassReflectionHelper that may be shared by every user in the JVM.
+ * All that is known about a class is kept in one record, which is
+ * found without taking any lock.
+ * <p>
+ * The methods and fields in a record refer back to their class, so a
+ * record that was held strongly would keep its classloader alive.  The
+ * records of classes from classloaders that may go away before this one
+ * are therefore only held weakly, and may have to be computed again
+ * after a garbage collection.  Users that analyze many such classes
+ * should use their own {@link ClassReflectionHelperImpl} instead
+ * 
+ * @author jwells
+ *
+ */
+public class SharedClassReflectionHelperImpl implements ClassReflectionHelper {
+    private final static SharedClassReflectionHelperImpl INSTANCE = new SharedClassReflectionHelperImpl();
+    
+    private final ConcurrentWeakKeyMap<Class<?>, ClassMetadata> metadata =
+            new ConcurrentWeakKeyMap<Class<?>, ClassMetadata>(true, false);
+    
+    private final CacheStatisticsRecorder methodStatistics = new CacheStatisticsRecorder();
+    private final CacheStatisticsRecorder fieldStatistics = new CacheStatisticsRecorder();
+    private final CacheStatisticsRecorder postConstructStatistics = new CacheStatisticsRecorder();
+    private final CacheStatisticsRecorder preDestroyStatistics = new CacheStatisticsRecorder();
+    
+    /**
+     * Returns the helper shared by everything in this JVM
+     * 
+     * @return The shared helper, will not return null
+     */
+    public static ClassReflectionHelper getInstance() {
+        return INSTANCE;
+    }
+    
+    /**
+     * Creates a helper that is not shared.  Most users should
+     * use {@link #getInstance()} instead
+     */
+    public SharedClassReflectionHelperImpl() {
+    }
+    
+    private ClassMetadata getMetadata(Class<?> clazz) {
+        ClassMetadata retVal = metadata.get(clazz);
+        if (retVal != null) return retVal;
+        
+        ClassMetadata created = new ClassMetadata();
+        
+        retVal = metadata.putIfAbsent(clazz, created);
+        if (retVal != null) return retVal;
+        
+        return created;
+    }
+    
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.reflection.ClassReflectionHelper#getAllMethods(java.lang.Class)
+     */
+    @Override
+    public Set<MethodWrapper> getAllMethods(Class<?> clazz) {
+        ClassMetadata record = getMetadata(clazz);
+        
+        Set<MethodWrapper> retVal = record.methods;
+        if (retVal != null) {
+            methodStatistics.hit();
+            return retVal;
+        }
+        
+        methodStatistics.miss();
+        long start = System.nanoTime();
+        
+        retVal = ClassReflectionHelperUtilities.getAllMethodWrappers(clazz);
+        
+        methodStatistics.computed(System.nanoTime() - start);
+        record.methods = retVal;
+        
+        return retVal;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.reflection.ClassReflectionHelper#createMethodWrapper(java.lang.reflect.Method)
+     */
+    @Override
+    public MethodWrapper createMethodWrapper(Method m) {
+        return new MethodWrapperImpl(m);
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.reflection.ClassReflectionHelper#getAllFields(java.lang.Class)
+     */
+    @Override
+    public Set<Field> getAllFields(Class<?> clazz) {
+        ClassMetadata record = getMetadata(clazz);
+        
+        Set<Field> retVal = record.fields;
+        if (retVal != null) {
+            fieldStatistics.hit();
+            return retVal;
+        }
+        
+        fieldStatistics.miss();
+        long start = System.nanoTime();
+        
+        retVal = ClassReflectionHelperUtilities.getAllFieldWrappers(clazz);
+        
+        fieldStatistics.computed(System.nanoTime() - start);
+        record.fields = retVal;
+        
+        return retVal;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.reflection.ClassReflectionHelper#findPostConstruct(java.lang.Class, java.lang.Class)
+     */
+    @Override
+    public Method findPostConstruct(Class<?> clazz, Class<?> matchingClass)
+            throws IllegalArgumentException {
+        ClassMetadata record = getMetadata(clazz);
+        
+        LifecycleMethod found = record.postConstruct;
+        if (found != null && found.matchingClass == matchingClass) {
+            postConstructStatistics.hit();
+            return found.method;
+        }
+        
+        postConstructStatistics.miss();
+        long start = System.nanoTime();
+        
+        Method retVal = ClassReflectionHelperUtilities.getPostConstructMethod(this, clazz, matchingClass);
+        
+        postConstructStatistics.computed(System.nanoTime() - start);
+        record.postConstruct = new LifecycleMethod(matchingClass, retVal);
+        
+        return retVal;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.reflection.ClassReflectionHelper#findPreDestroy(java.lang.Class, java.lang.Class)
+     */
+    @Override
+    public Method findPreDestroy(Class<?> clazz, Class<?> matchingClass)
+            throws IllegalArgumentException {
+        ClassMetadata record = getMetadata(clazz);
+        
+        LifecycleMethod found = record.preDestroy;
+        if (found != null && found.matchingClass == matchingClass) {
+            preDestroyStatistics.hit();
+            return found.method;
+        }
+        
+        preDestroyStatistics.miss();
+        long start = System.nanoTime();
+        
+        Method retVal = ClassReflectionHelperUtilities.getPreDestroyMethod(this, clazz, matchingClass);
+        
+        preDestroyStatistics.computed(System.nanoTime() - start);
+        record.preDestroy = new LifecycleMethod(matchingClass, retVal);
+        
+        return retVal;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.reflection.ClassReflectionHelper#clean(java.lang.Class)
+     */
+    @Override
+    public void clean(Class<?> clazz) {
+        while ((clazz != null) && !Object.class.equals(clazz)) {
+            invalidated(metadata.remove(clazz));
+            
+            clazz = clazz.getSuperclass();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.reflection.ClassReflectionHelper#dispose()
+     */
+    @Override
+    public void dispose() {
+        for (ClassMetadata removed : metadata.clear()) {
+            invalidated(removed);
+        }
+    }
+    
+    private void invalidated(ClassMetadata record) {
+        if (record == null) return;
+        
+        if (record.methods != null) methodStatistics.invalidated(1);
+        if (record.fields != null) fieldStatistics.invalidated(1);
+        if (record.postConstruct != null) postConstructStatistics.invalidated(1);
+        if (record.preDestroy != null) preDestroyStatistics.invalidated(1);
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.reflection.ClassReflectionHelper#size()
+     */
+    @Override
+    public int size() {
+        int sizes[] = getSizes();
+        
+        return sizes[0] + sizes[1] + sizes[2] + sizes[3];
+    }
+    
+    /**
+     * Counts the methods, fields, postConstruct and preDestroy
+     * entries of all the records that have not been collected
+     */
+    private int[] getSizes() {
+        int retVal[] = new int[4];
+        
+        for (ClassMetadata record : metadata.values()) {
+            if (record.methods != null) retVal[0]++;
+            if (record.fields != null) retVal[1]++;
+            if (record.postConstruct != null) retVal[2]++;
+            if (record.preDestroy != null) retVal[3]++;
+        }
+        
+        return retVal;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.reflection.ClassReflectionHelper#getStatistics()
+     */
+    @Override
+    public Map<String, CacheStatistics> getStatistics() {
+        int sizes[] = getSizes();
+        
+        Map<String, CacheStatistics> retVal = new LinkedHashMap<String, CacheStatistics>();
+        
+        retVal.put("methods", methodStatistics.getStatistics(sizes[0], -1));
+        retVal.put("fields", fieldStatistics.getStatistics(sizes[1], -1));
+        retVal.put("postConstruct", postConstructStatistics.getStatistics(sizes[2], -1));
+        retVal.put("preDestroy", preDestroyStatistics.getStatistics(sizes[3], -1));
+        
+        return retVal;
+    }
+    
+    @Override
+    public String toString() {
+        return "SharedClassReflectionHelperImpl(" + System.identityHashCode(this) + ")";
+    }
+    
+    /**
+     * Everything known about one class.  Each part is filled in the
+     * first time it is asked for.  Two threads may both compute the
+     * same part, in which case they compute the same answer
+     */
+    private final static class ClassMetadata {
+        private volatile Set<MethodWrapper> methods;
+        private volatile Set<Field> fields;
+        private volatile LifecycleMethod postConstruct;
+        private volatile LifecycleMethod preDestroy;
+    }
+    
+    /**
+     * A lifecycle method along with the interface it was looked up with.
+     * Only the answer for the last interface asked about is kept, since
+     * nearly every caller uses the same one
+     */
+    private final static class LifecycleMethod {
+        private final Class<?> matchingClass;
+        private final Method method;
+        
+        private LifecycleMethod(Class<?> matchingClass, Method method) {
+            this.matchingClass = matchingClass;
+            this.method = method;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.utilities.cache.test;
+
+import org.glassfish.hk2.utilities.cache.CacheUtilities;
+import org.glassfish.hk2.utilities.cache.Computable;
+import org.glassfish.hk2.utilities.cache.WeakCARCache;
+import org.glassfish.hk2.utilities.cache.internal.AdaptiveCacheSizer;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the sizer that grows and shrinks a WeakCARCache
+ * 
+ * @author jwells
+ *
+ */
+public class AdaptiveCacheSizerTest {
+    private final static int MIN_SIZE = 16;
+    private final static int CEILING = 64;
+    
+    private final static Computable<Integer, Integer> IDENTITY = new Computable<Integer, Integer>() {
+
+        @Override
+        public Integer compute(Integer key) {
+            return key;
+        }
+        
+    };
+    
+    private static WeakCARCache<Integer, Integer> createCache() {
+        return CacheUtilities.createWeakCARCache(IDENTITY, MIN_SIZE, false, null, true);
+    }
+    
+    /**
+     * Cycles through more keys than the cache holds, so every compute misses
+     */
+    private static void thrash(WeakCARCache<Integer, Integer> cache, int numKeys) {
+        for (int lcv = 0; lcv < 4 * numKeys; lcv++) {
+            cache.compute(lcv % numKeys);
+        }
+    }
+    
+    /**
+     * Tests that a thrashing cache is grown, but not beyond the ceiling
+     */
+    @Test // @org.junit.Ignore
+    public void testThrashingCacheGrows() {
+        WeakCARCache<Integer, Integer> cache = createCache();
+        AdaptiveCacheSizer sizer = new FixedPressureSizer(cache, 0.0);
+        
+        thrash(cache, 2 * MIN_SIZE);
+        Assert.assertEquals(2 * MIN_SIZE, sizer.adjust());
+        Assert.assertEquals(2 * MIN_SIZE, cache.getMaxSize());
+        
+        thrash(cache, 1000);
+        Assert.assertEquals(CEILING, sizer.adjust());
+        
+        thrash(cache, 1000);
+        Assert.assertEquals(CEILING, sizer.adjust());
+    }
+    
+    /**
+     * Tests that a cache with a good hit ratio is left alone
+     */
+    @Test // @org.junit.Ignore
+    public void testWellSizedCacheIsLeftAlone() {
+        WeakCARCache<Integer, Integer> cache = createCache();
+        AdaptiveCacheSizer sizer = new FixedPressureSizer(cache, 0.0);
+        
+        for (int lcv = 0; lcv < 1000; lcv++) {
+            cache.compute(lcv % MIN_SIZE);
+        }
+        
+        Assert.assertEquals(MIN_SIZE, sizer.adjust());
+    }
+    
+    /**
+     * Tests that the cache is shrunk when the heap is nearly full,
+     * but not below the minimum
+     */
+    @Test // @org.junit.Ignore
+    public void testHeapPressureShrinks() {
+        WeakCARCache<Integer, Integer> cache = createCache();
+        cache.setMaxSize(CEILING);
+        
+        AdaptiveCacheSizer sizer = new FixedPressureSizer(cache, 0.95);
+        
+        thrash(cache, 1000);
+        Assert.assertEquals(CEILING / 2, sizer.adjust());
+        Assert.assertTrue(cache.getValueSize() <= CEILING / 2);
+        
+        Assert.assertEquals(MIN_SIZE, sizer.adjust());
+        Assert.assertEquals(MIN_SIZE, sizer.adjust());
+    }
+    
+    /**
+     * Tests that the sizer adjusts by itself once enough misses are reported
+     */
+    @Test // @org.junit.Ignore
+    public void testMissesTriggerAdjustment() {
+        WeakCARCache<Integer, Integer> cache = createCache();
+        AdaptiveCacheSizer sizer = new FixedPressureSizer(cache, 0.0);
+        
+        thrash(cache, 1000);
+        
+        for (int lcv = 0; lcv < AdaptiveCacheSizer.MISSES_PER_ADJUSTMENT; lcv++) {
+            Assert.assertEquals(MIN_SIZE, cache.getMaxSize());
+            sizer.missed();
+        }
+        
+        Assert.assertEquals(2 * MIN_SIZE, cache.getMaxSize());
+    }
+    
+    /**
+     * Tests that lowering the ceiling shrinks a larger cache
+     */
+    @Test // @org.junit.Ignore
+    public void testLowerCeilingShrinks() {
+        WeakCARCache<Integer, Integer> cache = createCache();
+        cache.setMaxSize(CEILING);
+        
+        AdaptiveCacheSizer sizer = new FixedPressureSizer(cache, 0.0);
+        sizer.setCeiling(MIN_SIZE + 1);
+        
+        Assert.assertEquals(MIN_SIZE + 1, cache.getMaxSize());
+    }
+    
+    private static class FixedPressureSizer extends AdaptiveCacheSizer {
+        private final double pressure;
+        
+        private FixedPressureSizer(WeakCARCache<?, ?> cache, double pressure) {
+            super(cache, MIN_SIZE, CEILING);
+            
+            this.pressure = pressure;
+        }
+        
+        @Override
+        protected double getHeapPressure() {
+            return pressure;
+        }
+    }
+
+}
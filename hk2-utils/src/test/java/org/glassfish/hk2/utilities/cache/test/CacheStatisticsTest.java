@@ -0,0 +1,243 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.utilities.cache.test;
+
+import org.glassfish.hk2.utilities.cache.Cache;
+import org.glassfish.hk2.utilities.cache.CacheKeyFilter;
+import org.glassfish.hk2.utilities.cache.CacheStatistics;
+import org.glassfish.hk2.utilities.cache.CacheUtilities;
+import org.glassfish.hk2.utilities.cache.Computable;
+import org.glassfish.hk2.utilities.cache.HybridCacheEntry;
+import org.glassfish.hk2.utilities.cache.LRUCache;
+import org.glassfish.hk2.utilities.cache.LRUHybridCache;
+import org.glassfish.hk2.utilities.cache.WeakCARCache;
+import org.glassfish.hk2.utilities.cache.internal.StripedCounter;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the statistics kept by the caches
+ * 
+ * @author jwells
+ *
+ */
+public class CacheStatisticsTest {
+    private final static int CACHE_SIZE = 4;
+    private final static int NUM_THREADS = 8;
+    private final static int NUM_INCREMENTS = 100000;
+    
+    private final static Computable<Integer, Integer> IDENTITY = new Computable<Integer, Integer>() {
+
+        @Override
+        public Integer compute(Integer key) {
+            return key;
+        }
+        
+    };
+    
+    private final static CacheKeyFilter<Integer> EVEN = new CacheKeyFilter<Integer>() {
+
+        @Override
+        public boolean matches(Integer key) {
+            return (key % 2) == 0;
+        }
+        
+    };
+    
+    private static void testCARStatistics(WeakCARCache<Integer, Integer> car) {
+        for (int lcv = 0; lcv < CACHE_SIZE; lcv++) {
+            car.compute(lcv);
+            car.compute(lcv);
+        }
+        
+        CacheStatistics statistics = car.getStatistics();
+        Assert.assertEquals(CACHE_SIZE, statistics.getHitCount());
+        Assert.assertEquals(CACHE_SIZE, statistics.getMissCount());
+        Assert.assertEquals(0L, statistics.getEvictionCount());
+        Assert.assertEquals(CACHE_SIZE, statistics.getSize());
+        Assert.assertEquals(CACHE_SIZE, statistics.getMaxSize());
+        Assert.assertEquals(50.0, car.getHitRate(), 0.01);
+        
+        long histogramTotal = 0L;
+        for (long count : statistics.getComputeTimeHistogram()) {
+            histogramTotal += count;
+        }
+        Assert.assertEquals(CACHE_SIZE, histogramTotal);
+        Assert.assertEquals(statistics.getComputeTimeBucketBounds().length + 1,
+                statistics.getComputeTimeHistogram().length);
+        
+        // One more key than fits
+        car.compute(CACHE_SIZE);
+        Assert.assertEquals(1L, car.getStatistics().getEvictionCount());
+        
+        car.releaseMatching(EVEN);
+        
+        // 0 was evicted, so 2 and 4 were invalidated
+        statistics = car.getStatistics();
+        Assert.assertEquals(2L, statistics.getInvalidationCount());
+        Assert.assertEquals(2, statistics.getSize());
+        
+        car.clear();
+        
+        // Clearing resets the hit rate but not the statistics
+        statistics = car.getStatistics();
+        Assert.assertEquals(4L, statistics.getInvalidationCount());
+        Assert.assertEquals(CACHE_SIZE, statistics.getHitCount());
+        Assert.assertEquals(0.0, car.getHitRate(), 0.01);
+    }
+    
+    @Test // @org.junit.Ignore
+    public void testWeakCARCacheStatistics() {
+        testCARStatistics(CacheUtilities.createWeakCARCache(IDENTITY, CACHE_SIZE, false));
+    }
+    
+    @Test // @org.junit.Ignore
+    public void testConcurrentWeakCARCacheStatistics() {
+        testCARStatistics(CacheUtilities.createWeakCARCache(IDENTITY, CACHE_SIZE, false, null, true));
+    }
+    
+    @Test // @org.junit.Ignore
+    public void testCacheStatistics() {
+        Cache<Integer, Integer> cache = new Cache<Integer, Integer>(IDENTITY);
+        
+        cache.compute(1);
+        cache.compute(1);
+        cache.compute(2);
+        cache.remove(2);
+        
+        CacheStatistics statistics = cache.getStatistics();
+        Assert.assertEquals(1L, statistics.getHitCount());
+        Assert.assertEquals(2L, statistics.getMissCount());
+        Assert.assertEquals(1L, statistics.getInvalidationCount());
+        Assert.assertEquals(1, statistics.getSize());
+        Assert.assertEquals(-1, statistics.getMaxSize());
+    }
+    
+    @Test // @org.junit.Ignore
+    public void testLRUHybridCacheStatistics() {
+        final LRUHybridCache<Integer, Integer> cache[] = new LRUHybridCache[1];
+        cache[0] = new LRUHybridCache<Integer, Integer>(CACHE_SIZE, new Computable<Integer, HybridCacheEntry<Integer>>() {
+
+            @Override
+            public HybridCacheEntry<Integer> compute(Integer key) {
+                return cache[0].createCacheEntry(key, key, false);
+            }
+            
+        });
+        
+        for (int lcv = 0; lcv <= CACHE_SIZE; lcv++) {
+            cache[0].compute(lcv);
+        }
+        cache[0].compute(CACHE_SIZE);
+        
+        CacheStatistics statistics = cache[0].getStatistics();
+        Assert.assertEquals(1L, statistics.getHitCount());
+        Assert.assertEquals(CACHE_SIZE + 1, statistics.getMissCount());
+        Assert.assertEquals(1L, statistics.getEvictionCount());
+        Assert.assertEquals(CACHE_SIZE, statistics.getSize());
+        Assert.assertEquals(CACHE_SIZE, statistics.getMaxSize());
+    }
+    
+    @Test // @org.junit.Ignore
+    public void testLRUCacheStatistics() {
+        LRUCache<Integer, Integer> cache = LRUCache.createCache(CACHE_SIZE);
+        
+        Assert.assertNull(cache.get(1));
+        
+        for (int lcv = 0; lcv <= CACHE_SIZE; lcv++) {
+            cache.put(lcv, lcv);
+        }
+        Assert.assertEquals(CACHE_SIZE, cache.get(CACHE_SIZE).intValue());
+        
+        cache.releaseCache();
+        
+        CacheStatistics statistics = cache.getStatistics();
+        Assert.assertEquals(1L, statistics.getHitCount());
+        Assert.assertEquals(1L, statistics.getMissCount());
+        Assert.assertEquals(1L, statistics.getEvictionCount());
+        Assert.assertEquals(CACHE_SIZE, statistics.getInvalidationCount());
+        Assert.assertEquals(0L, statistics.getTotalComputeTime());
+        Assert.assertEquals(0, statistics.getSize());
+    }
+    
+    /**
+     * Tests the counter when only one thread uses it
+     */
+    @Test // @org.junit.Ignore
+    public void testStripedCounterWithOneThread() {
+        StripedCounter counter = new StripedCounter();
+        Assert.assertEquals(0L, counter.sum());
+        
+        counter.increment();
+        counter.add(10L);
+        counter.add(-3L);
+        
+        Assert.assertEquals(8L, counter.sum());
+        Assert.assertEquals("8", counter.toString());
+    }
+    
+    /**
+     * Tests that no increments are lost when many threads use the counter
+     */
+    @Test // @org.junit.Ignore
+    public void testStripedCounterIsAccurate() throws InterruptedException {
+        final StripedCounter counter = new StripedCounter();
+        
+        Thread threads[] = new Thread[NUM_THREADS];
+        for (int lcv = 0; lcv < NUM_THREADS; lcv++) {
+            threads[lcv] = new Thread() {
+                @Override
+                public void run() {
+                    for (int lcv2 = 0; lcv2 < NUM_INCREMENTS; lcv2++) {
+                        counter.increment();
+                    }
+                }
+            };
+            threads[lcv].start();
+        }
+        
+        for (int lcv = 0; lcv < NUM_THREADS; lcv++) {
+            threads[lcv].join();
+        }
+        
+        Assert.assertEquals(((long) NUM_THREADS) * NUM_INCREMENTS, counter.sum());
+    }
+
+}
@@ -0,0 +1,438 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.utilities.cache.test;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.glassfish.hk2.utilities.cache.CacheUtilities;
+import org.glassfish.hk2.utilities.cache.Computable;
+import org.glassfish.hk2.utilities.cache.WeakCARCache;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the WeakCARCache that does not lock around its computable
+ * 
+ * @author jwells
+ *
+ */
+public class ConcurrentWeakCARCacheTest {
+    private final static int SMALL_CACHE_SIZE = 10;
+    private final static int NUM_THREADS = 8;
+    private final static Integer SLOW_KEY = 1;
+    private final static Integer FAST_KEY = 2;
+    
+    /**
+     * Tests that with one thread the concurrent cache keeps exactly
+     * the same lists as the locked cache
+     */
+    @Test // @org.junit.Ignore
+    public void testSameListsAsLockedCache() {
+        WeakCARCache<Integer, Integer> locked = CacheUtilities.createWeakCARCache(
+                new SlowComputable(0), SMALL_CACHE_SIZE, false, null, false);
+        WeakCARCache<Integer, Integer> concurrent = CacheUtilities.createWeakCARCache(
+                new SlowComputable(0), SMALL_CACHE_SIZE, false, null, true);
+        
+        Random random = new Random(11L);
+        for (int lcv = 0; lcv < 10000; lcv++) {
+            // Skewed so that both the recent and the frequent clocks are used
+            Integer key = (random.nextBoolean()) ? random.nextInt(5) : random.nextInt(40) ;
+            
+            Assert.assertEquals(locked.compute(key), concurrent.compute(key));
+            
+            Assert.assertEquals(locked.getT1Size(), concurrent.getT1Size());
+            Assert.assertEquals(locked.getT2Size(), concurrent.getT2Size());
+            Assert.assertEquals(locked.getB1Size(), concurrent.getB1Size());
+            Assert.assertEquals(locked.getB2Size(), concurrent.getB2Size());
+            Assert.assertEquals(locked.getP(), concurrent.getP());
+        }
+    }
+    
+    /**
+     * Tests that many threads missing on the same key call the
+     * computable only once
+     */
+    @Test // @org.junit.Ignore
+    public void testKeyComputedOnce() throws InterruptedException {
+        final GatedComputable computable = new GatedComputable();
+        final WeakCARCache<Integer, Integer> cache = CacheUtilities.createWeakCARCache(
+                computable, SMALL_CACHE_SIZE, false, null, true);
+        
+        final AtomicInteger correct = new AtomicInteger();
+        Thread threads[] = new Thread[NUM_THREADS];
+        for (int lcv = 0; lcv < NUM_THREADS; lcv++) {
+            threads[lcv] = new Thread() {
+                @Override
+                public void run() {
+                    if (SLOW_KEY.equals(cache.compute(SLOW_KEY))) correct.incrementAndGet();
+                }
+            };
+            threads[lcv].start();
+        }
+        
+        Assert.assertTrue(computable.waitForSlowKey());
+        
+        // Give the other threads time to pile up behind the first
+        Thread.sleep(100);
+        computable.open();
+        
+        for (int lcv = 0; lcv < NUM_THREADS; lcv++) {
+            threads[lcv].join(10000);
+        }
+        
+        Assert.assertEquals(NUM_THREADS, correct.get());
+        Assert.assertEquals(1, computable.getCount());
+    }
+    
+    /**
+     * Tests that a slow miss on one key does not stop another
+     * key from being computed
+     */
+    @Test // @org.junit.Ignore
+    public void testSlowMissDoesNotBlockOtherKeys() throws InterruptedException {
+        GatedComputable computable = new GatedComputable();
+        WeakCARCache<Integer, Integer> cache = CacheUtilities.createWeakCARCache(
+                computable, SMALL_CACHE_SIZE, false, null, true);
+        
+        Thread slow = startCompute(cache, SLOW_KEY, new AtomicReference<Throwable>());
+        Assert.assertTrue(computable.waitForSlowKey());
+        
+        try {
+            Assert.assertEquals(FAST_KEY, cache.compute(FAST_KEY));
+            Assert.assertEquals(1, cache.getValueSize());
+        }
+        finally {
+            computable.open();
+        }
+        
+        slow.join(10000);
+        Assert.assertEquals(2, cache.getValueSize());
+    }
+    
+    /**
+     * Tests that a value being computed while its key is removed
+     * is not kept by the cache
+     */
+    @Test // @org.junit.Ignore
+    public void testRemoveDuringComputeIsNotKept() throws InterruptedException {
+        GatedComputable computable = new GatedComputable();
+        WeakCARCache<Integer, Integer> cache = CacheUtilities.createWeakCARCache(
+                computable, SMALL_CACHE_SIZE, false, null, true);
+        
+        Thread slow = startCompute(cache, SLOW_KEY, new AtomicReference<Throwable>());
+        Assert.assertTrue(computable.waitForSlowKey());
+        
+        cache.remove(SLOW_KEY);
+        computable.open();
+        slow.join(10000);
+        
+        Assert.assertEquals(0, cache.getValueSize());
+        
+        Assert.assertEquals(SLOW_KEY, cache.compute(SLOW_KEY));
+        Assert.assertEquals(2, computable.getCount());
+        Assert.assertEquals(1, cache.getValueSize());
+    }
+    
+    /**
+     * Tests that the threads waiting on a key get the exception
+     * thrown by the computable, and that the key is tried again
+     * afterwards
+     */
+    @Test // @org.junit.Ignore
+    public void testErrorGoesToWaitingThreads() throws InterruptedException {
+        GatedComputable computable = new GatedComputable();
+        computable.failNext();
+        
+        WeakCARCache<Integer, Integer> cache = CacheUtilities.createWeakCARCache(
+                computable, SMALL_CACHE_SIZE, false, null, true);
+        
+        AtomicReference<Throwable> firstError = new AtomicReference<Throwable>();
+        AtomicReference<Throwable> secondError = new AtomicReference<Throwable>();
+        
+        Thread first = startCompute(cache, SLOW_KEY, firstError);
+        Assert.assertTrue(computable.waitForSlowKey());
+        
+        Thread second = startCompute(cache, SLOW_KEY, secondError);
+        Thread.sleep(100);
+        
+        computable.open();
+        first.join(10000);
+        second.join(10000);
+        
+        Assert.assertTrue(firstError.get() instanceof IllegalStateException);
+        Assert.assertTrue(secondError.get() instanceof IllegalStateException);
+        Assert.assertEquals(0, cache.getValueSize());
+        
+        Assert.assertEquals(SLOW_KEY, cache.compute(SLOW_KEY));
+    }
+
+    /**
+     * Tests that two threads whose computables each ask the cache
+     * for the key the other thread is computing do not deadlock
+     */
+    @Test // @org.junit.Ignore
+    public void testCrossKeyComputablesDoNotDeadlock() throws InterruptedException {
+        final CountDownLatch bothComputing = new CountDownLatch(2);
+        final AtomicReference<WeakCARCache<Integer, Integer>> cacheHolder =
+                new AtomicReference<WeakCARCache<Integer, Integer>>();
+
+        WeakCARCache<Integer, Integer> cache = CacheUtilities.createWeakCARCache(
+                new Computable<Integer, Integer>() {
+
+                    @Override
+                    public Integer compute(Integer key) {
+                        // Only the first computation on each thread depends on the other key
+                        if (bothComputing.getCount() == 0) return key;
+
+                        bothComputing.countDown();
+                        try {
+                            if (!bothComputing.await(10, TimeUnit.SECONDS)) throw new AssertionError("Never both computing");
+                        }
+                        catch (InterruptedException ie) {
+                            throw new AssertionError(ie);
+                        }
+
+                        // Each key depends on the key being computed by the other thread
+                        Integer other = SLOW_KEY.equals(key) ? FAST_KEY : SLOW_KEY;
+                        if (!other.equals(cacheHolder.get().compute(other))) throw new AssertionError("Wrong value for " + other);
+
+                        return key;
+                    }
+
+                }, SMALL_CACHE_SIZE, false, null, true);
+        cacheHolder.set(cache);
+
+        AtomicReference<Throwable> slowError = new AtomicReference<Throwable>();
+        AtomicReference<Throwable> fastError = new AtomicReference<Throwable>();
+
+        Thread slow = startCompute(cache, SLOW_KEY, slowError);
+        Thread fast = startCompute(cache, FAST_KEY, fastError);
+
+        slow.join(10000);
+        fast.join(10000);
+
+        Assert.assertFalse(slow.isAlive());
+        Assert.assertFalse(fast.isAlive());
+        Assert.assertNull(slowError.get());
+        Assert.assertNull(fastError.get());
+        Assert.assertEquals(SLOW_KEY, cache.compute(SLOW_KEY));
+        Assert.assertEquals(FAST_KEY, cache.compute(FAST_KEY));
+    }
+
+    /**
+     * Compares the two caches when many threads miss on a computable that
+     * takes a millisecond.  The locked cache can only do one miss at a time.
+     * The timings are only printed, runContention checks the values
+     */
+    @Test // @org.junit.Ignore
+    public void testContendedSlowMisses() throws InterruptedException {
+        // Every key is different, so every compute is a miss
+        long lockedTime = runContention(CacheUtilities.createWeakCARCache(
+                new SlowComputable(1), SMALL_CACHE_SIZE, false, null, false), 1000000, 50);
+        long concurrentTime = runContention(CacheUtilities.createWeakCARCache(
+                new SlowComputable(1), SMALL_CACHE_SIZE, false, null, true), 1000000, 50);
+        
+        System.out.println("Slow misses with " + NUM_THREADS + " threads: locked=" + lockedTime +
+                " milliseconds, concurrent=" + concurrentTime + " milliseconds");
+    }
+    
+    /**
+     * Compares the two caches when many threads hit a small set of keys
+     */
+    @Test // @org.junit.Ignore
+    public void testContendedHits() throws InterruptedException {
+        // Warm up both
+        runContention(CacheUtilities.createWeakCARCache(
+                new SlowComputable(0), 128, false, null, false), 64, 100000);
+        runContention(CacheUtilities.createWeakCARCache(
+                new SlowComputable(0), 128, false, null, true), 64, 100000);
+        
+        long lockedTime = runContention(CacheUtilities.createWeakCARCache(
+                new SlowComputable(0), 128, false, null, false), 64, 1000000);
+        long concurrentTime = runContention(CacheUtilities.createWeakCARCache(
+                new SlowComputable(0), 128, false, null, true), 64, 1000000);
+        
+        System.out.println("Hits with " + NUM_THREADS + " threads: locked=" + lockedTime +
+                " milliseconds, concurrent=" + concurrentTime + " milliseconds");
+    }
+    
+    private static Thread startCompute(final WeakCARCache<Integer, Integer> cache, final Integer key,
+            final AtomicReference<Throwable> error) {
+        Thread retVal = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    cache.compute(key);
+                }
+                catch (Throwable th) {
+                    error.set(th);
+                }
+            }
+        };
+        
+        retVal.start();
+        return retVal;
+    }
+    
+    /**
+     * Has every thread compute keys from its own slice of the key space
+     * 
+     * @return The number of milliseconds it took for all threads to finish
+     */
+    private static long runContention(final WeakCARCache<Integer, Integer> cache, final int keySpace,
+            final int iterations) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        
+        Thread threads[] = new Thread[NUM_THREADS];
+        for (int lcv = 0; lcv < NUM_THREADS; lcv++) {
+            final int offset = lcv * iterations;
+            
+            threads[lcv] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        
+                        for (int lcv2 = 0; lcv2 < iterations; lcv2++) {
+                            Integer key = (offset + lcv2) % keySpace;
+                            if (!key.equals(cache.compute(key))) {
+                                throw new AssertionError("Wrong value for " + key);
+                            }
+                        }
+                    }
+                    catch (Throwable th) {
+                        error.set(th);
+                    }
+                }
+            };
+            threads[lcv].start();
+        }
+        
+        long elapsedTime = System.currentTimeMillis();
+        start.countDown();
+        for (int lcv = 0; lcv < NUM_THREADS; lcv++) {
+            threads[lcv].join();
+        }
+        elapsedTime = System.currentTimeMillis() - elapsedTime;
+        
+        if (error.get() != null) throw new AssertionError(error.get());
+        
+        return elapsedTime;
+    }
+    
+    /**
+     * Returns the key, after sleeping for the given number of milliseconds
+     */
+    private static class SlowComputable implements Computable<Integer, Integer> {
+        private final long sleepTime;
+        
+        private SlowComputable(long sleepTime) {
+            this.sleepTime = sleepTime;
+        }
+
+        @Override
+        public Integer compute(Integer key) {
+            if (sleepTime > 0) {
+                try {
+                    Thread.sleep(sleepTime);
+                }
+                catch (InterruptedException ie) {
+                    throw new AssertionError(ie);
+                }
+            }
+            
+            return key;
+        }
+        
+    }
+    
+    /**
+     * Computing {@link #SLOW_KEY} waits until {@link #open()} is called
+     */
+    private static class GatedComputable implements Computable<Integer, Integer> {
+        private final CountDownLatch slowKeyStarted = new CountDownLatch(1);
+        private final CountDownLatch gate = new CountDownLatch(1);
+        private final AtomicInteger count = new AtomicInteger();
+        private volatile boolean failNext;
+
+        @Override
+        public Integer compute(Integer key) {
+            count.incrementAndGet();
+            if (!SLOW_KEY.equals(key) || gate.getCount() == 0) return key;
+            
+            slowKeyStarted.countDown();
+            try {
+                if (!gate.await(10, TimeUnit.SECONDS)) throw new AssertionError("Gate never opened");
+            }
+            catch (InterruptedException ie) {
+                throw new AssertionError(ie);
+            }
+            
+            if (failNext) {
+                failNext = false;
+                throw new IllegalStateException("Expected failure");
+            }
+            
+            return key;
+        }
+        
+        private boolean waitForSlowKey() throws InterruptedException {
+            return slowKeyStarted.await(10, TimeUnit.SECONDS);
+        }
+        
+        private void open() {
+            gate.countDown();
+        }
+        
+        private void failNext() {
+            failNext = true;
+        }
+        
+        private int getCount() {
+            return count.get();
+        }
+    }
+
+}
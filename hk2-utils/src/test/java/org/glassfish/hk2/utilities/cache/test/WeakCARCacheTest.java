@@ -43,6 +43,7 @@ import java.util.LinkedList;
 import java.util.Random;
 
 import org.glassfish.hk2.utilities.cache.CacheKeyFilter;
+import org.glassfish.hk2.utilities.cache.CacheKeyIndexer;
 import org.glassfish.hk2.utilities.cache.CacheUtilities;
 import org.glassfish.hk2.utilities.cache.Computable;
 import org.glassfish.hk2.utilities.cache.WeakCARCache;
@@ -692,6 +693,90 @@ public class WeakCARCacheTest {
         Assert.assertEquals(5, car.getP());
     }
     
+    private final static String EVEN = "even";
+    private final static String ODD = "odd";
+    
+    /**
+     * Indexes integers by whether they are even or odd
+     */
+    private final static CacheKeyIndexer<Integer> PARITY_INDEXER = new CacheKeyIndexer<Integer>() {
+
+        @Override
+        public Object getIndex(Integer key) {
+            return ((key.intValue() % 2) == 0) ? EVEN : ODD;
+        }
+        
+    };
+    
+    /**
+     * Releasing an index must remove exactly the keys that releasing
+     * the equivalent filter removes, including the keys in B1 and B2
+     */
+    private void testReleaseIndexed(boolean isWeak) {
+        CountingComputable indexedCounter = new CountingComputable();
+        WeakCARCache<Integer, Integer> indexed = CacheUtilities.createWeakCARCache(indexedCounter,
+                SMALL_CACHE_SIZE, isWeak, PARITY_INDEXER);
+        WeakCARCache<Integer, Integer> filtered = CacheUtilities.createWeakCARCache(new CountingComputable(),
+                SMALL_CACHE_SIZE, isWeak, PARITY_INDEXER);
+        
+        Integer[] keys = getIntArray(P_TO_5_BACK_TO_2);
+        for (int lcv = 0; lcv < keys.length; lcv++) {
+            indexed.compute(keys[lcv]);
+            filtered.compute(keys[lcv]);
+        }
+        
+        Assert.assertTrue(indexed.getB1Size() + indexed.getB2Size() > 0);
+        
+        indexed.releaseIndexed(EVEN);
+        filtered.releaseMatching(new CacheKeyFilter<Integer>() {
+
+            @Override
+            public boolean matches(Integer key) {
+                return EVEN.equals(PARITY_INDEXER.getIndex(key));
+            }
+            
+        });
+        
+        Assert.assertEquals(filtered.getT1Size(), indexed.getT1Size());
+        Assert.assertEquals(filtered.getT2Size(), indexed.getT2Size());
+        Assert.assertEquals(filtered.getB1Size(), indexed.getB1Size());
+        Assert.assertEquals(filtered.getB2Size(), indexed.getB2Size());
+        
+        // Every even key must now be a miss
+        for (int lcv = 0; lcv < keys.length; lcv++) {
+            if ((keys[lcv].intValue() % 2) != 0) continue;
+            
+            int before = indexedCounter.getCount();
+            Assert.assertEquals(keys[lcv], indexed.compute(keys[lcv]));
+            Assert.assertEquals(before + 1, indexedCounter.getCount());
+            
+            // And the index is kept up to date after the release
+            indexed.releaseIndexed(EVEN);
+        }
+        
+        // Releasing an index nobody has is fine
+        indexed.releaseIndexed("none");
+    }
+    
+    @Test // @org.junit.Ignore
+    public void testReleaseIndexedWeak() {
+        testReleaseIndexed(true);
+    }
+    
+    @Test // @org.junit.Ignore
+    public void testReleaseIndexedStrong() {
+        testReleaseIndexed(false);
+    }
+    
+    /**
+     * A cache created without an indexer cannot release by index
+     */
+    @Test(expected=IllegalStateException.class) // @org.junit.Ignore
+    public void testReleaseIndexedWithoutIndexer() {
+        WeakCARCache<Integer, Integer> car = CacheUtilities.createWeakCARCache(INT_TO_INT, SMALL_CACHE_SIZE, false);
+        car.releaseIndexed(EVEN);
+    }
+    
     private final static int NUM_THREADS = 20;
     
     /**
@@ -734,6 +819,13 @@ public class WeakCARCacheTest {
         testConcurrency(cache);
     }
     
+    @Test // @org.junit.Ignore
+    public void testConcurrencyIndexed() throws InterruptedException {
+        // Key space is 100 keys, so we will make the cache size 50
+        WeakCARCache<Integer, Integer> cache = CacheUtilities.createWeakCARCache(INT_TO_INT, 50, false, PARITY_INDEXER);
+        testConcurrency(cache);
+    }
+    
     @Test // @org.junit.Ignore
     public void testConcurrencyStrong() throws InterruptedException {
         // Key space is 100 keys, so we will make the cache size 50
@@ -741,6 +833,70 @@ public class WeakCARCacheTest {
         testConcurrency(cache);
     }
     
+    @Test // @org.junit.Ignore
+    public void testConcurrencyConcurrentWeak() throws InterruptedException {
+        // Key space is 100 keys, so we will make the cache size 50
+        WeakCARCache<Integer, Integer> cache = CacheUtilities.createWeakCARCache(INT_TO_INT, 50, true, null, true);
+        testConcurrency(cache);
+    }
+    
+    @Test // @org.junit.Ignore
+    public void testConcurrencyConcurrentIndexed() throws InterruptedException {
+        // Key space is 100 keys, so we will make the cache size 50
+        WeakCARCache<Integer, Integer> cache = CacheUtilities.createWeakCARCache(INT_TO_INT, 50, false, PARITY_INDEXER, true);
+        testConcurrency(cache);
+    }
+    
+    @Test // @org.junit.Ignore
+    public void testConcurrencyConcurrentStrong() throws InterruptedException {
+        // Key space is 100 keys, so we will make the cache size 50
+        WeakCARCache<Integer, Integer> cache = CacheUtilities.createWeakCARCache(INT_TO_INT, 50, false, null, true);
+        testConcurrency(cache);
+    }
+    
+    private void testSetMaxSize(WeakCARCache<Integer, Integer> car) {
+        for (int lcv = 0; lcv < SMALL_CACHE_SIZE; lcv++) {
+            car.compute(lcv);
+        }
+        
+        Assert.assertEquals(SMALL_CACHE_SIZE, car.getValueSize());
+        
+        car.setMaxSize(SMALL_CACHE_SIZE / 2);
+        
+        Assert.assertEquals(SMALL_CACHE_SIZE / 2, car.getMaxSize());
+        Assert.assertEquals(SMALL_CACHE_SIZE / 2, car.getValueSize());
+        Assert.assertTrue(car.getKeySize() <= SMALL_CACHE_SIZE);
+        Assert.assertTrue(car.getP() <= SMALL_CACHE_SIZE / 2);
+        
+        // Still works with the smaller size
+        for (int lcv = 0; lcv < SMALL_CACHE_SIZE; lcv++) {
+            Assert.assertEquals(lcv, car.compute(lcv).intValue());
+        }
+        Assert.assertEquals(SMALL_CACHE_SIZE / 2, car.getValueSize());
+        
+        // And can grow again
+        car.setMaxSize(SMALL_CACHE_SIZE);
+        for (int lcv = 0; lcv < SMALL_CACHE_SIZE; lcv++) {
+            car.compute(lcv);
+        }
+        Assert.assertEquals(SMALL_CACHE_SIZE, car.getValueSize());
+    }
+    
+    @Test // @org.junit.Ignore
+    public void testSetMaxSize() {
+        testSetMaxSize(CacheUtilities.createWeakCARCache(INT_TO_INT, SMALL_CACHE_SIZE, false));
+    }
+    
+    @Test // @org.junit.Ignore
+    public void testSetMaxSizeConcurrent() {
+        testSetMaxSize(CacheUtilities.createWeakCARCache(INT_TO_INT, SMALL_CACHE_SIZE, false, null, true));
+    }
+    
+    @Test(expected=IllegalArgumentException.class) // @org.junit.Ignore
+    public void testSetMaxSizeZero() {
+        CacheUtilities.createWeakCARCache(INT_TO_INT, SMALL_CACHE_SIZE, false).setMaxSize(0);
+    }
+    
     private final static int CONCURRENT_ITERATIONS = 100000;
     
     private static class Runner implements Runnable {
@@ -926,6 +1082,23 @@ public class WeakCARCacheTest {
         }
     }
     
+    private static class CountingComputable implements Computable<Integer, Integer> {
+        private int count;
+
+        /* (non-Javadoc)
+         * @see org.glassfish.hk2.utilities.cache.Computable#compute(java.lang.Object)
+         */
+        @Override
+        public synchronized Integer compute(Integer key) {
+            count++;
+            return key;
+        }
+        
+        private synchronized int getCount() {
+            return count;
+        }
+    }
+    
     private static class WeakComputable implements Computable<Integer, Integer> {
 
         /* (non-Javadoc)
@@ -0,0 +1,177 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.utilities.general.test;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import org.glassfish.hk2.utilities.general.ConcurrentWeakKeyMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author jwells
+ *
+ */
+public class ConcurrentWeakKeyMapTest {
+    private final static String KEY = "key";
+    private final static String VALUE = "value";
+    private final static String VALUE1 = "value1";
+    
+    private final static int MAX_COLLECTIONS = 50;
+    
+    private static void testBasicOperations(ConcurrentWeakKeyMap<String, String> map) {
+        Assert.assertNull(map.get(KEY));
+        
+        Assert.assertNull(map.putIfAbsent(KEY, VALUE));
+        Assert.assertEquals(VALUE, map.putIfAbsent(KEY, VALUE1));
+        Assert.assertEquals(VALUE, map.get(KEY));
+        
+        Assert.assertEquals(VALUE, map.put(KEY, VALUE1));
+        Assert.assertEquals(VALUE1, map.get(KEY));
+        Assert.assertEquals(1, map.size());
+        Assert.assertEquals(1, map.values().size());
+        
+        Assert.assertEquals(VALUE1, map.remove(KEY));
+        Assert.assertNull(map.get(KEY));
+        
+        map.put(KEY, VALUE);
+        Assert.assertEquals(VALUE, map.clear().get(0));
+        Assert.assertEquals(0, map.size());
+    }
+    
+    @Test
+    public void testBasicOperationsWeak() {
+        testBasicOperations(new ConcurrentWeakKeyMap<String, String>());
+    }
+    
+    @Test
+    public void testBasicOperationsStrong() {
+        testBasicOperations(new ConcurrentWeakKeyMap<String, String>(false, true));
+    }
+    
+    /**
+     * Values that refer back to their class must not keep
+     * the classloader of that class alive
+     */
+    @Test
+    public void testClassLoaderIsNotPinned() throws Exception {
+        ConcurrentWeakKeyMap<Class<?>, Method[]> map = new ConcurrentWeakKeyMap<Class<?>, Method[]>(true, false);
+        
+        WeakReference<ClassLoader> loader = addClassFromNewLoader(map);
+        
+        Assert.assertTrue(collect(loader));
+    }
+    
+    /**
+     * A map that pins classloaders keeps them, which is
+     * what the map above must not do
+     */
+    @Test
+    public void testClassLoaderIsPinned() throws Exception {
+        ConcurrentWeakKeyMap<Class<?>, Method[]> map = new ConcurrentWeakKeyMap<Class<?>, Method[]>();
+        
+        WeakReference<ClassLoader> loader = addClassFromNewLoader(map);
+        
+        Assert.assertFalse(collect(loader));
+        Assert.assertEquals(1, map.size());
+    }
+    
+    /**
+     * The value of a class from another loader stays while it is used
+     */
+    @Test
+    public void testUsedValueIsKept() throws Exception {
+        ConcurrentWeakKeyMap<Class<?>, Method[]> map = new ConcurrentWeakKeyMap<Class<?>, Method[]>(true, false);
+        
+        ClassLoader loader = new URLClassLoader(new URL[] { getCodeSource() }, null);
+        Class<?> loaded = loader.loadClass(LoadedByOtherLoader.class.getName());
+        Method[] methods = loaded.getMethods();
+        
+        map.put(loaded, methods);
+        
+        collect(new WeakReference<Object>(new Object()));
+        
+        Assert.assertSame(methods, map.get(loaded));
+        
+        // Classes this map can see are always kept
+        map.put(LoadedByOtherLoader.class, LoadedByOtherLoader.class.getMethods());
+        
+        collect(new WeakReference<Object>(new Object()));
+        
+        Assert.assertNotNull(map.get(LoadedByOtherLoader.class));
+    }
+    
+    private static WeakReference<ClassLoader> addClassFromNewLoader(ConcurrentWeakKeyMap<Class<?>, Method[]> map) throws Exception {
+        ClassLoader loader = new URLClassLoader(new URL[] { getCodeSource() }, null);
+        
+        Class<?> loaded = loader.loadClass(LoadedByOtherLoader.class.getName());
+        Assert.assertNotSame(LoadedByOtherLoader.class, loaded);
+        
+        map.put(loaded, loaded.getMethods());
+        Assert.assertNotNull(map.get(loaded));
+        
+        return new WeakReference<ClassLoader>(loader);
+    }
+    
+    private static URL getCodeSource() {
+        return LoadedByOtherLoader.class.getProtectionDomain().getCodeSource().getLocation();
+    }
+    
+    private static boolean collect(WeakReference<?> reference) throws InterruptedException {
+        for (int lcv = 0; lcv < MAX_COLLECTIONS; lcv++) {
+            if (reference.get() == null) return true;
+            
+            System.gc();
+            Thread.sleep(10);
+        }
+        
+        return (reference.get() == null);
+    }
+    
+    public static class LoadedByOtherLoader {
+        public String getName() {
+            return "loaded";
+        }
+    }
+
+}
@@ -0,0 +1,289 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.utilities.reflection;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.glassfish.hk2.utilities.cache.CacheStatistics;
+import org.glassfish.hk2.utilities.reflection.internal.ClassReflectionHelperImpl;
+import org.glassfish.hk2.utilities.reflection.internal.SharedClassReflectionHelperImpl;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the shared ClassReflectionHelper
+ * 
+ * @author jwells
+ *
+ */
+public class SharedClassReflectionHelperTest {
+    private final static int NUM_THREADS = 8;
+    
+    /**
+     * Tests that the shared helper finds the same things
+     * as the per-user helper
+     */
+    @Test // @org.junit.Ignore
+    public void testSameAnswersAsClassReflectionHelperImpl() {
+        ClassReflectionHelper shared = new SharedClassReflectionHelperImpl();
+        ClassReflectionHelper original = new ClassReflectionHelperImpl();
+        
+        Assert.assertEquals(toMethods(original.getAllMethods(OverallInterface.class)),
+                toMethods(shared.getAllMethods(OverallInterface.class)));
+        Assert.assertEquals(toMethods(original.getAllMethods(LifecycleService.class)),
+                toMethods(shared.getAllMethods(LifecycleService.class)));
+        Assert.assertEquals(original.getAllFields(LifecycleService.class), shared.getAllFields(LifecycleService.class));
+        
+        Method postConstruct = shared.findPostConstruct(LifecycleService.class, Runnable.class);
+        Assert.assertNotNull(postConstruct);
+        Assert.assertEquals("start", postConstruct.getName());
+        Assert.assertEquals(original.findPostConstruct(LifecycleService.class, Runnable.class), postConstruct);
+        
+        Method preDestroy = shared.findPreDestroy(LifecycleService.class, Runnable.class);
+        Assert.assertNotNull(preDestroy);
+        Assert.assertEquals("stop", preDestroy.getName());
+        
+        Assert.assertNull(shared.findPostConstruct(OverallInterface.class, Runnable.class));
+        Assert.assertNull(shared.findPreDestroy(OverallInterface.class, Runnable.class));
+    }
+    
+    /**
+     * Tests that the analysis of a class is only done once
+     */
+    @Test // @org.junit.Ignore
+    public void testAnalysisIsKept() {
+        ClassReflectionHelper helper = new SharedClassReflectionHelperImpl();
+        
+        Set<MethodWrapper> methods = helper.getAllMethods(LifecycleService.class);
+        Set<Field> fields = helper.getAllFields(LifecycleService.class);
+        Assert.assertNull(helper.findPostConstruct(OverallInterface.class, Runnable.class));
+        
+        Assert.assertSame(methods, helper.getAllMethods(LifecycleService.class));
+        Assert.assertSame(fields, helper.getAllFields(LifecycleService.class));
+        Assert.assertNull(helper.findPostConstruct(OverallInterface.class, Runnable.class));
+        
+        CacheStatistics methodStatistics = helper.getStatistics().get("methods");
+        Assert.assertEquals(1, methodStatistics.getHitCount());
+        Assert.assertEquals(2, methodStatistics.getMissCount());
+        Assert.assertEquals(2, methodStatistics.getSize());
+        Assert.assertEquals(-1, methodStatistics.getMaxSize());
+        
+        CacheStatistics postConstructStatistics = helper.getStatistics().get("postConstruct");
+        Assert.assertEquals(1, postConstructStatistics.getHitCount());
+        Assert.assertEquals(1, postConstructStatistics.getMissCount());
+        
+        // methods of two classes, fields and postConstruct of one
+        Assert.assertEquals(4, helper.size());
+    }
+    
+    /**
+     * Tests that the lifecycle methods are looked up again when
+     * asked for with a different matching interface
+     */
+    @Test // @org.junit.Ignore
+    public void testMatchingClassIsPartOfTheAnswer() {
+        ClassReflectionHelper helper = new SharedClassReflectionHelperImpl();
+        
+        Method postConstruct = helper.findPostConstruct(MatchingService.class, Runnable.class);
+        Assert.assertNotNull(postConstruct);
+        Assert.assertEquals("start", postConstruct.getName());
+        
+        Method preDestroy = helper.findPreDestroy(MatchingService.class, Runnable.class);
+        Assert.assertNotNull(preDestroy);
+        Assert.assertEquals("stop", preDestroy.getName());
+        
+        // The matching interface has no no-argument lifecycle methods
+        Assert.assertNull(helper.findPostConstruct(MatchingService.class, MatchingLifecycle.class));
+        Assert.assertNull(helper.findPreDestroy(MatchingService.class, MatchingLifecycle.class));
+        
+        Assert.assertSame(postConstruct, helper.findPostConstruct(MatchingService.class, Runnable.class));
+        Assert.assertNull(helper.findPostConstruct(MatchingService.class, MatchingLifecycle.class));
+        
+        CacheStatistics postConstructStatistics = helper.getStatistics().get("postConstruct");
+        Assert.assertEquals(0, postConstructStatistics.getHitCount());
+        Assert.assertEquals(4, postConstructStatistics.getMissCount());
+        
+        Assert.assertNull(helper.findPostConstruct(MatchingService.class, MatchingLifecycle.class));
+        Assert.assertEquals(1, helper.getStatistics().get("postConstruct").getHitCount());
+    }
+    
+    /**
+     * Tests that clean removes a class and its superclasses,
+     * and that dispose removes everything
+     */
+    @Test // @org.junit.Ignore
+    public void testCleanAndDispose() {
+        ClassReflectionHelper helper = new SharedClassReflectionHelperImpl();
+        
+        helper.getAllMethods(LifecycleService.class);
+        helper.getAllMethods(SubLifecycleService.class);
+        helper.getAllMethods(OverallInterface.class);
+        Assert.assertEquals(3, helper.size());
+        
+        helper.clean(SubLifecycleService.class);
+        Assert.assertEquals(1, helper.size());
+        Assert.assertEquals(2, helper.getStatistics().get("methods").getInvalidationCount());
+        
+        Set<Method> methods = toMethods(helper.getAllMethods(SubLifecycleService.class));
+        
+        helper.dispose();
+        Assert.assertEquals(0, helper.size());
+        
+        // Still usable after dispose
+        Assert.assertEquals(methods, toMethods(helper.getAllMethods(SubLifecycleService.class)));
+    }
+    
+    /**
+     * Tests that threads analyzing the same class all get the same answer
+     */
+    @Test // @org.junit.Ignore
+    public void testConcurrentReaders() throws Exception {
+        final ClassReflectionHelper helper = new SharedClassReflectionHelperImpl();
+        
+        ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+        try {
+            List<Future<Method>> futures = new LinkedList<Future<Method>>();
+            for (int lcv = 0; lcv < NUM_THREADS; lcv++) {
+                futures.add(executor.submit(new Callable<Method>() {
+
+                    @Override
+                    public Method call() throws Exception {
+                        Method retVal = null;
+                        for (int lcv = 0; lcv < 1000; lcv++) {
+                            retVal = helper.findPreDestroy(SubLifecycleService.class, Runnable.class);
+                            helper.getAllFields(SubLifecycleService.class);
+                        }
+                        return retVal;
+                    }
+                    
+                }));
+            }
+            
+            for (Future<Method> future : futures) {
+                Assert.assertEquals("stop", future.get().getName());
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+        
+        Assert.assertEquals(1, helper.getStatistics().get("fields").getSize());
+    }
+    
+    /**
+     * Tests that the shared instance is shared
+     */
+    @Test // @org.junit.Ignore
+    public void testSharedInstance() {
+        Assert.assertSame(SharedClassReflectionHelperImpl.getInstance(),
+                SharedClassReflectionHelperImpl.getInstance());
+    }
+    
+    private static Set<Method> toMethods(Set<MethodWrapper> wrappers) {
+        Set<Method> retVal = new HashSet<Method>();
+        for (MethodWrapper wrapper : wrappers) {
+            retVal.add(wrapper.getMethod());
+        }
+        return retVal;
+    }
+    
+    public static class LifecycleService {
+        private int state;
+        
+        @PostConstruct
+        private void start() {
+            state = 1;
+        }
+        
+        @PreDestroy
+        private void stop() {
+            state = 0;
+        }
+        
+        public int getState() {
+            return state;
+        }
+    }
+    
+    public static interface MatchingLifecycle {
+        public void postConstruct(int state);
+        
+        public void preDestroy(int state);
+    }
+    
+    public static class MatchingService implements MatchingLifecycle {
+        @PostConstruct
+        private void start() {
+        }
+        
+        @PreDestroy
+        private void stop() {
+        }
+        
+        @Override
+        public void postConstruct(int state) {
+        }
+        
+        @Override
+        public void preDestroy(int state) {
+        }
+    }
+    
+    public static class SubLifecycleService extends LifecycleService {
+        private String name;
+        
+        public String getName() {
+            return name;
+        }
+    }
+
+}
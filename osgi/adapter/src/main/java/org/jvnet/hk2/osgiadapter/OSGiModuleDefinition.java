@@ -57,7 +57,7 @@ import java.util.jar.Manifest;
 import java.util.logging.Level;
 
 import org.glassfish.hk2.api.Descriptor;
-import org.glassfish.hk2.utilities.DescriptorImpl;
+import org.glassfish.hk2.utilities.BinaryDescriptorFile;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.BundleReference;
@@ -293,24 +293,7 @@ public class OSGiModuleDefinition implements ModuleDefinition, Serializable {
                         try {
                             is = url.openStream();
 
-                            BufferedReader br = new BufferedReader(new InputStreamReader(is));
-
-                            try {
-                                boolean readOne = false;
-
-                                do {
-                                    DescriptorImpl descriptorImpl = new DescriptorImpl();
-
-                                    readOne = descriptorImpl.readObject(br);
-
-                                    if (readOne) {
-                                        descriptors.add(descriptorImpl);
-                                    }
-                                } while (readOne);
-
-                            } finally {
-                                br.close();
-                            }
+                            descriptors.addAll(BinaryDescriptorFile.readDescriptors(is));
 
                             result.addDescriptors(serviceLocatorName, descriptors);
 